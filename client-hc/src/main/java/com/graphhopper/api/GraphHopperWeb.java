@@ -26,6 +26,7 @@ import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.jackson.Jackson;
+import com.graphhopper.jackson.BinaryResponseFormat;
 import com.graphhopper.jackson.ResponsePathDeserializerHelper;
 import com.graphhopper.util.CustomModel;
 import com.graphhopper.util.Helper;
@@ -63,6 +64,7 @@ public class GraphHopperWeb {
     private boolean elevation = false;
     private String optimize = "false";
     private boolean postRequest = true;
+    private boolean binaryResponse = false;
     private int maxUnzippedLength = 1000;
     private final Set<String> ignoreSetForGet;
     private final Set<String> ignoreSetForPost;
@@ -145,6 +147,16 @@ public class GraphHopperWeb {
         return this;
     }
 
+    /**
+     * If true the response is requested in the compact binary format, which is faster to parse than JSON, see
+     * {@link BinaryResponseFormat}. The JSON format is still used if the server does not support the binary format.
+     * The default is false.
+     */
+    public GraphHopperWeb setBinaryResponse(boolean binaryResponse) {
+        this.binaryResponse = binaryResponse;
+        return this;
+    }
+
     /**
      * Enable or disable calculating points for the way. The default is true.
      */
@@ -190,8 +202,17 @@ public class GraphHopperWeb {
             ghRequest.getHints().remove("turn_description"); // do not include in request
 
             Request okRequest = postRequest ? createPostRequest(ghRequest) : createGetRequest(ghRequest);
+            if (binaryResponse)
+                // errors are still returned as JSON
+                okRequest = okRequest.newBuilder().header("Accept", BinaryResponseFormat.MEDIA_TYPE + ", application/json").build();
             Response rsp = getClientForRequest(ghRequest).newCall(okRequest).execute();
             rspBody = rsp.body();
+            MediaType contentType = rspBody.contentType();
+            if (contentType != null && BinaryResponseFormat.MEDIA_TYPE.equals(contentType.type() + "/" + contentType.subtype())) {
+                GHResponse res = BinaryResponseFormat.read(rspBody.byteStream(), tmpTurnDescription);
+                addHeaders(res, rsp);
+                return res;
+            }
             JsonNode json = objectMapper.reader().readTree(rspBody.byteStream());
 
             GHResponse res = new GHResponse();
@@ -205,9 +226,7 @@ public class GraphHopperWeb {
                 res.add(altRsp);
             }
 
-            for (Map.Entry<String, List<String>> entry : rsp.headers().toMultimap().entrySet()) {
-                res.getHints().putObject(entry.getKey(), entry.getValue());
-            }
+            addHeaders(res, rsp);
             JsonNode b = json.get("hints");
             b.fields().forEachRemaining(f -> res.getHints().putObject(f.getKey(), Helper.toObject(f.getValue().asText())));
 
@@ -220,6 +239,12 @@ public class GraphHopperWeb {
         }
     }
 
+    private static void addHeaders(GHResponse res, Response rsp) {
+        for (Map.Entry<String, List<String>> entry : rsp.headers().toMultimap().entrySet()) {
+            res.getHints().putObject(entry.getKey(), entry.getValue());
+        }
+    }
+
     OkHttpClient getClientForRequest(GHRequest request) {
         OkHttpClient client = this.downloader;
         if (request.getHints().has(TIMEOUT)) {
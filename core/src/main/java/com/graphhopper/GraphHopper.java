@@ -20,8 +20,6 @@ package com.graphhopper;
 import com.bedatadriven.jackson.datatype.jts.JtsModule;
 import com.carrotsearch.hppc.BitSet;
 import com.carrotsearch.hppc.IntArrayList;
-import com.carrotsearch.hppc.LongArrayList;
-import com.carrotsearch.hppc.sorting.IndirectSort;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.LMProfile;
@@ -49,6 +47,7 @@ import com.graphhopper.routing.util.parsers.TagParser;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.routing.weighting.custom.CustomModelParser;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
+import com.graphhopper.routing.weighting.custom.EdgeWeightCache;
 import com.graphhopper.routing.weighting.custom.NameValidator;
 import com.graphhopper.storage.*;
 import com.graphhopper.storage.index.LocationIndex;
@@ -71,6 +70,7 @@ import java.util.*;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.StreamSupport;
 
 import static com.graphhopper.util.GHUtility.readCountries;
@@ -87,10 +87,12 @@ public class GraphHopper {
     private MaxSpeedCalculator maxSpeedCalculator;
     private final Map<String, Profile> profilesByName = new LinkedHashMap<>();
     private final String fileLockName = "gh.lock";
+    private static final String IMPORT_PHASE = "import.phase";
     // utils
     private final TranslationMap trMap = new TranslationMap().doImport();
     boolean removeZipped = true;
     boolean calcChecksums = false;
+    boolean importCheckpoints = false;
     // for country rules:
     private CountryRuleFactory countryRuleFactory = null;
     // for custom areas:
@@ -105,6 +107,7 @@ public class GraphHopper {
     private DAType dataAccessDefaultType = DAType.RAM_STORE;
     private final LinkedHashMap<String, String> dataAccessConfig = new LinkedHashMap<>();
     private boolean sortGraph = true;
+    private int sortGraphThreads = 1;
     private boolean elevation = false;
     private LockFactory lockFactory = new NativeFSLockFactory();
     private boolean allowWrites = true;
@@ -116,6 +119,7 @@ public class GraphHopper {
     private LocationIndex locationIndex;
     private int preciseIndexResolution = 300;
     private int maxRegionSearch = 4;
+    private int indexThreads = 1;
     // subnetworks
     private int minNetworkSize = 200;
     private int subnetworksThreads = 1;
@@ -131,6 +135,9 @@ public class GraphHopper {
     private final CHPreparationHandler chPreparationHandler = new CHPreparationHandler();
     private Map<String, RoutingCHGraph> chGraphs = Collections.emptyMap();
     private Map<String, LandmarkStorage> landmarks = Collections.emptyMap();
+    private List<String> edgeWeightCacheProfiles = Collections.emptyList();
+    private Map<String, EdgeWeightCache> edgeWeightCaches = Collections.emptyMap();
+    private CustomModelParser.Evaluator customModelEvaluator = CustomModelParser.Evaluator.JANINO;
 
     // for data reader
     private String osmFile;
@@ -140,6 +147,7 @@ public class GraphHopper {
 
     private String dateRangeParserString = "";
     private String encodedValuesString = "";
+    private String externalEncodedValuesString = "";
 
     public GraphHopper setEncodedValuesString(String encodedValuesString) {
         this.encodedValuesString = encodedValuesString;
@@ -150,6 +158,45 @@ public class GraphHopper {
         return encodedValuesString;
     }
 
+    /**
+     * Adds encoded values that are not filled from OSM data and that can be updated while GraphHopper is running, see
+     * {@link ExternalEncodedValue}. Example: "road_closed|type=boolean, live_speed|type=decimal|min=0|max=150|two_directions=true"
+     */
+    public GraphHopper setExternalEncodedValuesString(String externalEncodedValuesString) {
+        this.externalEncodedValuesString = externalEncodedValuesString;
+        return this;
+    }
+
+    public String getExternalEncodedValuesString() {
+        return externalEncodedValuesString;
+    }
+
+    /**
+     * Precomputes the speed and priority of every edge for the given profiles, see {@link EdgeWeightCache}. This speeds
+     * up flexible and LM queries without a per-request custom model.
+     */
+    public GraphHopper setEdgeWeightCacheProfiles(List<String> edgeWeightCacheProfiles) {
+        this.edgeWeightCacheProfiles = new ArrayList<>(edgeWeightCacheProfiles);
+        return this;
+    }
+
+    public List<String> getEdgeWeightCacheProfiles() {
+        return edgeWeightCacheProfiles;
+    }
+
+    /**
+     * Sets how the expressions of custom models are evaluated. LAMBDA avoids the compilation of a class for every
+     * custom model that was not seen before, which makes the first request with a new custom model much faster.
+     */
+    public GraphHopper setCustomModelEvaluator(CustomModelParser.Evaluator customModelEvaluator) {
+        this.customModelEvaluator = customModelEvaluator;
+        return this;
+    }
+
+    public CustomModelParser.Evaluator getCustomModelEvaluator() {
+        return customModelEvaluator;
+    }
+
     public EncodingManager getEncodingManager() {
         if (encodingManager == null)
             throw new IllegalStateException("EncodingManager not yet built");
@@ -366,6 +413,27 @@ public class GraphHopper {
         return this;
     }
 
+    /**
+     * Sets the number of threads used to sort the graph along the Hilbert curve. Using more than one thread
+     * requires a temporary copy of the nodes and edges, which is memory mapped if the graph is stored to disk.
+     */
+    public GraphHopper setSortGraphThreads(int sortGraphThreads) {
+        this.sortGraphThreads = sortGraphThreads;
+        return this;
+    }
+
+    /**
+     * If enabled the graph and the properties are flushed after every import phase (base graph, location index, LM
+     * and CH) and the last completed phase is recorded in the properties. A failed import can then be resumed by
+     * calling importOrLoad again, which will continue after the last completed phase under the write lock. This
+     * requires a storing DAType like RAM_STORE or MMAP. An unfinished import is never loaded, without checkpoints it
+     * is done again from scratch.
+     */
+    public GraphHopper setImportCheckpoints(boolean importCheckpoints) {
+        this.importCheckpoints = importCheckpoints;
+        return this;
+    }
+
     /**
      * The underlying graph used in algorithms.
      *
@@ -515,6 +583,7 @@ public class GraphHopper {
         }
 
         sortGraph = ghConfig.getBool("graph.sort", sortGraph);
+        sortGraphThreads = ghConfig.getInt("graph.sort.threads", sortGraphThreads);
         if (ghConfig.getBool("max_speed_calculator.enabled", false))
             maxSpeedCalculator = new MaxSpeedCalculator(MaxSpeedCalculator.createLegalDefaultSpeeds());
 
@@ -539,6 +608,11 @@ public class GraphHopper {
             throw new IllegalArgumentException("The option graph.flag_encoders is no longer supported.");
 
         encodedValuesString = ghConfig.getString("graph.encoded_values", encodedValuesString);
+        externalEncodedValuesString = ghConfig.getString("graph.external_encoded_values", externalEncodedValuesString);
+        customModelEvaluator = CustomModelParser.Evaluator.find(ghConfig.getString("routing.custom_model_evaluator", customModelEvaluator.name()));
+        String edgeWeightCacheProfilesString = ghConfig.getString("graph.edge_weight_cache.profiles", "");
+        if (!edgeWeightCacheProfilesString.isBlank())
+            setEdgeWeightCacheProfiles(Arrays.stream(edgeWeightCacheProfilesString.split(",")).map(String::trim).toList());
         dateRangeParserString = ghConfig.getString("datareader.date_range_parser_day", dateRangeParserString);
 
         if (ghConfig.getString("graph.locktype", "native").equals("simple"))
@@ -590,6 +664,7 @@ public class GraphHopper {
         // index
         preciseIndexResolution = ghConfig.getInt("index.high_resolution", preciseIndexResolution);
         maxRegionSearch = ghConfig.getInt("index.max_region_search", maxRegionSearch);
+        indexThreads = ghConfig.getInt("index.threads", indexThreads);
 
         // urban density calculation
         residentialAreaRadius = ghConfig.getDouble("graph.urban_density.residential_radius", residentialAreaRadius);
@@ -604,6 +679,7 @@ public class GraphHopper {
         routerConfig.setMaxRoundTripRetries(ghConfig.getInt(RoundTrip.INIT_MAX_RETRIES, routerConfig.getMaxRoundTripRetries()));
         routerConfig.setNonChMaxWaypointDistance(ghConfig.getInt(Parameters.NON_CH.MAX_NON_CH_POINT_DISTANCE, routerConfig.getNonChMaxWaypointDistance()));
         routerConfig.setInstructionsEnabled(ghConfig.getBool(Routing.INIT_INSTRUCTIONS, routerConfig.isInstructionsEnabled()));
+        routerConfig.setCHPotentialsEnabled(ghConfig.getBool("routing.ch_potentials", routerConfig.isCHPotentialsEnabled()));
         int activeLandmarkCount = ghConfig.getInt(Landmark.ACTIVE_COUNT_DEFAULT, Math.min(8, lmPreparationHandler.getLandmarks()));
         if (activeLandmarkCount > lmPreparationHandler.getLandmarks())
             throw new IllegalArgumentException("Default value for active landmarks " + activeLandmarkCount
@@ -611,6 +687,7 @@ public class GraphHopper {
         routerConfig.setActiveLandmarkCount(activeLandmarkCount);
 
         calcChecksums = ghConfig.getBool("graph.calc_checksums", false);
+        importCheckpoints = ghConfig.getBool("graph.import_checkpoints", importCheckpoints);
 
         return this;
     }
@@ -627,6 +704,7 @@ public class GraphHopper {
                 .toList());
 
         encodedValues.addAll(createSubnetworkEncodedValues());
+        encodedValues.addAll(createExternalEncodedValues(externalEncodedValuesString));
 
         List<String> sortedEVs = getEVSortIndex(profilesByName);
         encodedValues.sort(Comparator.comparingInt(ev -> sortedEVs.indexOf(ev.getName())));
@@ -643,6 +721,28 @@ public class GraphHopper {
         return profilesByName.values().stream().map(profile -> Subnetwork.create(profile.getName())).toList();
     }
 
+    public static List<ExternalEncodedValue> createExternalEncodedValues(String externalEncodedValuesStr) {
+        List<ExternalEncodedValue> result = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (String evStr : externalEncodedValuesStr.split(",")) {
+            if (evStr.isBlank())
+                continue;
+            String name = evStr.trim().split("\\|")[0];
+            if (!names.add(name))
+                throw new IllegalArgumentException("duplicate encoded value in config graph.external_encoded_values: " + name);
+            PMap pMap = new PMap(evStr);
+            boolean twoDirections = pMap.getBool("two_directions", false);
+            String type = pMap.getString("type", "boolean");
+            switch (type) {
+                case "boolean" -> result.add(new ExternalBooleanEncodedValue(name, twoDirections));
+                case "int" -> result.add(new ExternalIntEncodedValue(name, pMap.getInt("min", 0), pMap.getInt("max", Integer.MAX_VALUE), twoDirections));
+                case "decimal" -> result.add(new ExternalDecimalEncodedValue(name, pMap.getDouble("min", 0), pMap.getDouble("max", Float.MAX_VALUE), twoDirections));
+                default -> throw new IllegalArgumentException("Unknown type '" + type + "' of external encoded value " + name + ", use boolean, int or decimal");
+            }
+        }
+        return result;
+    }
+
     protected List<String> getEVSortIndex(Map<String, Profile> profilesByName) {
         return Collections.emptyList();
     }
@@ -822,20 +922,8 @@ public class GraphHopper {
      * Creates the graph from OSM data.
      */
     protected void process(boolean closeEarly) {
-        prepareImport();
-        if (encodingManager == null)
-            throw new IllegalStateException("The EncodingManager must be created in `prepareImport()`");
         GHDirectory directory = new GHDirectory(ghLocation, dataAccessDefaultType);
         directory.configure(dataAccessConfig);
-        baseGraph = new BaseGraph.Builder(getEncodingManager())
-                .setDir(directory)
-                .set3D(hasElevation())
-                .withTurnCosts(encodingManager.needsTurnCostsSupport())
-                .setSegmentSize(defaultSegmentSize)
-                .build();
-        properties = new StorableProperties(directory);
-        checkProfilesConsistency();
-
         GHLock lock = null;
         try {
             if (directory.getDefaultType().isStoring()) {
@@ -846,12 +934,33 @@ public class GraphHopper {
             }
             ensureWriteAccess();
 
+            if (importCheckpoints && directory.getDefaultType().isStoring() && hasUnfinishedImport()) {
+                // the remaining phases are done under the write lock just like a new import
+                resumeImport(directory);
+                postProcessing(closeEarly);
+                flush();
+                return;
+            }
+
+            prepareImport();
+            if (encodingManager == null)
+                throw new IllegalStateException("The EncodingManager must be created in `prepareImport()`");
+            baseGraph = new BaseGraph.Builder(getEncodingManager())
+                    .setDir(directory)
+                    .set3D(hasElevation())
+                    .withTurnCosts(encodingManager.needsTurnCostsSupport())
+                    .setSegmentSize(defaultSegmentSize)
+                    .build();
+            properties = new StorableProperties(directory);
+            checkProfilesConsistency();
+
             importOSM();
             postImportOSM();
             cleanUp();
 
             properties.put("profiles", getProfilesString());
             writeEncodingManagerToProperties();
+            writeCheckpoint(ImportPhase.BASE_GRAPH);
 
             postProcessing(closeEarly);
             flush();
@@ -929,7 +1038,7 @@ public class GraphHopper {
             interpolateBridgesTunnelsAndFerries();
 
         if (sortGraph)
-            sortGraphAlongHilbertCurve(baseGraph);
+            sortGraphAlongHilbertCurve(baseGraph, sortGraphThreads);
     }
 
     protected void importOSM() {
@@ -981,14 +1090,26 @@ public class GraphHopper {
     }
 
     public static void sortGraphAlongHilbertCurve(BaseGraph graph) {
-        logger.info("sorting graph along Hilbert curve...");
+        sortGraphAlongHilbertCurve(graph, 1);
+    }
+
+    /**
+     * Sorts the nodes along a Hilbert curve and the edges in the order they are found when iterating the sorted
+     * nodes. The Hilbert indices, their sort order and the copying of the node and edge rows are calculated using
+     * the given number of threads. The result does not depend on the number of threads.
+     */
+    public static void sortGraphAlongHilbertCurve(BaseGraph graph, int threads) {
+        logger.info("sorting graph along Hilbert curve, threads: " + threads + " ...");
         StopWatch sw = StopWatch.started();
         NodeAccess na = graph.getNodeAccess();
         final int order = 31; // using 15 would allow us to use ints for sortIndices, but this would result in (marginally) slower routing
-        LongArrayList sortIndices = new LongArrayList();
-        for (int node = 0; node < graph.getNodes(); node++)
-            sortIndices.add(latLonToHilbertIndex(na.getLat(node), na.getLon(node), order));
-        int[] nodeOrder = IndirectSort.mergesort(0, graph.getNodes(), (nodeA, nodeB) -> Long.compare(sortIndices.get(nodeA), sortIndices.get(nodeB)));
+        long[] sortIndices = new long[graph.getNodes()];
+        int chunkSize = Math.max(1, (sortIndices.length + threads - 1) / threads);
+        GHUtility.runConcurrently(IntStream.range(0, threads).mapToObj(t -> () -> {
+            for (int node = t * chunkSize; node < Math.min(sortIndices.length, (t + 1) * chunkSize); node++)
+                sortIndices[node] = latLonToHilbertIndex(na.getLat(node), na.getLon(node), order);
+        }), threads);
+        int[] nodeOrder = ArrayUtil.calcSortOrder(sortIndices, threads);
         EdgeExplorer explorer = graph.createEdgeExplorer();
         int edges = graph.getEdges();
         IntArrayList edgeOrder = new IntArrayList();
@@ -1005,20 +1126,24 @@ public class GraphHopper {
         IntArrayList newEdgesByOldEdges = ArrayUtil.invert(edgeOrder);
         IntArrayList newNodesByOldNodes = IntArrayList.from(ArrayUtil.invert(nodeOrder));
         logger.info("calculating sort order took: " + sw.stop().getTimeString());
-        sortGraphForGivenOrdering(graph, newNodesByOldNodes, newEdgesByOldEdges);
+        sortGraphForGivenOrdering(graph, newNodesByOldNodes, newEdgesByOldEdges, threads);
     }
 
     public static void sortGraphForGivenOrdering(BaseGraph baseGraph, IntArrayList newNodesByOldNodes, IntArrayList newEdgesByOldEdges) {
+        sortGraphForGivenOrdering(baseGraph, newNodesByOldNodes, newEdgesByOldEdges, 1);
+    }
+
+    public static void sortGraphForGivenOrdering(BaseGraph baseGraph, IntArrayList newNodesByOldNodes, IntArrayList newEdgesByOldEdges, int threads) {
         if (!ArrayUtil.isPermutation(newEdgesByOldEdges))
             throw new IllegalStateException("New edges: not a permutation");
         if (!ArrayUtil.isPermutation(newNodesByOldNodes))
             throw new IllegalStateException("New nodes: not a permutation");
         logger.info("sort graph for fixed ordering...");
         StopWatch sw = new StopWatch().start();
-        baseGraph.sortEdges(newEdgesByOldEdges::get);
+        baseGraph.sortEdges(newEdgesByOldEdges::get, threads);
         logger.info("sorting {} edges took: {}", Helper.nf(newEdgesByOldEdges.size()), sw.stop().getTimeString());
         sw = new StopWatch().start();
-        baseGraph.relabelNodes(newNodesByOldNodes::get);
+        baseGraph.relabelNodes(newNodesByOldNodes::get, threads);
         logger.info("sorting {} nodes took: {}", Helper.nf(newNodesByOldNodes.size()), sw.stop().getTimeString());
     }
 
@@ -1099,7 +1224,8 @@ public class GraphHopper {
     }
 
     /**
-     * Load from existing graph folder.
+     * Load from existing graph folder. A graph whose import is not finished is not loaded, see
+     * {@link #setImportCheckpoints(boolean)}.
      */
     public boolean load() {
         if (isEmpty(ghLocation))
@@ -1148,30 +1274,13 @@ public class GraphHopper {
                 // the -gh folder exists, but there is no properties file. it might be just empty, so let's act as if
                 // the import did not run yet or is not complete for some reason
                 return false;
-            encodingManager = EncodingManager.fromProperties(properties);
-            baseGraph = new BaseGraph.Builder(encodingManager)
-                    .setDir(directory)
-                    .set3D(hasElevation())
-                    .withTurnCosts(encodingManager.needsTurnCostsSupport())
-                    .setSegmentSize(defaultSegmentSize)
-                    .build();
-            checkProfilesConsistency();
-            baseGraph.loadExisting();
-            String storedProfilesString = properties.get("profiles");
-            Map<String, Integer> storedProfileHashes = Arrays.stream(storedProfilesString.split(",")).map(s -> s.split("\\|", 2)).collect((Collectors.toMap(kv -> kv[0], kv -> Integer.parseInt(kv[1]))));
-            Map<String, Integer> configuredProfileHashes = getProfileHashes();
-            configuredProfileHashes.forEach((profile, hash) -> {
-                Integer storedHash = storedProfileHashes.get(profile);
-                if (storedHash == null)
-                    throw new IllegalStateException("You cannot add new profiles to the loaded graph. Profile '" + profile + "' is new."
-                            + "\nExisting profiles: " + String.join(",", storedProfileHashes.keySet())
-                            + "\nChange your configuration to match the graph or delete " + baseGraph.getDirectory().getLocation());
-                if (!hash.equals(storedHash))
-                    throw new IllegalStateException("Profile '" + profile + "' does not match."
-                            + "\nStored: " + storedHash
-                            + "\nConfigured: " + hash
-                            + "\nChange this profile to match the stored one or delete " + baseGraph.getDirectory().getLocation());
-            });
+            if (!properties.get(IMPORT_PHASE).isEmpty()) {
+                // loading must not write anything, the import is continued or repeated by process() instead
+                logger.info("The import into " + ghLocation + " is not finished, last completed phase: " + properties.get(IMPORT_PHASE));
+                properties.close();
+                return false;
+            }
+            loadBaseGraph(directory);
             postProcessing(false);
             directory.loadMMap();
             setFullyLoaded();
@@ -1182,6 +1291,37 @@ public class GraphHopper {
         }
     }
 
+    /**
+     * Loads the base graph and the encoding manager from the directory and checks that the stored profiles match the
+     * configured ones. The properties must be loaded already.
+     */
+    private void loadBaseGraph(GHDirectory directory) {
+        encodingManager = EncodingManager.fromProperties(properties);
+        baseGraph = new BaseGraph.Builder(encodingManager)
+                .setDir(directory)
+                .set3D(hasElevation())
+                .withTurnCosts(encodingManager.needsTurnCostsSupport())
+                .setSegmentSize(defaultSegmentSize)
+                .build();
+        checkProfilesConsistency();
+        baseGraph.loadExisting();
+        String storedProfilesString = properties.get("profiles");
+        Map<String, Integer> storedProfileHashes = Arrays.stream(storedProfilesString.split(",")).map(s -> s.split("\\|", 2)).collect((Collectors.toMap(kv -> kv[0], kv -> Integer.parseInt(kv[1]))));
+        Map<String, Integer> configuredProfileHashes = getProfileHashes();
+        configuredProfileHashes.forEach((profile, hash) -> {
+            Integer storedHash = storedProfileHashes.get(profile);
+            if (storedHash == null)
+                throw new IllegalStateException("You cannot add new profiles to the loaded graph. Profile '" + profile + "' is new."
+                        + "\nExisting profiles: " + String.join(",", storedProfileHashes.keySet())
+                        + "\nChange your configuration to match the graph or delete " + baseGraph.getDirectory().getLocation());
+            if (!hash.equals(storedHash))
+                throw new IllegalStateException("Profile '" + profile + "' does not match."
+                        + "\nStored: " + storedHash
+                        + "\nConfigured: " + hash
+                        + "\nChange this profile to match the stored one or delete " + baseGraph.getDirectory().getLocation());
+        });
+    }
+
     protected int getProfileHash(Profile profile) {
         return profile.getVersion();
     }
@@ -1222,6 +1362,16 @@ public class GraphHopper {
             if (!profilesByName.containsKey(chProfile.getProfile())) {
                 throw new IllegalArgumentException("CH profile references unknown profile '" + chProfile.getProfile() + "'");
             }
+            checkNoExternalEncodedValues("CH", chProfile.getProfile());
+            if (!chProfile.getCustomModelEncodedValues().isEmpty()) {
+                if (profilesByName.get(chProfile.getProfile()).hasTurnCosts())
+                    throw new IllegalArgumentException("CH profile '" + chProfile.getProfile() + "' uses custom_model_encoded_values, which is only supported for profiles without turn costs");
+                for (String encodedValue : chProfile.getCustomModelEncodedValues())
+                    if (!encodingManager.hasEncodedValue(encodedValue))
+                        throw new IllegalArgumentException("CH profile '" + chProfile.getProfile() + "' uses the encoded value '" + encodedValue + "' in custom_model_encoded_values, but it does not exist");
+                    else if (encodingManager.getEncodedValue(encodedValue, EncodedValue.class) instanceof ExternalEncodedValue)
+                        throw new IllegalArgumentException("CH profile '" + chProfile.getProfile() + "' uses the external encoded value '" + encodedValue + "' in custom_model_encoded_values, but its values can change at runtime");
+            }
         }
         Map<String, LMProfile> lmProfileMap = new LinkedHashMap<>(lmPreparationHandler.getLMProfiles().size());
         for (LMProfile lmProfile : lmPreparationHandler.getLMProfiles()) {
@@ -1235,6 +1385,7 @@ public class GraphHopper {
             if (lmProfile.usesOtherPreparation() && !profilesByName.containsKey(lmProfile.getPreparationProfile())) {
                 throw new IllegalArgumentException("LM profile references unknown preparation profile '" + lmProfile.getPreparationProfile() + "'");
             }
+            checkNoExternalEncodedValues("LM", lmProfile.getProfile());
         }
         for (LMProfile lmProfile : lmPreparationHandler.getLMProfiles()) {
             if (lmProfile.usesOtherPreparation() && !lmProfileMap.containsKey(lmProfile.getPreparationProfile())) {
@@ -1246,6 +1397,24 @@ public class GraphHopper {
         }
     }
 
+    /**
+     * The values of external encoded values can change at runtime, but CH and LM are prepared for the weights at
+     * import time. After an update CH would find wrong routes and the landmarks would no longer yield lower bounds.
+     */
+    private void checkNoExternalEncodedValues(String preparation, String profileName) {
+        List<String> externalVariables = findExternalEncodedValues(profilesByName.get(profileName));
+        if (!externalVariables.isEmpty())
+            throw new IllegalArgumentException(preparation + " profile '" + profileName + "' uses external encoded values "
+                    + "that can change at runtime: " + externalVariables);
+    }
+
+    private List<String> findExternalEncodedValues(Profile profile) {
+        if (!CustomWeighting.NAME.equals(profile.getWeighting()))
+            return List.of();
+        return CustomModelParser.findEncodedValues(profile.getCustomModel(), encodingManager).stream().
+                filter(s -> encodingManager.getEncodedValue(s, EncodedValue.class) instanceof ExternalEncodedValue).toList();
+    }
+
     public final CHPreparationHandler getCHPreparationHandler() {
         return chPreparationHandler;
     }
@@ -1293,6 +1462,7 @@ public class GraphHopper {
         calcChecksums();
         initLocationIndex();
         importPublicTransit();
+        writeCheckpoint(ImportPhase.LOCATION_INDEX);
 
         if (closeEarly) {
             boolean includesCustomProfiles = profilesByName.values().stream().anyMatch(p -> CustomWeighting.NAME.equals(p.getWeighting()));
@@ -1302,20 +1472,50 @@ public class GraphHopper {
                 baseGraph.flushAndCloseGeometryAndNameStorage();
         }
 
-        if (lmPreparationHandler.isEnabled())
+        loadOrBuildEdgeWeightCaches();
+
+        if (lmPreparationHandler.isEnabled()) {
             loadOrPrepareLM(closeEarly);
+            writeCheckpoint(ImportPhase.LM);
+        }
 
         if (closeEarly)
             // we needed the location index for the LM preparation, but we don't need it for CH
             locationIndex.close();
 
-        if (chPreparationHandler.isEnabled())
+        if (chPreparationHandler.isEnabled()) {
             loadOrPrepareCH(closeEarly);
+            writeCheckpoint(ImportPhase.CH);
+        }
+        clearCheckpoint();
     }
 
     protected void importPublicTransit() {
     }
 
+    private void loadOrBuildEdgeWeightCaches() {
+        Map<String, EdgeWeightCache> caches = new LinkedHashMap<>();
+        for (String profileName : edgeWeightCacheProfiles) {
+            Profile profile = profilesByName.get(profileName);
+            if (profile == null)
+                throw new IllegalArgumentException("Edge weight cache: profile '" + profileName + "' does not exist");
+            if (!CustomWeighting.NAME.equals(profile.getWeighting()))
+                throw new IllegalArgumentException("Edge weight cache: profile '" + profileName + "' must use the custom weighting");
+            List<String> externalVariables = findExternalEncodedValues(profile);
+            if (!externalVariables.isEmpty())
+                throw new IllegalArgumentException("Edge weight cache: the custom model of profile '" + profileName
+                        + "' uses external encoded values that can change at runtime: " + externalVariables);
+            StopWatch sw = new StopWatch().start();
+            EdgeWeightCache cache = EdgeWeightCache.loadOrBuild(baseGraph.getDirectory(), profileName, baseGraph.getBaseGraph(),
+                    CustomModelParser.createWeightingParameters(profile.getCustomModel(), encodingManager),
+                    getProfileHash(profile), isAllowWrites() && baseGraph.getDirectory().getDefaultType().isStoring());
+            caches.put(profileName, cache);
+            logger.info("Edge weight cache for profile '" + profileName + "' ready, took: " + sw.stop().getSeconds()
+                    + "s, " + Helper.getMemInfo());
+        }
+        edgeWeightCaches = caches;
+    }
+
     void interpolateBridgesTunnelsAndFerries() {
         if (encodingManager.hasEncodedValue(RoadEnvironment.KEY)) {
             EnumEncodedValue<RoadEnvironment> roadEnvEnc = encodingManager.getEnumEncodedValue(RoadEnvironment.KEY, RoadEnvironment.class);
@@ -1342,7 +1542,8 @@ public class GraphHopper {
     }
 
     protected WeightingFactory createWeightingFactory() {
-        return new DefaultWeightingFactory(baseGraph.getBaseGraph(), getEncodingManager());
+        return new DefaultWeightingFactory(baseGraph.getBaseGraph(), getEncodingManager(), edgeWeightCaches).
+                setCustomModelEvaluator(customModelEvaluator);
     }
 
     public GHResponse route(GHRequest request) {
@@ -1361,11 +1562,26 @@ public class GraphHopper {
                 trMap, routerConfig, createWeightingFactory(), chGraphs, landmarks);
     }
 
+    private Map<String, CHProfile> getCHProfilesByName() {
+        Map<String, CHProfile> chProfiles = new LinkedHashMap<>();
+        for (CHProfile chProfile : chPreparationHandler.getCHProfiles())
+            chProfiles.put(chProfile.getProfile(), chProfile);
+        return chProfiles;
+    }
+
     protected Router doCreateRouter(BaseGraph baseGraph, EncodingManager encodingManager, LocationIndex locationIndex, Map<String, Profile> profilesByName,
                                     PathDetailsBuilderFactory pathBuilderFactory, TranslationMap trMap, RouterConfig routerConfig,
                                     WeightingFactory weightingFactory, Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks) {
+        return doCreateRouter(baseGraph, encodingManager, locationIndex, profilesByName, pathBuilderFactory,
+                trMap, routerConfig, weightingFactory, chGraphs, landmarks, getCHProfilesByName());
+    }
+
+    protected Router doCreateRouter(BaseGraph baseGraph, EncodingManager encodingManager, LocationIndex locationIndex, Map<String, Profile> profilesByName,
+                                    PathDetailsBuilderFactory pathBuilderFactory, TranslationMap trMap, RouterConfig routerConfig,
+                                    WeightingFactory weightingFactory, Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks,
+                                    Map<String, CHProfile> chProfiles) {
         return new Router(baseGraph, encodingManager, locationIndex, profilesByName, pathBuilderFactory,
-                trMap, routerConfig, weightingFactory, chGraphs, landmarks
+                trMap, routerConfig, weightingFactory, chGraphs, landmarks, chProfiles
         );
     }
 
@@ -1373,6 +1589,7 @@ public class GraphHopper {
         LocationIndexTree tmpIndex = new LocationIndexTree(baseGraph, dir);
         tmpIndex.setResolution(preciseIndexResolution);
         tmpIndex.setMaxRegionSearch(maxRegionSearch);
+        tmpIndex.setThreads(indexThreads);
         if (!tmpIndex.loadExisting()) {
             ensureWriteAccess();
             tmpIndex.prepareIndex();
@@ -1403,6 +1620,11 @@ public class GraphHopper {
         }
         int index = 0;
         for (Profile profile : profilesByName.values()) {
+            if (isImportInProgress()) {
+                // the checksums of a previous, unfinished import must match, otherwise the graph was modified
+                verifyChecksum("checksum.fwd." + profile.getName(), checksums_fwd[index]);
+                verifyChecksum("checksum.bwd." + profile.getName(), checksums_bwd[index]);
+            }
             properties.put("checksum.fwd." + profile.getName(), checksums_fwd[index]);
             properties.put("checksum.bwd." + profile.getName(), checksums_bwd[index]);
             logger.info("checksum.fwd." + profile.getName() + ": " + checksums_fwd[index]);
@@ -1412,6 +1634,89 @@ public class GraphHopper {
         logger.info("Calculating checksums took: " + sw.stop().getTimeString());
     }
 
+    private void verifyChecksum(String key, double checksum) {
+        String stored = properties.get(key);
+        if (!stored.isEmpty() && Double.parseDouble(stored) != checksum)
+            throw new IllegalStateException("Cannot resume import, " + key + " does not match. Stored: " + stored
+                    + ", calculated: " + checksum + ". Delete " + ghLocation + " and import again");
+    }
+
+    /**
+     * The phases of an import. When import checkpoints are enabled the last completed phase is stored in the
+     * properties until the import is finished, see {@link #setImportCheckpoints(boolean)}.
+     */
+    enum ImportPhase {
+        BASE_GRAPH, LOCATION_INDEX, LM, CH
+    }
+
+    private boolean isImportInProgress() {
+        return importCheckpoints && !properties.get(IMPORT_PHASE).isEmpty();
+    }
+
+    /**
+     * Flushes the data of all phases completed so far and records the given phase in the properties. Does nothing
+     * if checkpoints are disabled or if we are loading a graph that was already imported completely.
+     */
+    private void writeCheckpoint(ImportPhase phase) {
+        if (!importCheckpoints || !baseGraph.getDirectory().getDefaultType().isStoring())
+            return;
+        if (phase != ImportPhase.BASE_GRAPH && !isImportInProgress())
+            return;
+        if (phase == ImportPhase.BASE_GRAPH) {
+            properties.put("import.checkpoint.nodes", baseGraph.getNodes());
+            properties.put("import.checkpoint.edges", baseGraph.getEdges());
+            baseGraph.flush();
+        }
+        properties.put(IMPORT_PHASE, phase.name());
+        properties.flush();
+        logger.info("import checkpoint: " + phase + ", " + getMemInfo());
+    }
+
+    /**
+     * Removes the checkpoint after the import was finished. This is done even if checkpoints are disabled, because
+     * a checkpoint of an earlier import with checkpoints could be left over.
+     */
+    private void clearCheckpoint() {
+        if (properties.get(IMPORT_PHASE).isEmpty())
+            return;
+        properties.remove(IMPORT_PHASE);
+        properties.remove("import.checkpoint.nodes");
+        properties.remove("import.checkpoint.edges");
+        if (baseGraph.getDirectory().getDefaultType().isStoring())
+            properties.flush();
+    }
+
+    /**
+     * @return true if the graph folder contains an import that was interrupted after a checkpoint. Only the properties
+     * are read, using a separate directory.
+     */
+    private boolean hasUnfinishedImport() {
+        StorableProperties storedProperties = new StorableProperties(new GHDirectory(ghLocation, DAType.RAM_STORE));
+        try {
+            return storedProperties.loadExisting() && !storedProperties.get(IMPORT_PHASE).isEmpty();
+        } finally {
+            storedProperties.close();
+        }
+    }
+
+    /**
+     * Loads the base graph stored by an unfinished import and makes sure it is consistent with the checkpoint. The
+     * remaining phases will be done in postProcessing. This must only be called while holding the write lock.
+     */
+    private void resumeImport(GHDirectory directory) {
+        properties = new StorableProperties(directory);
+        if (!properties.loadExisting())
+            throw new IllegalStateException("Cannot resume import, the properties in " + ghLocation + " cannot be loaded");
+        loadBaseGraph(directory);
+        logger.info("resuming import in " + ghLocation + ", last completed phase: " + properties.get(IMPORT_PHASE));
+        if (!properties.get("import.checkpoint.nodes").equals("" + baseGraph.getNodes())
+                || !properties.get("import.checkpoint.edges").equals("" + baseGraph.getEdges()))
+            throw new IllegalStateException("Cannot resume import, the stored graph does not match the checkpoint. nodes: "
+                    + baseGraph.getNodes() + " vs. " + properties.get("import.checkpoint.nodes") + ", edges: "
+                    + baseGraph.getEdges() + " vs. " + properties.get("import.checkpoint.edges")
+                    + ". Delete " + ghLocation + " and import again");
+    }
+
     /**
      * Initializes the location index after the import is done.
      */
@@ -1561,6 +1866,7 @@ public class GraphHopper {
 
         chGraphs.values().forEach(RoutingCHGraph::close);
         landmarks.values().forEach(LandmarkStorage::close);
+        edgeWeightCaches.values().forEach(EdgeWeightCache::close);
 
         if (locationIndex != null)
             locationIndex.close();
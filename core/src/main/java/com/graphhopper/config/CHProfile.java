@@ -18,6 +18,8 @@
 
 package com.graphhopper.config;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 import static com.graphhopper.config.Profile.validateProfileName;
@@ -30,6 +32,7 @@ import static com.graphhopper.config.Profile.validateProfileName;
  */
 public class CHProfile {
     private String profile = "";
+    private List<String> customModelEncodedValues = new ArrayList<>();
 
     private CHProfile() {
         // default constructor needed for jackson
@@ -37,6 +40,7 @@ public class CHProfile {
 
     public CHProfile(CHProfile profile) {
         this.profile = profile.profile;
+        this.customModelEncodedValues = new ArrayList<>(profile.customModelEncodedValues);
     }
 
     public CHProfile(String profile) {
@@ -52,6 +56,20 @@ public class CHProfile {
         this.profile = profile;
     }
 
+    /**
+     * @return the encoded values that a custom model in the request may use. If this list is not empty routing
+     * requests with a custom model do not need to disable CH and use an A* search that is guided by the CH preparation
+     * instead. These custom models can only make the edge weights larger.
+     */
+    public List<String> getCustomModelEncodedValues() {
+        return customModelEncodedValues;
+    }
+
+    public CHProfile setCustomModelEncodedValues(List<String> customModelEncodedValues) {
+        this.customModelEncodedValues = new ArrayList<>(customModelEncodedValues);
+        return this;
+    }
+
     @Override
     public String toString() {
         return profile;
@@ -44,20 +44,78 @@ public class ContourBuilder {
     }
 
     public MultiPolygon computeIsoline(double z0, Collection<ReadableQuadEdge> seedEdges) {
-        ToIntBiFunction<Vertex, Vertex> cut = (orig, dest) -> {
+        return computeIsoline(createCut(z0), seedEdges);
+    }
+
+    private static ToIntBiFunction<Vertex, Vertex> createCut(double z0) {
+        return (orig, dest) -> {
             double za = orig.getZ();
             double zb = dest.getZ();
             if (za <= z0 && zb > z0) return 1;
             if (za > z0 && zb <= z0) return -1;
             return 0;
         };
-        return computeIsoline(cut, seedEdges);
     }
 
     public MultiPolygon computeIsoline(ToIntBiFunction<Vertex, Vertex> cut, Collection<ReadableQuadEdge> seedEdges) {
-        Set<ReadableQuadEdge> processed = new HashSet<>();
         List<LinearRing> rings = new ArrayList<>();
+        traceRings(cut, seedEdges, new HashSet<>(), rings);
+        List<Polygon> isolinePolygons = punchHoles(rings);
+        return geometryFactory.createMultiPolygon(isolinePolygons.toArray(new Polygon[isolinePolygons.size()]));
+    }
+
+    /**
+     * Computes the isolines for several z values at once. Instead of walking over all seed edges for every z value,
+     * the seed edges are visited only once and assigned to the z values they cut, so every isoline is traced only
+     * from the edges it actually crosses.
+     *
+     * @return the isolines in the same order as the given z values
+     */
+    public List<MultiPolygon> computeIsolines(double[] zs, Collection<ReadableQuadEdge> seedEdges) {
+        double[] sortedZs = zs.clone();
+        Arrays.sort(sortedZs);
+        List<List<ReadableQuadEdge>> cutEdges = new ArrayList<>(sortedZs.length);
+        for (int i = 0; i < sortedZs.length; i++)
+            cutEdges.add(new ArrayList<>());
+        Set<ReadableQuadEdge> visited = new HashSet<>();
+        for (ReadableQuadEdge f : seedEdges) {
+            ReadableQuadEdge e = f.getPrimary();
+            if (!visited.add(e))
+                continue;
+            // the edge is cut by all z values with min <= z < max
+            double min = Math.min(e.orig().getZ(), e.dest().getZ());
+            double max = Math.max(e.orig().getZ(), e.dest().getZ());
+            for (int i = lowerBound(sortedZs, min); i < sortedZs.length && sortedZs[i] < max; i++)
+                cutEdges.get(i).add(e);
+        }
+
+        Map<Double, MultiPolygon> isolines = new HashMap<>();
+        for (int i = 0; i < sortedZs.length; i++) {
+            double z0 = sortedZs[i];
+            if (isolines.containsKey(z0))
+                continue;
+            List<LinearRing> rings = new ArrayList<>();
+            traceRings(createCut(z0), cutEdges.get(i), new HashSet<>(), rings);
+            List<Polygon> isolinePolygons = punchHoles(rings);
+            isolines.put(z0, geometryFactory.createMultiPolygon(isolinePolygons.toArray(new Polygon[isolinePolygons.size()])));
+        }
+        List<MultiPolygon> result = new ArrayList<>(zs.length);
+        for (double z : zs)
+            result.add(isolines.get(z));
+        return result;
+    }
 
+    private static int lowerBound(double[] sorted, double value) {
+        int index = Arrays.binarySearch(sorted, value);
+        if (index < 0)
+            return -index - 1;
+        // there might be duplicates
+        while (index > 0 && sorted[index - 1] == value)
+            index--;
+        return index;
+    }
+
+    private void traceRings(ToIntBiFunction<Vertex, Vertex> cut, Collection<ReadableQuadEdge> seedEdges, Set<ReadableQuadEdge> processed, List<LinearRing> rings) {
         for (ReadableQuadEdge f : seedEdges) {
             ReadableQuadEdge e = f.getPrimary();
             if (processed.contains(e))
@@ -107,8 +165,6 @@ public class ContourBuilder {
                 rings.add(ring);
             }
         }
-        List<Polygon> isolinePolygons = punchHoles(rings);
-        return geometryFactory.createMultiPolygon(isolinePolygons.toArray(new Polygon[isolinePolygons.size()]));
     }
 
     private boolean isFrameVertex(Vertex v) {
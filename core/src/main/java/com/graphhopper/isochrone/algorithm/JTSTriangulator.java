@@ -35,6 +35,8 @@ import org.locationtech.jts.triangulate.quadedge.Vertex;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.function.ToDoubleFunction;
 
 public class JTSTriangulator implements Triangulator {
@@ -46,19 +48,49 @@ public class JTSTriangulator implements Triangulator {
     }
 
     public Result triangulate(Snap snap, QueryGraph queryGraph, ShortestPathTree shortestPathTree, ToDoubleFunction<ShortestPathTree.IsoLabel> fz, double tolerance) {
+        return triangulate(snap, queryGraph, shortestPathTree, fz, tolerance, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Only the frontier of the shortest path tree beyond maxZ is included, i.e. a node with a value larger than maxZ
+     * is skipped if its parent also has a value larger than maxZ. The isolines only cross the triangulation edges
+     * between nodes inside and outside the limit and the nodes further outside are mostly hidden behind the frontier.
+     * <p>
+     * Note that this changes the result: without the skipped nodes some triangles next to the frontier are
+     * different, so the isoline for maxZ and to a lesser degree the smaller ones can deviate slightly from the ones
+     * of the full triangulation. Pass Double.POSITIVE_INFINITY to get the full triangulation.
+     */
+    @Override
+    public Result triangulate(Snap snap, QueryGraph queryGraph, ShortestPathTree shortestPathTree, ToDoubleFunction<ShortestPathTree.IsoLabel> fz, double tolerance, double maxZ) {
+        return triangulate(Collections.singletonList(snap), queryGraph, shortestPathTree, fz, tolerance, maxZ);
+    }
+
+    @Override
+    public Result triangulate(List<Snap> snaps, QueryGraph queryGraph, ShortestPathTree shortestPathTree, ToDoubleFunction<ShortestPathTree.IsoLabel> fz, double tolerance, double maxZ) {
         final NodeAccess na = queryGraph.getNodeAccess();
+        int[] fromNodes = new int[snaps.size()];
+        for (int i = 0; i < fromNodes.length; i++)
+            fromNodes[i] = snaps.get(i).getClosestNode();
         Collection<Coordinate> sites = new ArrayList<>();
-        shortestPathTree.search(snap.getClosestNode(), label -> {
-            double exploreValue = fz.applyAsDouble(label);
-            double lat = na.getLat(label.node);
-            double lon = na.getLon(label.node);
+        // fz expects IsoLabels, so we reuse two of them instead of creating one per label
+        ShortestPathTree.IsoLabel isoLabel = new ShortestPathTree.IsoLabel(-1, -1, 0, 0, 0, null);
+        ShortestPathTree.IsoLabel parentIsoLabel = new ShortestPathTree.IsoLabel(-1, -1, 0, 0, 0, null);
+        shortestPathTree.searchLabels(fromNodes, label -> {
+            int parent = shortestPathTree.getParent(label);
+            isoLabel.parent = parent < 0 ? null : load(shortestPathTree, parent, parentIsoLabel);
+            double exploreValue = fz.applyAsDouble(load(shortestPathTree, label, isoLabel));
+            if (exploreValue > maxZ && parent >= 0 && fz.applyAsDouble(parentIsoLabel) > maxZ)
+                return;
+            int node = shortestPathTree.getNode(label);
+            double lat = na.getLat(node);
+            double lon = na.getLon(node);
             Coordinate site = new Coordinate(lon, lat);
             site.z = exploreValue;
             sites.add(site);
 
             // add a pillar node to increase precision a bit for longer roads
-            if (label.parent != null) {
-                EdgeIteratorState edge = queryGraph.getEdgeIteratorState(label.edge, label.node);
+            if (parent >= 0) {
+                EdgeIteratorState edge = queryGraph.getEdgeIteratorState(shortestPathTree.getEdge(label), node);
                 PointList innerPoints = edge.fetchWayGeometry(FetchMode.PILLAR_ONLY);
                 if (innerPoints.size() > 0) {
                     int midIndex = innerPoints.size() / 2;
@@ -112,4 +144,13 @@ public class JTSTriangulator implements Triangulator {
         ReadableTriangulation triangulation = ReadableTriangulation.wrap(tin);
         return new Result(triangulation, triangulation.getEdges());
     }
+
+    private static ShortestPathTree.IsoLabel load(ShortestPathTree tree, int label, ShortestPathTree.IsoLabel target) {
+        target.node = tree.getNode(label);
+        target.edge = tree.getEdge(label);
+        target.weight = tree.getWeight(label);
+        target.time = tree.getTime(label);
+        target.distance = tree.getDistance(label);
+        return target;
+    }
 }
@@ -0,0 +1,150 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * A binary min heap of the labels of the {@link ShortestPathTree} with update and remove operations. Unlike
+ * {@link com.graphhopper.coll.MinHeapWithUpdate} the heap does not store float keys, but reads the exact values from
+ * the label arrays, so labels with long travel times or large weights are still polled in the right order. After the
+ * value of a contained label was changed {@link #update} needs to be called.
+ */
+final class LabelQueue {
+    private static final int NOT_PRESENT = 0;
+    private final IntToDoubleFunction valueOfLabel;
+    // we use an offset of one to make the arithmetic a bit simpler, the 0th element is not used
+    private int[] tree;
+    // the index of every label in the tree or NOT_PRESENT
+    private int[] positions;
+    private int size;
+
+    LabelQueue(int initialCapacity, IntToDoubleFunction valueOfLabel) {
+        this.valueOfLabel = valueOfLabel;
+        tree = new int[initialCapacity + 1];
+        positions = new int[initialCapacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean contains(int label) {
+        return label < positions.length && positions[label] != NOT_PRESENT;
+    }
+
+    void push(int label) {
+        if (contains(label))
+            throw new IllegalStateException("Label " + label + " was pushed already, use update to change its position");
+        if (label >= positions.length)
+            positions = Arrays.copyOf(positions, Math.max(label + 1, 2 * positions.length));
+        if (size + 1 == tree.length)
+            tree = Arrays.copyOf(tree, 2 * tree.length);
+        size++;
+        tree[size] = label;
+        positions[label] = size;
+        percolateUp(size);
+    }
+
+    /**
+     * Restores the heap order after the value of the given label was changed
+     */
+    void update(int label) {
+        if (!contains(label))
+            throw new IllegalStateException("The queue does not contain label " + label);
+        percolateUp(positions[label]);
+        percolateDown(positions[label]);
+    }
+
+    /**
+     * @return the label with the smallest value without removing it
+     */
+    int peek() {
+        return tree[1];
+    }
+
+    int poll() {
+        int label = tree[1];
+        removeAt(1);
+        return label;
+    }
+
+    /**
+     * Removes the given label, does nothing if the queue does not contain it
+     */
+    void remove(int label) {
+        if (contains(label))
+            removeAt(positions[label]);
+    }
+
+    private void removeAt(int index) {
+        positions[tree[index]] = NOT_PRESENT;
+        int last = tree[size];
+        size--;
+        if (index > size)
+            return;
+        tree[index] = last;
+        positions[last] = index;
+        percolateUp(index);
+        percolateDown(positions[last]);
+    }
+
+    private void percolateUp(int index) {
+        final int label = tree[index];
+        final double value = valueOfLabel.applyAsDouble(label);
+        while (index > 1) {
+            int parent = index >> 1;
+            if (valueOfLabel.applyAsDouble(tree[parent]) <= value)
+                break;
+            tree[index] = tree[parent];
+            positions[tree[index]] = index;
+            index = parent;
+        }
+        tree[index] = label;
+        positions[label] = index;
+    }
+
+    private void percolateDown(int index) {
+        final int label = tree[index];
+        final double value = valueOfLabel.applyAsDouble(label);
+        while (index << 1 <= size) {
+            int child = index << 1;
+            double childValue = valueOfLabel.applyAsDouble(tree[child]);
+            if (child != size) {
+                // use the second child if it has a smaller value
+                double secondValue = valueOfLabel.applyAsDouble(tree[child + 1]);
+                if (secondValue < childValue) {
+                    child++;
+                    childValue = secondValue;
+                }
+            }
+            if (childValue >= value)
+                break;
+            tree[index] = tree[child];
+            positions[tree[index]] = index;
+            index = child;
+        }
+        tree[index] = label;
+        positions[label] = index;
+    }
+}
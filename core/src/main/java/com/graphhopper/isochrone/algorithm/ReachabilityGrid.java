@@ -0,0 +1,256 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntDoubleHashMap;
+import com.carrotsearch.hppc.cursors.IntDoubleCursor;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.*;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A raster of the area that is reachable within a limit. Every cell stores the minimum time, distance or weight (see
+ * {@link ShortestPathTree#getExploreValue}) of the roads passing through it, or NaN if no reachable road passes through
+ * it. Compared to the isochrone polygons no triangulation and no geometries are required: the roads of the shortest
+ * path tree are sampled and written into a float array directly.
+ * <p>
+ * The cells are arranged in rows of equal latitude, the first row is the southern-most one. The cell size is given in
+ * meters and converted to degrees at the center latitude of the grid.
+ */
+public class ReachabilityGrid {
+    private final double minLat;
+    private final double minLon;
+    private final double latStep;
+    private final double lonStep;
+    private final int rows;
+    private final int cols;
+    private final float[] values;
+
+    ReachabilityGrid(double minLat, double minLon, double latStep, double lonStep, int rows, int cols) {
+        this.minLat = minLat;
+        this.minLon = minLon;
+        this.latStep = latStep;
+        this.lonStep = lonStep;
+        this.rows = rows;
+        this.cols = cols;
+        this.values = new float[rows * cols];
+        Arrays.fill(values, Float.NaN);
+    }
+
+    /**
+     * Runs the given shortest path tree from the given nodes and rasterizes all roads that are reachable within the
+     * limit. The limit of the tree must not be smaller than the given limit.
+     *
+     * @param graph    the graph the shortest path tree was created for
+     * @param limit    the maximum time, distance or weight that is included in the grid
+     * @param maxCells the maximum number of cells, an IllegalArgumentException is thrown if the grid would be larger
+     */
+    public static ReachabilityGrid create(Graph graph, Weighting weighting, ShortestPathTree tree, int[] fromNodes, boolean reverseFlow,
+                                         double limit, double cellSizeInMeter, int maxCells) {
+        if (cellSizeInMeter <= 0)
+            throw new IllegalArgumentException("cell size must be positive but was " + cellSizeInMeter);
+        // with edge-based traversal a node has several labels, but only the smallest value is relevant for the roads
+        // leaving the node
+        IntDoubleHashMap valuesByNode = new IntDoubleHashMap();
+        tree.searchLabels(fromNodes, label -> {
+            double value = tree.getExploreValue(label);
+            if (value <= limit) {
+                int node = tree.getNode(label);
+                int index = valuesByNode.indexOf(node);
+                if (index < 0)
+                    valuesByNode.indexInsert(index, node, value);
+                else if (value < valuesByNode.indexGet(index))
+                    valuesByNode.indexReplace(index, value);
+            }
+        });
+
+        // collect the parts of the roads that are reachable within the limit as segments lat0, lon0, z0, lat1, lon1, z1
+        DoubleArrayList segments = new DoubleArrayList();
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        for (IntDoubleCursor cursor : valuesByNode) {
+            EdgeIterator iter = explorer.setBaseNode(cursor.key);
+            while (iter.next()) {
+                if (Double.isInfinite(weighting.calcEdgeWeight(iter, reverseFlow)))
+                    continue;
+                addSegments(segments, iter.fetchWayGeometry(FetchMode.ALL), cursor.value, tree.calcEdgeExploreValue(iter), limit);
+            }
+        }
+        if (segments.isEmpty())
+            throw new IllegalArgumentException("No roads are reachable from the given points");
+
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE, minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        double[] buffer = segments.buffer;
+        for (int i = 0; i < segments.size(); i += 3) {
+            minLat = Math.min(minLat, buffer[i]);
+            maxLat = Math.max(maxLat, buffer[i]);
+            minLon = Math.min(minLon, buffer[i + 1]);
+            maxLon = Math.max(maxLon, buffer[i + 1]);
+        }
+        double latStep = cellSizeInMeter / DistanceCalcEarth.METERS_PER_DEGREE;
+        double lonStep = latStep / Math.max(0.01, Math.cos(Math.toRadians((minLat + maxLat) / 2)));
+        long rows = (long) Math.floor((maxLat - minLat) / latStep) + 1;
+        long cols = (long) Math.floor((maxLon - minLon) / lonStep) + 1;
+        if (rows * cols > maxCells)
+            throw new IllegalArgumentException("The grid would have too many cells (" + rows + "x" + cols + "), the maximum is " + maxCells + ". Use a larger cell size or a smaller limit.");
+
+        ReachabilityGrid grid = new ReachabilityGrid(minLat, minLon, latStep, lonStep, (int) rows, (int) cols);
+        for (int i = 0; i < segments.size(); i += 6) {
+            grid.rasterize(buffer[i], buffer[i + 1], buffer[i + 2], buffer[i + 3], buffer[i + 4], buffer[i + 5]);
+        }
+        return grid;
+    }
+
+    /**
+     * Interpolates the value along the road geometry, starting with baseValue at the first point and ending with
+     * baseValue + edgeValue at the last point, and adds the parts below the limit to the segments.
+     */
+    private static void addSegments(DoubleArrayList segments, PointList points, double baseValue, double edgeValue, double limit) {
+        if (points.size() < 2) {
+            addSegment(segments, points.getLat(0), points.getLon(0), baseValue, points.getLat(0), points.getLon(0), baseValue);
+            return;
+        }
+        double totalDist = 0;
+        for (int i = 1; i < points.size(); i++) {
+            totalDist += DistancePlaneProjection.DIST_PLANE.calcDist(points.getLat(i - 1), points.getLon(i - 1), points.getLat(i), points.getLon(i));
+        }
+        double dist = 0;
+        double prevValue = baseValue;
+        for (int i = 1; i < points.size(); i++) {
+            double lat0 = points.getLat(i - 1), lon0 = points.getLon(i - 1);
+            double lat1 = points.getLat(i), lon1 = points.getLon(i);
+            dist += DistancePlaneProjection.DIST_PLANE.calcDist(lat0, lon0, lat1, lon1);
+            double value = totalDist > 0 ? baseValue + edgeValue * dist / totalDist : baseValue;
+            if (value <= limit) {
+                addSegment(segments, lat0, lon0, prevValue, lat1, lon1, value);
+            } else {
+                // only the first part of this segment can be reached
+                double factor = (limit - prevValue) / (value - prevValue);
+                addSegment(segments, lat0, lon0, prevValue, lat0 + factor * (lat1 - lat0), lon0 + factor * (lon1 - lon0), limit);
+                return;
+            }
+            prevValue = value;
+        }
+    }
+
+    private static void addSegment(DoubleArrayList segments, double lat0, double lon0, double z0, double lat1, double lon1, double z1) {
+        segments.add(lat0, lon0);
+        segments.add(z0, lat1);
+        segments.add(lon1, z1);
+    }
+
+    private void rasterize(double lat0, double lon0, double z0, double lat1, double lon1, double z1) {
+        // sample with at most half the cell size so we do not skip a cell
+        int steps = (int) Math.ceil(2 * Math.max(Math.abs(lat1 - lat0) / latStep, Math.abs(lon1 - lon0) / lonStep));
+        for (int i = 0; i <= steps; i++) {
+            double factor = steps == 0 ? 0 : (double) i / steps;
+            set(lat0 + factor * (lat1 - lat0), lon0 + factor * (lon1 - lon0), z0 + factor * (z1 - z0));
+        }
+    }
+
+    private void set(double lat, double lon, double value) {
+        int row = Math.min(rows - 1, (int) ((lat - minLat) / latStep));
+        int col = Math.min(cols - 1, (int) ((lon - minLon) / lonStep));
+        int index = row * cols + col;
+        // NaN is not smaller than anything
+        if (!(values[index] <= value))
+            values[index] = (float) value;
+    }
+
+    public double getMinLat() {
+        return minLat;
+    }
+
+    public double getMinLon() {
+        return minLon;
+    }
+
+    /**
+     * @return the height of a cell in degrees
+     */
+    public double getLatStep() {
+        return latStep;
+    }
+
+    /**
+     * @return the width of a cell in degrees
+     */
+    public double getLonStep() {
+        return lonStep;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * @return the minimum value of the cell or NaN if the cell cannot be reached
+     */
+    public float getValue(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols)
+            throw new IndexOutOfBoundsException("cell " + row + "," + col + " is out of bounds for " + rows + "x" + cols);
+        return values[row * cols + col];
+    }
+
+    /**
+     * @return the minimum value of the cell containing the given point or NaN if it cannot be reached or is outside
+     * of the grid
+     */
+    public float getValue(double lat, double lon) {
+        int row = (int) Math.floor((lat - minLat) / latStep);
+        int col = (int) Math.floor((lon - minLon) / lonStep);
+        if (row < 0 || row >= rows || col < 0 || col >= cols)
+            return Float.NaN;
+        return values[row * cols + col];
+    }
+
+    /**
+     * @return the number of cells that can be reached
+     */
+    public int getReachedCells() {
+        int count = 0;
+        for (float value : values)
+            if (!Float.isNaN(value))
+                count++;
+        return count;
+    }
+
+    /**
+     * Writes the grid in a compact binary format (big-endian): the minimum latitude and longitude and the cell height
+     * and width in degrees as doubles, the number of rows and columns as ints and then the values row by row as floats,
+     * starting with the southern-most row. Cells that cannot be reached are NaN.
+     */
+    public void write(DataOutput output) throws IOException {
+        output.writeDouble(minLat);
+        output.writeDouble(minLon);
+        output.writeDouble(latStep);
+        output.writeDouble(lonStep);
+        output.writeInt(rows);
+        output.writeInt(cols);
+        for (float value : values)
+            output.writeFloat(value);
+    }
+}
@@ -17,35 +17,40 @@
  */
 package com.graphhopper.isochrone.algorithm;
 
-import com.carrotsearch.hppc.IntObjectHashMap;
-import com.carrotsearch.hppc.cursors.ObjectCursor;
-import com.graphhopper.coll.GHIntObjectHashMap;
+import com.carrotsearch.hppc.IntIntHashMap;
 import com.graphhopper.routing.AbstractRoutingAlgorithm;
 import com.graphhopper.routing.Path;
 import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.GHUtility;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.PriorityQueue;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 import static com.graphhopper.isochrone.algorithm.ShortestPathTree.ExploreType.*;
-import static java.util.Comparator.comparingDouble;
-import static java.util.Comparator.comparingLong;
 
 /**
  * Computes a shortest path tree by a given weighting. Terminates when all shortest paths up to
  * a given travel time, distance, or weight have been explored.
  * <p>
+ * The search can also be started from several nodes at once, see {@link #searchLabels(int[], IntConsumer)}. Every
+ * label then belongs to the origin it is closest to, so a single search yields the union of the areas reachable from
+ * all origins and the assignment of the reached nodes to their closest origin.
+ * <p>
  * IMPLEMENTATION NOTE:
- * util.PriorityQueue doesn't support efficient removes. We work around this by giving the labels
- * a deleted flag, not remove()ing them, and popping deleted elements off both queues.
- * Note to self/others: If you think this optimization is not needed, please test it with a scenario
- * where updates actually occur a lot, such as using finite, non-zero u-turn costs.
+ * The labels are not stored as objects but as indices into parallel primitive arrays (node, edge, parent, weight,
+ * time and distance). Two indexed heaps with a decrease-key operation are used: one ordered by weight (a.k.a. the
+ * Dijkstra queue) and one ordered by the explore value (so we know when we are finished). Both read the exact values
+ * from the label arrays. When a shorter path to a label is found the label is updated in place instead of creating a
+ * new label and flagging the old one as deleted. Settled labels are never changed.
+ * Use {@link #searchLabels} and the getters like {@link #getNode} to avoid creating an {@link IsoLabel} per visited
+ * label.
  *
  * @author Peter Karich
  * @author Michael Zilske
@@ -65,7 +70,6 @@ public class ShortestPathTree extends AbstractRoutingAlgorithm {
             this.parent = parent;
         }
 
-        public boolean deleted = false;
         public int node;
         public int edge;
         public double weight;
@@ -85,9 +89,20 @@ public class ShortestPathTree extends AbstractRoutingAlgorithm {
         }
     }
 
-    private final IntObjectHashMap<IsoLabel> fromMap;
-    private final PriorityQueue<IsoLabel> queueByWeighting; // a.k.a. the Dijkstra queue
-    private PriorityQueue<IsoLabel> queueByZ; // so we know when we are finished
+    // maps the traversal id to the label index
+    private final IntIntHashMap fromMap;
+    private final LabelQueue queueByWeighting; // a.k.a. the Dijkstra queue
+    private LabelQueue queueByZ; // so we know when we are finished, null if it would be queueByWeighting
+    private int size;
+    private int[] nodes;
+    private int[] edges;
+    private int[] parents;
+    private int[] origins;
+    private double[] weights;
+    private long[] times;
+    private double[] distances;
+    // the IsoLabels created by search, so they can be reused as parents
+    private IsoLabel[] isoLabels;
     private int visitedNodes;
     private double limit = -1;
     private ExploreType exploreType = TIME;
@@ -95,9 +110,17 @@ public class ShortestPathTree extends AbstractRoutingAlgorithm {
 
     public ShortestPathTree(Graph g, Weighting weighting, boolean reverseFlow, TraversalMode traversalMode) {
         super(g, weighting, traversalMode);
-        queueByWeighting = new PriorityQueue<>(1000, comparingDouble(l -> l.weight));
-        queueByZ = new PriorityQueue<>(1000);
-        fromMap = new GHIntObjectHashMap<>(1000);
+        int initialCapacity = 1000;
+        queueByWeighting = new LabelQueue(initialCapacity, label -> weights[label]);
+        queueByZ = new LabelQueue(initialCapacity, this::getExploreValue);
+        fromMap = new IntIntHashMap(initialCapacity);
+        nodes = new int[initialCapacity];
+        edges = new int[initialCapacity];
+        parents = new int[initialCapacity];
+        origins = new int[initialCapacity];
+        weights = new double[initialCapacity];
+        times = new long[initialCapacity];
+        distances = new double[initialCapacity];
         this.reverseFlow = reverseFlow;
     }
 
@@ -112,7 +135,7 @@ public class ShortestPathTree extends AbstractRoutingAlgorithm {
     public void setTimeLimit(double limit) {
         exploreType = TIME;
         this.limit = limit;
-        this.queueByZ = new PriorityQueue<>(1000, comparingLong(l -> l.time));
+        this.queueByZ = new LabelQueue(1000, this::getExploreValue);
     }
 
     /**
@@ -121,63 +144,144 @@ public class ShortestPathTree extends AbstractRoutingAlgorithm {
     public void setDistanceLimit(double limit) {
         exploreType = DISTANCE;
         this.limit = limit;
-        this.queueByZ = new PriorityQueue<>(1000, comparingDouble(l -> l.distance));
+        this.queueByZ = new LabelQueue(1000, this::getExploreValue);
     }
 
     public void setWeightLimit(double limit) {
         exploreType = WEIGHT;
         this.limit = limit;
-        this.queueByZ = new PriorityQueue<>(1000, comparingDouble(l -> l.weight));
+        // the Dijkstra queue is already ordered by weight
+        this.queueByZ = null;
     }
 
+    /**
+     * Runs the search and calls the consumer with an IsoLabel for every label within the limit. The IsoLabels of the
+     * parents are shared, but compared to {@link #searchLabels} every visited label requires an object.
+     */
     public void search(int from, final Consumer<IsoLabel> consumer) {
+        isoLabels = new IsoLabel[16];
+        searchLabels(from, label -> {
+            // the labels (and their parents) are settled already, so their values won't change anymore
+            IsoLabel parent = null;
+            int parentLabel = parents[label];
+            if (parentLabel >= 0) {
+                parent = isoLabels[parentLabel];
+                if (parent == null)
+                    parent = createIsoLabel(parentLabel, null);
+            }
+            IsoLabel isoLabel = createIsoLabel(label, parent);
+            if (label >= isoLabels.length)
+                isoLabels = Arrays.copyOf(isoLabels, Math.max(label + 1, isoLabels.length * 2));
+            isoLabels[label] = isoLabel;
+            consumer.accept(isoLabel);
+        });
+    }
+
+    /**
+     * Runs the search and calls the consumer with the index of every settled label within the limit. Use the getters
+     * like {@link #getNode} to access the label's values, which do not change after the label was passed to the
+     * consumer.
+     */
+    public void searchLabels(int from, final IntConsumer consumer) {
+        searchLabels(new int[]{from}, consumer);
+    }
+
+    /**
+     * Like {@link #searchLabels(int, IntConsumer)}, but the search starts from all the given nodes at once. Use
+     * {@link #getOrigin} to find out from which of them a label was reached. If a node is given more than once the
+     * first occurrence is used for node-based traversal.
+     */
+    public void searchLabels(int[] fromNodes, final IntConsumer consumer) {
         checkAlreadyRun();
-        IsoLabel currentLabel = new IsoLabel(from, -1, 0, 0, 0, null);
-        queueByWeighting.add(currentLabel);
-        queueByZ.add(currentLabel);
-        if (traversalMode == TraversalMode.NODE_BASED) {
-            fromMap.put(from, currentLabel);
+        if (fromNodes.length == 0)
+            throw new IllegalArgumentException("At least one start node is required");
+        for (int origin = 0; origin < fromNodes.length; origin++) {
+            int from = fromNodes[origin];
+            if (traversalMode == TraversalMode.NODE_BASED) {
+                if (fromMap.containsKey(from))
+                    continue;
+                fromMap.put(from, addLabel(from, EdgeIterator.NO_EDGE, 0, 0, 0, -1, origin));
+            } else {
+                addLabel(from, EdgeIterator.NO_EDGE, 0, 0, 0, -1, origin);
+            }
         }
         while (!finished()) {
-            currentLabel = queueByWeighting.poll();
-            if (currentLabel.deleted)
-                continue;
+            int currentLabel = queueByWeighting.poll();
+            if (queueByZ != null)
+                queueByZ.remove(currentLabel);
             if (getExploreValue(currentLabel) <= limit) {
                 consumer.accept(currentLabel);
             }
-            currentLabel.deleted = true;
             visitedNodes++;
 
-            EdgeIterator iter = edgeExplorer.setBaseNode(currentLabel.node);
+            final int currentEdge = edges[currentLabel];
+            final int currentOrigin = origins[currentLabel];
+            final double currentWeight = weights[currentLabel];
+            final long currentTime = times[currentLabel];
+            final double currentDistance = distances[currentLabel];
+            EdgeIterator iter = edgeExplorer.setBaseNode(nodes[currentLabel]);
             while (iter.next()) {
-                if (!accept(iter, currentLabel.edge)) {
+                if (!accept(iter, currentEdge)) {
                     continue;
                 }
 
-                double nextWeight = GHUtility.calcWeightWithTurnWeight(weighting, iter, reverseFlow, currentLabel.edge) + currentLabel.weight;
+                double nextWeight = GHUtility.calcWeightWithTurnWeight(weighting, iter, reverseFlow, currentEdge) + currentWeight;
                 if (Double.isInfinite(nextWeight))
                     continue;
 
-                double nextDistance = iter.getDistance() + currentLabel.distance;
-                long nextTime = GHUtility.calcMillisWithTurnMillis(weighting, iter, reverseFlow, currentLabel.edge) + currentLabel.time;
+                double nextDistance = iter.getDistance() + currentDistance;
+                long nextTime = GHUtility.calcMillisWithTurnMillis(weighting, iter, reverseFlow, currentEdge) + currentTime;
                 int nextTraversalId = traversalMode.createTraversalId(iter, reverseFlow);
-                IsoLabel nextLabel = fromMap.get(nextTraversalId);
-                if (nextLabel == null) {
-                    nextLabel = new IsoLabel(iter.getAdjNode(), iter.getEdge(), nextWeight, nextTime, nextDistance, currentLabel);
-                    fromMap.put(nextTraversalId, nextLabel);
-                    queueByWeighting.add(nextLabel);
-                    queueByZ.add(nextLabel);
-                } else if (nextLabel.weight > nextWeight) {
-                    nextLabel.deleted = true;
-                    nextLabel = new IsoLabel(iter.getAdjNode(), iter.getEdge(), nextWeight, nextTime, nextDistance, currentLabel);
+                int nextLabel = fromMap.getOrDefault(nextTraversalId, -1);
+                if (nextLabel < 0) {
+                    nextLabel = addLabel(iter.getAdjNode(), iter.getEdge(), nextWeight, nextTime, nextDistance, currentLabel, currentOrigin);
                     fromMap.put(nextTraversalId, nextLabel);
-                    queueByWeighting.add(nextLabel);
-                    queueByZ.add(nextLabel);
+                } else if (weights[nextLabel] > nextWeight && queueByWeighting.contains(nextLabel)) {
+                    // settled labels were passed to the consumer already and must not change
+                    nodes[nextLabel] = iter.getAdjNode();
+                    edges[nextLabel] = iter.getEdge();
+                    parents[nextLabel] = currentLabel;
+                    origins[nextLabel] = currentOrigin;
+                    weights[nextLabel] = nextWeight;
+                    times[nextLabel] = nextTime;
+                    distances[nextLabel] = nextDistance;
+                    updateQueues(nextLabel);
                 }
             }
         }
     }
 
+    private int addLabel(int node, int edge, double weight, long time, double distance, int parent, int origin) {
+        if (size == nodes.length) {
+            int newCapacity = nodes.length * 2;
+            nodes = Arrays.copyOf(nodes, newCapacity);
+            edges = Arrays.copyOf(edges, newCapacity);
+            parents = Arrays.copyOf(parents, newCapacity);
+            origins = Arrays.copyOf(origins, newCapacity);
+            weights = Arrays.copyOf(weights, newCapacity);
+            times = Arrays.copyOf(times, newCapacity);
+            distances = Arrays.copyOf(distances, newCapacity);
+        }
+        int label = size++;
+        nodes[label] = node;
+        edges[label] = edge;
+        parents[label] = parent;
+        origins[label] = origin;
+        weights[label] = weight;
+        times[label] = time;
+        distances[label] = distance;
+        queueByWeighting.push(label);
+        if (queueByZ != null)
+            queueByZ.push(label);
+        return label;
+    }
+
+    private void updateQueues(int label) {
+        queueByWeighting.update(label);
+        if (queueByZ != null)
+            queueByZ.update(label);
+    }
+
     public Collection<IsoLabel> getIsochroneEdges() {
         // assert alreadyRun
         return getIsochroneEdges(limit);
@@ -185,29 +289,89 @@ public class ShortestPathTree extends AbstractRoutingAlgorithm {
 
     public ArrayList<IsoLabel> getIsochroneEdges(double z) {
         ArrayList<IsoLabel> result = new ArrayList<>();
-        for (ObjectCursor<IsoLabel> cursor : fromMap.values()) {
-            if (cursor.value.parent != null &&
-                    (getExploreValue(cursor.value) > z ^ getExploreValue(cursor.value.parent) > z)) {
-                result.add(cursor.value);
+        for (int label = 0; label < size; label++) {
+            int parent = parents[label];
+            // the start label is not stored in the map for edge-based traversal, but it has no parent anyway
+            if (parent >= 0 && (getExploreValue(label) > z ^ getExploreValue(parent) > z)) {
+                result.add(createIsoLabel(label, createIsoLabel(parent, null)));
             }
         }
         return result;
     }
 
-    private double getExploreValue(IsoLabel label) {
+    IsoLabel createIsoLabel(int label, IsoLabel parent) {
+        return new IsoLabel(nodes[label], edges[label], weights[label], times[label], distances[label], parent);
+    }
+
+    /**
+     * @return the number of labels created so far, the label indices are in the range [0, size)
+     */
+    public int getLabelCount() {
+        return size;
+    }
+
+    public int getNode(int label) {
+        return nodes[label];
+    }
+
+    public int getEdge(int label) {
+        return edges[label];
+    }
+
+    public double getWeight(int label) {
+        return weights[label];
+    }
+
+    public long getTime(int label) {
+        return times[label];
+    }
+
+    public double getDistance(int label) {
+        return distances[label];
+    }
+
+    /**
+     * @return the index of the parent label or -1 for the start label
+     */
+    public int getParent(int label) {
+        return parents[label];
+    }
+
+    /**
+     * @return the index of the start node (see {@link #searchLabels(int[], IntConsumer)}) the label was reached from
+     */
+    public int getOrigin(int label) {
+        return origins[label];
+    }
+
+    /**
+     * @return the time, distance or weight of the label, depending on the limit that was set
+     */
+    public double getExploreValue(int label) {
+        if (exploreType == TIME)
+            return times[label];
+        if (exploreType == WEIGHT)
+            return weights[label];
+        return distances[label];
+    }
+
+    /**
+     * @return the time, distance or weight it takes to traverse the given edge (without turn costs), depending on the
+     * limit that was set
+     */
+    double calcEdgeExploreValue(EdgeIteratorState edge) {
         if (exploreType == TIME)
-            return label.time;
+            return weighting.calcEdgeMillis(edge, reverseFlow);
         if (exploreType == WEIGHT)
-            return label.weight;
-        return label.distance;
+            return weighting.calcEdgeWeight(edge, reverseFlow);
+        return edge.getDistance();
     }
 
     protected boolean finished() {
-        while (queueByZ.peek() != null && queueByZ.peek().deleted)
-            queueByZ.poll();
-        if (queueByZ.peek() == null)
+        LabelQueue queue = queueByZ == null ? queueByWeighting : queueByZ;
+        if (queue.isEmpty())
             return true;
-        return getExploreValue(queueByZ.peek()) >= limit;
+        return getExploreValue(queue.peek()) >= limit;
     }
 
     @Override
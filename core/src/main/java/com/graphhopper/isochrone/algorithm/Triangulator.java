@@ -22,6 +22,7 @@ import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.storage.index.Snap;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.function.ToDoubleFunction;
 
 public interface Triangulator {
@@ -40,4 +41,23 @@ public interface Triangulator {
 
     Result triangulate(Snap snap, QueryGraph queryGraph, ShortestPathTree shortestPathTree, ToDoubleFunction<ShortestPathTree.IsoLabel> fz, double tolerance);
 
+    /**
+     * Like {@link #triangulate(Snap, QueryGraph, ShortestPathTree, ToDoubleFunction, double)}, but the result is only
+     * used for isolines up to maxZ, so implementations may leave out nodes beyond maxZ. This can slightly change the
+     * isolines compared to the full triangulation, so callers should only pass a finite maxZ if this is acceptable.
+     */
+    default Result triangulate(Snap snap, QueryGraph queryGraph, ShortestPathTree shortestPathTree, ToDoubleFunction<ShortestPathTree.IsoLabel> fz, double tolerance, double maxZ) {
+        return triangulate(snap, queryGraph, shortestPathTree, fz, tolerance);
+    }
+
+    /**
+     * Like {@link #triangulate(Snap, QueryGraph, ShortestPathTree, ToDoubleFunction, double, double)}, but the shortest
+     * path tree is started from all snaps at once, so the result describes the area reachable from any of them.
+     */
+    default Result triangulate(List<Snap> snaps, QueryGraph queryGraph, ShortestPathTree shortestPathTree, ToDoubleFunction<ShortestPathTree.IsoLabel> fz, double tolerance, double maxZ) {
+        if (snaps.size() != 1)
+            throw new IllegalArgumentException("Multiple points are not supported by " + getClass().getSimpleName());
+        return triangulate(snaps.get(0), queryGraph, shortestPathTree, fz, tolerance, maxZ);
+    }
+
 }
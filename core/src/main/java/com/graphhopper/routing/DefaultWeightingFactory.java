@@ -25,13 +25,18 @@ import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.weighting.DefaultTurnCostProvider;
 import com.graphhopper.routing.weighting.TurnCostProvider;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.routing.weighting.custom.CustomModelParser;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
+import com.graphhopper.routing.weighting.custom.EdgeWeightCache;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.util.CustomModel;
 import com.graphhopper.util.PMap;
 import com.graphhopper.util.Parameters;
 import com.graphhopper.util.TurnCostsConfig;
 
+import java.util.Collections;
+import java.util.Map;
+
 import static com.graphhopper.routing.weighting.TurnCostProvider.NO_TURN_COST_PROVIDER;
 import static com.graphhopper.routing.weighting.custom.CustomModelParser.createWeightingParameters;
 import static com.graphhopper.util.Helper.toLowerCase;
@@ -40,10 +45,26 @@ public class DefaultWeightingFactory implements WeightingFactory {
 
     private final BaseGraph graph;
     private final EncodingManager encodingManager;
+    private final Map<String, EdgeWeightCache> edgeWeightCaches;
+    private CustomModelParser.Evaluator customModelEvaluator = CustomModelParser.Evaluator.JANINO;
 
     public DefaultWeightingFactory(BaseGraph graph, EncodingManager encodingManager) {
+        this(graph, encodingManager, Collections.emptyMap());
+    }
+
+    /**
+     * @param edgeWeightCaches the precomputed speeds and priorities by profile name. They are used for requests
+     *                         without a custom model.
+     */
+    public DefaultWeightingFactory(BaseGraph graph, EncodingManager encodingManager, Map<String, EdgeWeightCache> edgeWeightCaches) {
         this.graph = graph;
         this.encodingManager = encodingManager;
+        this.edgeWeightCaches = edgeWeightCaches;
+    }
+
+    public DefaultWeightingFactory setCustomModelEvaluator(CustomModelParser.Evaluator customModelEvaluator) {
+        this.customModelEvaluator = customModelEvaluator;
+        return this;
     }
 
     @Override
@@ -69,7 +90,10 @@ public class DefaultWeightingFactory implements WeightingFactory {
             if (requestHints.has(Parameters.Routing.HEADING_PENALTY))
                 mergedCustomModel.setHeadingPenalty(requestHints.getDouble(Parameters.Routing.HEADING_PENALTY, Parameters.Routing.DEFAULT_HEADING_PENALTY));
 
-            CustomWeighting.Parameters parameters = createWeightingParameters(mergedCustomModel, encodingManager);
+            CustomWeighting.Parameters parameters = createWeightingParameters(mergedCustomModel, encodingManager, customModelEvaluator);
+            EdgeWeightCache edgeWeightCache = edgeWeightCaches.get(profile.getName());
+            if (edgeWeightCache != null && queryCustomModel == null)
+                parameters = edgeWeightCache.wrap(parameters);
             final TurnCostProvider turnCostProvider;
             if (profile.hasTurnCosts() && !disableTurnCosts) {
                 BooleanEncodedValue turnRestrictionEnc = encodingManager.getTurnBooleanEncodedValue(TurnRestriction.key(profile.getName()));
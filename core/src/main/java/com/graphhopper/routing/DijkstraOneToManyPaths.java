@@ -0,0 +1,143 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Parameters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
+
+/**
+ * A {@link Dijkstra} that calculates the shortest paths from one source to several targets with a single search
+ * instead of one search per target. The search stops as soon as all targets are settled (or the maximum number of
+ * visited nodes is exceeded). Like for {@link EdgeToEdgeRoutingAlgorithm} the first edge and the last edges of the
+ * paths can be restricted when using edge-based traversal.
+ * <p>
+ * Note that the maximum number of visited nodes applies to the single search for all targets and not to each target,
+ * i.e. with a limit some targets might not be found that one search per target would have found.
+ */
+public class DijkstraOneToManyPaths extends Dijkstra {
+    private int fromOutEdge = ANY_EDGE;
+    private int[] toInEdges;
+    private IntObjectMap<IntArrayList> targetsByNode;
+    private SPTEntry[] targetEntries;
+    private int remainingTargets;
+
+    public DijkstraOneToManyPaths(Graph graph, Weighting weighting, TraversalMode tMode) {
+        super(graph, weighting, tMode);
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        return calcPaths(from, ANY_EDGE, new int[]{to}, new int[]{ANY_EDGE}).get(0);
+    }
+
+    /**
+     * @param fromOutEdge the edge id of the first edge of all paths, {@link com.graphhopper.util.EdgeIterator#ANY_EDGE}
+     *                    means no restriction
+     * @param toNodes     the target nodes
+     * @param toInEdges   the edge ids of the last edge of the path to the corresponding target node,
+     *                    {@link com.graphhopper.util.EdgeIterator#ANY_EDGE} means no restriction
+     * @return one path for every target node in the same order. The paths for targets that could not be reached are
+     * not found.
+     */
+    public List<Path> calcPaths(int from, int fromOutEdge, int[] toNodes, int[] toInEdges) {
+        if (toNodes.length != toInEdges.length)
+            throw new IllegalArgumentException("toNodes and toInEdges must have the same length, " + toNodes.length + " vs. " + toInEdges.length);
+        if (!traversalMode.isEdgeBased() && (fromOutEdge != ANY_EDGE || hasRestrictedEdge(toInEdges)))
+            throw new IllegalArgumentException("Restricting the start/target edges is only possible for edge-based graph traversal");
+        checkAlreadyRun();
+        setupFinishTime();
+        this.fromOutEdge = fromOutEdge;
+        this.toInEdges = toInEdges;
+        targetEntries = new SPTEntry[toNodes.length];
+        targetsByNode = new GHIntObjectHashMap<>(toNodes.length);
+        for (int i = 0; i < toNodes.length; i++) {
+            IntArrayList targets = targetsByNode.get(toNodes[i]);
+            if (targets == null) {
+                targets = new IntArrayList(2);
+                targetsByNode.put(toNodes[i], targets);
+            }
+            targets.add(i);
+        }
+        remainingTargets = toNodes.length;
+        if (remainingTargets > 0) {
+            SPTEntry startEntry = new SPTEntry(from, 0);
+            fromHeap.add(startEntry);
+            if (!traversalMode.isEdgeBased())
+                fromMap.put(from, startEntry);
+            runAlgo();
+        }
+
+        List<Path> paths = new ArrayList<>(toNodes.length);
+        for (SPTEntry entry : targetEntries)
+            paths.add(entry == null ? createEmptyPath() : PathExtractor.extractPath(graph, weighting, entry));
+        return paths;
+    }
+
+    private static boolean hasRestrictedEdge(int[] edges) {
+        for (int edge : edges)
+            if (edge != ANY_EDGE)
+                return true;
+        return false;
+    }
+
+    @Override
+    protected boolean accept(EdgeIteratorState iter, int prevOrNextEdgeId) {
+        if (fromOutEdge != ANY_EDGE && currEdge.parent == null && iter.getEdge() != fromOutEdge)
+            return false;
+        return super.accept(iter, prevOrNextEdgeId);
+    }
+
+    @Override
+    protected boolean finished() {
+        IntArrayList targets = targetsByNode.get(currEdge.adjNode);
+        if (targets == null)
+            return false;
+        boolean isStart = currEdge.parent == null;
+        for (IntCursor target : targets) {
+            if (targetEntries[target.value] != null)
+                continue;
+            int toInEdge = toInEdges[target.value];
+            // the empty path is only allowed if neither the first nor the last edge are restricted
+            boolean accept = isStart
+                    ? fromOutEdge == ANY_EDGE && toInEdge == ANY_EDGE
+                    : toInEdge == ANY_EDGE || toInEdge == currEdge.edge;
+            if (accept) {
+                targetEntries[target.value] = currEdge;
+                remainingTargets--;
+            }
+        }
+        return remainingTargets == 0;
+    }
+
+    @Override
+    public String getName() {
+        return Parameters.Algorithms.DIJKSTRA_ONE_TO_MANY_PATHS;
+    }
+}
@@ -109,12 +109,21 @@ public class InstructionsFromEdges implements Path.EdgeVisitor {
      * @return the list of instructions for this path.
      */
     public static InstructionList calcInstructions(Path path, Graph graph, Weighting weighting, EncodedValueLookup evLookup, final Translation tr) {
+        return calcInstructions(new PathColumns(path), graph, weighting, evLookup, tr);
+    }
+
+    /**
+     * @return the list of instructions for the path of the given columns, which can be shared with the path details
+     * calculation, see {@link com.graphhopper.util.details.PathDetailsFromEdges}
+     */
+    public static InstructionList calcInstructions(PathColumns columns, Graph graph, Weighting weighting, EncodedValueLookup evLookup, final Translation tr) {
         final InstructionList ways = new InstructionList(tr);
+        Path path = columns.getPath();
         if (path.isFound()) {
             if (path.getEdgeCount() == 0) {
                 ways.add(new FinishInstruction(graph.getNodeAccess(), path.getEndNode()));
             } else {
-                path.forEveryEdge(new InstructionsFromEdges(graph, weighting, evLookup, ways));
+                columns.forEveryEdge(new InstructionsFromEdges(graph, weighting, evLookup, ways));
             }
         }
         return ways;
@@ -0,0 +1,167 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.ev.BooleanEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.IntEncodedValue;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.FetchMode;
+import com.graphhopper.util.PointList;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A columnar representation of a {@link Path}. The edges of the path are visited only once and stored in arrays
+ * together with the index of their first point in the path geometry. Encoded values are decoded into one array per
+ * encoded value the first time they are requested and are then shared by all users of this object. This way
+ * the instructions, the path details and the geometry of a path can be calculated without walking the path several
+ * times.
+ */
+public class PathColumns {
+    private final Path path;
+    private final EdgeIteratorState[] edges;
+    private final int[] prevEdgeIds;
+    private final int[] pointIndices;
+    private final PointList points;
+    private final Map<String, Object> evColumns = new HashMap<>();
+
+    public PathColumns(Path path) {
+        this.path = path;
+        int edgeCount = path.getEdgeCount();
+        edges = new EdgeIteratorState[edgeCount];
+        prevEdgeIds = new int[edgeCount];
+        pointIndices = new int[edgeCount + 1];
+        points = new PointList(edgeCount + 1, path.getGraph().getNodeAccess().is3D());
+        if (!path.isFound())
+            return;
+        if (edgeCount == 0) {
+            points.add(path.getGraph().getNodeAccess(), path.getEndNode());
+            return;
+        }
+        points.add(path.getGraph().getNodeAccess(), path.getFromNode());
+        path.forEveryEdge(new Path.EdgeVisitor() {
+            @Override
+            public void next(EdgeIteratorState edge, int index, int prevEdgeId) {
+                edges[index] = edge;
+                prevEdgeIds[index] = prevEdgeId;
+                PointList pl = edge.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ);
+                for (int j = 0; j < pl.size(); j++) {
+                    points.add(pl, j);
+                }
+                pointIndices[index + 1] = pointIndices[index] + pl.size();
+            }
+
+            @Override
+            public void finish() {
+            }
+        });
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return the number of edges of this path
+     */
+    public int size() {
+        return edges.length;
+    }
+
+    public EdgeIteratorState getEdge(int index) {
+        return edges[index];
+    }
+
+    public int getPrevEdgeId(int index) {
+        return prevEdgeIds[index];
+    }
+
+    /**
+     * @return the index of the first point of the given edge (the base node is not included) relative to the start
+     * of the path, i.e. the number of points visited so far without the start point. For index == {@link #size()}
+     * this is the total number of points of the path (again without the start point).
+     */
+    public int getPointIndex(int index) {
+        return pointIndices[index];
+    }
+
+    /**
+     * @return the geometry of this path, the same as {@link Path#calcPoints()}. Note that this list is not copied.
+     */
+    public PointList getPoints() {
+        return points;
+    }
+
+    /**
+     * Visits the edges of this path just like {@link Path#forEveryEdge}, but without looking up the edges again.
+     */
+    public void forEveryEdge(Path.EdgeVisitor visitor) {
+        for (int i = 0; i < edges.length; i++) {
+            visitor.next(edges[i], i, prevEdgeIds[i]);
+        }
+        visitor.finish();
+    }
+
+    /**
+     * @return the value of the given encoded value for every edge of this path. For an
+     * {@link com.graphhopper.routing.ev.EnumEncodedValue} these are the ordinals. The returned array must not be
+     * modified.
+     */
+    public int[] getInts(IntEncodedValue ev) {
+        return (int[]) evColumns.computeIfAbsent(ev.getName(), name -> {
+            int[] values = new int[edges.length];
+            for (int i = 0; i < edges.length; i++) {
+                values[i] = edges[i].get(ev);
+            }
+            return values;
+        });
+    }
+
+    /**
+     * @see #getInts(IntEncodedValue)
+     */
+    public double[] getDecimals(DecimalEncodedValue ev) {
+        return (double[]) evColumns.computeIfAbsent(ev.getName(), name -> {
+            double[] values = new double[edges.length];
+            for (int i = 0; i < edges.length; i++) {
+                values[i] = edges[i].get(ev);
+            }
+            return values;
+        });
+    }
+
+    /**
+     * @see #getInts(IntEncodedValue)
+     */
+    public boolean[] getBooleans(BooleanEncodedValue ev) {
+        return (boolean[]) evColumns.computeIfAbsent(ev.getName(), name -> {
+            boolean[] values = new boolean[edges.length];
+            for (int i = 0; i < edges.length; i++) {
+                values[i] = edges[i].get(ev);
+            }
+            return values;
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "edges: " + edges.length + ", points: " + points.size();
+    }
+}
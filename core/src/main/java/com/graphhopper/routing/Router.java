@@ -22,7 +22,9 @@ import com.carrotsearch.hppc.cursors.IntCursor;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.ResponsePath;
+import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.Profile;
+import com.graphhopper.routing.ch.CHPotentialRoutingAlgorithmFactory;
 import com.graphhopper.routing.ch.CHRoutingAlgorithmFactory;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.EncodedValueLookup;
@@ -32,6 +34,7 @@ import com.graphhopper.routing.lm.LandmarkStorage;
 import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.routing.weighting.custom.CustomModelParser;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
 import com.graphhopper.routing.weighting.custom.FindMinMax;
 import com.graphhopper.storage.BaseGraph;
@@ -66,6 +69,7 @@ public class Router {
     protected final WeightingFactory weightingFactory;
     protected final Map<String, RoutingCHGraph> chGraphs;
     protected final Map<String, LandmarkStorage> landmarks;
+    protected final Map<String, CHProfile> chProfiles;
     protected final boolean chEnabled;
     protected final boolean lmEnabled;
 
@@ -73,6 +77,18 @@ public class Router {
                   Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathDetailsBuilderFactory,
                   TranslationMap translationMap, RouterConfig routerConfig, WeightingFactory weightingFactory,
                   Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks) {
+        this(graph, encodingManager, locationIndex, profilesByName, pathDetailsBuilderFactory, translationMap, routerConfig,
+                weightingFactory, chGraphs, landmarks, Collections.emptyMap());
+    }
+
+    /**
+     * @param chProfiles the CH profiles by profile name. They are needed to route requests with a custom model in
+     *                   speed mode, see {@link CHProfile#getCustomModelEncodedValues()}.
+     */
+    public Router(BaseGraph graph, EncodingManager encodingManager, LocationIndex locationIndex,
+                  Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathDetailsBuilderFactory,
+                  TranslationMap translationMap, RouterConfig routerConfig, WeightingFactory weightingFactory,
+                  Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks, Map<String, CHProfile> chProfiles) {
         this.graph = graph;
         this.encodingManager = encodingManager;
         this.locationIndex = locationIndex;
@@ -83,6 +99,7 @@ public class Router {
         this.weightingFactory = weightingFactory;
         this.chGraphs = chGraphs;
         this.landmarks = landmarks;
+        this.chProfiles = chProfiles;
         // note that his is not the same as !ghStorage.getCHConfigs().isEmpty(), because the GHStorage might have some
         // CHGraphs that were not built yet (and possibly no CH profiles were configured).
         this.chEnabled = !chGraphs.isEmpty();
@@ -191,11 +208,14 @@ public class Router {
         final boolean disableCH = getDisableCH(request.getHints());
         final boolean disableLM = getDisableLM(request.getHints());
         if (chEnabled && !disableCH) {
+            CHProfile chProfile = chProfiles.get(request.getProfile());
+            if (request.getCustomModel() != null && chProfile != null && !chProfile.getCustomModelEncodedValues().isEmpty())
+                return createCustomModelCHSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex, chGraphs, chProfile);
             return createCHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs);
         } else if (lmEnabled && !disableLM) {
-            return createLMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex, landmarks);
+            return createLMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex, landmarks, chGraphs);
         } else {
-            return createFlexSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex);
+            return createFlexSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex, chGraphs);
         }
     }
 
@@ -204,16 +224,25 @@ public class Router {
         return new CHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs);
     }
 
+    protected Solver createCustomModelCHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
+                                               EncodingManager encodingManager, WeightingFactory weightingFactory, BaseGraph baseGraph,
+                                               LocationIndex locationIndex, Map<String, RoutingCHGraph> chGraphs, CHProfile chProfile) {
+        return new CustomModelCHSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, baseGraph, locationIndex,
+                chGraphs.get(chProfile.getProfile()), chProfile.getCustomModelEncodedValues());
+    }
+
     protected Solver createLMSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
                                     EncodingManager encodingManager, WeightingFactory weightingFactory, BaseGraph baseGraph,
-                                    LocationIndex locationIndex, Map<String, LandmarkStorage> landmarks) {
-        return new LMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, baseGraph, locationIndex, landmarks);
+                                    LocationIndex locationIndex, Map<String, LandmarkStorage> landmarks, Map<String, RoutingCHGraph> chGraphs) {
+        return new LMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, baseGraph, locationIndex, landmarks)
+                .setPotentialsCHGraph(chGraphs.get(request.getProfile()));
     }
 
     protected Solver createFlexSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
                                       EncodingManager encodingManager, WeightingFactory weightingFactory, BaseGraph baseGraph,
-                                      LocationIndex locationIndex) {
-        return new FlexSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, baseGraph, locationIndex);
+                                      LocationIndex locationIndex, Map<String, RoutingCHGraph> chGraphs) {
+        return new FlexSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, baseGraph, locationIndex)
+                .setPotentialsCHGraph(chGraphs.get(request.getProfile()));
     }
 
     protected GHResponse routeRoundTrip(GHRequest request, FlexSolver solver) {
@@ -504,6 +533,7 @@ public class Router {
         private final WeightingFactory weightingFactory;
         private final BaseGraph baseGraph;
         private final LocationIndex locationIndex;
+        private RoutingCHGraph potentialsCHGraph;
 
         protected FlexSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
                              EncodedValueLookup lookup, WeightingFactory weightingFactory, BaseGraph graph, LocationIndex locationIndex) {
@@ -527,12 +557,43 @@ public class Router {
             return weightingFactory.createWeighting(profile, requestHints, false);
         }
 
+        /**
+         * Sets the CH graph of the requested profile. If it is not null and the CH potentials are enabled in the
+         * {@link RouterConfig} A* uses the CH preparation for its weight approximation whenever this is possible, see
+         * {@link #useCHPotentials()}.
+         */
+        public FlexSolver setPotentialsCHGraph(RoutingCHGraph potentialsCHGraph) {
+            this.potentialsCHGraph = potentialsCHGraph;
+            return this;
+        }
+
         @Override
         protected FlexiblePathCalculator createPathCalculator(QueryGraph queryGraph) {
-            RoutingAlgorithmFactory algorithmFactory = new RoutingAlgorithmFactorySimple();
+            RoutingAlgorithmFactory algorithmFactory = useCHPotentials()
+                    ? new CHPotentialRoutingAlgorithmFactory(potentialsCHGraph)
+                    : new RoutingAlgorithmFactorySimple();
             return new FlexiblePathCalculator(queryGraph, algorithmFactory, weighting, getAlgoOpts());
         }
 
+        /**
+         * The CH potentials are much tighter than the beeline or landmark approximations. They can be used for the A*
+         * algorithms if there is a node-based CH preparation for the profile and the custom model of the request can
+         * only make the edge weights larger.
+         */
+        protected boolean useCHPotentials() {
+            if (!routerConfig.isCHPotentialsEnabled() || potentialsCHGraph == null || potentialsCHGraph.isEdgeBased()
+                    || !CHPotentialRoutingAlgorithmFactory.supports(request.getAlgorithm()))
+                return false;
+            if (request.getCustomModel() == null)
+                return true;
+            try {
+                FindMinMax.checkLMConstraints(profile.getCustomModel(), request.getCustomModel(), lookup);
+                return true;
+            } catch (IllegalArgumentException ex) {
+                return false;
+            }
+        }
+
         protected AlgorithmOptions getAlgoOpts() {
             AlgorithmOptions algoOpts = new AlgorithmOptions().
                     setAlgorithm(request.getAlgorithm()).
@@ -581,6 +642,8 @@ public class Router {
 
         @Override
         protected FlexiblePathCalculator createPathCalculator(QueryGraph queryGraph) {
+            if (useCHPotentials())
+                return super.createPathCalculator(queryGraph);
             // for now do not allow mixing CH&LM #1082,#1889
             LandmarkStorage landmarkStorage = landmarks.get(profile.getName());
             if (landmarkStorage == null)
@@ -593,4 +656,39 @@ public class Router {
             return new FlexiblePathCalculator(queryGraph, routingAlgorithmFactory, weighting, getAlgoOpts());
         }
     }
+
+    /**
+     * Calculates routes for requests with a custom model using the CH preparation of the profile. The custom model can
+     * only make the edge weights larger and the CH preparation then provides exact lower bounds for an A* search.
+     */
+    private static class CustomModelCHSolver extends FlexSolver {
+        private final RoutingCHGraph chGraph;
+        private final List<String> allowedEncodedValues;
+
+        CustomModelCHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig, EncodedValueLookup lookup,
+                            WeightingFactory weightingFactory, BaseGraph graph, LocationIndex locationIndex, RoutingCHGraph chGraph,
+                            List<String> allowedEncodedValues) {
+            super(request, profilesByName, routerConfig, lookup, weightingFactory, graph, locationIndex);
+            this.chGraph = chGraph;
+            this.allowedEncodedValues = allowedEncodedValues;
+        }
+
+        @Override
+        protected void checkRequest() {
+            super.checkRequest();
+            if (ROUND_TRIP.equalsIgnoreCase(request.getAlgorithm()))
+                throw new IllegalArgumentException("algorithm=round_trip cannot be used with a custom model in speed mode, you need to disable speed mode with `ch.disable=true`");
+        }
+
+        @Override
+        protected FlexiblePathCalculator createPathCalculator(QueryGraph queryGraph) {
+            FindMinMax.checkLMConstraints(profile.getCustomModel(), request.getCustomModel(), lookup);
+            List<String> notAllowed = CustomModelParser.findEncodedValues(request.getCustomModel(), lookup).stream().
+                    filter(s -> !allowedEncodedValues.contains(s)).toList();
+            if (!notAllowed.isEmpty())
+                throw new IllegalArgumentException("The custom model in speed mode can only use the encoded values " + allowedEncodedValues
+                        + ", but it uses: " + notAllowed + ". You can disable speed mode with `ch.disable=true`.");
+            return new FlexiblePathCalculator(queryGraph, new CHPotentialRoutingAlgorithmFactory(chGraph), weighting, getAlgoOpts());
+        }
+    }
 }
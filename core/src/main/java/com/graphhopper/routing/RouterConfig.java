@@ -31,6 +31,7 @@ public class RouterConfig {
     private boolean simplifyResponse = true;
     private double elevationWayPointMaxDistance = Double.MAX_VALUE;
     private int activeLandmarkCount = 8;
+    private boolean chPotentialsEnabled = false;
 
     public int getMaxVisitedNodes() {
         return maxVisitedNodes;
@@ -112,6 +113,18 @@ public class RouterConfig {
         this.activeLandmarkCount = activeLandmarkCount;
     }
 
+    public boolean isCHPotentialsEnabled() {
+        return chPotentialsEnabled;
+    }
+
+    /**
+     * This method specifies if the A* algorithms of the flexible and hybrid mode should use the CH preparation of the
+     * requested profile (if there is one) to approximate the remaining weight instead of the beeline or landmarks.
+     */
+    public void setCHPotentialsEnabled(boolean chPotentialsEnabled) {
+        this.chPotentialsEnabled = chPotentialsEnabled;
+    }
+
     public double getElevationWayPointMaxDistance() {
         return elevationWayPointMaxDistance;
     }
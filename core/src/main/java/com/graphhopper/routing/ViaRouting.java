@@ -64,11 +64,16 @@ public class ViaRouting {
                 ? snapFilter
                 : new SnapPreventionEdgeFilter(snapFilter, roadClassEnc, roadEnvEnc, snapPreventions);
         List<Snap> snaps = new ArrayList<>(points.size());
+        // without headings and point hints all points use the same filter, so we can look them up in one batch
+        List<Snap> batchSnaps = pointHints.isEmpty() && headings.stream().allMatch(h -> Double.isNaN(h))
+                ? locationIndex.findClosest(points, strictEdgeFilter) : null;
         IntArrayList pointsNotFound = new IntArrayList();
         for (int placeIndex = 0; placeIndex < points.size(); placeIndex++) {
             GHPoint point = points.get(placeIndex);
             Snap snap = null;
-            if (placeIndex < headings.size() && !Double.isNaN(headings.get(placeIndex))) {
+            if (batchSnaps != null) {
+                snap = batchSnaps.get(placeIndex);
+            } else if (placeIndex < headings.size() && !Double.isNaN(headings.get(placeIndex))) {
                 if (!pointHints.isEmpty() && !Helper.isEmpty(pointHints.get(placeIndex)))
                     throw new IllegalArgumentException("Cannot specify heading and point_hint at the same time. " +
                             "Make sure you specify either an empty point_hint (String) or a NaN heading (double) for point " + placeIndex);
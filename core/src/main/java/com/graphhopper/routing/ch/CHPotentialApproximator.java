@@ -0,0 +1,217 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntDoubleHashMap;
+import com.carrotsearch.hppc.cursors.IntDoubleCursor;
+import com.graphhopper.routing.SPTEntry;
+import com.graphhopper.routing.weighting.WeightApproximator;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
+import com.graphhopper.storage.RoutingCHEdgeIterator;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+import java.util.PriorityQueue;
+
+/**
+ * A weight approximation that uses a (node-based) CH preparation to calculate the exact shortest path weight to the
+ * target according to the weighting that was used for the preparation. It is a valid approximation for every routing
+ * weighting whose edge weights are larger or equal to the ones of the preparation, like a custom model that only
+ * penalizes some roads of the prepared profile.
+ * <p>
+ * When the target is set we run a backward search from the target in the upward graph. The approximation of a node is
+ * then calculated lazily from the approximations of its higher level neighbors and memoized, see 'A Fast and Tight
+ * Heuristic for A* in Road Networks' by Strasser and Zeitz. Virtual nodes are handled with a small search on the graph
+ * around them.
+ * <p>
+ * The {@link #reverse()} approximation calculates the weights from the source instead, so this can also be used for
+ * bidirectional A*.
+ */
+public class CHPotentialApproximator implements WeightApproximator {
+    private final RoutingCHGraph chGraph;
+    private final Graph graph;
+    private final Weighting weighting;
+    private final int baseNodes;
+    private final boolean reverse;
+    // explores the upward graph starting from the target, i.e. the in-edges for the forward approximation
+    private final RoutingCHEdgeExplorer targetExplorer;
+    // explores the upward graph when calculating the approximation of a node
+    private final RoutingCHEdgeExplorer nodeExplorer;
+    private final EdgeExplorer explorer;
+    private final IntDoubleHashMap targetWeights = new IntDoubleHashMap();
+    private final IntDoubleHashMap approximations = new IntDoubleHashMap();
+    private final IntArrayList stack = new IntArrayList();
+    private int to = -1;
+
+    /**
+     * @param graph the graph used for the current path calculation, i.e. the base graph of the CH graph or a query
+     *              graph on top of it
+     */
+    public CHPotentialApproximator(RoutingCHGraph chGraph, Graph graph) {
+        this(chGraph, graph, false);
+    }
+
+    private CHPotentialApproximator(RoutingCHGraph chGraph, Graph graph, boolean reverse) {
+        if (chGraph.isEdgeBased())
+            throw new IllegalArgumentException("The CH potentials require a node-based CH preparation");
+        this.chGraph = chGraph;
+        this.graph = graph;
+        this.weighting = chGraph.getWeighting();
+        this.baseNodes = chGraph.getNodes();
+        this.reverse = reverse;
+        this.targetExplorer = reverse ? chGraph.createOutEdgeExplorer() : chGraph.createInEdgeExplorer();
+        this.nodeExplorer = reverse ? chGraph.createInEdgeExplorer() : chGraph.createOutEdgeExplorer();
+        this.explorer = graph.createEdgeExplorer();
+    }
+
+    @Override
+    public void setTo(int to) {
+        this.to = to;
+        targetWeights.clear();
+        approximations.clear();
+        PriorityQueue<SPTEntry> heap = new PriorityQueue<>();
+        if (to < baseNodes) {
+            heap.add(new SPTEntry(to, 0));
+        } else {
+            for (IntDoubleCursor reached : searchVirtualNodes(to, !reverse))
+                if (reached.key < baseNodes)
+                    heap.add(new SPTEntry(reached.key, reached.value));
+        }
+        // the search in the upward graph, i.e. we only follow edges from higher level nodes, but this also includes
+        // edges between nodes that were not contracted
+        while (!heap.isEmpty()) {
+            SPTEntry entry = heap.poll();
+            int index = targetWeights.indexOf(entry.adjNode);
+            if (index >= 0 && targetWeights.indexGet(index) <= entry.weight)
+                continue;
+            targetWeights.put(entry.adjNode, entry.weight);
+            int level = chGraph.getLevel(entry.adjNode);
+            RoutingCHEdgeIterator iter = targetExplorer.setBaseNode(entry.adjNode);
+            while (iter.next()) {
+                if (chGraph.getLevel(iter.getAdjNode()) < level)
+                    continue;
+                double weight = entry.weight + iter.getWeight(!reverse);
+                if (Double.isFinite(weight) && weight < targetWeights.getOrDefault(iter.getAdjNode(), Double.POSITIVE_INFINITY))
+                    heap.add(new SPTEntry(iter.getAdjNode(), weight));
+            }
+        }
+    }
+
+    @Override
+    public double approximate(int node) {
+        if (node == to)
+            return 0;
+        int index = approximations.indexOf(node);
+        if (index >= 0)
+            return approximations.indexGet(index);
+        if (node < baseNodes)
+            return approximateTowerNode(node);
+
+        double result = Double.POSITIVE_INFINITY;
+        for (IntDoubleCursor reached : searchVirtualNodes(node, reverse)) {
+            if (reached.key == to)
+                result = Math.min(result, reached.value);
+            else if (reached.key < baseNodes)
+                result = Math.min(result, reached.value + approximateTowerNode(reached.key));
+        }
+        approximations.put(node, result);
+        return result;
+    }
+
+    /**
+     * The approximation of a node is the minimum of its weight from the target search and the approximations of its
+     * higher level neighbors plus the weight of the edges to them. The upward graph has no cycles, so we can calculate
+     * the approximations with a depth-first search without running into recursion limits.
+     */
+    private double approximateTowerNode(int node) {
+        stack.add(node);
+        while (!stack.isEmpty()) {
+            int current = stack.get(stack.size() - 1);
+            if (approximations.containsKey(current)) {
+                stack.remove(stack.size() - 1);
+                continue;
+            }
+            boolean ready = true;
+            double result = targetWeights.getOrDefault(current, Double.POSITIVE_INFINITY);
+            int level = chGraph.getLevel(current);
+            RoutingCHEdgeIterator iter = nodeExplorer.setBaseNode(current);
+            while (iter.next()) {
+                // edges between nodes that were not contracted are already covered by the target search
+                if (chGraph.getLevel(iter.getAdjNode()) <= level)
+                    continue;
+                int index = approximations.indexOf(iter.getAdjNode());
+                if (index < 0) {
+                    stack.add(iter.getAdjNode());
+                    ready = false;
+                } else if (ready) {
+                    result = Math.min(result, iter.getWeight(reverse) + approximations.indexGet(index));
+                }
+            }
+            if (ready) {
+                approximations.put(current, result);
+                stack.remove(stack.size() - 1);
+            }
+        }
+        return approximations.get(node);
+    }
+
+    /**
+     * Runs a Dijkstra search from the given virtual node that only expands virtual nodes.
+     *
+     * @return the weights of all reached nodes, including the adjacent tower nodes
+     */
+    private IntDoubleHashMap searchVirtualNodes(int virtualNode, boolean reverse) {
+        IntDoubleHashMap weights = new IntDoubleHashMap();
+        PriorityQueue<SPTEntry> heap = new PriorityQueue<>();
+        heap.add(new SPTEntry(virtualNode, 0));
+        weights.put(virtualNode, 0);
+        while (!heap.isEmpty()) {
+            SPTEntry entry = heap.poll();
+            if (entry.weight > weights.get(entry.adjNode) || entry.adjNode < baseNodes)
+                continue;
+            EdgeIterator iter = explorer.setBaseNode(entry.adjNode);
+            while (iter.next()) {
+                double weight = entry.weight + weighting.calcEdgeWeight(iter, reverse);
+                if (Double.isFinite(weight) && weight < weights.getOrDefault(iter.getAdjNode(), Double.POSITIVE_INFINITY)) {
+                    weights.put(iter.getAdjNode(), weight);
+                    heap.add(new SPTEntry(iter.getAdjNode(), weight));
+                }
+            }
+        }
+        return weights;
+    }
+
+    @Override
+    public WeightApproximator reverse() {
+        return new CHPotentialApproximator(chGraph, graph, !reverse);
+    }
+
+    @Override
+    public double getSlack() {
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ch_potentials";
+    }
+}
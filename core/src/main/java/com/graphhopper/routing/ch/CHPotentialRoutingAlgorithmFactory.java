@@ -0,0 +1,75 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.AStar;
+import com.graphhopper.routing.*;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.Helper;
+
+import static com.graphhopper.util.Parameters.Algorithms.*;
+
+/**
+ * Creates A* algorithms that use {@link CHPotentialApproximator} and can therefore be used for weightings that are
+ * more expensive than the one of the given CH graph, e.g. for custom models in the request.
+ */
+public class CHPotentialRoutingAlgorithmFactory implements RoutingAlgorithmFactory {
+    private final RoutingCHGraph chGraph;
+
+    public CHPotentialRoutingAlgorithmFactory(RoutingCHGraph chGraph) {
+        this.chGraph = chGraph;
+    }
+
+    /**
+     * @return true if this factory can create an algorithm for the given algorithm name
+     */
+    public static boolean supports(String algorithm) {
+        return Helper.isEmpty(algorithm) || ASTAR.equalsIgnoreCase(algorithm) || ASTAR_BI.equalsIgnoreCase(algorithm)
+                || ALT_ROUTE.equalsIgnoreCase(algorithm);
+    }
+
+    @Override
+    public RoutingAlgorithm createAlgo(Graph g, Weighting w, AlgorithmOptions opts) {
+        final String algoStr = opts.getAlgorithm();
+        final Weighting weighting = g.wrapWeighting(w);
+        if (ASTAR.equalsIgnoreCase(algoStr)) {
+            AStar algo = new AStar(g, weighting, opts.getTraversalMode());
+            algo.setApproximation(new CHPotentialApproximator(chGraph, g));
+            algo.setMaxVisitedNodes(opts.getMaxVisitedNodes());
+            algo.setTimeoutMillis(opts.getTimeoutMillis());
+            return algo;
+        } else if (ASTAR_BI.equalsIgnoreCase(algoStr) || Helper.isEmpty(algoStr)) {
+            AStarBidirection algo = new AStarBidirection(g, weighting, opts.getTraversalMode());
+            algo.setApproximation(new CHPotentialApproximator(chGraph, g));
+            algo.setMaxVisitedNodes(opts.getMaxVisitedNodes());
+            algo.setTimeoutMillis(opts.getTimeoutMillis());
+            return algo;
+        } else if (ALT_ROUTE.equalsIgnoreCase(algoStr)) {
+            AlternativeRoute algo = new AlternativeRoute(g, weighting, opts.getTraversalMode(), opts.getHints());
+            algo.setApproximation(new CHPotentialApproximator(chGraph, g));
+            algo.setMaxVisitedNodes(opts.getMaxVisitedNodes());
+            algo.setTimeoutMillis(opts.getTimeoutMillis());
+            return algo;
+        } else {
+            throw new IllegalArgumentException("The CH potentials only support algorithm="
+                    + ASTAR + "," + ASTAR_BI + " or " + ALT_ROUTE + ", but got: " + algoStr);
+        }
+    }
+}
@@ -18,56 +18,45 @@
 
 package com.graphhopper.routing.ev;
 
-import com.carrotsearch.hppc.BitSet;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
- * Works like a normal encoded value, but the underlying data is not stored within the graph
+ * Works like a normal encoded value, but the underlying data is not stored within the graph edges, see
+ * {@link ExternalEncodedValue}. Uses one bit per value.
  */
-public class ExternalBooleanEncodedValue implements BooleanEncodedValue {
-    private final String name;
-    private final boolean storeTwoDirections;
-    private final BitSet bits;
+public class ExternalBooleanEncodedValue extends ExternalEncodedValue implements BooleanEncodedValue {
 
     @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
     public ExternalBooleanEncodedValue(
             @JsonProperty("name") String name,
             @JsonProperty("store_two_directions") boolean storeTwoDirections
     ) {
-        this.name = name;
-        this.storeTwoDirections = storeTwoDirections;
-        this.bits = new BitSet();
+        super(name, storeTwoDirections);
     }
 
     @Override
-    public void setBool(boolean reverse, int edgeId, EdgeIntAccess edgeIntAccess, boolean value) {
-        // it'll grow as we go
-        if (value) bits.set(getIndex(edgeId, reverse));
-        else bits.clear(getIndex(edgeId, reverse));
-    }
-
-    @Override
-    public boolean getBool(boolean reverse, int edgeId, EdgeIntAccess edgeIntAccess) {
-        return bits.get(getIndex(edgeId, reverse));
-    }
-
-    private long getIndex(int edgeId, boolean reverse) {
-        return storeTwoDirections ? (2L * edgeId + (reverse ? 1 : 0)) : edgeId;
+    protected int getBitsPerValue() {
+        return 1;
     }
 
     @Override
-    public int init(InitializerConfig init) {
-        return 0;
+    public void setBool(boolean reverse, int edgeId, EdgeIntAccess edgeIntAccess, boolean value) {
+        setRaw(reverse, edgeId, value ? 1 : 0);
     }
 
     @Override
-    public String getName() {
-        return name;
+    public boolean getBool(boolean reverse, int edgeId, EdgeIntAccess edgeIntAccess) {
+        return getRaw(reverse, edgeId) != 0;
     }
 
-    @Override
-    public boolean isStoreTwoDirections() {
-        return storeTwoDirections;
+    /**
+     * Sets the values of the given edges at once while the graph can be used for routing.
+     */
+    public void update(int[] edgeKeys, boolean[] values) {
+        int[] rawValues = new int[values.length];
+        for (int i = 0; i < values.length; i++)
+            rawValues[i] = values[i] ? 1 : 0;
+        publish(edgeKeys, rawValues);
     }
 }
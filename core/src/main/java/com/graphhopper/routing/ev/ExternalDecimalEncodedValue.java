@@ -0,0 +1,105 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.routing.ev;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A decimal encoded value whose values are not stored within the graph edges, see {@link ExternalEncodedValue}. The
+ * values are stored as 32 bit floats. Edges that were never set have the value 0.
+ */
+public class ExternalDecimalEncodedValue extends ExternalEncodedValue implements DecimalEncodedValue {
+    private final double minStorableValue;
+    private final double maxStorableValue;
+
+    @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
+    public ExternalDecimalEncodedValue(
+            @JsonProperty("name") String name,
+            @JsonProperty("min_storable_value") double minStorableValue,
+            @JsonProperty("max_storable_value") double maxStorableValue,
+            @JsonProperty("store_two_directions") boolean storeTwoDirections
+    ) {
+        super(name, storeTwoDirections);
+        if (!Double.isFinite(minStorableValue) || !Double.isFinite(maxStorableValue) || minStorableValue > maxStorableValue)
+            throw new IllegalArgumentException(name + ": invalid range [" + minStorableValue + ", " + maxStorableValue + "]");
+        if (Math.abs(minStorableValue) > Float.MAX_VALUE || Math.abs(maxStorableValue) > Float.MAX_VALUE)
+            throw new IllegalArgumentException(name + ": the range [" + minStorableValue + ", " + maxStorableValue + "] exceeds the float range");
+        this.minStorableValue = minStorableValue;
+        this.maxStorableValue = maxStorableValue;
+    }
+
+    @Override
+    protected int getBitsPerValue() {
+        return 32;
+    }
+
+    @Override
+    public void setDecimal(boolean reverse, int edgeId, EdgeIntAccess edgeIntAccess, double value) {
+        setRaw(reverse, edgeId, toRaw(value));
+    }
+
+    @Override
+    public double getDecimal(boolean reverse, int edgeId, EdgeIntAccess edgeIntAccess) {
+        return Float.intBitsToFloat(getRaw(reverse, edgeId));
+    }
+
+    /**
+     * Sets the values of the given edges at once while the graph can be used for routing.
+     */
+    public void update(int[] edgeKeys, double[] values) {
+        int[] rawValues = new int[values.length];
+        for (int i = 0; i < values.length; i++)
+            rawValues[i] = toRaw(values[i]);
+        publish(edgeKeys, rawValues);
+    }
+
+    private int toRaw(double value) {
+        if (!(value >= minStorableValue && value <= maxStorableValue))
+            throw new IllegalArgumentException(name + " value " + value + " is out of range [" + minStorableValue + ", " + maxStorableValue + "]");
+        return Float.floatToRawIntBits((float) value);
+    }
+
+    @Override
+    public double getMaxStorableDecimal() {
+        return maxStorableValue;
+    }
+
+    @Override
+    public double getMinStorableDecimal() {
+        return minStorableValue;
+    }
+
+    @Override
+    public double getMaxOrMaxStorableDecimal() {
+        // the values can be updated at any time, so we cannot use the maximum of the current values
+        return maxStorableValue;
+    }
+
+    @Override
+    public double getNextStorableValue(double value) {
+        float f = (float) value;
+        return f < value ? Math.nextUp(f) : f;
+    }
+
+    @Override
+    public double getSmallestNonZeroValue() {
+        return Float.MIN_VALUE;
+    }
+}
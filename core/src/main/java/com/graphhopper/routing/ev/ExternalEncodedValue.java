@@ -0,0 +1,322 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ev;
+
+import com.carrotsearch.hppc.BitSet;
+import com.carrotsearch.hppc.LongIntHashMap;
+import com.carrotsearch.hppc.cursors.LongIntCursor;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.util.GHUtility;
+
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Base class of the encoded values whose values are not stored within the edge flags of the graph, but in a separate
+ * {@link DataAccess} per encoded value. The BaseGraph attaches the DataAccess and creates, loads, flushes and closes it
+ * together with the rest of the graph. External encoded values can be used in custom models like any other encoded
+ * value.
+ * <p>
+ * Unlike other encoded values they can be changed while the graph is used for routing. The values set via the
+ * setters of the encoded value interfaces are written to the storage directly, which is meant for the import and is
+ * not safe while other threads read the values. At runtime use the update methods of the subclasses instead: every
+ * update is applied to a copy of a small overlay that is published at once, so readers see either none or all values
+ * of an update. Once the overlay becomes too large it is merged into the storage. Profiles with a CH or LM
+ * preparation cannot use external encoded values, because the preparations would not reflect the updates.
+ */
+public abstract class ExternalEncodedValue implements EncodedValue {
+    private static final int MAX_OVERLAY_SIZE = 1 << 16;
+    private static final Snapshot EMPTY = new Snapshot(new LongIntHashMap(0), 0);
+    protected final String name;
+    protected final boolean storeTwoDirections;
+    private transient DataAccess storage;
+    private transient IntSupplier edges;
+    private transient volatile Snapshot snapshot = EMPTY;
+    private transient volatile long version;
+
+    /**
+     * The updated values that are not merged into the storage yet and the number of values that fit into the
+     * storage. A snapshot is never modified after it was published.
+     */
+    private static final class Snapshot {
+        final LongIntHashMap overlay;
+        final long capacity;
+
+        Snapshot(LongIntHashMap overlay, long capacity) {
+            this.overlay = overlay;
+            this.capacity = capacity;
+        }
+    }
+
+    protected ExternalEncodedValue(String name, boolean storeTwoDirections) {
+        this.name = name;
+        this.storeTwoDirections = storeTwoDirections;
+    }
+
+    /**
+     * @return the number of bits that are used per value in the storage, either 1 or 32
+     */
+    protected abstract int getBitsPerValue();
+
+    @Override
+    public int init(InitializerConfig init) {
+        // nothing is stored in the edge flags
+        return 0;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isStoreTwoDirections() {
+        return storeTwoDirections;
+    }
+
+    /**
+     * Attaches the storage, which needs to be created or loaded before the values can be accessed. An encoded value
+     * can only be attached to a single graph at a time, so every graph needs its own EncodingManager.
+     *
+     * @param edges the current number of edges of the graph, values can only be set for existing edges
+     */
+    public synchronized void setDataAccess(DataAccess storage, IntSupplier edges) {
+        if (this.storage != null)
+            throw new IllegalStateException("The external encoded value " + name + " is already attached to a graph. "
+                    + "Every graph needs its own EncodingManager");
+        this.storage = storage;
+        this.edges = edges;
+        this.snapshot = EMPTY;
+    }
+
+    public synchronized void create(long initBytes) {
+        checkAttached();
+        storage.create(initBytes);
+        storage.setHeader(0, getBitsPerValue());
+        version = 0;
+        snapshot = new Snapshot(EMPTY.overlay, getValueCapacity());
+    }
+
+    public synchronized boolean loadExisting() {
+        checkAttached();
+        if (!storage.loadExisting())
+            return false;
+        if (storage.getHeader(0) != getBitsPerValue())
+            throw new IllegalStateException("Encoded value " + name + " uses " + getBitsPerValue() + " bits per value, but "
+                    + storage.getName() + " stores " + storage.getHeader(0));
+        version = ((long) storage.getHeader(2 * 4) << 32) | (storage.getHeader(4) & 0xFFFF_FFFFL);
+        snapshot = new Snapshot(EMPTY.overlay, getValueCapacity());
+        return true;
+    }
+
+    /**
+     * Merges the updates into the storage and writes it to disk (if the storage is persistent).
+     */
+    public synchronized void flush() {
+        checkAttached();
+        mergeOverlay();
+        storage.setHeader(0, getBitsPerValue());
+        storage.setHeader(4, (int) version);
+        storage.setHeader(2 * 4, (int) (version >>> 32));
+        storage.flush();
+    }
+
+    /**
+     * Closes and detaches the storage.
+     */
+    public synchronized void close() {
+        if (storage != null && !storage.isClosed())
+            storage.close();
+        storage = null;
+        edges = null;
+        snapshot = EMPTY;
+    }
+
+    /**
+     * @return a number that increases whenever values are changed. It is stored together with the values, so caches
+     * of data derived from the values, e.g. on disk, can detect that they are outdated.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the sum of the versions of all external encoded values of the given lookup. The versions only increase,
+     * so the sum changes whenever a value of one of these encoded values changes.
+     */
+    public static long getVersionSum(EncodedValueLookup lookup) {
+        long sum = 0;
+        for (EncodedValue ev : lookup.getEncodedValues())
+            if (ev instanceof ExternalEncodedValue)
+                sum += ((ExternalEncodedValue) ev).getVersion();
+        return sum;
+    }
+
+    public long getCapacity() {
+        return storage == null ? 0 : storage.getCapacity();
+    }
+
+    /**
+     * Moves the values of every edge to the new edge id, see BaseGraph#sortEdges. Like the edges themselves the values
+     * are moved in place by following the cycles of the permutation.
+     *
+     * @param edges the number of edges in the graph
+     */
+    public synchronized void sortEdges(IntUnaryOperator getNewEdgeForOldEdge, int edges) {
+        checkAttached();
+        mergeOverlay();
+        ensureValueCapacity(getIndex(edges, false));
+        BitSet visited = new BitSet(edges);
+        for (int edge = 0; edge < edges; edge++) {
+            if (visited.get(edge)) continue;
+            int curr = edge;
+            int value = read(storage, getIndex(edge, false));
+            int reverseValue = storeTwoDirections ? read(storage, getIndex(edge, true)) : 0;
+            do {
+                visited.set(curr);
+                int newEdge = getNewEdgeForOldEdge.applyAsInt(curr);
+                int tmpValue = read(storage, getIndex(newEdge, false));
+                write(storage, getIndex(newEdge, false), value);
+                value = tmpValue;
+                if (storeTwoDirections) {
+                    int tmpReverseValue = read(storage, getIndex(newEdge, true));
+                    write(storage, getIndex(newEdge, true), reverseValue);
+                    reverseValue = tmpReverseValue;
+                }
+                curr = newEdge;
+            } while (curr != edge);
+        }
+        version++;
+    }
+
+    /**
+     * @return the raw value of the given edge, i.e. 0 if it was never set
+     */
+    protected final int getRaw(boolean reverse, int edgeId) {
+        long index = getIndex(edgeId, reverse);
+        Snapshot s = snapshot;
+        if (!s.overlay.isEmpty()) {
+            int slot = s.overlay.indexOf(index);
+            if (s.overlay.indexExists(slot))
+                return s.overlay.indexGet(slot);
+        }
+        return index < s.capacity ? read(storage, index) : 0;
+    }
+
+    /**
+     * Writes the raw value directly to the storage, this must not be used while other threads read the values.
+     */
+    protected final synchronized void setRaw(boolean reverse, int edgeId, int value) {
+        checkAttached();
+        checkEdge(edgeId, edges.getAsInt());
+        mergeOverlay();
+        long index = getIndex(edgeId, reverse);
+        ensureValueCapacity(index + 1);
+        write(storage, index, value);
+        version++;
+    }
+
+    /**
+     * Publishes the given raw values at once. For encoded values that do not store two directions the direction of
+     * the edge keys is ignored.
+     */
+    protected final synchronized void publish(int[] edgeKeys, int[] values) {
+        if (edgeKeys.length != values.length)
+            throw new IllegalArgumentException("edgeKeys and values must have the same length, " + edgeKeys.length + " vs. " + values.length);
+        checkAttached();
+        int edgeCount = edges.getAsInt();
+        for (int edgeKey : edgeKeys) {
+            if (edgeKey < 0)
+                throw new IllegalArgumentException("Invalid edge key: " + edgeKey);
+            checkEdge(GHUtility.getEdgeFromEdgeKey(edgeKey), edgeCount);
+        }
+        Snapshot s = snapshot;
+        LongIntHashMap overlay = new LongIntHashMap(s.overlay.size() + edgeKeys.length);
+        overlay.putAll(s.overlay);
+        for (int i = 0; i < edgeKeys.length; i++) {
+            overlay.put(getIndex(GHUtility.getEdgeFromEdgeKey(edgeKeys[i]), edgeKeys[i] % 2 == 1), values[i]);
+        }
+        snapshot = new Snapshot(overlay, s.capacity);
+        version++;
+        if (overlay.size() > MAX_OVERLAY_SIZE)
+            mergeOverlay();
+    }
+
+    /**
+     * Writes the values of the published overlay to the storage and publishes an empty overlay afterwards. Readers
+     * that still use the overlay do not read the storage for the written values.
+     */
+    private void mergeOverlay() {
+        Snapshot s = snapshot;
+        if (s.overlay.isEmpty())
+            return;
+        long maxIndex = -1;
+        for (LongIntCursor cursor : s.overlay)
+            maxIndex = Math.max(maxIndex, cursor.key);
+        // growing the storage only affects values beyond the published capacity, so readers are not affected either
+        ensureValueCapacity(maxIndex + 1);
+        for (LongIntCursor cursor : s.overlay)
+            write(storage, cursor.key, cursor.value);
+        snapshot = new Snapshot(EMPTY.overlay, getValueCapacity());
+    }
+
+    private void ensureValueCapacity(long values) {
+        if (values <= snapshot.capacity)
+            return;
+        storage.ensureCapacity(getBytes(values));
+        snapshot = new Snapshot(snapshot.overlay, getValueCapacity());
+    }
+
+    private long getValueCapacity() {
+        return getBitsPerValue() == 1 ? storage.getCapacity() * 8 : storage.getCapacity() / 4;
+    }
+
+    private long getBytes(long values) {
+        return getBitsPerValue() == 1 ? (values + 7) / 8 : values * 4;
+    }
+
+    private long getIndex(int edgeId, boolean reverse) {
+        return storeTwoDirections ? (2L * edgeId + (reverse ? 1 : 0)) : edgeId;
+    }
+
+    private int read(DataAccess da, long index) {
+        if (getBitsPerValue() == 1)
+            return (da.getByte(index >>> 3) >>> (index & 7)) & 1;
+        return da.getInt(index * 4);
+    }
+
+    private void write(DataAccess da, long index, int value) {
+        if (getBitsPerValue() == 1) {
+            int mask = 1 << (index & 7);
+            byte b = da.getByte(index >>> 3);
+            da.setByte(index >>> 3, (byte) (value != 0 ? b | mask : b & ~mask));
+        } else {
+            da.setInt(index * 4, value);
+        }
+    }
+
+    private void checkEdge(int edgeId, int edgeCount) {
+        if (edgeId < 0 || edgeId >= edgeCount)
+            throw new IllegalArgumentException("Edge " + edgeId + " does not exist, the graph has " + edgeCount + " edges");
+    }
+
+    private void checkAttached() {
+        if (storage == null)
+            throw new IllegalStateException("The external encoded value " + name + " is not attached to a graph");
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.routing.ev;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * An integer encoded value whose values are not stored within the graph edges, see {@link ExternalEncodedValue}. Uses
+ * 32 bits per value. Edges that were never set have the value 0.
+ */
+public class ExternalIntEncodedValue extends ExternalEncodedValue implements IntEncodedValue {
+    private final int minStorableValue;
+    private final int maxStorableValue;
+
+    @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
+    public ExternalIntEncodedValue(
+            @JsonProperty("name") String name,
+            @JsonProperty("min_storable_value") int minStorableValue,
+            @JsonProperty("max_storable_value") int maxStorableValue,
+            @JsonProperty("store_two_directions") boolean storeTwoDirections
+    ) {
+        super(name, storeTwoDirections);
+        if (minStorableValue > maxStorableValue)
+            throw new IllegalArgumentException(name + ": minimum value " + minStorableValue + " must not be larger than maximum value " + maxStorableValue);
+        this.minStorableValue = minStorableValue;
+        this.maxStorableValue = maxStorableValue;
+    }
+
+    @Override
+    protected int getBitsPerValue() {
+        return 32;
+    }
+
+    @Override
+    public void setInt(boolean reverse, int edgeId, EdgeIntAccess edgeIntAccess, int value) {
+        setRaw(reverse, edgeId, checkValue(value));
+    }
+
+    @Override
+    public int getInt(boolean reverse, int edgeId, EdgeIntAccess edgeIntAccess) {
+        return getRaw(reverse, edgeId);
+    }
+
+    /**
+     * Sets the values of the given edges at once while the graph can be used for routing.
+     */
+    public void update(int[] edgeKeys, int[] values) {
+        int[] rawValues = new int[values.length];
+        for (int i = 0; i < values.length; i++)
+            rawValues[i] = checkValue(values[i]);
+        publish(edgeKeys, rawValues);
+    }
+
+    private int checkValue(int value) {
+        if (value < minStorableValue || value > maxStorableValue)
+            throw new IllegalArgumentException(name + " value " + value + " is out of range [" + minStorableValue + ", " + maxStorableValue + "]");
+        return value;
+    }
+
+    @Override
+    public int getMaxStorableInt() {
+        return maxStorableValue;
+    }
+
+    @Override
+    public int getMinStorableInt() {
+        return minStorableValue;
+    }
+
+    @Override
+    public int getMaxOrMaxStorableInt() {
+        // the values can be updated at any time, so we cannot use the maximum of the current values
+        return maxStorableValue;
+    }
+}
@@ -36,6 +36,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
@@ -52,20 +53,41 @@ public class CustomModelParser {
 
     // Without a cache the class creation takes 10-40ms which makes routingLM8 requests 20% slower on average.
     // CH requests and preparation is unaffected as cached weighting from preparation is used.
-    // Use accessOrder==true to remove oldest accessed entry, not oldest inserted.
+    // The key is the generated source code without the numeric literals and area ids of the custom model, see
+    // LiteralLifter, so custom models that only differ in these values share the same class.
     private static final int CACHE_SIZE = Integer.getInteger("graphhopper.custom_weighting.cache_size", 1000);
-    private static final Map<String, Class<?>> CACHE = Collections.synchronizedMap(
-            new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
-                protected boolean removeEldestEntry(Map.Entry eldest) {
-                    return size() > CACHE_SIZE;
-                }
-            });
+    private static final ClassCache CACHE = new ClassCache(CACHE_SIZE);
 
     // This internal cache ensures that the "internal" Weighting classes specified in the profiles, are never removed regardless
-    // of how frequent other Weightings are created and accessed. We only need to synchronize the get and put methods alone.
-    // E.g. we do not care for the race condition where two identical classes are requested and one of them is overwritten.
-    // TODO perf compare with ConcurrentHashMap, but I guess, if there is a difference at all, it is not big for small maps
-    private static final Map<String, Class<?>> INTERNAL_CACHE = Collections.synchronizedMap(new HashMap<>());
+    // of how frequent other Weightings are created and accessed. It is keyed by the full custom model so that the
+    // source code does not need to be created again for every request.
+    private static final Map<String, CompiledHelper> INTERNAL_CACHE = new ConcurrentHashMap<>();
+    // The parameters created from closures are immutable, so for the internal custom models we can reuse them.
+    private static final Map<String, CustomWeighting.Parameters> INTERNAL_LAMBDA_CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * Determines how the expressions of a custom model are evaluated.
+     */
+    public enum Evaluator {
+        /**
+         * Generates and compiles a subclass of CustomWeightingHelper. The compilation takes 10-40ms for a custom model
+         * that is not in the cache, but the evaluation is fast.
+         */
+        JANINO,
+        /**
+         * Creates a tree of closures. This is much faster for custom models that were not seen before, but the
+         * evaluation is slower. Custom models that this evaluator does not support, e.g. with a turn_penalty, are
+         * compiled with Janino.
+         */
+        LAMBDA;
+
+        public static Evaluator find(String name) {
+            for (Evaluator evaluator : values())
+                if (evaluator.name().equalsIgnoreCase(name))
+                    return evaluator;
+            throw new IllegalArgumentException("Unknown custom model evaluator: " + name + ", supported: " + Arrays.toString(values()));
+        }
+    }
 
     private CustomModelParser() {
         // utility class
@@ -89,28 +111,40 @@ public class CustomModelParser {
      * and returns an instance.
      */
     public static CustomWeighting.Parameters createWeightingParameters(CustomModel customModel, EncodedValueLookup lookup) {
-        String key = customModel.toString();
-        Class<?> clazz = customModel.isInternal() ? INTERNAL_CACHE.get(key) : null;
-        if (CACHE_SIZE > 0 && clazz == null)
-            clazz = CACHE.get(key);
-        if (clazz == null) {
-            clazz = createClazz(customModel, lookup);
-            if (customModel.isInternal()) {
-                INTERNAL_CACHE.put(key, clazz);
+        return createWeightingParameters(customModel, lookup, Evaluator.JANINO);
+    }
+
+    /**
+     * Like {@link #createWeightingParameters(CustomModel, EncodedValueLookup)} but the expressions are evaluated with
+     * the specified evaluator.
+     */
+    public static CustomWeighting.Parameters createWeightingParameters(CustomModel customModel, EncodedValueLookup lookup,
+                                                                       Evaluator evaluator) {
+        if (evaluator == Evaluator.LAMBDA) {
+            CustomWeighting.Parameters parameters = createLambdaParameters(customModel, lookup);
+            if (parameters != null)
+                return parameters;
+        }
+
+        String internalKey = customModel.isInternal() ? customModel.toString() : null;
+        CompiledHelper compiled = internalKey == null ? null : INTERNAL_CACHE.get(internalKey);
+        if (compiled == null) {
+            compiled = compile(customModel, lookup);
+            if (internalKey != null) {
+                INTERNAL_CACHE.put(internalKey, compiled);
                 if (INTERNAL_CACHE.size() > 100) {
-                    CACHE.putAll(INTERNAL_CACHE);
+                    INTERNAL_CACHE.values().forEach(c -> CACHE.put(c.key, c.clazz));
                     INTERNAL_CACHE.clear();
                     LoggerFactory.getLogger(CustomModelParser.class).warn("Internal cache must stay small but was "
                             + INTERNAL_CACHE.size() + ". Cleared it. Misuse of CustomModel::internal?");
                 }
-            } else if (CACHE_SIZE > 0) {
-                CACHE.put(key, clazz);
             }
         }
 
         try {
             // The class does not need to be thread-safe as we create an instance per request
-            CustomWeightingHelper prio = (CustomWeightingHelper) clazz.getDeclaredConstructor().newInstance();
+            CustomWeightingHelper prio = (CustomWeightingHelper) compiled.clazz.getDeclaredConstructor(double[].class, String[].class).
+                    newInstance(compiled.literals, compiled.areaIds);
             prio.init(customModel, lookup, CustomModel.getAreasAsMap(customModel.getAreas()));
             return new CustomWeighting.Parameters(
                     prio::getSpeed, prio::calcMaxSpeed,
@@ -123,6 +157,52 @@ public class CustomModelParser {
         }
     }
 
+    /**
+     * @return null if the custom model contains expressions that are not supported by LambdaCustomModelCompiler
+     */
+    private static CustomWeighting.Parameters createLambdaParameters(CustomModel customModel, EncodedValueLookup lookup) {
+        String internalKey = customModel.isInternal() ? customModel.toString() : null;
+        CustomWeighting.Parameters parameters = internalKey == null ? null : INTERNAL_LAMBDA_CACHE.get(internalKey);
+        if (parameters != null)
+            return parameters;
+        try {
+            // the source code is only created to validate the custom model in the same way as for Janino
+            createHelperSource(customModel, lookup);
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Cannot compile expression: " + ex.getMessage(), ex);
+        }
+        parameters = LambdaCustomModelCompiler.createWeightingParameters(customModel, lookup);
+        if (parameters == null)
+            return null;
+        if (internalKey != null && INTERNAL_LAMBDA_CACHE.size() < 100)
+            INTERNAL_LAMBDA_CACHE.put(internalKey, parameters);
+        return parameters;
+    }
+
+    static int getCacheSize() {
+        return CACHE.size();
+    }
+
+    /**
+     * Creates the source code for the specified CustomModel and compiles it, if no class for the same source code
+     * exists in the cache.
+     */
+    private static CompiledHelper compile(CustomModel customModel, EncodedValueLookup lookup) {
+        try {
+            HelperSource source = createHelperSource(customModel, lookup);
+            Class<?> clazz = CACHE_SIZE > 0 ? CACHE.get(source.key) : null;
+            if (clazz == null) {
+                clazz = createClazz(source, lookup);
+                if (CACHE_SIZE > 0)
+                    CACHE.put(source.key, clazz);
+            }
+            return new CompiledHelper(source.key, clazz, source.lifter.getLiterals(), source.lifter.getAreaIds());
+        } catch (Exception ex) {
+            String errString = "Cannot compile expression";
+            throw new IllegalArgumentException(errString + ": " + ex.getMessage(), ex);
+        }
+    }
+
     /**
      * This method does the following:
      * <ul>
@@ -132,49 +212,77 @@ public class CustomModelParser {
      * </li>
      * <li>2. parse conditional expression of priority and speed statements -> done in ConditionalExpressionVisitor (don't parse RHS expressions again)
      * </li>
-     * <li>3. create class template as String, inject the created statements and create the Class
+     * <li>3. replace the numeric literals and area ids of these expressions with fields, see LiteralLifter
      * </li>
      * </ul>
      */
-    private static Class<?> createClazz(CustomModel customModel, EncodedValueLookup lookup) {
-        try {
-            Set<String> priorityVariables = ValueExpressionVisitor.findVariables(customModel.getPriority(), lookup);
-            List<Java.BlockStatement> priorityStatements = createGetPriorityStatements(priorityVariables, customModel, lookup);
+    private static HelperSource createHelperSource(CustomModel customModel, EncodedValueLookup lookup) throws Exception {
+        LiteralLifter lifter = new LiteralLifter();
+        Set<String> priorityVariables = ValueExpressionVisitor.findVariables(customModel.getPriority(), lookup);
+        String priorityStatements = createGetPriorityStatements(priorityVariables, customModel, lookup, lifter);
+
+        if (customModel.getSpeed().isEmpty())
+            throw new IllegalArgumentException("At least one initial statement under 'speed' is required.");
+
+        List<Statement> firstGroup = splitIntoGroup(customModel.getSpeed()).get(0);
+        if (firstGroup.size() > 1) {
+            Statement lastSt = firstGroup.get(firstGroup.size() - 1);
+            if (lastSt.operation() != Statement.Op.LIMIT || lastSt.keyword() != Statement.Keyword.ELSE)
+                throw new IllegalArgumentException("The first group needs to end with an 'else' (or contain a single unconditional 'if' statement).");
+        } else {
+            Statement firstSt = firstGroup.get(0);
+            if (!"true".equals(firstSt.condition()) || firstSt.operation() != Statement.Op.LIMIT || firstSt.keyword() != Statement.Keyword.IF)
+                throw new IllegalArgumentException("The first group needs to contain a single unconditional 'if' statement (or end with an 'else').");
+        }
 
-            if (customModel.getSpeed().isEmpty())
-                throw new IllegalArgumentException("At least one initial statement under 'speed' is required.");
+        Set<String> speedVariables = ValueExpressionVisitor.findVariables(customModel.getSpeed(), lookup);
+        String speedStatements = createGetSpeedStatements(speedVariables, customModel, lookup, lifter);
+
+        Set<String> turnPenaltyVariables = ValueExpressionVisitor.findVariables(customModel.getTurnPenalty(), lookup);
+        String turnPenaltyStatements = createGetTurnPenaltyStatements(turnPenaltyVariables, customModel, lookup, lifter);
+
+        Map<String, JsonFeature> areas = CustomModel.getAreasAsMap(customModel.getAreas());
+        for (String id : lifter.getAreaIds()) {
+            JsonFeature feature = areas.get(id);
+            if (feature == null)
+                throw new IllegalArgumentException("Area '" + id + "' wasn't found");
+            if (feature.getGeometry() == null)
+                throw new IllegalArgumentException("Area '" + id + "' does not contain a geometry");
+            if (!(feature.getGeometry() instanceof Polygonal))
+                throw new IllegalArgumentException("Currently only type=Polygon is supported for areas but was " + feature.getGeometry().getGeometryType());
+            if (feature.getBBox() != null)
+                throw new IllegalArgumentException("Bounding box of area " + id + " must be empty");
+        }
 
-            List<Statement> firstGroup = splitIntoGroup(customModel.getSpeed()).get(0);
-            if (firstGroup.size() > 1) {
-                Statement lastSt = firstGroup.get(firstGroup.size() - 1);
-                if (lastSt.operation() != Statement.Op.LIMIT || lastSt.keyword() != Statement.Keyword.ELSE)
-                    throw new IllegalArgumentException("The first group needs to end with an 'else' (or contain a single unconditional 'if' statement).");
-            } else {
-                Statement firstSt = firstGroup.get(0);
-                if (!"true".equals(firstSt.condition()) || firstSt.operation() != Statement.Op.LIMIT || firstSt.keyword() != Statement.Keyword.IF)
-                    throw new IllegalArgumentException("The first group needs to contain a single unconditional 'if' statement (or end with an 'else').");
-            }
+        HelperSource source = new HelperSource(lifter, priorityVariables, speedVariables, turnPenaltyVariables,
+                priorityStatements, speedStatements, turnPenaltyStatements);
+        // the counter is not part of the key
+        source.key = createClassTemplate(0, source, lookup) + "\n" + priorityStatements + "\n" + speedStatements + "\n" + turnPenaltyStatements;
+        return source;
+    }
 
-            Set<String> speedVariables = ValueExpressionVisitor.findVariables(customModel.getSpeed(), lookup);
-            List<Java.BlockStatement> speedStatements = createGetSpeedStatements(speedVariables, customModel, lookup);
-
-            Set<String> turnPenaltyVariables = ValueExpressionVisitor.findVariables(customModel.getTurnPenalty(), lookup);
-            List<Java.BlockStatement> turnPenaltyStatements = createGetTurnPenaltyStatements(turnPenaltyVariables, customModel, lookup);
-
-            // Create different class name, which is required only for debugging.
-            // TODO does it improve performance too? I.e. it could be that the JIT is confused if different classes
-            //  have the same name and it mixes performance stats. See https://github.com/janino-compiler/janino/issues/137
-            long counter = longVal.incrementAndGet();
-            String classTemplate = createClassTemplate(counter, priorityVariables, speedVariables, turnPenaltyVariables, lookup, CustomModel.getAreasAsMap(customModel.getAreas()));
-            Java.CompilationUnit cu = (Java.CompilationUnit) new Parser(new Scanner("source", new StringReader(classTemplate))).
-                    parseAbstractCompilationUnit();
-            cu = injectStatements(priorityStatements, speedStatements, turnPenaltyStatements, cu);
-            SimpleCompiler sc = createCompiler(counter, cu);
-            return sc.getClassLoader().loadClass("com.graphhopper.routing.weighting.custom.JaninoCustomWeightingHelperSubclass" + counter);
-        } catch (Exception ex) {
-            String errString = "Cannot compile expression";
-            throw new IllegalArgumentException(errString + ": " + ex.getMessage(), ex);
-        }
+    /**
+     * Creates the class template as String, injects the created statements and creates the Class.
+     */
+    private static Class<?> createClazz(HelperSource source, EncodedValueLookup lookup) throws Exception {
+        List<Java.BlockStatement> priorityStatements = parseBlockStatements("priority entry", source.priorityStatements);
+        List<Java.BlockStatement> speedStatements = parseBlockStatements("speed entry", source.speedStatements);
+        List<Java.BlockStatement> turnPenaltyStatements = parseBlockStatements("turn_penalty entry", source.turnPenaltyStatements);
+
+        // Create different class name, which is required only for debugging.
+        // TODO does it improve performance too? I.e. it could be that the JIT is confused if different classes
+        //  have the same name and it mixes performance stats. See https://github.com/janino-compiler/janino/issues/137
+        long counter = longVal.incrementAndGet();
+        String classTemplate = createClassTemplate(counter, source, lookup);
+        Java.CompilationUnit cu = (Java.CompilationUnit) new Parser(new Scanner("source", new StringReader(classTemplate))).
+                parseAbstractCompilationUnit();
+        cu = injectStatements(priorityStatements, speedStatements, turnPenaltyStatements, cu);
+        SimpleCompiler sc = createCompiler(counter, cu);
+        return sc.getClassLoader().loadClass("com.graphhopper.routing.weighting.custom.JaninoCustomWeightingHelperSubclass" + counter);
+    }
+
+    private static List<Java.BlockStatement> parseBlockStatements(String info, String statements) throws CompileException, IOException {
+        return new Parser(new org.codehaus.janino.Scanner(info, new StringReader(statements))).parseBlockStatements();
     }
 
     public static List<String> findVariablesForEncodedValuesString(CustomModel model, NameValidator nameValidator, ClassHelper classHelper) {
@@ -195,6 +303,21 @@ public class CustomModelParser {
         return new ArrayList<>(variables);
     }
 
+    /**
+     * @return the names of the encoded values that are used in the priority and speed statements of the specified
+     * custom model. For a variable like backward_car_access the name of the encoded value, i.e. car_access, is returned.
+     */
+    public static List<String> findEncodedValues(CustomModel model, EncodedValueLookup lookup) {
+        Set<String> encodedValues = new LinkedHashSet<>();
+        for (String variable : findVariablesForEncodedValuesString(model, s -> lookup.hasEncodedValue(removeBackwardPrefix(s)), s -> ""))
+            encodedValues.add(removeBackwardPrefix(variable));
+        return new ArrayList<>(encodedValues);
+    }
+
+    private static String removeBackwardPrefix(String variable) {
+        return variable.startsWith(BACKWARD_PREFIX) ? variable.substring(BACKWARD_PREFIX.length()) : variable;
+    }
+
     private static void findVariablesForEncodedValuesString(List<Statement> statements, NameValidator nameValidator, ClassHelper classHelper) {
         List<List<Statement>> groups = CustomModelParser.splitIntoGroup(statements);
         for (List<Statement> group : groups) {
@@ -231,18 +354,16 @@ public class CustomModelParser {
      *
      * @return the created statements (parsed expressions)
      */
-    private static List<Java.BlockStatement> createGetSpeedStatements(Set<String> speedVariables,
-                                                                      CustomModel customModel, EncodedValueLookup lookup) throws Exception {
-        List<Java.BlockStatement> speedStatements = new ArrayList<>(verifyExpressions(new StringBuilder(),
-                "speed entry", speedVariables, customModel.getSpeed(), lookup));
+    private static String createGetSpeedStatements(Set<String> speedVariables, CustomModel customModel,
+                                                   EncodedValueLookup lookup, LiteralLifter lifter) throws Exception {
+        String speedStatements = verifyExpressions(new StringBuilder(),
+                "speed entry", speedVariables, customModel.getSpeed(), lookup, lifter);
         String speedMethodStartBlock = "double value = " + CustomWeightingHelper.GLOBAL_MAX_SPEED + ";\n";
         // potentially we fetch EncodedValues twice (one time here and one time for priority)
         for (String arg : speedVariables) {
             speedMethodStartBlock += getVariableDeclaration(lookup, arg);
         }
-        speedStatements.addAll(0, new Parser(new org.codehaus.janino.Scanner("getSpeed", new StringReader(speedMethodStartBlock))).
-                parseBlockStatements());
-        return speedStatements;
+        return speedMethodStartBlock + speedStatements;
     }
 
     /**
@@ -250,21 +371,19 @@ public class CustomModelParser {
      *
      * @return the created statements (parsed expressions)
      */
-    private static List<Java.BlockStatement> createGetPriorityStatements(Set<String> priorityVariables,
-                                                                         CustomModel customModel, EncodedValueLookup lookup) throws Exception {
+    private static String createGetPriorityStatements(Set<String> priorityVariables, CustomModel customModel,
+                                                      EncodedValueLookup lookup, LiteralLifter lifter) throws Exception {
         for (Statement s : customModel.getPriority()) {
             if (s.operation() == Statement.Op.ADD)
                 throw new IllegalArgumentException("'priority' statement must not have the operation 'add'");
         }
-        List<Java.BlockStatement> priorityStatements = new ArrayList<>(verifyExpressions(new StringBuilder(),
-                "priority entry", priorityVariables, customModel.getPriority(), lookup));
+        String priorityStatements = verifyExpressions(new StringBuilder(),
+                "priority entry", priorityVariables, customModel.getPriority(), lookup, lifter);
         String priorityMethodStartBlock = "double value = " + CustomWeightingHelper.GLOBAL_PRIORITY + ";\n";
         for (String arg : priorityVariables) {
             priorityMethodStartBlock += getVariableDeclaration(lookup, arg);
         }
-        priorityStatements.addAll(0, new Parser(new org.codehaus.janino.Scanner("getPriority", new StringReader(priorityMethodStartBlock))).
-                parseBlockStatements());
-        return priorityStatements;
+        return priorityMethodStartBlock + priorityStatements;
     }
 
     /**
@@ -272,8 +391,8 @@ public class CustomModelParser {
      *
      * @return the created statements (parsed expressions)
      */
-    private static List<Java.BlockStatement> createGetTurnPenaltyStatements(Set<String> turnPenaltyVariables,
-                                                                            CustomModel customModel, EncodedValueLookup lookup) throws Exception {
+    private static String createGetTurnPenaltyStatements(Set<String> turnPenaltyVariables, CustomModel customModel,
+                                                         EncodedValueLookup lookup, LiteralLifter lifter) throws Exception {
         for (Statement s : customModel.getTurnPenalty()) {
             if (s.operation() == Statement.Op.ADD && s.value().trim().startsWith("-"))
                 throw new IllegalArgumentException("The value for the 'add' operation must be positive, but was: " + s.value());
@@ -283,8 +402,8 @@ public class CustomModelParser {
                 throw new IllegalArgumentException("'turn_penalty' statement must have the operation 'add' but was: " + s.operation() + " (not yet implemented)");
         }
 
-        List<Java.BlockStatement> turnPenaltyStatements = new ArrayList<>(verifyExpressions(new StringBuilder(),
-                "turn_penalty entry", turnPenaltyVariables, customModel.getTurnPenalty(), lookup));
+        String turnPenaltyStatements = verifyExpressions(new StringBuilder(),
+                "turn_penalty entry", turnPenaltyVariables, customModel.getTurnPenalty(), lookup, lifter);
         boolean needTwoDirections = false;
         Function<String, EncodedValue> fct = createSimplifiedLookup(lookup);
         for (String ttv : turnPenaltyVariables) {
@@ -316,9 +435,7 @@ public class CustomModelParser {
             turnPenaltyVariables.add(Orientation.KEY);
         }
 
-        turnPenaltyStatements.addAll(0, new Parser(new org.codehaus.janino.Scanner("getTurnPenalty", new StringReader(turnPenaltyMethodStartBlock))).
-                parseBlockStatements());
-        return turnPenaltyStatements;
+        return turnPenaltyMethodStartBlock + turnPenaltyStatements;
     }
 
     /**
@@ -409,27 +526,30 @@ public class CustomModelParser {
      * means that the source file is free from user input and could be directly compiled. Before we do this we still
      * have to inject that parsed and safe user expressions in a later step.
      */
-    private static String createClassTemplate(long counter,
-                                              Set<String> priorityVariables,
-                                              Set<String> speedVariables,
-                                              Set<String> turnPenaltyVariables,
-                                              EncodedValueLookup lookup, Map<String, JsonFeature> areas) {
+    private static String createClassTemplate(long counter, HelperSource source, EncodedValueLookup lookup) {
         final StringBuilder importSourceCode = new StringBuilder("import com.graphhopper.routing.ev.*;\n");
         importSourceCode.append("import java.util.Map;\n");
         importSourceCode.append("import " + CustomModel.class.getName() + ";\n");
         importSourceCode.append("import " + BaseGraph.class.getName() + ";\n");
         importSourceCode.append("import " + EdgeIntAccess.class.getName() + ";\n");
         final StringBuilder classSourceCode = new StringBuilder(100);
-        boolean includedAreaImports = false;
+        classSourceCode.append("protected final String[] areaIds;\n");
+
+        final StringBuilder constructorSourceCode = new StringBuilder("this.areaIds = areaIds;\n");
+        for (int i = 0; i < source.lifter.literalTypes.size(); i++) {
+            String type = source.lifter.literalTypes.get(i);
+            classSourceCode.append("protected final " + type + " " + LiteralLifter.LITERAL_PREFIX + i + ";\n");
+            constructorSourceCode.append("this." + LiteralLifter.LITERAL_PREFIX + i + " = (" + type + ") literals[" + i + "];\n");
+        }
 
         final StringBuilder initSourceCode = new StringBuilder("this.lookup = lookup;\n");
         initSourceCode.append("this.customModel = customModel;\n");
-        Set<String> set = new HashSet<>();
-        for (String prioVar : priorityVariables)
+        Set<String> set = new TreeSet<>();
+        for (String prioVar : source.priorityVariables)
             set.add(prioVar.startsWith(BACKWARD_PREFIX) ? prioVar.substring(BACKWARD_PREFIX.length()) : prioVar);
-        for (String speedVar : speedVariables)
+        for (String speedVar : source.speedVariables)
             set.add(speedVar.startsWith(BACKWARD_PREFIX) ? speedVar.substring(BACKWARD_PREFIX.length()) : speedVar);
-        for (String speedVar : turnPenaltyVariables)
+        for (String speedVar : source.turnPenaltyVariables)
             set.add(speedVar.startsWith(PREV_PREFIX) ? speedVar.substring(PREV_PREFIX.length()) : speedVar);
 
         for (String arg : set) {
@@ -439,37 +559,28 @@ public class CustomModelParser {
                 initSourceCode.append("this." + arg + "_enc = (" + getInterface(enc)
                         + ") lookup.getEncodedValue(\"" + arg + "\", EncodedValue.class);\n");
             } else if (arg.startsWith(IN_AREA_PREFIX)) {
-                if (!includedAreaImports) {
-                    importSourceCode.append("import " + BBox.class.getName() + ";\n");
-                    importSourceCode.append("import " + GHUtility.class.getName() + ";\n");
-                    importSourceCode.append("import " + PreparedPolygon.class.getName() + ";\n");
-                    importSourceCode.append("import " + Polygonal.class.getName() + ";\n");
-                    importSourceCode.append("import " + JsonFeature.class.getName() + ";\n");
-                    importSourceCode.append("import " + Polygon.class.getName() + ";\n");
-                    includedAreaImports = true;
-                }
-
                 if (!JsonFeature.isValidId(arg))
                     throw new IllegalArgumentException("Area has invalid name: " + arg);
-                String id = arg.substring(IN_AREA_PREFIX.length());
-                JsonFeature feature = areas.get(id);
-                if (feature == null)
-                    throw new IllegalArgumentException("Area '" + id + "' wasn't found");
-                if (feature.getGeometry() == null)
-                    throw new IllegalArgumentException("Area '" + id + "' does not contain a geometry");
-                if (!(feature.getGeometry() instanceof Polygonal))
-                    throw new IllegalArgumentException("Currently only type=Polygon is supported for areas but was " + feature.getGeometry().getGeometryType());
-                if (feature.getBBox() != null)
-                    throw new IllegalArgumentException("Bounding box of area " + id + " must be empty");
-                classSourceCode.append("protected " + Polygon.class.getSimpleName() + " " + arg + ";\n");
-                initSourceCode.append("JsonFeature feature_" + id + " = (JsonFeature) areas.get(\"" + id + "\");\n");
-                initSourceCode.append("this." + arg + " = new Polygon(new PreparedPolygon((Polygonal) feature_" + id + ".getGeometry()));\n");
             } else {
-                if (!arg.startsWith(IN_AREA_PREFIX))
-                    throw new IllegalArgumentException("Variable not supported: " + arg);
+                throw new IllegalArgumentException("Variable not supported: " + arg);
             }
         }
 
+        if (!source.lifter.areaIds.isEmpty()) {
+            importSourceCode.append("import " + BBox.class.getName() + ";\n");
+            importSourceCode.append("import " + GHUtility.class.getName() + ";\n");
+            importSourceCode.append("import " + PreparedPolygon.class.getName() + ";\n");
+            importSourceCode.append("import " + Polygonal.class.getName() + ";\n");
+            importSourceCode.append("import " + JsonFeature.class.getName() + ";\n");
+            importSourceCode.append("import " + Polygon.class.getName() + ";\n");
+        }
+        for (int i = 0; i < source.lifter.areaIds.size(); i++) {
+            String area = LiteralLifter.AREA_PREFIX + i;
+            classSourceCode.append("protected " + Polygon.class.getSimpleName() + " " + area + ";\n");
+            initSourceCode.append("JsonFeature feature_" + i + " = (JsonFeature) areas.get(areaIds[" + i + "]);\n");
+            initSourceCode.append("this." + area + " = new Polygon(new PreparedPolygon((Polygonal) feature_" + i + ".getGeometry()));\n");
+        }
+
         return ""
                 + "package com.graphhopper.routing.weighting.custom;\n"
                 + "import " + CustomWeightingHelper.class.getName() + ";\n"
@@ -478,6 +589,9 @@ public class CustomModelParser {
                 + importSourceCode
                 + "\npublic class JaninoCustomWeightingHelperSubclass" + counter + " extends " + CustomWeightingHelper.class.getSimpleName() + " {\n"
                 + classSourceCode
+                + "   public JaninoCustomWeightingHelperSubclass" + counter + "(double[] literals, String[] areaIds) {\n"
+                + constructorSourceCode
+                + "   }\n\n"
                 + "   @Override\n"
                 + "   public void init(CustomModel customModel, EncodedValueLookup lookup, Map<String, " + JsonFeature.class.getName() + "> areas) {\n"
                 + initSourceCode
@@ -504,10 +618,12 @@ public class CustomModelParser {
      * 2. while this check it also guesses the variable names and stores it in createObjects
      * 3. creates if-then-elseif expressions from the checks and returns them as BlockStatements
      *
+     * 4. replaces the numeric literals and area ids with fields via the specified LiteralLifter
+     *
      * @return the created if-then, else and elseif statements
      */
-    private static List<Java.BlockStatement> verifyExpressions(StringBuilder expressions, String info, Set<String> createObjects,
-                                                               List<Statement> list, EncodedValueLookup lookup) throws Exception {
+    private static String verifyExpressions(StringBuilder expressions, String info, Set<String> createObjects,
+                                            List<Statement> list, EncodedValueLookup lookup, LiteralLifter lifter) throws Exception {
         // allow variables, all encoded values, constants and special variables like in_xyarea or backward_car_access
         NameValidator nameInConditionValidator = name -> lookup.hasEncodedValue(name)
                 || name.toUpperCase(Locale.ROOT).equals(name) || name.startsWith(IN_AREA_PREFIX) || name.equals(CHANGE_ANGLE)
@@ -522,8 +638,7 @@ public class CustomModelParser {
 
         parseExpressions(expressions, nameInConditionValidator, info, createObjects, list, helper, "");
         expressions.append("return value;\n");
-        return new Parser(new org.codehaus.janino.Scanner(info, new StringReader(expressions.toString()))).
-                parseBlockStatements();
+        return lifter.lift(info, expressions.toString());
     }
 
     private static Function<String, EncodedValue> createSimplifiedLookup(EncodedValueLookup lookup) {
@@ -660,4 +775,94 @@ public class CustomModelParser {
             return compiler;
         }
     }
+
+    private static class HelperSource {
+        final LiteralLifter lifter;
+        final Set<String> priorityVariables, speedVariables, turnPenaltyVariables;
+        final String priorityStatements, speedStatements, turnPenaltyStatements;
+        String key;
+
+        HelperSource(LiteralLifter lifter, Set<String> priorityVariables, Set<String> speedVariables, Set<String> turnPenaltyVariables,
+                     String priorityStatements, String speedStatements, String turnPenaltyStatements) {
+            this.lifter = lifter;
+            this.priorityVariables = priorityVariables;
+            this.speedVariables = speedVariables;
+            this.turnPenaltyVariables = turnPenaltyVariables;
+            this.priorityStatements = priorityStatements;
+            this.speedStatements = speedStatements;
+            this.turnPenaltyStatements = turnPenaltyStatements;
+        }
+    }
+
+    private static class CompiledHelper {
+        final String key;
+        final Class<?> clazz;
+        final double[] literals;
+        final String[] areaIds;
+
+        CompiledHelper(String key, Class<?> clazz, double[] literals, String[] areaIds) {
+            this.key = key;
+            this.clazz = clazz;
+            this.literals = literals;
+            this.areaIds = areaIds;
+        }
+    }
+
+    /**
+     * A bounded cache that does not lock for reads. If the cache is full the least recently accessed entry is removed,
+     * which requires a scan over all entries but this only happens after a class was compiled.
+     */
+    static class ClassCache {
+        private final int maxSize;
+        private final ConcurrentHashMap<String, Entry> map = new ConcurrentHashMap<>();
+        private final AtomicLong clock = new AtomicLong();
+
+        ClassCache(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        Class<?> get(String key) {
+            Entry entry = map.get(key);
+            if (entry == null)
+                return null;
+            entry.lastAccess = clock.incrementAndGet();
+            return entry.clazz;
+        }
+
+        void put(String key, Class<?> clazz) {
+            map.put(key, new Entry(clazz, clock.incrementAndGet()));
+            if (map.size() > maxSize)
+                evict();
+        }
+
+        private synchronized void evict() {
+            while (map.size() > maxSize) {
+                String oldestKey = null;
+                long oldestAccess = Long.MAX_VALUE;
+                for (Map.Entry<String, Entry> e : map.entrySet()) {
+                    if (e.getValue().lastAccess < oldestAccess) {
+                        oldestAccess = e.getValue().lastAccess;
+                        oldestKey = e.getKey();
+                    }
+                }
+                if (oldestKey == null)
+                    return;
+                map.remove(oldestKey);
+            }
+        }
+
+        int size() {
+            return map.size();
+        }
+
+        private static class Entry {
+            final Class<?> clazz;
+            volatile long lastAccess;
+
+            Entry(Class<?> clazz, long lastAccess) {
+                this.clazz = clazz;
+                this.lastAccess = lastAccess;
+            }
+        }
+    }
 }
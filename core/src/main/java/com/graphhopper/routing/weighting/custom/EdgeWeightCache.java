@@ -0,0 +1,138 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.util.EdgeIteratorState;
+
+/**
+ * Stores the speed and priority that the custom model of a profile yields for every edge key, so that
+ * {@link CustomWeighting} can read them from an array instead of evaluating the custom model for every edge
+ * relaxation. This only works for custom models that do not change, i.e. not for per-request custom models and not
+ * for custom models that use encoded values that can be updated at runtime.
+ * <p>
+ * The values are stored as floats that are rounded towards zero, so the maximum speed and priority of the custom
+ * model remain upper bounds and the weights are never smaller than the original ones. Virtual edges are not cached.
+ */
+public class EdgeWeightCache {
+    private static final int HASH_HEADER = 0;
+    private static final int EDGES_HEADER = 4;
+    private static final int BYTES_PER_EDGE_KEY = 8;
+    private final DataAccess da;
+    private int edges;
+
+    private EdgeWeightCache(DataAccess da) {
+        this.da = da;
+    }
+
+    public static String getName(String profileName) {
+        return "edge_weight_cache_" + profileName;
+    }
+
+    /**
+     * Loads the cache of the given profile from the directory. If it does not exist or if it was built for a different
+     * custom model (hash) or graph it is built from the given parameters and, if persist is true, stored.
+     */
+    public static EdgeWeightCache loadOrBuild(Directory dir, String profileName, BaseGraph graph,
+                                              CustomWeighting.Parameters parameters, int hash, boolean persist) {
+        String name = getName(profileName);
+        EdgeWeightCache cache = new EdgeWeightCache(persist ? dir.create(name) : dir.create(name, DAType.RAM));
+        if (cache.da.loadExisting()) {
+            if (cache.da.getHeader(HASH_HEADER) == hash && cache.da.getHeader(EDGES_HEADER) == graph.getEdges()) {
+                cache.edges = graph.getEdges();
+                return cache;
+            }
+            // the custom model or the graph changed
+            dir.remove(name);
+            cache = new EdgeWeightCache(persist ? dir.create(name) : dir.create(name, DAType.RAM));
+        }
+        cache.build(graph, parameters, hash);
+        if (persist)
+            cache.da.flush();
+        return cache;
+    }
+
+    private void build(BaseGraph graph, CustomWeighting.Parameters parameters, int hash) {
+        edges = graph.getEdges();
+        da.create((long) edges * 2 * BYTES_PER_EDGE_KEY);
+        da.setHeader(HASH_HEADER, hash);
+        da.setHeader(EDGES_HEADER, edges);
+        CustomWeighting.EdgeToDoubleMapping speedMapping = parameters.getEdgeToSpeedMapping();
+        CustomWeighting.EdgeToDoubleMapping priorityMapping = parameters.getEdgeToPriorityMapping();
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            // the iterator is in storage direction, so getEdgeKey is even and the reverse edge key is odd
+            long pointer = (long) iter.getEdgeKey() * BYTES_PER_EDGE_KEY;
+            set(pointer, speedMapping.get(iter, false), priorityMapping.get(iter, false));
+            set(pointer + BYTES_PER_EDGE_KEY, speedMapping.get(iter, true), priorityMapping.get(iter, true));
+        }
+    }
+
+    private void set(long pointer, double speed, double priority) {
+        da.setInt(pointer, Float.floatToRawIntBits(toFloatTowardsZero(speed)));
+        da.setInt(pointer + 4, Float.floatToRawIntBits(toFloatTowardsZero(priority)));
+    }
+
+    static float toFloatTowardsZero(double value) {
+        float f = (float) value;
+        if (f > value && f > 0)
+            return Math.nextDown(f);
+        if (f < value && f < 0)
+            return Math.nextUp(f);
+        return f;
+    }
+
+    /**
+     * @return parameters that read the speed and priority from this cache for all edges of the graph the cache was
+     * built for and use the given parameters for other (virtual) edges
+     */
+    public CustomWeighting.Parameters wrap(CustomWeighting.Parameters parameters) {
+        CustomWeighting.EdgeToDoubleMapping speedMapping = parameters.getEdgeToSpeedMapping();
+        CustomWeighting.EdgeToDoubleMapping priorityMapping = parameters.getEdgeToPriorityMapping();
+        return new CustomWeighting.Parameters(
+                (edge, reverse) -> edge.getEdge() < edges ? get(edge, reverse, 0) : speedMapping.get(edge, reverse),
+                parameters.getMaxSpeedCalc(),
+                (edge, reverse) -> edge.getEdge() < edges ? get(edge, reverse, 4) : priorityMapping.get(edge, reverse),
+                parameters.getMaxPrioCalc(),
+                parameters.getTurnPenaltyMapping(),
+                parameters.getDistanceInfluence(),
+                parameters.getHeadingPenaltySeconds());
+    }
+
+    private double get(EdgeIteratorState edge, boolean reverse, int offset) {
+        int edgeKey = reverse ? edge.getReverseEdgeKey() : edge.getEdgeKey();
+        return Float.intBitsToFloat(da.getInt((long) edgeKey * BYTES_PER_EDGE_KEY + offset));
+    }
+
+    public int getEdges() {
+        return edges;
+    }
+
+    public long getCapacity() {
+        return da.getCapacity();
+    }
+
+    public void close() {
+        if (!da.isClosed())
+            da.close();
+    }
+}
@@ -0,0 +1,478 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import com.graphhopper.json.Statement;
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.JsonFeature;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.shapes.Polygon;
+import org.codehaus.janino.Java;
+import org.codehaus.janino.Parser;
+import org.codehaus.janino.Scanner;
+import org.codehaus.janino.TokenType;
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.geom.prep.PreparedPolygon;
+import org.slf4j.LoggerFactory;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.graphhopper.routing.weighting.custom.CustomModelParser.BACKWARD_PREFIX;
+import static com.graphhopper.routing.weighting.custom.CustomModelParser.IN_AREA_PREFIX;
+
+/**
+ * Creates the speed and priority mappings of a custom model from a tree of closures instead of compiling a class with
+ * Janino. This avoids the compilation costs for custom models that were not seen before, at the price of a slower
+ * evaluation because of the virtual calls between the closures.
+ * <p>
+ * The custom model must have been validated before, see {@link CustomModelParser}. Expressions that are not supported
+ * here, e.g. turn penalties or string comparisons, make {@link #createWeightingParameters} return null and the caller
+ * should fall back to the Janino compilation. The created closures are immutable and can be shared between threads.
+ */
+final class LambdaCustomModelCompiler {
+
+    private LambdaCustomModelCompiler() {
+        // utility class
+    }
+
+    /**
+     * @return null if the custom model contains expressions that are not supported
+     */
+    static CustomWeighting.Parameters createWeightingParameters(CustomModel customModel, EncodedValueLookup lookup) {
+        try {
+            return create(customModel, lookup);
+        } catch (UnsupportedExpressionException ex) {
+            LoggerFactory.getLogger(LambdaCustomModelCompiler.class).debug("Custom model not supported by the lambda evaluator, use Janino: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    private static CustomWeighting.Parameters create(CustomModel customModel, EncodedValueLookup lookup) {
+        if (!customModel.getTurnPenalty().isEmpty())
+            throw new UnsupportedExpressionException("turn_penalty is not supported");
+        Map<String, JsonFeature> areas = CustomModel.getAreasAsMap(customModel.getAreas());
+        Context context = new Context(lookup, areas);
+        Action speedAction = context.compileStatements(customModel.getSpeed());
+        Action priorityAction = context.compileStatements(customModel.getPriority());
+        final double initialSpeed = CustomWeightingHelper.GLOBAL_MAX_SPEED;
+        final double initialPriority = CustomWeightingHelper.GLOBAL_PRIORITY;
+
+        CustomWeightingHelper maxCalcHelper = new CustomWeightingHelper();
+        maxCalcHelper.init(customModel, lookup, areas);
+        return new CustomWeighting.Parameters(
+                (edge, reverse) -> speedAction.apply(edge, reverse, initialSpeed), maxCalcHelper::calcMaxSpeed,
+                (edge, reverse) -> priorityAction.apply(edge, reverse, initialPriority), maxCalcHelper::calcMaxPriority,
+                (graph, edgeIntAccess, inEdge, viaNode, outEdge) -> 0,
+                customModel.getDistanceInfluence() == null ? 0 : customModel.getDistanceInfluence(),
+                customModel.getHeadingPenalty() == null ? Parameters.Routing.DEFAULT_HEADING_PENALTY : customModel.getHeadingPenalty());
+    }
+
+    /**
+     * Applies a statement or a list of statements to the current value.
+     */
+    interface Action {
+        double apply(EdgeIteratorState edge, boolean reverse, double value);
+    }
+
+    interface BooleanExpression {
+        boolean get(EdgeIteratorState edge, boolean reverse);
+    }
+
+    interface NumberExpression {
+        double get(EdgeIteratorState edge, boolean reverse);
+    }
+
+    interface EnumExpression {
+        Enum<?> get(EdgeIteratorState edge, boolean reverse);
+    }
+
+    /**
+     * The result of compiling an expression. Exactly one of the expression fields is set, except for the upper case
+     * names like PRIMARY, which can only be resolved when the type of the other side of the comparison is known.
+     */
+    private static class Compiled {
+        BooleanExpression bool;
+        NumberExpression number;
+        EnumExpression enumeration;
+        Class<?> enumType;
+        String constantName;
+        // to avoid a closure for a literal
+        double numberLiteral = Double.NaN;
+
+        boolean isNumberLiteral() {
+            return number != null && !Double.isNaN(numberLiteral);
+        }
+    }
+
+    private static class Context {
+        private final EncodedValueLookup lookup;
+        private final Map<String, JsonFeature> areas;
+
+        Context(EncodedValueLookup lookup, Map<String, JsonFeature> areas) {
+            this.lookup = lookup;
+            this.areas = areas;
+        }
+
+        Action compileStatements(List<Statement> statements) {
+            List<List<Statement>> groups = CustomModelParser.splitIntoGroup(statements);
+            if (groups.isEmpty())
+                return (edge, reverse, value) -> value;
+            if (groups.size() == 1)
+                return compileGroup(groups.get(0));
+            Action[] actions = new Action[groups.size()];
+            for (int i = 0; i < actions.length; i++)
+                actions[i] = compileGroup(groups.get(i));
+            return (edge, reverse, value) -> {
+                for (Action action : actions)
+                    value = action.apply(edge, reverse, value);
+                return value;
+            };
+        }
+
+        private Action compileGroup(List<Statement> group) {
+            BooleanExpression[] conditions = new BooleanExpression[group.size()];
+            Action[] actions = new Action[group.size()];
+            for (int i = 0; i < group.size(); i++) {
+                Statement statement = group.get(i);
+                // null means that the statement is always applied: 'else' or a 'true' condition
+                conditions[i] = statement.keyword() == Statement.Keyword.ELSE || "true".equals(statement.condition().trim())
+                        ? null : compileCondition(statement.condition());
+                actions[i] = statement.isBlock() ? compileStatements(statement.doBlock()) : compileOperation(statement);
+            }
+            if (group.size() == 1) {
+                BooleanExpression condition = conditions[0];
+                Action action = actions[0];
+                if (condition == null)
+                    return action;
+                return (edge, reverse, value) -> condition.get(edge, reverse) ? action.apply(edge, reverse, value) : value;
+            }
+            return (edge, reverse, value) -> {
+                for (int i = 0; i < conditions.length; i++) {
+                    if (conditions[i] == null || conditions[i].get(edge, reverse))
+                        return actions[i].apply(edge, reverse, value);
+                }
+                return value;
+            };
+        }
+
+        private Action compileOperation(Statement statement) {
+            String valueExpression = statement.value().trim();
+            if (statement.operation() == Statement.Op.ADD && valueExpression.equals("Infinity"))
+                return (edge, reverse, value) -> Double.POSITIVE_INFINITY;
+            Compiled compiled = compile(parse(valueExpression));
+            if (compiled.number == null)
+                throw new UnsupportedExpressionException("value must be a number: " + valueExpression);
+            if (compiled.isNumberLiteral()) {
+                double c = compiled.numberLiteral;
+                return switch (statement.operation()) {
+                    case MULTIPLY -> (edge, reverse, value) -> value * c;
+                    case LIMIT -> (edge, reverse, value) -> Math.min(value, c);
+                    case ADD -> (edge, reverse, value) -> value + c;
+                    default -> throw new UnsupportedExpressionException("unsupported operation " + statement.operation());
+                };
+            }
+            NumberExpression expression = compiled.number;
+            return switch (statement.operation()) {
+                case MULTIPLY -> (edge, reverse, value) -> value * expression.get(edge, reverse);
+                case LIMIT -> (edge, reverse, value) -> Math.min(value, expression.get(edge, reverse));
+                case ADD -> (edge, reverse, value) -> value + expression.get(edge, reverse);
+                default -> throw new UnsupportedExpressionException("unsupported operation " + statement.operation());
+            };
+        }
+
+        private BooleanExpression compileCondition(String condition) {
+            Compiled compiled = compile(parse(condition));
+            if (compiled.bool == null)
+                throw new UnsupportedExpressionException("condition must be a boolean expression: " + condition);
+            return compiled.bool;
+        }
+
+        private static Java.Rvalue parse(String expression) {
+            try {
+                Parser parser = new Parser(new Scanner("lambda", new StringReader(expression)));
+                Java.Rvalue rvalue = parser.parseConditionalExpression().toRvalueOrCompileException();
+                if (parser.peek().type != TokenType.END_OF_INPUT)
+                    throw new UnsupportedExpressionException("cannot parse " + expression);
+                return rvalue;
+            } catch (UnsupportedExpressionException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new UnsupportedExpressionException("cannot parse " + expression, ex);
+            }
+        }
+
+        private Compiled compile(Java.Rvalue rv) {
+            if (rv instanceof Java.ParenthesizedExpression p)
+                return compile(p.value);
+            if (rv instanceof Java.AmbiguousName n)
+                return compileName(n);
+            if (rv instanceof Java.IntegerLiteral || rv instanceof Java.FloatingPointLiteral)
+                return numberLiteral(parseNumber(((Java.Literal) rv).value));
+            if (rv instanceof Java.BooleanLiteral b) {
+                boolean value = Boolean.parseBoolean(b.value);
+                Compiled result = new Compiled();
+                result.bool = (edge, reverse) -> value;
+                return result;
+            }
+            if (rv instanceof Java.UnaryOperation uo)
+                return compileUnary(uo);
+            if (rv instanceof Java.BinaryOperation bo)
+                return compileBinary(bo);
+            if (rv instanceof Java.MethodInvocation mi)
+                return compileMethod(mi);
+            throw new UnsupportedExpressionException("unsupported expression " + rv);
+        }
+
+        private static double parseNumber(String literal) {
+            String value = literal.replace("_", "");
+            char last = value.charAt(value.length() - 1);
+            if (last == 'f' || last == 'F' || value.startsWith("0x") || value.startsWith("0X")
+                    || value.length() > 1 && value.charAt(0) == '0' && Character.isDigit(value.charAt(1)))
+                throw new UnsupportedExpressionException("unsupported number literal " + literal);
+            if (last == 'l' || last == 'L' || last == 'd' || last == 'D')
+                value = value.substring(0, value.length() - 1);
+            return Double.parseDouble(value);
+        }
+
+        private static Compiled numberLiteral(double value) {
+            Compiled result = new Compiled();
+            result.number = (edge, reverse) -> value;
+            result.numberLiteral = value;
+            return result;
+        }
+
+        private Compiled compileName(Java.AmbiguousName n) {
+            if (n.n != 1)
+                throw new UnsupportedExpressionException("unsupported name " + n);
+            String name = n.identifiers[0];
+            Compiled result = new Compiled();
+            if (name.startsWith(IN_AREA_PREFIX)) {
+                JsonFeature feature = areas.get(name.substring(IN_AREA_PREFIX.length()));
+                if (feature == null || !(feature.getGeometry() instanceof Polygonal))
+                    throw new UnsupportedExpressionException("unsupported area " + name);
+                Polygon polygon = new Polygon(new PreparedPolygon((Polygonal) feature.getGeometry()));
+                result.bool = (edge, reverse) -> CustomWeightingHelper.in(polygon, edge);
+                return result;
+            }
+            boolean backward = false;
+            String evName = name;
+            if (!lookup.hasEncodedValue(name) && name.startsWith(BACKWARD_PREFIX)) {
+                backward = true;
+                evName = name.substring(BACKWARD_PREFIX.length());
+            }
+            if (!lookup.hasEncodedValue(evName)) {
+                if (name.toUpperCase(Locale.ROOT).equals(name)) {
+                    result.constantName = name;
+                    return result;
+                }
+                throw new UnsupportedExpressionException("unknown name " + name);
+            }
+            EncodedValue ev = lookup.getEncodedValue(evName, EncodedValue.class);
+            // for backward_xy we read the value of the other direction
+            final boolean swap = backward;
+            if (ev instanceof StringEncodedValue) {
+                throw new UnsupportedExpressionException("string encoded values are not supported: " + name);
+            } else if (ev instanceof EnumEncodedValue<?> enumEnc) {
+                result.enumeration = swap
+                        ? (edge, reverse) -> reverse ? edge.get(enumEnc) : edge.getReverse(enumEnc)
+                        : (edge, reverse) -> reverse ? edge.getReverse(enumEnc) : edge.get(enumEnc);
+                result.enumType = enumEnc.getEnumType();
+            } else if (ev instanceof DecimalEncodedValue decEnc) {
+                result.number = swap
+                        ? (edge, reverse) -> reverse ? edge.get(decEnc) : edge.getReverse(decEnc)
+                        : (edge, reverse) -> reverse ? edge.getReverse(decEnc) : edge.get(decEnc);
+            } else if (ev instanceof BooleanEncodedValue boolEnc) {
+                result.bool = swap
+                        ? (edge, reverse) -> reverse ? edge.get(boolEnc) : edge.getReverse(boolEnc)
+                        : (edge, reverse) -> reverse ? edge.getReverse(boolEnc) : edge.get(boolEnc);
+            } else if (ev instanceof IntEncodedValue intEnc) {
+                result.number = swap
+                        ? (edge, reverse) -> reverse ? edge.get(intEnc) : edge.getReverse(intEnc)
+                        : (edge, reverse) -> reverse ? edge.getReverse(intEnc) : edge.get(intEnc);
+            } else {
+                throw new UnsupportedExpressionException("unsupported encoded value " + name);
+            }
+            return result;
+        }
+
+        private Compiled compileUnary(Java.UnaryOperation uo) {
+            Compiled operand = compile(uo.operand);
+            Compiled result = new Compiled();
+            if (uo.operator.equals("!") && operand.bool != null) {
+                BooleanExpression b = operand.bool;
+                result.bool = (edge, reverse) -> !b.get(edge, reverse);
+            } else if (uo.operator.equals("-") && operand.number != null) {
+                if (operand.isNumberLiteral())
+                    return numberLiteral(-operand.numberLiteral);
+                NumberExpression x = operand.number;
+                result.number = (edge, reverse) -> -x.get(edge, reverse);
+            } else {
+                throw new UnsupportedExpressionException("unsupported unary operation " + uo);
+            }
+            return result;
+        }
+
+        private Compiled compileBinary(Java.BinaryOperation bo) {
+            Compiled lhs = compile(bo.lhs);
+            Compiled rhs = compile(bo.rhs);
+            String op = bo.operator;
+            Compiled result = new Compiled();
+            if (op.equals("&&") || op.equals("||")) {
+                if (lhs.bool == null || rhs.bool == null)
+                    throw new UnsupportedExpressionException("operands of " + op + " must be boolean: " + bo);
+                BooleanExpression l = lhs.bool, r = rhs.bool;
+                result.bool = op.equals("&&")
+                        ? (edge, reverse) -> l.get(edge, reverse) && r.get(edge, reverse)
+                        : (edge, reverse) -> l.get(edge, reverse) || r.get(edge, reverse);
+            } else if (op.equals("==") || op.equals("!=")) {
+                BooleanExpression equals = compileEquals(lhs, rhs, bo);
+                result.bool = op.equals("==") ? equals : (edge, reverse) -> !equals.get(edge, reverse);
+            } else if (lhs.number != null && rhs.number != null) {
+                if (op.equals("<") || op.equals("<=") || op.equals(">") || op.equals(">="))
+                    result.bool = compileComparison(op, lhs, rhs);
+                else
+                    result.number = compileArithmetic(op, lhs, rhs);
+            } else {
+                throw new UnsupportedExpressionException("unsupported binary operation " + bo);
+            }
+            return result;
+        }
+
+        private BooleanExpression compileEquals(Compiled lhs, Compiled rhs, Java.BinaryOperation bo) {
+            if (lhs.constantName != null && rhs.enumeration != null)
+                return compileEquals(rhs, lhs, bo);
+            if (lhs.enumeration != null && rhs.constantName != null) {
+                Enum<?> constant = findEnumConstant(lhs.enumType, rhs.constantName);
+                EnumExpression e = lhs.enumeration;
+                return (edge, reverse) -> e.get(edge, reverse) == constant;
+            }
+            if (lhs.enumeration != null && rhs.enumeration != null && lhs.enumType == rhs.enumType) {
+                EnumExpression l = lhs.enumeration, r = rhs.enumeration;
+                return (edge, reverse) -> l.get(edge, reverse) == r.get(edge, reverse);
+            }
+            if (lhs.bool != null && rhs.bool != null) {
+                BooleanExpression l = lhs.bool, r = rhs.bool;
+                return (edge, reverse) -> l.get(edge, reverse) == r.get(edge, reverse);
+            }
+            if (lhs.number != null && rhs.number != null) {
+                if (rhs.isNumberLiteral()) {
+                    NumberExpression l = lhs.number;
+                    double c = rhs.numberLiteral;
+                    return (edge, reverse) -> l.get(edge, reverse) == c;
+                }
+                NumberExpression l = lhs.number, r = rhs.number;
+                return (edge, reverse) -> l.get(edge, reverse) == r.get(edge, reverse);
+            }
+            throw new UnsupportedExpressionException("unsupported comparison " + bo);
+        }
+
+        private static Enum<?> findEnumConstant(Class<?> enumType, String name) {
+            for (Object constant : enumType.getEnumConstants())
+                if (((Enum<?>) constant).name().equals(name))
+                    return (Enum<?>) constant;
+            throw new UnsupportedExpressionException("cannot find " + name + " in " + enumType.getSimpleName());
+        }
+
+        private static BooleanExpression compileComparison(String op, Compiled lhs, Compiled rhs) {
+            NumberExpression l = lhs.number;
+            if (rhs.isNumberLiteral()) {
+                // the most common case, e.g. max_speed > 50
+                double c = rhs.numberLiteral;
+                return switch (op) {
+                    case "<" -> (edge, reverse) -> l.get(edge, reverse) < c;
+                    case "<=" -> (edge, reverse) -> l.get(edge, reverse) <= c;
+                    case ">" -> (edge, reverse) -> l.get(edge, reverse) > c;
+                    default -> (edge, reverse) -> l.get(edge, reverse) >= c;
+                };
+            }
+            NumberExpression r = rhs.number;
+            return switch (op) {
+                case "<" -> (edge, reverse) -> l.get(edge, reverse) < r.get(edge, reverse);
+                case "<=" -> (edge, reverse) -> l.get(edge, reverse) <= r.get(edge, reverse);
+                case ">" -> (edge, reverse) -> l.get(edge, reverse) > r.get(edge, reverse);
+                default -> (edge, reverse) -> l.get(edge, reverse) >= r.get(edge, reverse);
+            };
+        }
+
+        private static NumberExpression compileArithmetic(String op, Compiled lhs, Compiled rhs) {
+            NumberExpression l = lhs.number, r = rhs.number;
+            // the division is not supported as it would be an integer division in Java for two integer operands
+            return switch (op) {
+                case "+" -> (edge, reverse) -> l.get(edge, reverse) + r.get(edge, reverse);
+                case "-" -> (edge, reverse) -> l.get(edge, reverse) - r.get(edge, reverse);
+                case "*" -> (edge, reverse) -> l.get(edge, reverse) * r.get(edge, reverse);
+                default -> throw new UnsupportedExpressionException("unsupported operator " + op);
+            };
+        }
+
+        private Compiled compileMethod(Java.MethodInvocation mi) {
+            if (!(mi.target instanceof Java.AmbiguousName target) || target.n != 1)
+                throw new UnsupportedExpressionException("unsupported method call " + mi);
+            String targetName = target.identifiers[0];
+            Compiled result = new Compiled();
+            if (targetName.equals("Math") && mi.arguments.length == 1) {
+                Compiled argument = compile(mi.arguments[0]);
+                if (argument.number == null)
+                    throw new UnsupportedExpressionException("unsupported method call " + mi);
+                NumberExpression x = argument.number;
+                switch (mi.methodName) {
+                    case "sqrt" -> result.number = (edge, reverse) -> Math.sqrt(x.get(edge, reverse));
+                    case "abs" -> result.number = (edge, reverse) -> Math.abs(x.get(edge, reverse));
+                    default -> throw new UnsupportedExpressionException("unsupported method call " + mi);
+                }
+                return result;
+            }
+            if (mi.arguments.length != 0)
+                throw new UnsupportedExpressionException("unsupported method call " + mi);
+            if (targetName.equals("edge") && mi.methodName.equals("getDistance")) {
+                result.number = (edge, reverse) -> edge.getDistance();
+                return result;
+            }
+            Compiled compiledTarget = compileName(target);
+            if (compiledTarget.enumeration != null && mi.methodName.equals("ordinal")) {
+                EnumExpression e = compiledTarget.enumeration;
+                result.number = (edge, reverse) -> e.get(edge, reverse).ordinal();
+                return result;
+            }
+            if (compiledTarget.enumeration != null && compiledTarget.enumType == Country.class && mi.methodName.equals("isRightHandTraffic")) {
+                EnumExpression e = compiledTarget.enumeration;
+                result.bool = (edge, reverse) -> ((Country) e.get(edge, reverse)).isRightHandTraffic();
+                return result;
+            }
+            throw new UnsupportedExpressionException("unsupported method call " + mi);
+        }
+    }
+
+    /**
+     * Signals an expression that cannot be evaluated with closures, so the custom model has to be compiled with Janino.
+     */
+    private static final class UnsupportedExpressionException extends RuntimeException {
+        UnsupportedExpressionException(String message) {
+            super(message);
+        }
+
+        UnsupportedExpressionException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
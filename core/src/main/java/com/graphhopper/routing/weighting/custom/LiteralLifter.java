@@ -0,0 +1,101 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.janino.Scanner;
+import org.codehaus.janino.Token;
+import org.codehaus.janino.TokenType;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.graphhopper.routing.weighting.custom.CustomModelParser.IN_AREA_PREFIX;
+
+/**
+ * Replaces the numeric literals and the area references in the generated source code of a custom model with fields
+ * that are set in the constructor of the generated class. E.g. "value *= 0.7" becomes "value *= literal_0" and
+ * "CustomWeightingHelper.in(this.in_city, edge)" becomes "CustomWeightingHelper.in(this.area_0, edge)". Custom models
+ * that only differ in these values then result in the same source code and can use the same compiled class.
+ * <p>
+ * Integer literals are replaced with int fields and floating point literals with double fields, so the semantics of
+ * the expressions do not change. Literals of other types, e.g. 2L or 0.5f, are kept.
+ */
+class LiteralLifter {
+    static final String LITERAL_PREFIX = "literal_";
+    static final String AREA_PREFIX = "area_";
+    final List<String> literalTypes = new ArrayList<>();
+    private final List<Double> literals = new ArrayList<>();
+    final List<String> areaIds = new ArrayList<>();
+    private final Map<String, String> areaFields = new LinkedHashMap<>();
+
+    String lift(String info, String source) throws CompileException, IOException {
+        Scanner scanner = new Scanner(info, new StringReader(source));
+        StringBuilder sb = new StringBuilder(source.length());
+        for (Token token = scanner.produce(); token.type != TokenType.END_OF_INPUT; token = scanner.produce()) {
+            if (token.type == TokenType.INTEGER_LITERAL && isDecimalInt(token.value)) {
+                sb.append(addLiteral("int", Integer.parseInt(token.value)));
+            } else if (token.type == TokenType.FLOATING_POINT_LITERAL && isDouble(token.value)) {
+                sb.append(addLiteral("double", Double.parseDouble(token.value)));
+            } else if (token.type == TokenType.IDENTIFIER && token.value.startsWith(IN_AREA_PREFIX)) {
+                sb.append(areaFields.computeIfAbsent(token.value, k -> {
+                    areaIds.add(k.substring(IN_AREA_PREFIX.length()));
+                    return AREA_PREFIX + (areaIds.size() - 1);
+                }));
+            } else {
+                sb.append(token.value);
+            }
+        }
+        return sb.toString();
+    }
+
+    private String addLiteral(String type, double value) {
+        literalTypes.add(type);
+        literals.add(value);
+        return LITERAL_PREFIX + (literals.size() - 1);
+    }
+
+    private static boolean isDecimalInt(String value) {
+        if (value.isEmpty() || value.length() > 10 || value.length() > 1 && value.charAt(0) == '0')
+            return false;
+        for (int i = 0; i < value.length(); i++)
+            if (value.charAt(i) < '0' || value.charAt(i) > '9')
+                return false;
+        return Long.parseLong(value) <= Integer.MAX_VALUE;
+    }
+
+    private static boolean isDouble(String value) {
+        char last = value.charAt(value.length() - 1);
+        return last != 'f' && last != 'F' && value.indexOf('_') < 0 && !value.startsWith("0x") && !value.startsWith("0X");
+    }
+
+    double[] getLiterals() {
+        double[] result = new double[literals.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = literals.get(i);
+        return result;
+    }
+
+    String[] getAreaIds() {
+        return areaIds.toArray(new String[0]);
+    }
+}
@@ -27,6 +27,8 @@ import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
 
 import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.IntConsumer;
@@ -62,8 +64,18 @@ public class BaseGraph implements Graph, Closeable {
     private long minGeoRef;
     private long maxGeoRef;
     private final int eleBytesPerCoord;
+    private final List<ExternalEncodedValue> externalEncodedValues;
 
     public BaseGraph(Directory dir, boolean withElevation, boolean withTurnCosts, int segmentSize, int bytesForFlags) {
+        this(dir, withElevation, withTurnCosts, segmentSize, bytesForFlags, Collections.emptyList());
+    }
+
+    /**
+     * @param externalEncodedValues the encoded values that are stored in separate DataAccess objects, which are
+     *                              created, loaded, flushed and closed together with this graph
+     */
+    public BaseGraph(Directory dir, boolean withElevation, boolean withTurnCosts, int segmentSize, int bytesForFlags,
+                     List<ExternalEncodedValue> externalEncodedValues) {
         this.dir = dir;
         this.bitUtil = BitUtil.LITTLE;
         this.wayGeometry = dir.create("geometry", segmentSize);
@@ -73,6 +85,9 @@ public class BaseGraph implements Graph, Closeable {
         this.segmentSize = segmentSize;
         this.turnCostStorage = withTurnCosts ? new TurnCostStorage(this, dir.create("turn_costs", dir.getDefaultType("turn_costs", true), segmentSize)) : null;
         this.eleBytesPerCoord = (nodeAccess.getDimension() == 3 ? 3 : 0);
+        this.externalEncodedValues = externalEncodedValues;
+        for (ExternalEncodedValue ev : externalEncodedValues)
+            ev.setDataAccess(dir.create("ext_" + ev.getName(), segmentSize), this::getEdges);
     }
 
     BaseGraphNodesAndEdges getStore() {
@@ -187,6 +202,8 @@ public class BaseGraph implements Graph, Closeable {
         if (supportsTurnCosts()) {
             turnCostStorage.create(initSize);
         }
+        for (ExternalEncodedValue ev : externalEncodedValues)
+            ev.create(initSize);
         setInitialized();
         // 0 stands for no separate geoRef, <0 stands for no separate geoRef but existing edge copies
         minGeoRef = -1;
@@ -226,6 +243,8 @@ public class BaseGraph implements Graph, Closeable {
         if (supportsTurnCosts()) {
             turnCostStorage.flush();
         }
+        for (ExternalEncodedValue ev : externalEncodedValues)
+            ev.flush();
     }
 
     @Override
@@ -238,11 +257,16 @@ public class BaseGraph implements Graph, Closeable {
         if (supportsTurnCosts()) {
             turnCostStorage.close();
         }
+        for (ExternalEncodedValue ev : externalEncodedValues)
+            ev.close();
     }
 
     public long getCapacity() {
-        return store.getCapacity() + edgeKVStorage.getCapacity()
+        long capacity = store.getCapacity() + edgeKVStorage.getCapacity()
                 + wayGeometry.getCapacity() + (supportsTurnCosts() ? turnCostStorage.getCapacity() : 0);
+        for (ExternalEncodedValue ev : externalEncodedValues)
+            capacity += ev.getCapacity();
+        return capacity;
     }
 
     long getMaxGeoRef() {
@@ -264,6 +288,10 @@ public class BaseGraph implements Graph, Closeable {
         if (supportsTurnCosts() && !turnCostStorage.loadExisting())
             return false;
 
+        for (ExternalEncodedValue ev : externalEncodedValues)
+            if (!ev.loadExisting())
+                return false;
+
         setInitialized();
         loadWayGeometryHeader();
         return true;
@@ -384,6 +412,7 @@ public class BaseGraph implements Graph, Closeable {
         store.sortEdges(getNewEdgeForOldEdge);
         if (supportsTurnCosts())
             turnCostStorage.sortEdges(getNewEdgeForOldEdge);
+        sortExternalEncodedValues(getNewEdgeForOldEdge);
     }
 
     public void relabelNodes(IntUnaryOperator getNewNodeForOldNode) {
@@ -394,6 +423,60 @@ public class BaseGraph implements Graph, Closeable {
             turnCostStorage.sortNodes();
     }
 
+    /**
+     * Sorts the edges like {@link #sortEdges(IntUnaryOperator)}, but uses the given number of threads. This needs a
+     * temporary memory mapped copy of the edges, so for a graph that is not stored to disk the edges are sorted in
+     * place using a single thread.
+     */
+    public void sortEdges(IntUnaryOperator getNewEdgeForOldEdge, int threads) {
+        if (threads <= 1 || !dir.getDefaultType().isStoring()) {
+            sortEdges(getNewEdgeForOldEdge);
+            return;
+        }
+        if (isFrozen())
+            throw new IllegalStateException("Cannot sort edges if graph is already frozen");
+        DataAccess tmp = createSortBuffer("edges_sort_tmp");
+        try {
+            store.sortEdges(getNewEdgeForOldEdge, tmp, threads);
+        } finally {
+            dir.remove(tmp.getName());
+        }
+        if (supportsTurnCosts())
+            turnCostStorage.sortEdges(getNewEdgeForOldEdge);
+        sortExternalEncodedValues(getNewEdgeForOldEdge);
+    }
+
+    private void sortExternalEncodedValues(IntUnaryOperator getNewEdgeForOldEdge) {
+        for (ExternalEncodedValue ev : externalEncodedValues)
+            ev.sortEdges(getNewEdgeForOldEdge, getEdges());
+    }
+
+    /**
+     * Relabels the nodes like {@link #relabelNodes(IntUnaryOperator)}, but uses the given number of threads, see
+     * {@link #sortEdges(IntUnaryOperator, int)}.
+     */
+    public void relabelNodes(IntUnaryOperator getNewNodeForOldNode, int threads) {
+        if (threads <= 1 || !dir.getDefaultType().isStoring()) {
+            relabelNodes(getNewNodeForOldNode);
+            return;
+        }
+        if (isFrozen())
+            throw new IllegalStateException("Cannot relabel nodes if graph is already frozen");
+        DataAccess tmp = createSortBuffer("nodes_sort_tmp");
+        try {
+            store.relabelNodes(getNewNodeForOldNode, tmp, threads);
+        } finally {
+            dir.remove(tmp.getName());
+        }
+        if (supportsTurnCosts())
+            turnCostStorage.sortNodes();
+    }
+
+    private DataAccess createSortBuffer(String name) {
+        // we do not want to keep a second copy of the nodes or edges on the heap
+        return dir.create(name, DAType.MMAP, segmentSize);
+    }
+
     @Override
     public EdgeIteratorState getEdgeIteratorState(int edgeId, int adjNode) {
         EdgeIteratorStateImpl edge = new EdgeIteratorStateImpl(this);
@@ -614,6 +697,7 @@ public class BaseGraph implements Graph, Closeable {
 
     public static class Builder {
         private final int bytesForFlags;
+        private final List<ExternalEncodedValue> externalEncodedValues;
         private Directory directory = new RAMDirectory();
         private boolean withElevation = false;
         private boolean withTurnCosts = false;
@@ -621,12 +705,20 @@ public class BaseGraph implements Graph, Closeable {
         private int segmentSize = -1;
 
         public Builder(EncodingManager em) {
-            this(em.getBytesForFlags());
+            this(em.getBytesForFlags(), em.getEncodedValues().stream()
+                    .filter(ev -> ev instanceof ExternalEncodedValue)
+                    .map(ev -> (ExternalEncodedValue) ev)
+                    .toList());
             withTurnCosts(em.needsTurnCostsSupport());
         }
 
         public Builder(int bytesForFlags) {
+            this(bytesForFlags, Collections.emptyList());
+        }
+
+        private Builder(int bytesForFlags, List<ExternalEncodedValue> externalEncodedValues) {
             this.bytesForFlags = bytesForFlags;
+            this.externalEncodedValues = externalEncodedValues;
         }
 
         // todo: maybe rename later, but for now this makes it easier to replace GraphBuilder
@@ -658,7 +750,7 @@ public class BaseGraph implements Graph, Closeable {
         }
 
         public BaseGraph build() {
-            return new BaseGraph(directory, withElevation, withTurnCosts, segmentSize, bytesForFlags);
+            return new BaseGraph(directory, withElevation, withTurnCosts, segmentSize, bytesForFlags, externalEncodedValues);
         }
 
         public BaseGraph create() {
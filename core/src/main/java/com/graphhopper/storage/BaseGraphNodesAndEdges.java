@@ -24,7 +24,9 @@ import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
 
 import java.util.Locale;
+import java.util.function.BiConsumer;
 import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
 
 import static com.graphhopper.util.EdgeIterator.NO_EDGE;
 import static com.graphhopper.util.Helper.nf;
@@ -39,6 +41,8 @@ class BaseGraphNodesAndEdges implements EdgeIntAccess {
     // See OSMReader.addEdge and #1871.
     private static final double INT_DIST_FACTOR = 1000d;
     static double MAX_DIST = Integer.MAX_VALUE / INT_DIST_FACTOR;
+    // number of consecutive nodes or edges that are processed by one task when sorting the graph concurrently
+    private static final int SORT_CHUNK_SIZE = 1 << 16;
 
     // nodes
     private final DataAccess nodes;
@@ -274,10 +278,11 @@ class BaseGraphNodesAndEdges implements EdgeIntAccess {
             } while (curr != edge);
         }
 
-        // update edge references
+        // update edge references, nodes without edges keep NO_EDGE just like the links above
         for (int node = 0; node < getNodes(); node++) {
             long pointer = toNodePointer(node);
-            setEdgeRef(pointer, getNewEdgeForOldEdge.applyAsInt(getEdgeRef(pointer)));
+            int edgeRef = getEdgeRef(pointer);
+            setEdgeRef(pointer, edgeRef == NO_EDGE ? NO_EDGE : getNewEdgeForOldEdge.applyAsInt(edgeRef));
         }
     }
 
@@ -328,6 +333,86 @@ class BaseGraphNodesAndEdges implements EdgeIntAccess {
         }
     }
 
+    /**
+     * Same as {@link #sortEdges(IntUnaryOperator)}, but instead of following the permutation cycles the edge rows are
+     * written to their new position in the given temporary DataAccess and then copied back. Both steps run on chunks
+     * of consecutive edges using the given number of threads. The temporary DataAccess must not be created yet.
+     */
+    public void sortEdges(IntUnaryOperator getNewEdgeForOldEdge, DataAccess tmp, int threads) {
+        tmp.create((long) edgeCount * edgeEntryBytes);
+        tmp.ensureCapacity((long) edgeCount * edgeEntryBytes);
+        runInChunks(edgeCount, threads, (from, to) -> {
+            for (int edge = from; edge < to; edge++) {
+                long pointer = toEdgePointer(edge);
+                long newPointer = toEdgePointer(getNewEdgeForOldEdge.applyAsInt(edge));
+                copyRow(edges, pointer, tmp, newPointer, edgeEntryBytes);
+                int linkA = getLinkA(pointer);
+                int linkB = getLinkB(pointer);
+                tmp.setInt(newPointer + E_LINKA, linkA == NO_EDGE ? NO_EDGE : getNewEdgeForOldEdge.applyAsInt(linkA));
+                tmp.setInt(newPointer + E_LINKB, linkB == NO_EDGE ? NO_EDGE : getNewEdgeForOldEdge.applyAsInt(linkB));
+            }
+        });
+        runInChunks(edgeCount, threads, (from, to) -> {
+            for (int edge = from; edge < to; edge++) {
+                long pointer = toEdgePointer(edge);
+                copyRow(tmp, pointer, edges, pointer, edgeEntryBytes);
+            }
+        });
+        runInChunks(nodeCount, threads, (from, to) -> {
+            for (int node = from; node < to; node++) {
+                long pointer = toNodePointer(node);
+                int edgeRef = getEdgeRef(pointer);
+                setEdgeRef(pointer, edgeRef == NO_EDGE ? NO_EDGE : getNewEdgeForOldEdge.applyAsInt(edgeRef));
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #relabelNodes(IntUnaryOperator)}, but the node rows are written to their new position in the
+     * given temporary DataAccess and then copied back, see {@link #sortEdges(IntUnaryOperator, DataAccess, int)}.
+     */
+    public void relabelNodes(IntUnaryOperator getNewNodeForOldNode, DataAccess tmp, int threads) {
+        runInChunks(edgeCount, threads, (from, to) -> {
+            for (int edge = from; edge < to; edge++) {
+                long pointer = toEdgePointer(edge);
+                setNodeA(pointer, getNewNodeForOldNode.applyAsInt(getNodeA(pointer)));
+                setNodeB(pointer, getNewNodeForOldNode.applyAsInt(getNodeB(pointer)));
+            }
+        });
+        tmp.create((long) nodeCount * nodeEntryBytes);
+        tmp.ensureCapacity((long) nodeCount * nodeEntryBytes);
+        runInChunks(nodeCount, threads, (from, to) -> {
+            for (int node = from; node < to; node++) {
+                long pointer = toNodePointer(node);
+                copyRow(nodes, pointer, tmp, toNodePointer(getNewNodeForOldNode.applyAsInt(node)), nodeEntryBytes);
+            }
+        });
+        runInChunks(nodeCount, threads, (from, to) -> {
+            for (int node = from; node < to; node++) {
+                long pointer = toNodePointer(node);
+                copyRow(tmp, pointer, nodes, pointer, nodeEntryBytes);
+            }
+        });
+    }
+
+    /**
+     * Copies a node or edge row int by int, which works for every DataAccess. Only edge rows have a few trailing bytes
+     * (the geo reference), and these are copied byte by byte like they are written by {@link #setGeoRef}.
+     */
+    private static void copyRow(DataAccess from, long fromPointer, DataAccess to, long toPointer, int rowBytes) {
+        int i = 0;
+        for (; i + 4 <= rowBytes; i += 4)
+            to.setInt(toPointer + i, from.getInt(fromPointer + i));
+        for (; i < rowBytes; i++)
+            to.setByte(toPointer + i, from.getByte(fromPointer + i));
+    }
+
+    private static void runInChunks(int size, int threads, BiConsumer<Integer, Integer> rangeConsumer) {
+        GHUtility.runConcurrently(IntStream.range(0, (size + SORT_CHUNK_SIZE - 1) / SORT_CHUNK_SIZE).mapToObj(chunk -> () ->
+                rangeConsumer.accept(chunk * SORT_CHUNK_SIZE, Math.min(size, (chunk + 1) * SORT_CHUNK_SIZE))
+        ), threads);
+    }
+
     public void ensureNodeCapacity(int node) {
         if (node < nodeCount)
             return;
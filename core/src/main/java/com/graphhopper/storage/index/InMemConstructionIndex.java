@@ -134,4 +134,28 @@ public class InMemConstructionIndex {
             put(keyPart, subentry, depth, value);
         }
     }
+
+    /**
+     * Appends all entries of the other index to this one. Both indices must have been created with the same
+     * IndexStructureInfo. If all edges of the other index are larger than the edges of this index the result is
+     * the same as adding all edges to a single index.
+     */
+    void merge(InMemConstructionIndex other) {
+        merge(root, other.root);
+    }
+
+    private void merge(InMemTreeEntry entry, InMemTreeEntry other) {
+        for (int i = 0; i < other.subEntries.length; i++) {
+            InMemEntry otherSubEntry = other.getSubEntry(i);
+            if (otherSubEntry == null)
+                continue;
+            InMemEntry subEntry = entry.getSubEntry(i);
+            if (subEntry == null)
+                entry.setSubEntry(i, otherSubEntry);
+            else if (subEntry.isLeaf())
+                ((InMemLeafEntry) subEntry).addAll((InMemLeafEntry) otherSubEntry);
+            else
+                merge((InMemTreeEntry) subEntry, (InMemTreeEntry) otherSubEntry);
+        }
+    }
 }
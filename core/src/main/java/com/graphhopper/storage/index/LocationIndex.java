@@ -19,6 +19,10 @@ package com.graphhopper.storage.index;
 
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Provides a way to map real world data "lat,lon" to internal ids/indices of a memory efficient graph
@@ -46,6 +50,47 @@ public interface LocationIndex {
      */
     Snap findClosest(double lat, double lon, EdgeFilter edgeFilter);
 
+    /**
+     * Same as {@link #findClosest(double, double, EdgeFilter)}, but for multiple points. The returned list contains
+     * one Snap for every point in the same order. Implementations can share the work between nearby points.
+     */
+    default List<Snap> findClosest(List<GHPoint> points, EdgeFilter edgeFilter) {
+        List<Snap> snaps = new ArrayList<>(points.size());
+        for (GHPoint point : points)
+            snaps.add(findClosest(point.lat, point.lon, edgeFilter));
+        return snaps;
+    }
+
+    /**
+     * Finds the k closest edges accepted by the edgeFilter and stores them into the given buffer, ordered by their
+     * distance to the specified location. Like {@link #findClosest(double, double, EdgeFilter)} the search is limited
+     * to the neighborhood of the location, so the buffer can contain less than k edges.
+     * <p>
+     * The default implementation only stores the edge found by {@link #findClosest(double, double, EdgeFilter)}.
+     */
+    default void findNearest(double lat, double lon, int k, EdgeFilter edgeFilter, SnapBuffer result) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be positive but was " + k);
+        result.reset(lat, lon);
+        Snap snap = findClosest(lat, lon, edgeFilter);
+        if (snap.isValid())
+            result.add(k, snap);
+    }
+
+    /**
+     * Finds all edges accepted by the edgeFilter that are closer than the given radius (in meters) to the specified
+     * location and stores them into the given buffer, ordered by their distance to the location.
+     * <p>
+     * The default implementation only stores the edge found by {@link #findClosest(double, double, EdgeFilter)} if
+     * it is within the radius. Implementations should override it to find all edges.
+     */
+    default void findWithinRadius(double lat, double lon, double radius, EdgeFilter edgeFilter, SnapBuffer result) {
+        result.reset(lat, lon);
+        Snap snap = findClosest(lat, lon, edgeFilter);
+        if (snap.isValid() && snap.getQueryDistance() <= radius)
+            result.add(1, snap);
+    }
+
     /**
      * This method explores the LocationIndex with the specified Visitor. It visits only the stored edges (and only once)
      * and limited by the queryBBox. Also (a few) more edges slightly outside of queryBBox could be
@@ -17,18 +17,24 @@
  */
 package com.graphhopper.storage.index;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntHashSet;
-import com.graphhopper.routing.util.AllEdgesIterator;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.carrotsearch.hppc.cursors.IntCursor;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
 
 import static com.graphhopper.util.DistancePlaneProjection.DIST_PLANE;
 
@@ -52,12 +58,15 @@ import static com.graphhopper.util.DistancePlaneProjection.DIST_PLANE;
  * @author Peter Karich
  */
 public class LocationIndexTree implements LocationIndex {
+    // the maximum number of edges kept per batch lookup before the edge cache is cleared, see findClosest(List, ...)
+    private static final int MAX_CACHED_EDGES = 10_000;
     private final Directory directory;
     private final Graph graph;
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final NodeAccess nodeAccess;
     private int maxRegionSearch = 4;
     private int minResolutionInMeter = 300;
+    private int threads = 1;
     private boolean initialized = false;
 
     LineIntIndex lineIntIndex;
@@ -118,6 +127,17 @@ public class LocationIndexTree implements LocationIndex {
         return this;
     }
 
+    /**
+     * Sets the number of threads used in prepareIndex. The edges are split into one range per thread and the
+     * resulting partial indices are merged, so the index is the same for any number of threads. With more than one
+     * thread the EdgeFilter passed to prepareIndex is called concurrently and must be thread-safe.
+     */
+    public LocationIndexTree setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1 but was " + threads);
+        this.threads = threads;
+        return this;
+    }
 
     public LocationIndex setResolution(int minResolutionInMeter) {
         if (minResolutionInMeter <= 0)
@@ -148,6 +168,10 @@ public class LocationIndexTree implements LocationIndex {
         return prepareIndex(EdgeFilter.ALL_EDGES);
     }
 
+    /**
+     * @param edgeFilter only the accepted edges are added to the index. The filter must be thread-safe if more than
+     *                   one thread is used, see {@link #setThreads(int)}
+     */
     public LocationIndex prepareIndex(EdgeFilter edgeFilter) {
         if (initialized)
             throw new IllegalStateException("Call prepareIndex only once");
@@ -184,39 +208,65 @@ public class LocationIndexTree implements LocationIndex {
 
     InMemConstructionIndex prepareInMemConstructionIndex(BBox bounds, EdgeFilter edgeFilter) {
         indexStructureInfo = IndexStructureInfo.create(bounds, minResolutionInMeter);
-        InMemConstructionIndex inMem = new InMemConstructionIndex(indexStructureInfo);
-        AllEdgesIterator allIter = graph.getAllEdges();
-        try {
-            while (allIter.next()) {
-                if (!edgeFilter.accept(allIter))
-                    continue;
-                int edge = allIter.getEdge();
-                int nodeA = allIter.getBaseNode();
-                int nodeB = allIter.getAdjNode();
-                double lat1 = nodeAccess.getLat(nodeA);
-                double lon1 = nodeAccess.getLon(nodeA);
-                double lat2;
-                double lon2;
-                PointList points = allIter.fetchWayGeometry(FetchMode.PILLAR_ONLY);
-                int len = points.size();
-                for (int i = 0; i < len; i++) {
-                    lat2 = points.getLat(i);
-                    lon2 = points.getLon(i);
-                    inMem.addToAllTilesOnLine(edge, lat1, lon1, lat2, lon2);
-                    lat1 = lat2;
-                    lon1 = lon2;
-                }
-                lat2 = nodeAccess.getLat(nodeB);
-                lon2 = nodeAccess.getLon(nodeB);
-                inMem.addToAllTilesOnLine(edge, lat1, lon1, lat2, lon2);
-            }
-        } catch (Exception ex1) {
-            logger.error("Problem! base:" + allIter.getBaseNode() + ", adj:" + allIter.getAdjNode()
-                    + ", edge:" + allIter.getEdge(), ex1);
+        int edges = graph.getEdges();
+        if (threads == 1 || edges < threads) {
+            InMemConstructionIndex inMem = new InMemConstructionIndex(indexStructureInfo);
+            addEdges(inMem, 0, edges, edgeFilter);
+            return inMem;
         }
+        int chunkSize = (edges + threads - 1) / threads;
+        InMemConstructionIndex[] partialIndices = new InMemConstructionIndex[threads];
+        // an exception in one of the ranges is rethrown by runConcurrently, like for a single thread
+        GHUtility.runConcurrently(IntStream.range(0, threads).mapToObj(t -> () -> {
+            partialIndices[t] = new InMemConstructionIndex(indexStructureInfo);
+            addEdges(partialIndices[t], t * chunkSize, Math.min(edges, (t + 1) * chunkSize), edgeFilter);
+        }), threads);
+        // the partial indices must be merged in the order of their edge ranges to get the same index as for one thread
+        InMemConstructionIndex inMem = partialIndices[0];
+        for (int t = 1; t < threads; t++)
+            inMem.merge(partialIndices[t]);
         return inMem;
     }
 
+    /**
+     * Adds the edges of the given range. A failing edge is not skipped, because this would silently create an
+     * incomplete index, instead an IllegalStateException is thrown.
+     */
+    private void addEdges(InMemConstructionIndex inMem, int fromEdge, int toEdge, EdgeFilter edgeFilter) {
+        for (int edge = fromEdge; edge < toEdge; edge++) {
+            EdgeIteratorState edgeState = graph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            try {
+                if (edgeFilter.accept(edgeState))
+                    addEdge(inMem, edgeState);
+            } catch (RuntimeException ex) {
+                throw new IllegalStateException("Problem! base:" + edgeState.getBaseNode() + ", adj:" + edgeState.getAdjNode()
+                        + ", edge:" + edgeState.getEdge(), ex);
+            }
+        }
+    }
+
+    private void addEdge(InMemConstructionIndex inMem, EdgeIteratorState edgeState) {
+        int edge = edgeState.getEdge();
+        int nodeA = edgeState.getBaseNode();
+        int nodeB = edgeState.getAdjNode();
+        double lat1 = nodeAccess.getLat(nodeA);
+        double lon1 = nodeAccess.getLon(nodeA);
+        double lat2;
+        double lon2;
+        PointList points = edgeState.fetchWayGeometry(FetchMode.PILLAR_ONLY);
+        int len = points.size();
+        for (int i = 0; i < len; i++) {
+            lat2 = points.getLat(i);
+            lon2 = points.getLon(i);
+            inMem.addToAllTilesOnLine(edge, lat1, lon1, lat2, lon2);
+            lat1 = lat2;
+            lon1 = lon2;
+        }
+        lat2 = nodeAccess.getLat(nodeB);
+        lon2 = nodeAccess.getLon(nodeB);
+        inMem.addToAllTilesOnLine(edge, lat1, lon1, lat2, lon2);
+    }
+
     int checksum() {
         return graph.getNodes() ^ graph.getAllEdges().length();
     }
@@ -308,6 +358,229 @@ public class LocationIndexTree implements LocationIndex {
         return closestMatch;
     }
 
+    /**
+     * Finds the closest edges for multiple points. The result is the same as calling
+     * {@link #findClosest(double, double, EdgeFilter)} for every point, but the points are processed in the order of
+     * their tiles such that points within the same tile share the edge ids found in the neighboring tiles. The
+     * edges, their filter result and their geometry are also shared between nearby points.
+     */
+    @Override
+    public List<Snap> findClosest(List<GHPoint> points, EdgeFilter edgeFilter) {
+        return findClosest(points, edgeFilter, 1);
+    }
+
+    /**
+     * Same as {@link #findClosest(List, EdgeFilter)}, but the points sorted by tile are split into the given number
+     * of partitions, which are processed concurrently. In this case the edge filter must be thread-safe.
+     */
+    public List<Snap> findClosest(List<GHPoint> points, EdgeFilter edgeFilter, int threads) {
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+
+        final int size = points.size();
+        long[] tileKeys = new long[size];
+        for (int i = 0; i < size; i++)
+            tileKeys[i] = indexStructureInfo.getKeyAlgo().encodeLatLon(points.get(i).lat, points.get(i).lon);
+        int[] order = ArrayUtil.calcSortOrder(tileKeys, threads);
+        Snap[] snaps = new Snap[size];
+        int chunkSize = Math.max(1, (size + threads - 1) / threads);
+        GHUtility.runConcurrently(IntStream.range(0, (size + chunkSize - 1) / chunkSize).mapToObj(chunk -> () -> {
+            BatchLookup lookup = new BatchLookup(edgeFilter);
+            for (int i = chunk * chunkSize; i < Math.min(size, (chunk + 1) * chunkSize); i++) {
+                int index = order[i];
+                snaps[index] = lookup.findClosest(points.get(index).lat, points.get(index).lon, tileKeys[index]);
+            }
+        }), threads);
+        return Arrays.asList(snaps);
+    }
+
+    private static class CachedEdge {
+        final EdgeIteratorState edgeState;
+        final boolean accepted;
+        PointList pointList;
+
+        CachedEdge(EdgeIteratorState edgeState, boolean accepted) {
+            this.edgeState = edgeState;
+            this.accepted = accepted;
+        }
+    }
+
+    /**
+     * Keeps the edge ids of the neighborhood of the current tile and the recently used edges for a sequence of
+     * findClosest calls that are sorted by tile.
+     */
+    private class BatchLookup {
+        private final EdgeFilter edgeFilter;
+        private final IntObjectHashMap<CachedEdge> edges = new IntObjectHashMap<>();
+        private final List<IntArrayList> edgeIdsByIteration = new ArrayList<>();
+        private long tileKey = -1;
+
+        BatchLookup(EdgeFilter edgeFilter) {
+            this.edgeFilter = edgeFilter;
+        }
+
+        Snap findClosest(double queryLat, double queryLon, long queryTileKey) {
+            if (queryTileKey != tileKey) {
+                tileKey = queryTileKey;
+                edgeIdsByIteration.clear();
+                if (edges.size() > MAX_CACHED_EDGES)
+                    edges.clear();
+            }
+            final Snap closestMatch = new Snap(queryLat, queryLon);
+            IntHashSet seenEdges = new IntHashSet();
+            for (int iteration = 0; iteration < maxRegionSearch; iteration++) {
+                if (edgeIdsByIteration.size() == iteration) {
+                    IntArrayList edgeIds = new IntArrayList();
+                    lineIntIndex.findEdgeIdsInNeighborhood(queryLat, queryLon, iteration, edgeIds::add);
+                    edgeIdsByIteration.add(edgeIds);
+                }
+                for (IntCursor edgeId : edgeIdsByIteration.get(iteration)) {
+                    if (!seenEdges.add(edgeId.value))
+                        continue;
+                    CachedEdge edge = getEdge(edgeId.value);
+                    if (!edge.accepted)
+                        continue;
+                    traverseEdge(queryLat, queryLon, edge.edgeState, edge.pointList, (node, normedDist, wayIndex, pos) -> {
+                        if (normedDist < closestMatch.getQueryDistance()) {
+                            closestMatch.setQueryDistance(normedDist);
+                            closestMatch.setClosestNode(node);
+                            closestMatch.setClosestEdge(edge.edgeState.detach(false));
+                            closestMatch.setWayIndex(wayIndex);
+                            closestMatch.setSnappedPosition(pos);
+                        }
+                    });
+                }
+                if (closestMatch.isValid()) {
+                    double rMin = calculateRMin(queryLat, queryLon, iteration);
+                    double minDistance = DIST_PLANE.calcDenormalizedDist(closestMatch.getQueryDistance());
+                    if (minDistance < rMin)
+                        break;
+                }
+            }
+
+            if (closestMatch.isValid()) {
+                closestMatch.calcSnappedPoint(DIST_PLANE);
+                closestMatch.setQueryDistance(DIST_PLANE.calcDist(closestMatch.getSnappedPoint().lat, closestMatch.getSnappedPoint().lon, queryLat, queryLon));
+            }
+            return closestMatch;
+        }
+
+        private CachedEdge getEdge(int edgeId) {
+            CachedEdge edge = edges.get(edgeId);
+            if (edge == null) {
+                EdgeIteratorState edgeState = graph.getEdgeIteratorStateForKey(edgeId * 2);
+                edge = new CachedEdge(edgeState, edgeFilter.accept(edgeState));
+                if (edge.accepted)
+                    edge.pointList = edgeState.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ);
+                edges.put(edgeId, edge);
+            }
+            return edge;
+        }
+    }
+
+    @Override
+    public void findNearest(double queryLat, double queryLon, int k, EdgeFilter edgeFilter, SnapBuffer result) {
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+        if (k < 1)
+            throw new IllegalArgumentException("k must be positive but was " + k);
+
+        result.reset(queryLat, queryLon);
+        CandidateCollector collector = new CandidateCollector(result, edgeFilter, k, Double.MAX_VALUE);
+        for (int iteration = 0; iteration < maxRegionSearch; iteration++) {
+            lineIntIndex.findEdgeIdsInNeighborhood(queryLat, queryLon, iteration, collector::onEdge);
+            // same stop criterion as for findClosest, but for the k-th closest edge
+            if (result.size() == k && result.getDistance(k - 1) < calculateRMin(queryLat, queryLon, iteration))
+                break;
+        }
+    }
+
+    @Override
+    public void findWithinRadius(double queryLat, double queryLon, double radius, EdgeFilter edgeFilter, SnapBuffer result) {
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+
+        result.reset(queryLat, queryLon);
+        double dLat = radius / DistanceCalcEarth.METERS_PER_DEGREE;
+        double dLon = radius * 360.0 / DistanceCalcEarth.DIST_EARTH.calcCircumference(queryLat);
+        BBox queryBBox = new BBox(queryLon - dLon, queryLon + dLon, queryLat - dLat, queryLat + dLat);
+        query(queryBBox, new CandidateCollector(result, edgeFilter, Integer.MAX_VALUE, radius));
+    }
+
+    /**
+     * Determines the closest point of every visited edge and adds it to the result buffer. The closest point is
+     * calculated in the same way as for findClosest and Snap.calcSnappedPoint, but without creating a Snap.
+     */
+    private class CandidateCollector implements Visitor, EdgeCheck {
+        private final SnapBuffer result;
+        private final EdgeFilter edgeFilter;
+        private final int maxSize;
+        private final double maxDistance;
+        private int closestNode;
+        private double closestNormedDist;
+        private int wayIndex;
+        private Snap.Position position;
+
+        CandidateCollector(SnapBuffer result, EdgeFilter edgeFilter, int maxSize, double maxDistance) {
+            this.result = result;
+            this.edgeFilter = edgeFilter;
+            this.maxSize = maxSize;
+            this.maxDistance = maxDistance;
+        }
+
+        @Override
+        public void check(int node, double normedDist, int wayIndex, Snap.Position pos) {
+            if (normedDist < closestNormedDist) {
+                this.closestNormedDist = normedDist;
+                this.closestNode = node;
+                this.wayIndex = wayIndex;
+                this.position = pos;
+            }
+        }
+
+        @Override
+        public void onEdge(int edgeId) {
+            if (!result.markSeen(edgeId))
+                return;
+            EdgeIteratorState edge = graph.getEdgeIteratorStateForKey(edgeId * 2);
+            if (!edgeFilter.accept(edge))
+                return;
+            double queryLat = result.getQueryLat(), queryLon = result.getQueryLon();
+            PointList pointList = edge.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ);
+            closestNormedDist = Double.MAX_VALUE;
+            traverseEdge(queryLat, queryLon, edge, pointList, this);
+            double distance = DIST_PLANE.calcDenormalizedDist(closestNormedDist);
+            if (distance > maxDistance)
+                return;
+
+            // the way index refers to the full geometry including the base node, which is missing in the point list
+            int baseNode = edge.getBaseNode();
+            double lat = wayIndex == 0 ? nodeAccess.getLat(baseNode) : pointList.getLat(wayIndex - 1);
+            double lon = wayIndex == 0 ? nodeAccess.getLon(baseNode) : pointList.getLon(wayIndex - 1);
+            double ele = wayIndex == 0 ? (nodeAccess.is3D() ? nodeAccess.getEle(baseNode) : Double.NaN) : pointList.getEle(wayIndex - 1);
+            if (position == Snap.Position.EDGE) {
+                double adjLat = pointList.getLat(wayIndex), adjLon = pointList.getLon(wayIndex), adjEle = pointList.getEle(wayIndex);
+                GHPoint crossingPoint = DIST_PLANE.calcCrossingPointToEdge(queryLat, queryLon, lat, lon, adjLat, adjLon);
+                if (Snap.considerEqual(crossingPoint.lat, crossingPoint.lon, lat, lon)) {
+                    position = wayIndex == 0 ? Snap.Position.TOWER : Snap.Position.PILLAR;
+                    closestNode = wayIndex == 0 ? baseNode : closestNode;
+                } else if (Snap.considerEqual(crossingPoint.lat, crossingPoint.lon, adjLat, adjLon)) {
+                    wayIndex++;
+                    position = wayIndex == pointList.size() ? Snap.Position.TOWER : Snap.Position.PILLAR;
+                    closestNode = wayIndex == pointList.size() ? edge.getAdjNode() : closestNode;
+                    lat = adjLat;
+                    lon = adjLon;
+                    ele = adjEle;
+                } else {
+                    lat = crossingPoint.lat;
+                    lon = crossingPoint.lon;
+                    ele = (ele + adjEle) / 2;
+                }
+            }
+            result.add(maxSize, edgeId, closestNode, wayIndex, position, lat, lon, ele, distance);
+        }
+    }
+
     @Override
     public void query(TileFilter tileFilter, Visitor function) {
         lineIntIndex.query(tileFilter, function);
@@ -318,6 +591,13 @@ public class LocationIndexTree implements LocationIndex {
     }
 
     public void traverseEdge(double queryLat, double queryLon, EdgeIteratorState currEdge, EdgeCheck edgeCheck) {
+        traverseEdge(queryLat, queryLon, currEdge, currEdge.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ), edgeCheck);
+    }
+
+    /**
+     * @param pointList the geometry of the given edge without the base node, i.e. using FetchMode.PILLAR_AND_ADJ
+     */
+    private void traverseEdge(double queryLat, double queryLon, EdgeIteratorState currEdge, PointList pointList, EdgeCheck edgeCheck) {
         int baseNode = currEdge.getBaseNode();
         double baseLat = nodeAccess.getLat(baseNode);
         double baseLon = nodeAccess.getLon(baseNode);
@@ -328,7 +608,6 @@ public class LocationIndexTree implements LocationIndex {
         double adjLon = nodeAccess.getLon(adjNode);
         double adjDist = DIST_PLANE.calcNormalizedDist(queryLat, queryLon, adjLat, adjLon);
 
-        PointList pointList = currEdge.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ);
         final int len = pointList.size();
 
         int closestTowerNode;
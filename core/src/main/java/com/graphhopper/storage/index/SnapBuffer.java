@@ -0,0 +1,229 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage.index;
+
+import com.carrotsearch.hppc.IntHashSet;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.shapes.GHPoint3D;
+
+import java.util.Arrays;
+
+/**
+ * A reusable result buffer for {@link LocationIndex#findNearest} and {@link LocationIndex#findWithinRadius}. Instead
+ * of creating a Snap for every candidate edge the candidates are stored in primitive arrays, ordered by their distance
+ * to the query point. Use {@link #createSnap} to create a Snap only for the candidates that are actually needed.
+ * <p>
+ * Every query clears the buffer. An instance must not be shared between threads.
+ */
+public class SnapBuffer {
+    private static final Snap.Position[] POSITIONS = Snap.Position.values();
+    private final IntHashSet seenEdges = new IntHashSet();
+    private double queryLat = Double.NaN;
+    private double queryLon = Double.NaN;
+    private int size;
+    private int[] edges;
+    private int[] closestNodes;
+    private int[] wayIndices;
+    private byte[] positions;
+    private double[] snappedLats;
+    private double[] snappedLons;
+    private double[] snappedEles;
+    private double[] distances;
+
+    public SnapBuffer() {
+        this(16);
+    }
+
+    public SnapBuffer(int initialCapacity) {
+        initialCapacity = Math.max(1, initialCapacity);
+        edges = new int[initialCapacity];
+        closestNodes = new int[initialCapacity];
+        wayIndices = new int[initialCapacity];
+        positions = new byte[initialCapacity];
+        snappedLats = new double[initialCapacity];
+        snappedLons = new double[initialCapacity];
+        snappedEles = new double[initialCapacity];
+        distances = new double[initialCapacity];
+    }
+
+    void reset(double queryLat, double queryLon) {
+        this.queryLat = queryLat;
+        this.queryLon = queryLon;
+        size = 0;
+        seenEdges.clear();
+    }
+
+    /**
+     * @return true if the given edge was not seen before during the current query
+     */
+    boolean markSeen(int edge) {
+        return seenEdges.add(edge);
+    }
+
+    /**
+     * Inserts the candidate such that the candidates stay ordered by distance. Candidates with the same distance keep
+     * their insertion order. If the buffer already contains maxSize candidates the farthest one is dropped.
+     */
+    void add(int maxSize, int edge, int closestNode, int wayIndex, Snap.Position position,
+             double snappedLat, double snappedLon, double snappedEle, double distance) {
+        if (size >= maxSize && distance >= distances[maxSize - 1])
+            return;
+        if (size < maxSize && size == edges.length)
+            grow();
+        int index = Math.min(size, maxSize - 1);
+        while (index > 0 && distances[index - 1] > distance)
+            index--;
+        int moved = Math.min(size, maxSize - 1) - index;
+        if (moved > 0) {
+            System.arraycopy(edges, index, edges, index + 1, moved);
+            System.arraycopy(closestNodes, index, closestNodes, index + 1, moved);
+            System.arraycopy(wayIndices, index, wayIndices, index + 1, moved);
+            System.arraycopy(positions, index, positions, index + 1, moved);
+            System.arraycopy(snappedLats, index, snappedLats, index + 1, moved);
+            System.arraycopy(snappedLons, index, snappedLons, index + 1, moved);
+            System.arraycopy(snappedEles, index, snappedEles, index + 1, moved);
+            System.arraycopy(distances, index, distances, index + 1, moved);
+        }
+        edges[index] = edge;
+        closestNodes[index] = closestNode;
+        wayIndices[index] = wayIndex;
+        positions[index] = (byte) position.ordinal();
+        snappedLats[index] = snappedLat;
+        snappedLons[index] = snappedLon;
+        snappedEles[index] = snappedEle;
+        distances[index] = distance;
+        if (size < maxSize)
+            size++;
+    }
+
+    void add(int maxSize, Snap snap) {
+        GHPoint3D snappedPoint = snap.getSnappedPoint();
+        add(maxSize, snap.getClosestEdge().getEdge(), snap.getClosestNode(), snap.getWayIndex(), snap.getSnappedPosition(),
+                snappedPoint.lat, snappedPoint.lon, snappedPoint.ele, snap.getQueryDistance());
+    }
+
+    private void grow() {
+        int newCapacity = edges.length * 2;
+        edges = Arrays.copyOf(edges, newCapacity);
+        closestNodes = Arrays.copyOf(closestNodes, newCapacity);
+        wayIndices = Arrays.copyOf(wayIndices, newCapacity);
+        positions = Arrays.copyOf(positions, newCapacity);
+        snappedLats = Arrays.copyOf(snappedLats, newCapacity);
+        snappedLons = Arrays.copyOf(snappedLons, newCapacity);
+        snappedEles = Arrays.copyOf(snappedEles, newCapacity);
+        distances = Arrays.copyOf(distances, newCapacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double getQueryLat() {
+        return queryLat;
+    }
+
+    public double getQueryLon() {
+        return queryLon;
+    }
+
+    public int getEdge(int index) {
+        checkIndex(index);
+        return edges[index];
+    }
+
+    public int getClosestNode(int index) {
+        checkIndex(index);
+        return closestNodes[index];
+    }
+
+    /**
+     * @see Snap#getWayIndex()
+     */
+    public int getWayIndex(int index) {
+        checkIndex(index);
+        return wayIndices[index];
+    }
+
+    public Snap.Position getPosition(int index) {
+        checkIndex(index);
+        return POSITIONS[positions[index]];
+    }
+
+    public double getSnappedLat(int index) {
+        checkIndex(index);
+        return snappedLats[index];
+    }
+
+    public double getSnappedLon(int index) {
+        checkIndex(index);
+        return snappedLons[index];
+    }
+
+    /**
+     * @return the elevation of the snapped point or NaN if the graph has no elevation
+     */
+    public double getSnappedEle(int index) {
+        checkIndex(index);
+        return snappedEles[index];
+    }
+
+    /**
+     * @return the distance in meters between the query point and the snapped point
+     */
+    public double getDistance(int index) {
+        checkIndex(index);
+        return distances[index];
+    }
+
+    /**
+     * Creates a Snap for the candidate at the given index. The closest edge is oriented like the edge stored in the
+     * index, i.e. its base node is the edge's base node.
+     */
+    public Snap createSnap(int index, Graph graph, DistanceCalc distCalc) {
+        checkIndex(index);
+        Snap snap = new Snap(queryLat, queryLon);
+        snap.setClosestEdge(graph.getEdgeIteratorStateForKey(edges[index] * 2));
+        snap.setClosestNode(closestNodes[index]);
+        snap.setWayIndex(wayIndices[index]);
+        snap.setSnappedPosition(POSITIONS[positions[index]]);
+        snap.setQueryDistance(distances[index]);
+        snap.calcSnappedPoint(distCalc);
+        return snap;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("index " + index + " is out of bounds for size " + size);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(edges[i]).append(":").append(POSITIONS[positions[i]]).append(" ").append(distances[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -27,6 +27,8 @@ import com.carrotsearch.hppc.sorting.IndirectSort;
 
 import java.util.Arrays;
 import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 public class ArrayUtil {
 
@@ -194,6 +196,45 @@ public class ArrayUtil {
         return IndirectSort.mergesort(0, length, comp);
     }
 
+    /**
+     * Calculates the sort order of the given keys, i.e. the indices of the keys sorted by their key. Equal keys keep
+     * their index order, so the result is the same as for a (stable) merge sort of all keys, but the keys are split
+     * into chunks that are sorted concurrently and then merged pairwise using the given number of threads.
+     */
+    public static int[] calcSortOrder(final long[] keys, int threads) {
+        final int size = keys.length;
+        final int chunkSize = Math.max(1, (size + threads - 1) / threads);
+        final int[] sortedChunks = new int[size];
+        GHUtility.runConcurrently(IntStream.range(0, (size + chunkSize - 1) / chunkSize).mapToObj(chunk -> () -> {
+            int from = chunk * chunkSize;
+            int[] sorted = IndirectSort.mergesort(from, Math.min(size, from + chunkSize) - from,
+                    (indexA, indexB) -> Long.compare(keys[indexA], keys[indexB]));
+            System.arraycopy(sorted, 0, sortedChunks, from, sorted.length);
+        }), threads);
+        int[] order = sortedChunks;
+        int[] tmp = new int[size];
+        for (long width = chunkSize; width < size; width *= 2) {
+            final int[] src = order, dst = tmp;
+            final int w = (int) width;
+            GHUtility.runConcurrently(LongStream.iterate(0, from -> from < size, from -> from + 2L * w).mapToObj(from -> () ->
+                    merge(keys, src, dst, (int) from, (int) Math.min(size, from + w), (int) Math.min(size, from + 2L * w))
+            ), threads);
+            order = dst;
+            tmp = src;
+        }
+        return order;
+    }
+
+    private static void merge(long[] keys, int[] src, int[] dst, int from, int mid, int to) {
+        int left = from, right = mid;
+        for (int i = from; i < to; i++) {
+            if (left < mid && (right >= to || keys[src[left]] <= keys[src[right]]))
+                dst[i] = src[left++];
+            else
+                dst[i] = src[right++];
+        }
+    }
+
     /**
      * Creates a copy of the given array such that it is ordered by the given order.
      * The order can be shorter or equal, but not longer than the array.
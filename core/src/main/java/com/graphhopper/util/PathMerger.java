@@ -20,6 +20,7 @@ package com.graphhopper.util;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.routing.InstructionsFromEdges;
 import com.graphhopper.routing.Path;
+import com.graphhopper.routing.PathColumns;
 import com.graphhopper.routing.ev.EncodedValueLookup;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
@@ -110,8 +111,10 @@ public class PathMerger {
             fullTimeInMillis += path.getTime();
             fullDistance += path.getDistance();
             fullWeight += path.getWeight();
+            // the edges of the path are visited only once and then shared by the instructions, points and details
+            PathColumns columns = calcPoints || enableInstructions ? new PathColumns(path) : null;
             if (enableInstructions) {
-                InstructionList il = InstructionsFromEdges.calcInstructions(path, graph, weighting, evLookup, tr);
+                InstructionList il = InstructionsFromEdges.calcInstructions(columns, graph, weighting, evLookup, tr);
 
                 if (!il.isEmpty()) {
                     fullInstructions.addAll(il);
@@ -126,7 +129,7 @@ public class PathMerger {
 
             }
             if (calcPoints || enableInstructions) {
-                PointList tmpPoints = path.calcPoints();
+                PointList tmpPoints = columns.getPoints();
                 if (fullPoints.isEmpty())
                     fullPoints = new PointList(tmpPoints.size(), tmpPoints.is3D());
 
@@ -136,7 +139,7 @@ public class PathMerger {
                 }
 
                 fullPoints.add(tmpPoints);
-                responsePath.addPathDetails(PathDetailsFromEdges.calcDetails(path, evLookup, weighting, requestedPathDetails, pathBuilderFactory, origPoints, graph));
+                responsePath.addPathDetails(PathDetailsFromEdges.calcDetails(columns, evLookup, weighting, requestedPathDetails, pathBuilderFactory, origPoints, graph));
                 wayPointIndices.add(origPoints);
                 if (pathIndex == paths.size() - 1)
                     wayPointIndices.add(fullPoints.size() - 1);
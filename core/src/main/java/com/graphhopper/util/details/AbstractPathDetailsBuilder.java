@@ -76,6 +76,20 @@ public abstract class AbstractPathDetailsBuilder implements PathDetailsBuilder {
         isOpen = false;
     }
 
+    /**
+     * Adds a complete interval. This is meant for builders that calculate the intervals on their own, see
+     * {@link #calcDetails}.
+     */
+    protected void addInterval(Object value, int firstIndex, int lastIndex) {
+        if (isOpen)
+            throw new IllegalStateException("PathDetailsBuilder is already in an open state with value: " + currentDetail.getValue()
+                    + " trying to add an interval with value: " + value);
+        PathDetail detail = new PathDetail(value);
+        detail.setFirst(firstIndex);
+        detail.setLast(lastIndex);
+        pathDetails.add(detail);
+    }
+
     public Map.Entry<String, List<PathDetail>> build() {
         return new MapEntry<>(getName(), pathDetails);
     }
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.util.details;
 
+import com.graphhopper.routing.PathColumns;
 import com.graphhopper.routing.ev.DecimalEncodedValue;
 import com.graphhopper.util.EdgeIteratorState;
 
@@ -46,19 +47,45 @@ public class DecimalDetails extends AbstractPathDetailsBuilder {
 
     @Override
     protected Object getCurrentValue() {
-        if (Double.isInfinite(decimalValue))
+        return toDetailValue(decimalValue);
+    }
+
+    private Object toDetailValue(double value) {
+        if (Double.isInfinite(value))
             return infinityJsonValue;
 
-        return decimalValue;
+        return value;
     }
 
     @Override
     public boolean isEdgeDifferentToLastEdge(EdgeIteratorState edge) {
         double tmpVal = edge.get(ev);
         if (decimalValue == null || Math.abs(tmpVal - decimalValue) >= precision) {
-            this.decimalValue = Double.isInfinite(tmpVal) ? tmpVal : Math.round(tmpVal / precision) * precision;
+            this.decimalValue = round(tmpVal);
             return true;
         }
         return false;
     }
+
+    @Override
+    public void calcDetails(PathColumns columns, int previousIndex) {
+        double[] values = columns.getDecimals(ev);
+        if (values.length == 0)
+            return;
+        double value = round(values[0]);
+        int start = 0;
+        for (int i = 1; i < values.length; i++) {
+            // this is the same check as in isEdgeDifferentToLastEdge, i.e. we compare with the rounded value
+            if (Math.abs(values[i] - value) >= precision) {
+                addInterval(toDetailValue(value), previousIndex + columns.getPointIndex(start), previousIndex + columns.getPointIndex(i));
+                value = round(values[i]);
+                start = i;
+            }
+        }
+        addInterval(toDetailValue(value), previousIndex + columns.getPointIndex(start), previousIndex + columns.getPointIndex(values.length));
+    }
+
+    private double round(double value) {
+        return Double.isInfinite(value) ? value : Math.round(value / precision) * precision;
+    }
 }
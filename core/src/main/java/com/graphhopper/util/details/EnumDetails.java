@@ -17,6 +17,7 @@
  */
 package com.graphhopper.util.details;
 
+import com.graphhopper.routing.PathColumns;
 import com.graphhopper.routing.ev.EnumEncodedValue;
 import com.graphhopper.util.EdgeIteratorState;
 
@@ -45,4 +46,17 @@ public class EnumDetails<E extends Enum> extends AbstractPathDetailsBuilder {
         }
         return false;
     }
+
+    @Override
+    public void calcDetails(PathColumns columns, int previousIndex) {
+        int[] ordinals = columns.getInts(ev);
+        E[] enumValues = ev.getValues();
+        int start = 0;
+        for (int i = 1; i <= ordinals.length; i++) {
+            if (i == ordinals.length || ordinals[i] != ordinals[start]) {
+                addInterval(enumValues[ordinals[start]].toString(), previousIndex + columns.getPointIndex(start), previousIndex + columns.getPointIndex(i));
+                start = i;
+            }
+        }
+    }
 }
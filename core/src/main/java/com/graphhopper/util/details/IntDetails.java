@@ -17,6 +17,7 @@
  */
 package com.graphhopper.util.details;
 
+import com.graphhopper.routing.PathColumns;
 import com.graphhopper.routing.ev.IntEncodedValue;
 import com.graphhopper.util.EdgeIteratorState;
 
@@ -44,4 +45,16 @@ public class IntDetails extends AbstractPathDetailsBuilder {
         }
         return false;
     }
+
+    @Override
+    public void calcDetails(PathColumns columns, int previousIndex) {
+        int[] values = columns.getInts(ev);
+        int start = 0;
+        for (int i = 1; i <= values.length; i++) {
+            if (i == values.length || values[i] != values[start]) {
+                addInterval(values[start], previousIndex + columns.getPointIndex(start), previousIndex + columns.getPointIndex(i));
+                start = i;
+            }
+        }
+    }
 }
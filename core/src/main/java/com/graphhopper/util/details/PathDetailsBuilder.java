@@ -17,6 +17,7 @@
  */
 package com.graphhopper.util.details;
 
+import com.graphhopper.routing.PathColumns;
 import com.graphhopper.util.EdgeIteratorState;
 
 import java.util.List;
@@ -41,4 +42,21 @@ public interface PathDetailsBuilder {
 
     String getName();
 
+    /**
+     * Calculates the intervals for all edges of the given path. The default implementation passes the edges one by
+     * one to {@link #isEdgeDifferentToLastEdge}. Builders that only depend on the values of an encoded value should
+     * override this and derive their intervals from the decoded column instead.
+     *
+     * @param previousIndex the index of the first point of the path
+     */
+    default void calcDetails(PathColumns columns, int previousIndex) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (isEdgeDifferentToLastEdge(columns.getEdge(i))) {
+                endInterval(previousIndex + columns.getPointIndex(i));
+                startInterval(previousIndex + columns.getPointIndex(i));
+            }
+        }
+        endInterval(previousIndex + columns.getPointIndex(columns.size()));
+    }
+
 }
@@ -18,6 +18,7 @@
 package com.graphhopper.util.details;
 
 import com.graphhopper.routing.Path;
+import com.graphhopper.routing.PathColumns;
 import com.graphhopper.routing.ev.EncodedValueLookup;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
@@ -55,6 +56,19 @@ public class PathDetailsFromEdges implements Path.EdgeVisitor {
     public static Map<String, List<PathDetail>> calcDetails(Path path, EncodedValueLookup evLookup, Weighting weighting,
                                                             List<String> requestedPathDetails, PathDetailsBuilderFactory pathBuilderFactory,
                                                             int previousIndex, Graph graph) {
+        if (!path.isFound() || requestedPathDetails.isEmpty())
+            return Collections.emptyMap();
+        return calcDetails(new PathColumns(path), evLookup, weighting, requestedPathDetails, pathBuilderFactory, previousIndex, graph);
+    }
+
+    /**
+     * Calculates the PathDetails for the path of the given columns. Every builder calculates its intervals for the
+     * whole path at once, see {@link PathDetailsBuilder#calcDetails(PathColumns, int)}.
+     */
+    public static Map<String, List<PathDetail>> calcDetails(PathColumns columns, EncodedValueLookup evLookup, Weighting weighting,
+                                                            List<String> requestedPathDetails, PathDetailsBuilderFactory pathBuilderFactory,
+                                                            int previousIndex, Graph graph) {
+        Path path = columns.getPath();
         if (!path.isFound() || requestedPathDetails.isEmpty())
             return Collections.emptyMap();
         HashSet<String> uniquePD = new HashSet<>(requestedPathDetails.size());
@@ -66,7 +80,9 @@ public class PathDetailsFromEdges implements Path.EdgeVisitor {
         if (pathBuilders.isEmpty())
             return Collections.emptyMap();
 
-        path.forEveryEdge(new PathDetailsFromEdges(pathBuilders, previousIndex));
+        for (PathDetailsBuilder builder : pathBuilders) {
+            builder.calcDetails(columns, previousIndex);
+        }
 
         Map<String, List<PathDetail>> pathDetails = new HashMap<>(pathBuilders.size());
         for (PathDetailsBuilder builder : pathBuilders) {
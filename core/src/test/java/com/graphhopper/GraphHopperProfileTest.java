@@ -24,12 +24,16 @@ import com.graphhopper.config.LMProfile;
 import com.graphhopper.config.Profile;
 import com.graphhopper.jackson.Jackson;
 import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.CustomModel;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
+import static com.graphhopper.json.Statement.If;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.json.Statement.Op.MULTIPLY;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class GraphHopperProfileTest {
@@ -148,6 +152,28 @@ public class GraphHopperProfileTest {
         assertIllegalArgument(hopper::importOrLoad, "Unknown LM preparation profile 'profile2' in LM profile 'profile1' cannot be used as preparation_profile");
     }
 
+    @Test
+    public void externalEncodedValuesWithCHOrLM_error() {
+        GraphHopper hopper = createHopper().setExternalEncodedValuesString("road_closed");
+        hopper.setProfiles(new Profile("profile").setCustomModel(new CustomModel().
+                addToPriority(If("road_closed", MULTIPLY, "0")).
+                addToSpeed(If("true", LIMIT, "50"))));
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("profile"));
+        assertIllegalArgument(hopper::importOrLoad, "CH profile 'profile' uses external encoded values that can change at runtime: [road_closed]");
+
+        hopper = createHopper().setExternalEncodedValuesString("road_closed");
+        hopper.setProfiles(new Profile("profile").setCustomModel(new CustomModel().
+                addToPriority(If("road_closed", MULTIPLY, "0")).
+                addToSpeed(If("true", LIMIT, "50"))));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile("profile"));
+        assertIllegalArgument(hopper::importOrLoad, "LM profile 'profile' uses external encoded values that can change at runtime: [road_closed]");
+
+        hopper = createHopper().setExternalEncodedValuesString("road_closed");
+        hopper.setProfiles(TestProfiles.constantSpeed("profile"));
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("profile").setCustomModelEncodedValues(List.of("road_closed")));
+        assertIllegalArgument(hopper::importOrLoad, "CH profile 'profile' uses the external encoded value 'road_closed' in custom_model_encoded_values");
+    }
+
     private GraphHopper createHopper() {
         final GraphHopper hopper = new GraphHopper();
         hopper.setGraphHopperLocation(GH_LOCATION);
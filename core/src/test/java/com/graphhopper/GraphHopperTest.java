@@ -25,6 +25,8 @@ import com.graphhopper.reader.dem.SRTMProvider;
 import com.graphhopper.reader.dem.SkadiProvider;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.lm.LMConfig;
+import com.graphhopper.routing.lm.PrepareLandmarks;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.EdgeFilter;
@@ -141,6 +143,37 @@ public class GraphHopperTest {
         assertTrue(rsp.getErrors().toString().contains("ConnectionNotFoundException"), rsp.getErrors().toString());
     }
 
+    @Test
+    public void testEdgeWeightCache() {
+        final String profile = "car";
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed(profile, "car")).
+                setEdgeWeightCacheProfiles(List.of(profile)).
+                setStoreOnFlush(true).
+                importOrLoad();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile);
+        GHResponse cached = hopper.route(req);
+        // a per-request custom model bypasses the cache
+        GHResponse uncached = hopper.route(req.setCustomModel(new CustomModel()));
+        assertFalse(cached.hasErrors(), cached.getErrors().toString());
+        assertEquals(uncached.getBest().getDistance(), cached.getBest().getDistance(), 1.e-6);
+        assertEquals(uncached.getBest().getRouteWeight(), cached.getBest().getRouteWeight(), 1.e-2);
+        hopper.close();
+
+        // the stored cache is loaded again
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed(profile, "car")).
+                setEdgeWeightCacheProfiles(List.of(profile));
+        assertTrue(hopper.load());
+        assertEquals(cached.getBest().getRouteWeight(), hopper.route(req.setCustomModel(null)).getBest().getRouteWeight(), 1.e-6);
+        hopper.close();
+    }
+
     @Test
     public void testMonacoWithInstructions() {
         final String profile = "profile";
@@ -727,6 +760,56 @@ public class GraphHopperTest {
         assertDistance(hopper, customCar, new CustomModel(customModelWithUnclassifiedRule).setDistanceInfluence(100d), 14475);
     }
 
+    @Test
+    public void testCustomModelWithCH() {
+        final String profile = "car";
+        GraphHopper hopper = new GraphHopper().
+                setEncodedValuesString("car_average_speed,car_access,road_class").
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(BAYREUTH).
+                setProfiles(TestProfiles.accessAndSpeed(profile, "car"));
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile).setCustomModelEncodedValues(List.of("road_class")));
+        hopper.importOrLoad();
+
+        assertDistance(hopper, profile, null, 8725);
+        // the custom model does not require disabling CH, the same route as in testCustomModel is found
+        CustomModel customModel = new CustomModel().addToSpeed(If("road_class == TERTIARY || road_class == TRACK", MULTIPLY, "0.1"));
+        assertDistance(hopper, profile, customModel, 13223);
+        GHRequest req = new GHRequest(50.008732, 11.596413, 49.974361, 11.514509).setProfile(profile).setCustomModel(customModel);
+        GHResponse rsp = hopper.route(req);
+        assertTrue(rsp.getDebugInfo().contains("ch_potentials"), rsp.getDebugInfo());
+        GHResponse flexRsp = hopper.route(new GHRequest(req.getPoints()).setProfile(profile).setCustomModel(customModel).
+                setAlgorithm(DIJKSTRA_BI).putHint(CH.DISABLE, true));
+        assertEquals(flexRsp.getBest().getRouteWeight(), rsp.getBest().getRouteWeight(), 1.e-3);
+        assertTrue(rsp.getHints().getLong("visited_nodes.sum", 0) < flexRsp.getHints().getLong("visited_nodes.sum", 0),
+                rsp.getHints().getLong("visited_nodes.sum", 0) + " vs. " + flexRsp.getHints().getLong("visited_nodes.sum", 0));
+        // the closer the custom model is to the profile the tighter the potentials and the smaller the search space
+        CustomModel mildModel = new CustomModel().addToSpeed(If("road_class == MOTORWAY", MULTIPLY, "0.9"));
+        GHResponse mildRsp = hopper.route(new GHRequest(req.getPoints()).setProfile(profile).setCustomModel(mildModel));
+        GHResponse mildFlexRsp = hopper.route(new GHRequest(req.getPoints()).setProfile(profile).setCustomModel(mildModel).
+                setAlgorithm(DIJKSTRA_BI).putHint(CH.DISABLE, true));
+        assertEquals(mildFlexRsp.getBest().getRouteWeight(), mildRsp.getBest().getRouteWeight(), 1.e-3);
+        assertTrue(mildRsp.getHints().getLong("visited_nodes.sum", 0) < mildFlexRsp.getHints().getLong("visited_nodes.sum", 0) / 10,
+                mildRsp.getHints().getLong("visited_nodes.sum", 0) + " vs. " + mildFlexRsp.getHints().getLong("visited_nodes.sum", 0));
+        // the A* search of the flexible mode can use the CH preparation as well
+        hopper.getRouterConfig().setCHPotentialsEnabled(true);
+        GHResponse aStarRsp = hopper.route(new GHRequest(req.getPoints()).setProfile(profile).setCustomModel(customModel).putHint(CH.DISABLE, true));
+        assertTrue(aStarRsp.getDebugInfo().contains("ch_potentials"), aStarRsp.getDebugInfo());
+        assertEquals(flexRsp.getBest().getRouteWeight(), aStarRsp.getBest().getRouteWeight(), 1.e-3);
+
+        // only the declared encoded values can be used
+        rsp = hopper.route(new GHRequest(req.getPoints()).setProfile(profile).
+                setCustomModel(new CustomModel().addToPriority(If("car_average_speed > 50", MULTIPLY, "0.5"))));
+        assertTrue(rsp.hasErrors());
+        assertTrue(rsp.getErrors().get(0).getMessage().contains("can only use the encoded values [road_class], but it uses: [car_average_speed]"),
+                rsp.getErrors().toString());
+        // the custom model cannot make edges cheaper
+        rsp = hopper.route(new GHRequest(req.getPoints()).setProfile(profile).
+                setCustomModel(new CustomModel().addToPriority(If("road_class == PRIMARY", MULTIPLY, "2"))));
+        assertTrue(rsp.hasErrors());
+        assertTrue(rsp.getErrors().get(0).getMessage().contains("cannot be larger than 1"), rsp.getErrors().toString());
+    }
+
     private void assertDistance(GraphHopper hopper, String profile, CustomModel customModel, double expectedDistance) {
         GHRequest req = new GHRequest(50.008732, 11.596413, 49.974361, 11.514509);
         req.setProfile(profile);
@@ -2844,4 +2927,103 @@ public class GraphHopperTest {
         assertEquals(0.0, (double) p.get(1).getValue(), 1.e-3);
     }
 
+    @Test
+    public void testResumeImportFromCheckpoint() {
+        Profile profile = TestProfiles.accessAndSpeed("car");
+        GraphHopper hopper = new GraphHopper() {
+            @Override
+            protected void loadOrPrepareCH(boolean closeEarly) {
+                throw new IllegalStateException("simulated crash during CH preparation");
+            }
+        }.
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(profile).
+                setImportCheckpoints(true).
+                setStoreOnFlush(true);
+        hopper.calcChecksums = true;
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile("car"));
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"));
+        assertThrows(IllegalStateException.class, hopper::importOrLoad);
+        assertEquals("LM", hopper.getProperties().get("import.phase"));
+        hopper.close();
+
+        hopper = new GraphHopper() {
+            @Override
+            protected void importOSM() {
+                throw new IllegalStateException("the base graph should have been loaded from the checkpoint");
+            }
+
+            @Override
+            protected List<PrepareLandmarks> prepareLM(boolean closeEarly, List<LMConfig> configsToPrepare) {
+                assertTrue(configsToPrepare.isEmpty(), "the landmarks should have been loaded from the checkpoint");
+                return super.prepareLM(closeEarly, configsToPrepare);
+            }
+        }.
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(profile).
+                setImportCheckpoints(true).
+                setStoreOnFlush(true);
+        hopper.calcChecksums = true;
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile("car"));
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"));
+        hopper.importOrLoad();
+        // the checkpoint is removed once the import is finished
+        assertEquals("", hopper.getProperties().get("import.phase"));
+        assertTrue(hopper.getCHGraphs().containsKey("car"));
+        assertTrue(hopper.getLandmarks().containsKey("car"));
+
+        GHResponse rsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("car"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(3587.6, rsp.getBest().getDistance(), .1);
+        hopper.close();
+    }
+
+    @Test
+    public void testCheckpointIsClearedWithoutCheckpoints() {
+        Profile profile = TestProfiles.accessAndSpeed("car");
+        GraphHopper hopper = new GraphHopper() {
+            @Override
+            protected void loadOrPrepareCH(boolean closeEarly) {
+                throw new IllegalStateException("simulated crash during CH preparation");
+            }
+        }.
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(profile).
+                setImportCheckpoints(true).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"));
+        assertThrows(IllegalStateException.class, hopper::importOrLoad);
+        assertEquals("LOCATION_INDEX", hopper.getProperties().get("import.phase"));
+        hopper.close();
+
+        // an unfinished import is not loaded
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(profile).
+                setImportCheckpoints(true).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"));
+        assertFalse(hopper.load());
+        hopper.close();
+
+        // without checkpoints the unfinished import is done again and the marker is removed afterwards
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(profile).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"));
+        hopper.importOrLoad();
+        assertEquals("", hopper.getProperties().get("import.phase"));
+        assertTrue(hopper.getCHGraphs().containsKey("car"));
+        hopper.close();
+    }
+
 }
@@ -0,0 +1,68 @@
+package com.graphhopper.isochrone.algorithm;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.triangulate.DelaunayTriangulationBuilder;
+import org.locationtech.jts.triangulate.quadedge.QuadEdgeSubdivision;
+import org.locationtech.jts.triangulate.quadedge.Vertex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ContourBuilderTest {
+
+    @Test
+    public void computeIsolinesForUnsortedAndDuplicateValues() {
+        ReadableTriangulation triangulation = createRandomTriangulation(new Random(42), 200);
+        ContourBuilder contourBuilder = new ContourBuilder(triangulation);
+        double[] zs = {0.75, 0.25, 0.5, 0.25};
+        List<MultiPolygon> isolines = contourBuilder.computeIsolines(zs, triangulation.getEdges());
+        assertEquals(zs.length, isolines.size());
+        for (int i = 0; i < zs.length; i++)
+            assertEquals(contourBuilder.computeIsoline(zs[i], triangulation.getEdges()), isolines.get(i));
+        // the isolines are nested
+        assertTrue(isolines.get(1).getArea() < isolines.get(2).getArea());
+        assertTrue(isolines.get(2).getArea() < isolines.get(0).getArea());
+    }
+
+    @RepeatedTest(10)
+    public void computeIsolinesEqualsComputeIsoline() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        ReadableTriangulation triangulation = createRandomTriangulation(rnd, 500);
+        ContourBuilder contourBuilder = new ContourBuilder(triangulation);
+        double[] zs = new double[10];
+        for (int i = 0; i < zs.length; i++)
+            zs[i] = (i + 1) * 0.1;
+        List<MultiPolygon> isolines = contourBuilder.computeIsolines(zs, triangulation.getEdges());
+        for (int i = 0; i < zs.length; i++)
+            assertEquals(contourBuilder.computeIsoline(zs[i], triangulation.getEdges()), isolines.get(i), "seed: " + seed);
+    }
+
+    private static ReadableTriangulation createRandomTriangulation(Random rnd, int numSites) {
+        Collection<Coordinate> sites = new ArrayList<>();
+        for (int i = 0; i < numSites; i++) {
+            double x = rnd.nextDouble();
+            double y = rnd.nextDouble();
+            // the values grow with the distance to the center, similar to an isochrone
+            Coordinate site = new Coordinate(x, y);
+            site.z = Math.hypot(x - 0.5, y - 0.5) * 1.5 + rnd.nextDouble() * 0.1;
+            sites.add(site);
+        }
+        DelaunayTriangulationBuilder triangulationBuilder = new DelaunayTriangulationBuilder();
+        triangulationBuilder.setSites(sites);
+        QuadEdgeSubdivision tin = triangulationBuilder.getSubdivision();
+        for (Vertex vertex : (Collection<Vertex>) tin.getVertices(true)) {
+            if (tin.isFrameVertex(vertex))
+                vertex.setZ(Double.MAX_VALUE);
+        }
+        return ReadableTriangulation.wrap(tin);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import com.graphhopper.routing.RouterConfig;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.DistanceCalcEarth;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.MultiPolygon;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JTSTriangulatorTest {
+
+    @Test
+    public void testFrontierPruning() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        BaseGraph graph = new BaseGraph.Builder(EncodingManager.start().add(speedEnc).build()).create();
+        // a grid with random speeds, so the isolines are not regular
+        int size = 81;
+        Random rnd = new Random(123);
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                int node = row * size + col;
+                graph.getNodeAccess().setNode(node, 50 + row * 0.002, 10 + col * 0.003);
+                if (col > 0)
+                    addEdge(graph, speedEnc, rnd, node - 1, node);
+                if (row > 0)
+                    addEdge(graph, speedEnc, rnd, node - size, node);
+            }
+        }
+        int center = size * size / 2;
+        Snap snap = new Snap(graph.getNodeAccess().getLat(center), graph.getNodeAccess().getLon(center));
+        snap.setClosestNode(center);
+        QueryGraph queryGraph = QueryGraph.create(graph, Collections.emptyList());
+        double limit = 3 * 60_000;
+        double[] zs = {limit / 3, 2 * limit / 3, limit};
+
+        List<MultiPolygon> unpruned = computeIsolines(graph, queryGraph, snap, speedEnc, limit, zs, Double.POSITIVE_INFINITY);
+        List<MultiPolygon> pruned = computeIsolines(graph, queryGraph, snap, speedEnc, limit, zs, limit);
+        assertEquals(zs.length, pruned.size());
+        for (int i = 0; i < zs.length; i++) {
+            double difference = pruned.get(i).symDifference(unpruned.get(i)).getArea() / unpruned.get(i).getArea();
+            if (i < zs.length - 1)
+                // the skipped nodes are too far away to change the triangles the inner isolines cross
+                assertEquals(0, difference, 1.e-9, "isoline " + i);
+            else
+                // ... but they do change some triangles around the largest isoline, so it is slightly different
+                assertTrue(difference > 0 && difference < 0.02, "isoline " + i + " differs by " + difference);
+        }
+    }
+
+    private static void addEdge(BaseGraph graph, DecimalEncodedValue speedEnc, Random rnd, int from, int to) {
+        double dist = DistanceCalcEarth.DIST_EARTH.calcDist(graph.getNodeAccess().getLat(from), graph.getNodeAccess().getLon(from),
+                graph.getNodeAccess().getLat(to), graph.getNodeAccess().getLon(to));
+        double speed = 10 + 5 * rnd.nextInt(10);
+        graph.edge(from, to).setDistance(dist).set(speedEnc, speed, speed);
+    }
+
+    private static List<MultiPolygon> computeIsolines(BaseGraph graph, QueryGraph queryGraph, Snap snap, DecimalEncodedValue speedEnc,
+                                                      double limit, double[] zs, double maxZ) {
+        ShortestPathTree shortestPathTree = new ShortestPathTree(queryGraph, new SpeedWeighting(speedEnc), false, TraversalMode.NODE_BASED);
+        shortestPathTree.setTimeLimit(limit + Math.max(limit * 0.14, 200_000));
+        Triangulator.Result result = new JTSTriangulator(new RouterConfig()).triangulate(snap, queryGraph, shortestPathTree, l -> l.time, 1e-5, maxZ);
+        return new ContourBuilder(result.triangulation).computeIsolines(zs, result.seedEdges);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReachabilityGridTest {
+    private BaseGraph graph;
+    private Weighting weighting;
+
+    @BeforeEach
+    public void setUp() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager encodingManager = EncodingManager.start().add(speedEnc).build();
+        graph = new BaseGraph.Builder(encodingManager).create();
+        weighting = new SpeedWeighting(speedEnc);
+        // 0 - 1 - 2, a straight road to the east with a pillar node between 1 and 2
+        //     |
+        //     3 (one-way from 3 to 1)
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 50.0, 10.00);
+        na.setNode(1, 50.0, 10.01);
+        na.setNode(2, 50.0, 10.02);
+        na.setNode(3, 49.99, 10.01);
+        graph.edge(0, 1).setDistance(calcDist(0, 1)).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(calcDist(1, 2)).set(speedEnc, 10, 10).setWayGeometry(Helper.createPointList(50.0, 10.015));
+        graph.edge(3, 1).setDistance(calcDist(3, 1)).set(speedEnc, 10, 0);
+    }
+
+    private double calcDist(int a, int b) {
+        NodeAccess na = graph.getNodeAccess();
+        return DistanceCalcEarth.DIST_EARTH.calcDist(na.getLat(a), na.getLon(a), na.getLat(b), na.getLon(b));
+    }
+
+    private ReachabilityGrid createGrid(double limit, double cellSize, int maxCells) {
+        ShortestPathTree tree = new ShortestPathTree(graph, weighting, false, TraversalMode.NODE_BASED);
+        tree.setDistanceLimit(limit);
+        return ReachabilityGrid.create(graph, weighting, tree, new int[]{0}, false, limit, cellSize, maxCells);
+    }
+
+    @Test
+    public void distanceLimit() {
+        // the distance between nodes 0 and 1 is ~715m
+        ReachabilityGrid grid = createGrid(1000, 100, 1000);
+        assertEquals(1, grid.getRows());
+        assertEquals(11, grid.getCols());
+        assertEquals(50.0, grid.getMinLat(), 1.e-6);
+        assertEquals(10.0, grid.getMinLon(), 1.e-6);
+        assertEquals(0, grid.getValue(50.0, 10.0), 1.e-6);
+        assertEquals(357, grid.getValue(50.0, 10.005), 100);
+        assertEquals(715, grid.getValue(50.0, 10.01), 100);
+        assertEquals(1000, grid.getValue(50.0, 10.014), 100);
+        // beyond the limit and the one-way road cannot be used
+        assertTrue(Float.isNaN(grid.getValue(50.0, 10.016)));
+        assertTrue(Float.isNaN(grid.getValue(49.995, 10.01)));
+        assertEquals(11, grid.getReachedCells());
+        for (int col = 1; col < grid.getCols(); col++)
+            assertTrue(grid.getValue(0, col) > grid.getValue(0, col - 1));
+    }
+
+    @Test
+    public void largerLimit() {
+        ReachabilityGrid grid = createGrid(2000, 100, 1000);
+        // the road to the east ends at ~1430m, the road from the south is one-way to the north
+        assertEquals(1, grid.getRows());
+        assertEquals(1430, grid.getValue(50.0, 10.0199), 100);
+        assertEquals(1072, grid.getValue(50.0, 10.015), 100);
+    }
+
+    @Test
+    public void tooManyCells() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> createGrid(1000, 1, 100));
+        assertTrue(e.getMessage().contains("too many cells"), e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> createGrid(1000, 0, 100));
+    }
+
+    @Test
+    public void write() throws IOException {
+        ReachabilityGrid grid = createGrid(1000, 100, 1000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        grid.write(new DataOutputStream(bytes));
+        assertEquals(4 * 8 + 2 * 4 + grid.getRows() * grid.getCols() * 4, bytes.size());
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(grid.getMinLat(), input.readDouble());
+        assertEquals(grid.getMinLon(), input.readDouble());
+        assertEquals(grid.getLatStep(), input.readDouble());
+        assertEquals(grid.getLonStep(), input.readDouble());
+        assertEquals(grid.getRows(), input.readInt());
+        assertEquals(grid.getCols(), input.readInt());
+        for (int col = 0; col < grid.getCols(); col++)
+            assertEquals(grid.getValue(0, col), input.readFloat());
+    }
+}
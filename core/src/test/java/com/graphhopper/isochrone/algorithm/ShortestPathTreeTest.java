@@ -1,5 +1,6 @@
 package com.graphhopper.isochrone.algorithm;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.graphhopper.json.Statement;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.DecimalEncodedValue;
@@ -23,6 +24,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -190,6 +192,87 @@ public class ShortestPathTreeTest {
         );
     }
 
+    @Test
+    public void testSearchLabels() {
+        List<ShortestPathTree.IsoLabel> expected = new ArrayList<>();
+        ShortestPathTree instance = new ShortestPathTree(graph, createWeighting(new TimeBasedUTurnCost(20000)), false, TraversalMode.EDGE_BASED);
+        instance.setTimeLimit(Double.MAX_VALUE);
+        instance.search(0, expected::add);
+
+        IntArrayList labels = new IntArrayList();
+        ShortestPathTree labelTree = new ShortestPathTree(graph, createWeighting(new TimeBasedUTurnCost(20000)), false, TraversalMode.EDGE_BASED);
+        labelTree.setTimeLimit(Double.MAX_VALUE);
+        labelTree.searchLabels(0, labels::add);
+        assertEquals(expected.size(), labels.size());
+        for (int i = 0; i < labels.size(); i++) {
+            int label = labels.get(i);
+            ShortestPathTree.IsoLabel isoLabel = expected.get(i);
+            assertEquals(isoLabel.node, labelTree.getNode(label));
+            assertEquals(isoLabel.edge, labelTree.getEdge(label));
+            assertEquals(isoLabel.time, labelTree.getTime(label));
+            assertEquals(isoLabel.weight, labelTree.getWeight(label), 1.e-6);
+            assertEquals(isoLabel.distance, labelTree.getDistance(label), 1.e-6);
+            int parent = labelTree.getParent(label);
+            if (isoLabel.parent == null) {
+                assertEquals(-1, parent);
+            } else {
+                assertEquals(isoLabel.parent.node, labelTree.getNode(parent));
+                assertEquals(isoLabel.parent.edge, labelTree.getEdge(parent));
+                assertEquals(isoLabel.parent.time, labelTree.getTime(parent));
+            }
+        }
+    }
+
+    @Test
+    public void testExactOrderForLongTravelTimes() {
+        // the paths to node 2 take about ten hours and their weights and times differ by less than the precision of
+        // a float
+        BaseGraph g = new BaseGraph.Builder(encodingManager).create();
+        GHUtility.setSpeed(10, true, true, accessEnc, speedEnc, g.edge(0, 1).setDistance(100_000));
+        GHUtility.setSpeed(10, true, true, accessEnc, speedEnc, g.edge(0, 2).setDistance(100_000.002));
+        GHUtility.setSpeed(10, true, true, accessEnc, speedEnc, g.edge(1, 2).setDistance(0.001));
+        ShortestPathTree instance = new ShortestPathTree(g, createWeighting(), false, TraversalMode.NODE_BASED);
+        instance.setTimeLimit(20 * 3600_000);
+        IntArrayList labels = new IntArrayList();
+        instance.searchLabels(0, labels::add);
+        // every label is settled once and node 2 is reached via node 1
+        assertEquals(3, labels.size());
+        assertEquals(IntArrayList.from(0, 1, 2), IntArrayList.from(instance.getNode(labels.get(0)),
+                instance.getNode(labels.get(1)), instance.getNode(labels.get(2))));
+        assertEquals(1, instance.getNode(instance.getParent(labels.get(2))));
+    }
+
+    @Test
+    public void testMultipleOrigins() {
+        int[] fromNodes = {0, 5};
+        double[][] timesByOrigin = new double[fromNodes.length][graph.getNodes()];
+        for (int origin = 0; origin < fromNodes.length; origin++) {
+            double[] times = timesByOrigin[origin];
+            Arrays.fill(times, Double.POSITIVE_INFINITY);
+            ShortestPathTree instance = new ShortestPathTree(graph, createWeighting(), false, TraversalMode.NODE_BASED);
+            instance.setTimeLimit(Double.MAX_VALUE);
+            instance.search(fromNodes[origin], l -> times[l.node] = l.time);
+        }
+
+        ShortestPathTree instance = new ShortestPathTree(graph, createWeighting(), false, TraversalMode.NODE_BASED);
+        instance.setTimeLimit(Double.MAX_VALUE);
+        IntArrayList labels = new IntArrayList();
+        instance.searchLabels(fromNodes, labels::add);
+        assertEquals(graph.getNodes(), labels.size());
+        for (int i = 0; i < labels.size(); i++) {
+            int label = labels.get(i);
+            int node = instance.getNode(label);
+            double expected = Math.min(timesByOrigin[0][node], timesByOrigin[1][node]);
+            assertEquals(expected, instance.getTime(label), "node: " + node);
+            assertEquals(expected, timesByOrigin[instance.getOrigin(label)][node], "node: " + node);
+            int parent = instance.getParent(label);
+            if (parent >= 0)
+                assertEquals(instance.getOrigin(parent), instance.getOrigin(label));
+        }
+        assertEquals(0, instance.getOrigin(labels.get(0)));
+        assertEquals(1, instance.getOrigin(labels.get(1)));
+    }
+
     @Test
     public void testFerry() {
         AllEdgesIterator allEdges = graph.getAllEdges();
@@ -0,0 +1,138 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.TurnCost;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Parameters;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DijkstraOneToManyPathsTest {
+    private BaseGraph graph;
+    private DecimalEncodedValue speedEnc;
+    private DecimalEncodedValue turnCostEnc;
+    private Weighting weighting;
+
+    @BeforeEach
+    public void setup() {
+        speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        turnCostEnc = TurnCost.create("car", 10);
+        EncodingManager encodingManager = EncodingManager.start().add(speedEnc).addTurnCostEncodedValue(turnCostEnc).build();
+        graph = new BaseGraph.Builder(encodingManager).withTurnCosts(true).create();
+        weighting = new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), 40);
+    }
+
+    @Test
+    public void simpleGraph() {
+        // 0 - 1 - 2
+        //      \  |
+        //       - 3
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 3).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(100).set(speedEnc, 10, 10);
+
+        DijkstraOneToManyPaths dijkstra = new DijkstraOneToManyPaths(graph, weighting, TraversalMode.EDGE_BASED);
+        List<Path> paths = dijkstra.calcPaths(0, ANY_EDGE, new int[]{0, 2, 3, 3, 0}, new int[]{ANY_EDGE, ANY_EDGE, 2, 3, 0});
+        assertEquals(5, paths.size());
+        assertTrue(paths.get(0).isFound());
+        assertEquals(IntArrayList.from(0), paths.get(0).calcNodes());
+        assertEquals(IntArrayList.from(0, 1, 2), paths.get(1).calcNodes());
+        assertEquals(IntArrayList.from(0, 1, 3), paths.get(2).calcNodes());
+        assertEquals(IntArrayList.from(0, 1, 2, 3), paths.get(3).calcNodes());
+        assertEquals(300, paths.get(3).getDistance(), 1.e-6);
+        // returning to the start via the loop is cheaper than a u-turn
+        assertEquals(IntArrayList.from(0, 1, 3, 2, 1, 0), paths.get(4).calcNodes());
+        assertEquals(50, paths.get(4).getWeight(), 1.e-6);
+
+        // the first edge is restricted, so the start node can only be reached via a real path
+        dijkstra = new DijkstraOneToManyPaths(graph, weighting, TraversalMode.EDGE_BASED);
+        paths = dijkstra.calcPaths(1, 2, new int[]{1, 2}, new int[]{ANY_EDGE, ANY_EDGE});
+        assertEquals(IntArrayList.from(1, 3, 2, 1), paths.get(0).calcNodes());
+        assertEquals(IntArrayList.from(1, 3, 2), paths.get(1).calcNodes());
+
+        // a target that does not exist cannot be found
+        dijkstra = new DijkstraOneToManyPaths(graph, weighting, TraversalMode.EDGE_BASED);
+        paths = dijkstra.calcPaths(0, 5, new int[]{2}, new int[]{ANY_EDGE});
+        assertFalse(paths.get(0).isFound());
+        assertEquals(Parameters.Algorithms.DIJKSTRA_ONE_TO_MANY_PATHS, dijkstra.getName());
+
+        // the maximum number of visited nodes applies to the search for all targets
+        dijkstra = new DijkstraOneToManyPaths(graph, weighting, TraversalMode.EDGE_BASED);
+        dijkstra.setMaxVisitedNodes(2);
+        paths = dijkstra.calcPaths(0, ANY_EDGE, new int[]{1, 3}, new int[]{ANY_EDGE, ANY_EDGE});
+        assertTrue(paths.get(0).isFound());
+        assertFalse(paths.get(1).isFound());
+    }
+
+    @RepeatedTest(10)
+    public void compareWithBidirectionalDijkstra() {
+        final long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        int numNodes = 100;
+        GHUtility.buildRandomGraph(graph, rnd, numNodes, 2.2, true, speedEnc, null, 0.8, 0.8);
+        GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, 10, graph.getTurnCostStorage());
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        for (int i = 0; i < 50; i++) {
+            int source = rnd.nextInt(numNodes);
+            int fromOutEdge = randomAdjacentEdge(explorer, source, rnd);
+            int[] targets = new int[5];
+            int[] toInEdges = new int[targets.length];
+            for (int j = 0; j < targets.length; j++) {
+                targets[j] = j == 0 ? source : rnd.nextInt(numNodes);
+                toInEdges[j] = randomAdjacentEdge(explorer, targets[j], rnd);
+            }
+            List<Path> paths = new DijkstraOneToManyPaths(graph, weighting, TraversalMode.EDGE_BASED).calcPaths(source, fromOutEdge, targets, toInEdges);
+            for (int j = 0; j < targets.length; j++) {
+                Path expected = new DijkstraBidirectionRef(graph, weighting, TraversalMode.EDGE_BASED).calcPath(source, targets[j], fromOutEdge, toInEdges[j]);
+                String msg = "from: " + source + " (" + fromOutEdge + "), to: " + targets[j] + " (" + toInEdges[j] + "), seed: " + seed;
+                assertEquals(expected.isFound(), paths.get(j).isFound(), msg);
+                if (expected.isFound())
+                    assertEquals(expected.getWeight(), paths.get(j).getWeight(), 1.e-6, msg);
+            }
+        }
+    }
+
+    private static int randomAdjacentEdge(EdgeExplorer explorer, int node, Random rnd) {
+        if (rnd.nextBoolean())
+            return ANY_EDGE;
+        IntArrayList edges = new IntArrayList();
+        EdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next())
+            edges.add(iter.getEdge());
+        return edges.isEmpty() ? ANY_EDGE : edges.get(rnd.nextInt(edges.size()));
+    }
+}
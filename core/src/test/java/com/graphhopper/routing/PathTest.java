@@ -31,6 +31,7 @@ import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.*;
 import com.graphhopper.util.details.PathDetail;
+import com.graphhopper.util.details.PathDetailsBuilder;
 import com.graphhopper.util.details.PathDetailsBuilderFactory;
 import com.graphhopper.util.details.PathDetailsFromEdges;
 import org.junit.jupiter.api.Test;
@@ -335,6 +336,37 @@ public class PathTest {
         assertNull(averageSpeedDetails.get(0).getValue());
     }
 
+    @Test
+    public void testColumnarDetailsEqualEdgeByEdgeDetails() {
+        EnumEncodedValue<RoadClass> roadClassEnc = carManager.getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
+        DecimalEncodedValue maxSpeedEnc = carManager.getDecimalEncodedValue(MaxSpeed.KEY);
+        AllEdgesIterator iter = pathDetailGraph.getAllEdges();
+        while (iter.next()) {
+            iter.set(roadClassEnc, iter.getEdge() % 3 == 0 ? RoadClass.PRIMARY : RoadClass.RESIDENTIAL);
+            iter.set(maxSpeedEnc, iter.getEdge() == 2 ? MaxSpeed.MAXSPEED_150 : 50, 50);
+            iter.set(carManager.getBooleanEncodedValue(Roundabout.KEY), iter.getEdge() < 3);
+        }
+        Weighting weighting = new SpeedWeighting(carAvSpeedEnc);
+        Path p = new Dijkstra(pathDetailGraph, weighting, TraversalMode.NODE_BASED).calcPath(1, 7);
+        assertEquals(IntArrayList.from(1, 2, 3, 4, 7), p.calcNodes());
+
+        PathColumns columns = new PathColumns(p);
+        assertEquals(4, columns.size());
+        assertEquals(p.calcPoints(), columns.getPoints());
+        assertEquals(4, columns.getPointIndex(columns.size()));
+
+        List<String> requestedDetails = List.of(RoadClass.KEY, MaxSpeed.KEY, Roundabout.KEY, "speed", AVERAGE_SPEED, EDGE_ID);
+        Map<String, List<PathDetail>> details = PathDetailsFromEdges.calcDetails(columns, carManager, weighting,
+                requestedDetails, new PathDetailsBuilderFactory(), 3, pathDetailGraph);
+        List<PathDetailsBuilder> builders = new PathDetailsBuilderFactory().createPathDetailsBuilders(requestedDetails, p, carManager, weighting, pathDetailGraph);
+        p.forEveryEdge(new PathDetailsFromEdges(builders, 3));
+        assertEquals(requestedDetails.size(), details.size());
+        for (PathDetailsBuilder builder : builders)
+            assertEquals(builder.build().getValue().toString(), details.get(builder.getName()).toString(), builder.getName());
+        assertEquals("[primary [3, 4], residential [4, 5], primary [5, 6], residential [6, 7]]", details.get(RoadClass.KEY).toString());
+        assertEquals("[true [3, 5], false [5, 7]]", details.get(Roundabout.KEY).toString());
+    }
+
     @Test
     public void testCalcStreetNameDetails() {
         Weighting weighting = new SpeedWeighting(carAvSpeedEnc);
@@ -0,0 +1,148 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.AStar;
+import com.graphhopper.routing.AStarBidirection;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.WeightApproximator;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.util.GHUtility.createRandomSnaps;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CHPotentialApproximatorTest {
+    private final DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+    // the speed used for routing is never larger than the speed used for the preparation
+    private final DecimalEncodedValue penalizedSpeedEnc = new DecimalEncodedValueImpl("penalized_speed", 5, 5, true);
+    private final EncodingManager encodingManager = EncodingManager.start().add(speedEnc).add(penalizedSpeedEnc).build();
+    private final BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+
+    @Test
+    public void simpleGraph() {
+        // 0 - 1 - 2 - 3
+        //      \     /
+        //        4 -
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 4).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(4, 3).setDistance(200).set(speedEnc, 20, 0);
+        graph.freeze();
+        RoutingCHGraph chGraph = prepareCH();
+
+        CHPotentialApproximator approximator = new CHPotentialApproximator(chGraph, graph);
+        approximator.setTo(3);
+        assertEquals(0, approximator.approximate(3), 1.e-6);
+        assertEquals(10, approximator.approximate(2), 1.e-6);
+        assertEquals(20, approximator.approximate(1), 1.e-6);
+        assertEquals(10, approximator.approximate(4), 1.e-6);
+        assertEquals(30, approximator.approximate(0), 1.e-6);
+
+        // the edge 4-3 is a one-way
+        approximator.setTo(4);
+        assertEquals(0, approximator.approximate(4), 1.e-6);
+        assertEquals(30, approximator.approximate(3), 1.e-6);
+        assertEquals(20, approximator.approximate(0), 1.e-6);
+
+        // the reverse approximation calculates the weights from the source
+        WeightApproximator reverse = approximator.reverse();
+        reverse.setTo(3);
+        assertEquals(0, reverse.approximate(3), 1.e-6);
+        assertEquals(10, reverse.approximate(2), 1.e-6);
+        assertEquals(30, reverse.approximate(4), 1.e-6);
+        assertEquals(30, reverse.approximate(0), 1.e-6);
+    }
+
+    @RepeatedTest(10)
+    public void compareWithDijkstra() {
+        final long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        // we may not use an offset when the query graph is involved, otherwise traveling via virtual edges will not be
+        // the same as taking the direct edge
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.2, true, speedEnc, null, 0.8, 0);
+        AllEdgesIterator edge = graph.getAllEdges();
+        while (edge.next())
+            edge.set(penalizedSpeedEnc, penalize(rnd, edge.get(speedEnc)), penalize(rnd, edge.getReverse(speedEnc)));
+        graph.freeze();
+        RoutingCHGraph chGraph = prepareCH();
+        Weighting preparationWeighting = new SpeedWeighting(speedEnc);
+        Weighting routingWeighting = new SpeedWeighting(penalizedSpeedEnc);
+        LocationIndexTree index = new LocationIndexTree(graph, graph.getDirectory());
+        index.prepareIndex();
+        for (int i = 0; i < 50; i++) {
+            List<Snap> snaps = createRandomSnaps(graph.getBounds(), index, rnd, 2, true, EdgeFilter.ALL_EDGES);
+            QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+            int source = snaps.get(0).getClosestNode();
+            int target = snaps.get(1).getClosestNode();
+            String msg = "source: " + source + ", target: " + target + ", seed: " + seed;
+
+            // for the preparation weighting the approximation is exact (up to the rounding of the shortcut weights)
+            CHPotentialApproximator approximator = new CHPotentialApproximator(chGraph, queryGraph);
+            approximator.setTo(target);
+            Path lowerBound = new Dijkstra(queryGraph, preparationWeighting, TraversalMode.NODE_BASED).calcPath(source, target);
+            assertEquals(lowerBound.isFound() ? lowerBound.getWeight() : Double.POSITIVE_INFINITY, approximator.approximate(source), 1.e-2, msg);
+
+            Path expected = new Dijkstra(queryGraph, routingWeighting, TraversalMode.NODE_BASED).calcPath(source, target);
+            AStar aStar = new AStar(queryGraph, routingWeighting, TraversalMode.NODE_BASED);
+            aStar.setApproximation(new CHPotentialApproximator(chGraph, queryGraph));
+            Path path = aStar.calcPath(source, target);
+            assertEquals(expected.isFound(), path.isFound(), msg);
+            if (expected.isFound())
+                assertEquals(expected.getWeight(), path.getWeight(), 1.e-2, msg);
+
+            AStarBidirection aStarBi = new AStarBidirection(queryGraph, routingWeighting, TraversalMode.NODE_BASED);
+            aStarBi.setApproximation(new CHPotentialApproximator(chGraph, queryGraph));
+            path = aStarBi.calcPath(source, target);
+            assertEquals(expected.isFound(), path.isFound(), msg);
+            if (expected.isFound())
+                assertEquals(expected.getWeight(), path.getWeight(), 1.e-2, msg);
+        }
+    }
+
+    private static double penalize(Random rnd, double speed) {
+        return rnd.nextDouble() < 0.3 ? 5 * Math.floor(speed / 10) : speed;
+    }
+
+    private RoutingCHGraph prepareCH() {
+        CHConfig chConfig = CHConfig.nodeBased("p", new SpeedWeighting(speedEnc));
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        return RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ev;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.TurnCostProvider;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.routing.weighting.custom.CustomModelParser;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static com.graphhopper.json.Statement.If;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.json.Statement.Op.MULTIPLY;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExternalEncodedValueTest {
+    private static final String DIR = "./target/external-ev-test";
+
+    @AfterEach
+    public void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @Test
+    public void setAndGet() {
+        ExternalBooleanEncodedValue closedEnc = new ExternalBooleanEncodedValue("closed", true);
+        ExternalIntEncodedValue levelEnc = new ExternalIntEncodedValue("level", -5, 5, false);
+        ExternalDecimalEncodedValue speedEnc = new ExternalDecimalEncodedValue("live_speed", 0, 150, true);
+        EncodingManager em = EncodingManager.start().add(closedEnc).add(levelEnc).add(speedEnc).build();
+        assertEquals(0, em.getBytesForFlags());
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        EdgeIteratorState edge = graph.edge(0, 1).setDistance(100);
+        for (int i = 0; i < 100; i++)
+            graph.edge(i + 1, i + 2).setDistance(100);
+        EdgeIteratorState lastEdge = graph.getEdgeIteratorState(100, 101);
+
+        // edges that were never set use the default values
+        assertFalse(lastEdge.get(closedEnc));
+        assertEquals(0, lastEdge.get(levelEnc));
+        assertEquals(0, lastEdge.get(speedEnc));
+
+        edge.set(closedEnc, true, false).set(levelEnc, -3).set(speedEnc, 30.5, 50);
+        lastEdge.set(closedEnc, false, true).set(levelEnc, 5).set(speedEnc, 120);
+        assertTrue(edge.get(closedEnc));
+        assertFalse(edge.getReverse(closedEnc));
+        assertEquals(-3, edge.get(levelEnc));
+        assertEquals(-3, edge.getReverse(levelEnc));
+        assertEquals(30.5, edge.get(speedEnc));
+        assertEquals(50, edge.getReverse(speedEnc));
+        assertTrue(lastEdge.getReverse(closedEnc));
+        assertFalse(lastEdge.get(closedEnc));
+        assertEquals(5, lastEdge.get(levelEnc));
+        assertEquals(120, lastEdge.get(speedEnc));
+        // the edges in between are not affected
+        assertFalse(graph.getEdgeIteratorState(50, 51).get(closedEnc));
+
+        assertThrows(IllegalArgumentException.class, () -> edge.set(levelEnc, 6));
+        assertThrows(IllegalArgumentException.class, () -> edge.set(speedEnc, -1));
+        assertThrows(IllegalArgumentException.class, () -> edge.set(speedEnc, Double.NaN));
+        assertEquals(-5, levelEnc.getMinStorableInt());
+        assertEquals(5, levelEnc.getMaxOrMaxStorableInt());
+        assertEquals(150, speedEnc.getMaxOrMaxStorableDecimal());
+    }
+
+    @Test
+    public void update() {
+        ExternalBooleanEncodedValue closedEnc = new ExternalBooleanEncodedValue("closed", false);
+        ExternalDecimalEncodedValue speedEnc = new ExternalDecimalEncodedValue("live_speed", 0, 150, true);
+        EncodingManager em = EncodingManager.start().add(closedEnc).add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        EdgeIteratorState edge = graph.edge(0, 1).setDistance(100).set(speedEnc, 50, 50);
+
+        // the value of an edge without reverse direction is updated via any of its edge keys
+        long closedVersion = closedEnc.getVersion();
+        closedEnc.update(new int[]{edge.getReverseEdgeKey()}, new boolean[]{true});
+        assertTrue(edge.get(closedEnc));
+        assertTrue(edge.getReverse(closedEnc));
+        assertTrue(closedEnc.getVersion() > closedVersion);
+        speedEnc.update(new int[]{edge.getEdgeKey()}, new double[]{20});
+        assertEquals(20, edge.get(speedEnc));
+        assertEquals(50, edge.getReverse(speedEnc));
+        // an update can also add values for edges beyond the current storage
+        for (int i = 1; i < 100_001; i++)
+            graph.edge(i, i + 1);
+        speedEnc.update(new int[]{GHUtility.createEdgeKey(100_000, false)}, new double[]{10});
+        assertEquals(10, speedEnc.getDecimal(false, 100_000, null));
+        assertEquals(0, speedEnc.getDecimal(true, 100_000, null));
+
+        long speedVersion = speedEnc.getVersion();
+        assertThrows(IllegalArgumentException.class, () -> speedEnc.update(new int[]{0}, new double[]{200}));
+        assertThrows(IllegalArgumentException.class, () -> speedEnc.update(new int[]{0, 1}, new double[]{20}));
+        // values can only be set for existing edges
+        assertThrows(IllegalArgumentException.class, () -> speedEnc.update(new int[]{0, GHUtility.createEdgeKey(100_001, false)}, new double[]{20, 20}));
+        assertThrows(IllegalArgumentException.class, () -> speedEnc.setDecimal(false, 100_001, null, 20));
+        assertThrows(IllegalArgumentException.class, () -> closedEnc.update(new int[]{-1}, new boolean[]{true}));
+        // a failed update does not change anything
+        assertEquals(20, edge.get(speedEnc));
+        assertEquals(speedVersion, speedEnc.getVersion());
+
+        // large updates are merged into the storage
+        int[] edgeKeys = IntStream.range(0, 200_000).toArray();
+        double[] values = IntStream.range(0, 200_000).mapToDouble(i -> i % 100).toArray();
+        speedEnc.update(edgeKeys, values);
+        for (int key = 0; key < edgeKeys.length; key++)
+            assertEquals(key % 100, speedEnc.getDecimal(key % 2 == 1, key / 2, null), "edge key " + key);
+        closedEnc.update(new int[]{edge.getEdgeKey()}, new boolean[]{false});
+        assertFalse(edge.get(closedEnc));
+    }
+
+    @Test
+    public void persistence() {
+        GHDirectory dir = new GHDirectory(DIR, DAType.RAM_STORE);
+        ExternalBooleanEncodedValue closedEnc = new ExternalBooleanEncodedValue("closed", true);
+        ExternalIntEncodedValue levelEnc = new ExternalIntEncodedValue("level", 0, 10, false);
+        EncodingManager em = EncodingManager.start().add(closedEnc).add(levelEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).setDir(dir).create();
+        graph.edge(0, 1).setDistance(100).set(levelEnc, 3);
+        graph.edge(1, 2).setDistance(100).set(closedEnc, false, true);
+        closedEnc.update(new int[]{GHUtility.createEdgeKey(0, false)}, new boolean[]{true});
+        levelEnc.update(new int[]{GHUtility.createEdgeKey(1, true)}, new int[]{7});
+        long levelVersion = levelEnc.getVersion();
+        assertTrue(levelVersion > 0);
+        graph.flush();
+        graph.close();
+
+        // the encoded values are restored from their serialized form, just like when the graph is loaded from disk
+        closedEnc = (ExternalBooleanEncodedValue) EncodedValueSerializer.deserializeEncodedValue(EncodedValueSerializer.serializeEncodedValue(closedEnc));
+        levelEnc = (ExternalIntEncodedValue) EncodedValueSerializer.deserializeEncodedValue(EncodedValueSerializer.serializeEncodedValue(levelEnc));
+        assertTrue(closedEnc.isStoreTwoDirections());
+        assertEquals(10, levelEnc.getMaxStorableInt());
+        em = EncodingManager.start().add(closedEnc).add(levelEnc).build();
+        graph = new BaseGraph.Builder(em).setDir(new GHDirectory(DIR, DAType.RAM_STORE)).build();
+        assertTrue(graph.loadExisting());
+        EdgeIteratorState edge0 = graph.getEdgeIteratorState(0, 1);
+        EdgeIteratorState edge1 = graph.getEdgeIteratorState(1, 2);
+        assertTrue(edge0.get(closedEnc));
+        assertFalse(edge0.getReverse(closedEnc));
+        assertFalse(edge1.get(closedEnc));
+        assertTrue(edge1.getReverse(closedEnc));
+        assertEquals(3, edge0.get(levelEnc));
+        assertEquals(7, edge1.get(levelEnc));
+        // the version is stored together with the values
+        assertEquals(levelVersion, levelEnc.getVersion());
+        graph.close();
+    }
+
+    @Test
+    public void attachToSingleGraph() {
+        ExternalIntEncodedValue levelEnc = new ExternalIntEncodedValue("level", 0, 10, false);
+        EncodingManager em = EncodingManager.start().add(levelEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        graph.edge(0, 1).setDistance(100).set(levelEnc, 3);
+        // a second graph must not take over the storage of the first one
+        assertThrows(IllegalStateException.class, () -> new BaseGraph.Builder(em).create());
+        assertEquals(3, graph.getEdgeIteratorState(0, 1).get(levelEnc));
+        // once the first graph is closed the encoded value can be used for another graph
+        graph.close();
+        graph = new BaseGraph.Builder(em).create();
+        graph.edge(0, 1).setDistance(100);
+        assertEquals(0, graph.getEdgeIteratorState(0, 1).get(levelEnc));
+        graph.close();
+    }
+
+    @Test
+    public void sortEdges() {
+        ExternalIntEncodedValue levelEnc = new ExternalIntEncodedValue("level", 0, 10, true);
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, false);
+        EncodingManager em = EncodingManager.start().add(levelEnc).add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        graph.edge(0, 1).setDistance(100).set(levelEnc, 1, 2);
+        graph.edge(1, 2).setDistance(100).set(levelEnc, 3, 4);
+        graph.edge(2, 3).setDistance(100).set(levelEnc, 5, 6);
+        graph.sortEdges(e -> 2 - e);
+        assertEquals(5, graph.getEdgeIteratorState(0, 3).get(levelEnc));
+        assertEquals(6, graph.getEdgeIteratorState(0, 3).getReverse(levelEnc));
+        assertEquals(3, graph.getEdgeIteratorState(1, 2).get(levelEnc));
+        assertEquals(1, graph.getEdgeIteratorState(2, 1).get(levelEnc));
+        assertEquals(2, graph.getEdgeIteratorState(2, 1).getReverse(levelEnc));
+    }
+
+    @Test
+    public void customModel() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, false);
+        ExternalBooleanEncodedValue closedEnc = new ExternalBooleanEncodedValue("road_closed", false);
+        EncodingManager em = EncodingManager.start().add(speedEnc).add(closedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        // 0-1-2 is shorter than 0-3-2
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 50);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 50);
+        graph.edge(0, 3).setDistance(150).set(speedEnc, 50);
+        graph.edge(3, 2).setDistance(150).set(speedEnc, 50);
+
+        CustomModel customModel = new CustomModel();
+        customModel.addToPriority(If("road_closed", MULTIPLY, "0"));
+        customModel.addToSpeed(If("true", LIMIT, speedEnc.getName()));
+        Weighting weighting = CustomModelParser.createWeighting(em, TurnCostProvider.NO_TURN_COST_PROVIDER, customModel);
+        Path path = new Dijkstra(graph, weighting, TraversalMode.NODE_BASED).calcPath(0, 2);
+        assertEquals(IntArrayList.from(0, 1, 2), path.calcNodes());
+
+        // the closure is taken into account by the existing weighting
+        closedEnc.update(new int[]{GHUtility.createEdgeKey(1, false)}, new boolean[]{true});
+        path = new Dijkstra(graph, weighting, TraversalMode.NODE_BASED).calcPath(0, 2);
+        assertEquals(IntArrayList.from(0, 3, 2), path.calcNodes());
+    }
+
+    @Test
+    public void createFromConfig() {
+        List<ExternalEncodedValue> evs = GraphHopper.createExternalEncodedValues("road_closed, level|type=int|max=10, " +
+                "live_speed|type=decimal|min=0|max=150|two_directions=true");
+        assertEquals(3, evs.size());
+        assertInstanceOf(ExternalBooleanEncodedValue.class, evs.get(0));
+        assertFalse(evs.get(0).isStoreTwoDirections());
+        assertEquals(10, ((ExternalIntEncodedValue) evs.get(1)).getMaxStorableInt());
+        assertEquals("live_speed", evs.get(2).getName());
+        assertEquals(150, ((ExternalDecimalEncodedValue) evs.get(2)).getMaxStorableDecimal());
+        assertTrue(evs.get(2).isStoreTwoDirections());
+        assertThrows(IllegalArgumentException.class, () -> GraphHopper.createExternalEncodedValues("a|type=string"));
+        assertThrows(IllegalArgumentException.class, () -> GraphHopper.createExternalEncodedValues("a, a"));
+    }
+}
@@ -29,6 +29,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
 
 import java.util.Arrays;
 import java.util.HashMap;
@@ -241,6 +242,70 @@ class CustomModelParserTest {
         assertThrows(IllegalArgumentException.class, () -> CustomModelParser.createWeightingParameters(customModel2, encodingManager));
     }
 
+    @Test
+    public void sameClassForDifferentLiterals() {
+        DecimalEncodedValue maxSpeedEnc = encodingManager.getDecimalEncodedValue(MaxSpeed.KEY);
+        EdgeIteratorState primary = graph.edge(0, 1).setDistance(10).
+                set(roadClassEnc, PRIMARY).set(avgSpeedEnc, 80).set(accessEnc, true, true).set(maxSpeedEnc, 70, 70);
+        CustomModel customModel = new CustomModel();
+        customModel.addToPriority(If("road_class == PRIMARY && max_speed > 77", MULTIPLY, "0.71"));
+        customModel.addToSpeed(If("true", LIMIT, avgSpeedEnc.getName()));
+        customModel.addToSpeed(If("road_class == PRIMARY", LIMIT, "66"));
+        CustomWeighting.Parameters parameters = CustomModelParser.createWeightingParameters(customModel, encodingManager);
+        int cacheSize = CustomModelParser.getCacheSize();
+
+        CustomModel otherLiterals = new CustomModel();
+        otherLiterals.addToPriority(If("road_class == PRIMARY && max_speed > 77", MULTIPLY, "0.72"));
+        otherLiterals.addToSpeed(If("true", LIMIT, avgSpeedEnc.getName()));
+        otherLiterals.addToSpeed(If("road_class == PRIMARY", LIMIT, "55"));
+        CustomWeighting.Parameters otherParameters = CustomModelParser.createWeightingParameters(otherLiterals, encodingManager);
+        assertEquals(cacheSize, CustomModelParser.getCacheSize());
+
+        assertEquals(1, parameters.getEdgeToPriorityMapping().get(primary, false), 1.e-6);
+        assertEquals(66, parameters.getEdgeToSpeedMapping().get(primary, false), 1.e-6);
+        assertEquals(55, otherParameters.getEdgeToSpeedMapping().get(primary, false), 1.e-6);
+        primary.set(maxSpeedEnc, 80, 80);
+        assertEquals(0.71, parameters.getEdgeToPriorityMapping().get(primary, false), 1.e-6);
+        assertEquals(0.72, otherParameters.getEdgeToPriorityMapping().get(primary, false), 1.e-6);
+
+        // a different structure needs a new class
+        CustomModel otherStructure = new CustomModel(otherLiterals);
+        otherStructure.addToPriority(If("road_class == SECONDARY", MULTIPLY, "0.5"));
+        CustomModelParser.createWeightingParameters(otherStructure, encodingManager);
+        assertEquals(cacheSize + 1, CustomModelParser.getCacheSize());
+    }
+
+    @Test
+    public void sameClassForDifferentAreas() {
+        graph.getNodeAccess().setNode(0, 0.5, 0.5);
+        graph.getNodeAccess().setNode(1, 0.6, 0.6);
+        EdgeIteratorState edge = graph.edge(0, 1).setDistance(10).set(avgSpeedEnc, 80).set(accessEnc, true, true);
+        JsonFeatureCollection areas = new JsonFeatureCollection();
+        areas.getFeatures().add(new JsonFeature("near", "Feature", null, createSquare(0, 1), new HashMap<>()));
+        areas.getFeatures().add(new JsonFeature("far", "Feature", null, createSquare(10, 11), new HashMap<>()));
+
+        CustomModel nearModel = new CustomModel().setAreas(areas);
+        nearModel.addToSpeed(If("true", LIMIT, avgSpeedEnc.getName()));
+        nearModel.addToSpeed(If("in_near", LIMIT, "30"));
+        CustomWeighting.Parameters nearParameters = CustomModelParser.createWeightingParameters(nearModel, encodingManager);
+        int cacheSize = CustomModelParser.getCacheSize();
+
+        CustomModel farModel = new CustomModel().setAreas(areas);
+        farModel.addToSpeed(If("true", LIMIT, avgSpeedEnc.getName()));
+        farModel.addToSpeed(If("in_far", LIMIT, "20"));
+        CustomWeighting.Parameters farParameters = CustomModelParser.createWeightingParameters(farModel, encodingManager);
+        assertEquals(cacheSize, CustomModelParser.getCacheSize());
+
+        assertEquals(30, nearParameters.getEdgeToSpeedMapping().get(edge, false), 1.e-6);
+        assertEquals(80, farParameters.getEdgeToSpeedMapping().get(edge, false), 1.e-6);
+    }
+
+    private static Polygon createSquare(double min, double max) {
+        return new GeometryFactory().createPolygon(new Coordinate[]{
+                new Coordinate(min, min), new Coordinate(max, min), new Coordinate(max, max),
+                new Coordinate(min, max), new Coordinate(min, min)});
+    }
+
     @Test
     public void parseValue() {
         DecimalEncodedValue maxSpeedEnc = encodingManager.getDecimalEncodedValue(MaxSpeed.KEY);
@@ -361,4 +426,13 @@ class CustomModelParserTest {
         List<String> variables = findVariablesForEncodedValuesString(customModel, s -> new DefaultImportRegistry().createImportUnit(s) != null, s -> "");
         assertEquals(List.of("foot_access", "hike_rating", "road_access"), variables);
     }
+
+    @Test
+    public void findEncodedValues() {
+        CustomModel customModel = new CustomModel();
+        customModel.addToPriority(If("!backward_car_access || road_class == PRIMARY", MULTIPLY, "0.5"));
+        customModel.addToPriority(If("car_access && in_custom1", MULTIPLY, "0.9"));
+        customModel.addToSpeed(If("true", LIMIT, "max_speed"));
+        assertEquals(List.of("car_access", "road_class", "max_speed"), CustomModelParser.findEncodedValues(customModel, encodingManager));
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.querygraph.VirtualEdgeIteratorState;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static com.graphhopper.json.Statement.If;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.json.Statement.Op.MULTIPLY;
+import static com.graphhopper.routing.weighting.TurnCostProvider.NO_TURN_COST_PROVIDER;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EdgeWeightCacheTest {
+    private static final String DIR = "./target/edge-weight-cache-test";
+    private DecimalEncodedValue speedEnc;
+    private EnumEncodedValue<RoadClass> roadClassEnc;
+    private EncodingManager em;
+    private BaseGraph graph;
+
+    @BeforeEach
+    public void setup() {
+        speedEnc = VehicleSpeed.create("car", 5, 5, true);
+        em = EncodingManager.start().add(VehicleAccess.create("car")).add(speedEnc).add(RoadClass.create()).build();
+        roadClassEnc = em.getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
+        graph = new BaseGraph.Builder(em).create();
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    private CustomModel createCustomModel() {
+        return new CustomModel().
+                addToSpeed(If("true", LIMIT, speedEnc.getName())).
+                addToPriority(If("road_class == PRIMARY", MULTIPLY, "0.7")).
+                setDistanceInfluence(30d);
+    }
+
+    @Test
+    public void sameWeights() {
+        GHUtility.buildRandomGraph(graph, new Random(123), 50, 2.2, true, speedEnc, null, 0.8, 0.8);
+        RoadClass[] roadClasses = RoadClass.values();
+        for (int i = 0; i < graph.getEdges(); i++)
+            graph.getEdgeIteratorState(i, Integer.MIN_VALUE).set(roadClassEnc, roadClasses[i % roadClasses.length]);
+
+        CustomWeighting.Parameters parameters = CustomModelParser.createWeightingParameters(createCustomModel(), em);
+        EdgeWeightCache cache = EdgeWeightCache.loadOrBuild(new RAMDirectory(), "car", graph, parameters, 1, false);
+        assertEquals(graph.getEdges(), cache.getEdges());
+        Weighting weighting = new CustomWeighting(NO_TURN_COST_PROVIDER, parameters);
+        Weighting cachedWeighting = new CustomWeighting(NO_TURN_COST_PROVIDER, cache.wrap(parameters));
+        for (int i = 0; i < graph.getEdges(); i++) {
+            EdgeIteratorState edge = graph.getEdgeIteratorState(i, Integer.MIN_VALUE);
+            for (boolean reverse : new boolean[]{false, true}) {
+                EdgeIteratorState e = reverse ? edge.detach(true) : edge;
+                double expected = weighting.calcEdgeWeight(e, false);
+                if (Double.isInfinite(expected))
+                    assertTrue(Double.isInfinite(cachedWeighting.calcEdgeWeight(e, false)));
+                else
+                    assertEquals(expected, cachedWeighting.calcEdgeWeight(e, false), expected * 1.e-6);
+                assertEquals(weighting.calcEdgeMillis(e, true), cachedWeighting.calcEdgeMillis(e, true), 1);
+            }
+        }
+        cache.close();
+    }
+
+    @Test
+    public void virtualEdgesAreNotCached() {
+        EdgeIteratorState edge = graph.edge(0, 1).setDistance(100).set(speedEnc, 50, 50).set(roadClassEnc, RoadClass.PRIMARY);
+        CustomWeighting.Parameters parameters = CustomModelParser.createWeightingParameters(createCustomModel(), em);
+        EdgeWeightCache cache = EdgeWeightCache.loadOrBuild(new RAMDirectory(), "car", graph, parameters, 1, false);
+        Weighting weighting = new CustomWeighting(NO_TURN_COST_PROVIDER, cache.wrap(parameters));
+
+        // the virtual edge has a different speed than the original edge, so it must not be read from the cache
+        edge.set(speedEnc, 20, 20);
+        VirtualEdgeIteratorState virtualEdge = new VirtualEdgeIteratorState(edge.getEdgeKey(), 2 * graph.getEdges(), 2, 1,
+                50, edge.getFlags(), edge.getKeyValues(), Helper.createPointList(0, 0, 0, 0.0005), false);
+        Weighting uncachedWeighting = new CustomWeighting(NO_TURN_COST_PROVIDER, parameters);
+        assertEquals(uncachedWeighting.calcEdgeWeight(virtualEdge, false), weighting.calcEdgeWeight(virtualEdge, false), 1.e-6);
+        // ... whereas the real edge still yields the cached speed
+        assertEquals(100 / (50 / 3.6) / 0.7 + 100 * 30 / 1000.0, weighting.calcEdgeWeight(edge, false), 1.e-4);
+        cache.close();
+    }
+
+    @Test
+    public void rebuildWhenCustomModelChanges() {
+        EdgeIteratorState edge = graph.edge(0, 1).setDistance(100).set(speedEnc, 50, 50);
+        new File(DIR).mkdirs();
+        GHDirectory dir = new GHDirectory(DIR, DAType.RAM_STORE);
+        CustomWeighting.Parameters parameters = CustomModelParser.createWeightingParameters(createCustomModel(), em);
+        EdgeWeightCache cache = EdgeWeightCache.loadOrBuild(dir, "car", graph, parameters, 1, true);
+        cache.close();
+
+        // same hash: the stored values are used even though the speed changed
+        edge.set(speedEnc, 20, 20);
+        dir = new GHDirectory(DIR, DAType.RAM_STORE);
+        cache = EdgeWeightCache.loadOrBuild(dir, "car", graph, parameters, 1, true);
+        assertEquals(50, cache.wrap(parameters).getEdgeToSpeedMapping().get(edge, false), 1.e-6);
+        cache.close();
+
+        // different hash: the cache is built again
+        dir = new GHDirectory(DIR, DAType.RAM_STORE);
+        cache = EdgeWeightCache.loadOrBuild(dir, "car", graph, parameters, 2, true);
+        assertEquals(20, cache.wrap(parameters).getEdgeToSpeedMapping().get(edge, false), 1.e-6);
+        cache.close();
+    }
+
+    @Test
+    public void toFloatTowardsZero() {
+        assertEquals(0.5f, EdgeWeightCache.toFloatTowardsZero(0.5));
+        assertTrue(EdgeWeightCache.toFloatTowardsZero(0.7) <= 0.7);
+        assertTrue(EdgeWeightCache.toFloatTowardsZero(0.1) <= 0.1);
+        assertTrue(EdgeWeightCache.toFloatTowardsZero(-0.1) >= -0.1);
+        assertEquals(Float.POSITIVE_INFINITY, EdgeWeightCache.toFloatTowardsZero(Double.POSITIVE_INFINITY));
+        assertEquals(0f, EdgeWeightCache.toFloatTowardsZero(0));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.json.Statement.*;
+import static com.graphhopper.json.Statement.Op.*;
+import static com.graphhopper.routing.weighting.custom.CustomModelParser.Evaluator.JANINO;
+import static com.graphhopper.routing.weighting.custom.CustomModelParser.Evaluator.LAMBDA;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LambdaCustomModelCompilerTest {
+    private EncodingManager em;
+    private BaseGraph graph;
+
+    @BeforeEach
+    public void setup() {
+        BooleanEncodedValue accessEnc = VehicleAccess.create("car");
+        DecimalEncodedValue speedEnc = VehicleSpeed.create("car", 5, 5, true);
+        em = EncodingManager.start().add(accessEnc).add(speedEnc).add(RoadClass.create()).add(RoadClassLink.create())
+                .add(RoadEnvironment.create()).add(MaxSpeed.create()).add(Country.create()).add(Lanes.create()).build();
+        graph = new BaseGraph.Builder(em).create();
+        Random rnd = new Random(42);
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.2, true, speedEnc, null, 0.8, 0.8);
+        EnumEncodedValue<RoadClass> roadClassEnc = em.getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
+        EnumEncodedValue<RoadEnvironment> roadEnvEnc = em.getEnumEncodedValue(RoadEnvironment.KEY, RoadEnvironment.class);
+        EnumEncodedValue<Country> countryEnc = em.getEnumEncodedValue(Country.KEY, Country.class);
+        DecimalEncodedValue maxSpeedEnc = em.getDecimalEncodedValue(MaxSpeed.KEY);
+        IntEncodedValue lanesEnc = em.getIntEncodedValue(Lanes.KEY);
+        BooleanEncodedValue linkEnc = em.getBooleanEncodedValue(RoadClassLink.KEY);
+        for (int i = 0; i < graph.getEdges(); i++) {
+            EdgeIteratorState edge = graph.getEdgeIteratorState(i, Integer.MIN_VALUE);
+            edge.set(accessEnc, rnd.nextBoolean(), rnd.nextBoolean());
+            edge.set(roadClassEnc, RoadClass.values()[rnd.nextInt(RoadClass.values().length)]);
+            edge.set(roadEnvEnc, RoadEnvironment.values()[rnd.nextInt(RoadEnvironment.values().length)]);
+            edge.set(countryEnc, rnd.nextBoolean() ? Country.DEU : Country.GBR);
+            edge.set(maxSpeedEnc, 10 * rnd.nextInt(14), 10 * rnd.nextInt(14));
+            edge.set(lanesEnc, rnd.nextInt(4));
+            edge.set(linkEnc, rnd.nextBoolean());
+        }
+    }
+
+    @Test
+    public void sameAsJanino() {
+        JsonFeatureCollection areas = new JsonFeatureCollection();
+        // covers a part of the random graph
+        areas.getFeatures().add(new JsonFeature("west", "Feature", null, new GeometryFactory().createPolygon(new Coordinate[]{
+                new Coordinate(9.7, 49.4), new Coordinate(9.705, 49.4), new Coordinate(9.705, 49.41),
+                new Coordinate(9.7, 49.41), new Coordinate(9.7, 49.4)}), new HashMap<>()));
+
+        CustomModel simple = new CustomModel();
+        simple.addToSpeed(If("true", LIMIT, "car_average_speed"));
+        simple.addToPriority(If("!car_access", MULTIPLY, "0"));
+        simple.addToPriority(If("road_class == PRIMARY", MULTIPLY, "0.7"));
+        assertSame(simple, JANINO, LAMBDA);
+
+        CustomModel groups = new CustomModel().setDistanceInfluence(50d).setAreas(areas);
+        groups.addToSpeed(If("true", LIMIT, "car_average_speed"));
+        groups.addToSpeed(If("road_class == MOTORWAY || road_class == TRUNK", LIMIT, "100"));
+        groups.addToSpeed(ElseIf("road_class == SECONDARY && max_speed > 50", LIMIT, "max_speed * 0.9"));
+        groups.addToSpeed(ElseIf("lanes >= 2", MULTIPLY, "1.1"));
+        groups.addToSpeed(Else(MULTIPLY, "0.8"));
+        groups.addToSpeed(If("in_west", LIMIT, "30"));
+        groups.addToPriority(If("!car_access || !backward_car_access", MULTIPLY, "0.5"));
+        groups.addToPriority(If("road_environment != FERRY && road_class_link == true", MULTIPLY, "0.9"));
+        groups.addToPriority(If("road_class.ordinal() > 3 && Math.abs(max_speed - 50) > 10", MULTIPLY, "0.6"));
+        groups.addToPriority(If("country.isRightHandTraffic()", MULTIPLY, "0.95"));
+        groups.addToPriority(If("max_speed - 10 < -5 + lanes * 20", MULTIPLY, "0.4"));
+        assertSame(groups, JANINO, LAMBDA);
+
+        CustomModel blocks = new CustomModel();
+        blocks.addToSpeed(If("true", LIMIT, "car_average_speed"));
+        blocks.addToSpeed(If("road_class_link", List.of(
+                If("lanes == 1", MULTIPLY, "0.5"),
+                Else(List.of(If("country == DEU", LIMIT, "40"))))));
+        blocks.addToPriority(If("road_class == RESIDENTIAL", List.of(If("max_speed <= 30", MULTIPLY, "0.3"))));
+        assertSame(blocks, JANINO, LAMBDA);
+    }
+
+    private void assertSame(CustomModel customModel, CustomModelParser.Evaluator first, CustomModelParser.Evaluator second) {
+        // make sure that there is no fallback to Janino
+        assertNotNull(LambdaCustomModelCompiler.createWeightingParameters(customModel, em));
+        CustomWeighting.Parameters p1 = CustomModelParser.createWeightingParameters(customModel, em, first);
+        CustomWeighting.Parameters p2 = CustomModelParser.createWeightingParameters(customModel, em, second);
+        assertEquals(p1.getMaxSpeedCalc().calcMax(), p2.getMaxSpeedCalc().calcMax());
+        assertEquals(p1.getMaxPrioCalc().calcMax(), p2.getMaxPrioCalc().calcMax());
+        assertEquals(p1.getDistanceInfluence(), p2.getDistanceInfluence());
+        for (int i = 0; i < graph.getEdges(); i++) {
+            EdgeIteratorState edge = graph.getEdgeIteratorState(i, Integer.MIN_VALUE);
+            for (boolean reverse : new boolean[]{false, true}) {
+                assertEquals(p1.getEdgeToSpeedMapping().get(edge, reverse), p2.getEdgeToSpeedMapping().get(edge, reverse), "speed, edge " + i + ", " + reverse);
+                assertEquals(p1.getEdgeToPriorityMapping().get(edge, reverse), p2.getEdgeToPriorityMapping().get(edge, reverse), "priority, edge " + i + ", " + reverse);
+            }
+        }
+    }
+
+    @Test
+    public void unsupportedFallsBackToJanino() {
+        CustomModel customModel = new CustomModel();
+        customModel.addToSpeed(If("true", LIMIT, "car_average_speed"));
+        customModel.addToPriority(If("road_class == PRIMARY", MULTIPLY, "0.7"));
+        customModel.addToTurnPenalty(If("road_class == PRIMARY", ADD, "10"));
+        assertNull(LambdaCustomModelCompiler.createWeightingParameters(customModel, em));
+        CustomWeighting.Parameters parameters = CustomModelParser.createWeightingParameters(customModel, em, LAMBDA);
+        EdgeIteratorState edge = graph.getEdgeIteratorState(0, Integer.MIN_VALUE);
+        assertEquals(CustomModelParser.createWeightingParameters(customModel, em, JANINO).getEdgeToPriorityMapping().get(edge, false),
+                parameters.getEdgeToPriorityMapping().get(edge, false));
+    }
+
+    @Test
+    public void sameErrors() {
+        CustomModel customModel = new CustomModel();
+        customModel.addToSpeed(If("true", LIMIT, "car_average_speed"));
+        customModel.addToPriority(If("unknown == PRIMARY", MULTIPLY, "0.7"));
+        IllegalArgumentException janino = assertThrows(IllegalArgumentException.class, () -> CustomModelParser.createWeightingParameters(customModel, em, JANINO));
+        IllegalArgumentException lambda = assertThrows(IllegalArgumentException.class, () -> CustomModelParser.createWeightingParameters(customModel, em, LAMBDA));
+        assertEquals(janino.getMessage(), lambda.getMessage());
+
+        // the constant does not exist, which is only found when compiling
+        CustomModel unknownConstant = new CustomModel();
+        unknownConstant.addToSpeed(If("true", LIMIT, "car_average_speed"));
+        unknownConstant.addToPriority(If("road_class == HIGHWAY", MULTIPLY, "0.7"));
+        assertThrows(IllegalArgumentException.class, () -> CustomModelParser.createWeightingParameters(unknownConstant, em, LAMBDA));
+    }
+}
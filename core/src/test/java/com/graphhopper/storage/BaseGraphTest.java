@@ -28,7 +28,9 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static com.graphhopper.util.EdgeIteratorState.REVERSE_STATE;
 import static com.graphhopper.util.FetchMode.*;
@@ -244,6 +246,63 @@ public class BaseGraphTest extends AbstractGraphStorageTester {
         assertEquals(13, edge1.getFlags().ints[0]);
     }
 
+    @Test
+    public void testSortEdgesWithNodeWithoutEdges() {
+        BaseGraph graph = newGHStorage(new RAMDirectory(), false).create(defaultSize);
+        graph.edge(0, 1).setDistance(10);
+        graph.edge(1, 3).setDistance(20);
+        // node 2 has no edges, its edge reference is NO_EDGE and must not be passed to the edge mapping
+        graph.getNodeAccess().setNode(2, 0.1, 0.1);
+        int[] newEdgesByOldEdges = {1, 0};
+        graph.sortEdges(edge -> newEdgesByOldEdges[edge]);
+        assertEquals(0, GHUtility.count(graph.createEdgeExplorer().setBaseNode(2)));
+        assertEquals(GHUtility.asSet(0, 3), GHUtility.getNeighbors(graph.createEdgeExplorer().setBaseNode(1)));
+        EdgeIteratorState edge = graph.getEdgeIteratorState(0, 3);
+        assertEquals(1, edge.getBaseNode());
+        assertEquals(20, edge.getDistance());
+        assertEquals(10, graph.getEdgeIteratorState(1, 1).getDistance());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testSortConcurrently(boolean store) {
+        // the nodes use an int-based DataAccess and the edges a byte-based one. a graph that is not stored is sorted
+        // in place with a single thread
+        BaseGraph sequential = newGHStorage(new RAMDirectory(), false, defaultSize / 2).create(defaultSize);
+        BaseGraph concurrent = newGHStorage(new RAMDirectory(defaultGraphLoc, store), false, defaultSize / 2).create(defaultSize);
+        for (BaseGraph g : List.of(sequential, concurrent))
+            GHUtility.buildRandomGraph(g, new Random(123), 500, 2.2, true, carSpeedEnc, 60d, 0.8, 0.7);
+        Random rnd = new Random(456);
+        IntArrayList newEdgesByOldEdges = ArrayUtil.permutation(sequential.getEdges(), rnd);
+        IntArrayList newNodesByOldNodes = ArrayUtil.permutation(sequential.getNodes(), rnd);
+        sequential.sortEdges(newEdgesByOldEdges::get);
+        sequential.relabelNodes(newNodesByOldNodes::get);
+        concurrent.sortEdges(newEdgesByOldEdges::get, 3);
+        concurrent.relabelNodes(newNodesByOldNodes::get, 3);
+
+        assertEquals(sequential.getNodes(), concurrent.getNodes());
+        assertEquals(sequential.getEdges(), concurrent.getEdges());
+        EdgeExplorer explorerA = sequential.createEdgeExplorer();
+        EdgeExplorer explorerB = concurrent.createEdgeExplorer();
+        for (int node = 0; node < sequential.getNodes(); node++) {
+            assertEquals(sequential.getNodeAccess().getLat(node), concurrent.getNodeAccess().getLat(node));
+            assertEquals(sequential.getNodeAccess().getLon(node), concurrent.getNodeAccess().getLon(node));
+            EdgeIterator iterA = explorerA.setBaseNode(node);
+            EdgeIterator iterB = explorerB.setBaseNode(node);
+            while (iterA.next()) {
+                assertTrue(iterB.next());
+                assertEquals(iterA.getEdge(), iterB.getEdge());
+                assertEquals(iterA.getAdjNode(), iterB.getAdjNode());
+                assertEquals(iterA.getDistance(), iterB.getDistance());
+                assertEquals(iterA.getFlags(), iterB.getFlags());
+            }
+            assertFalse(iterB.next());
+        }
+        // the temporary storage is removed after sorting
+        assertFalse(concurrent.getDirectory().getDAs().containsKey("edges_sort_tmp"));
+        assertFalse(concurrent.getDirectory().getDAs().containsKey("nodes_sort_tmp"));
+    }
+
     @Test
     public void testEdgeKey() {
         BaseGraph g = new BaseGraph.Builder(encodingManager).create();
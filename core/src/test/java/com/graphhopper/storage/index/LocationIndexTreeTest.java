@@ -18,6 +18,7 @@
 package com.graphhopper.storage.index;
 
 import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.DecimalEncodedValue;
 import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
@@ -37,6 +38,7 @@ import org.junit.jupiter.params.provider.ValueSource;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -501,6 +503,193 @@ public class LocationIndexTreeTest {
         g.close();
     }
 
+    @ParameterizedTest
+    @ValueSource(ints = {2, 3, 8})
+    public void testPrepareIndexConcurrently(int threads) {
+        BaseGraph g = new BaseGraph.Builder(encodingManager).create();
+        Random rnd = new Random(42);
+        GHUtility.buildRandomGraph(g, rnd, 1000, 2.5, true, speedEnc, 60d, 0.8, 0.5);
+        AllEdgesIterator iter = g.getAllEdges();
+        while (iter.next()) {
+            if (rnd.nextBoolean())
+                iter.setWayGeometry(Helper.createPointList(49.401 + rnd.nextDouble() * 0.008, 9.701 + rnd.nextDouble() * 0.008));
+        }
+        LocationIndexTree expected = createIndexNoPrepare(g, 50);
+        expected.prepareIndex();
+        LocationIndexTree index = createIndexNoPrepare(g, 50).setThreads(threads);
+        index.prepareIndex();
+
+        assertEquals(expected.lineIntIndex.getSize(), index.lineIntIndex.getSize());
+        assertEquals(expected.lineIntIndex.getLeafs(), index.lineIntIndex.getLeafs());
+        assertEquals(expected.lineIntIndex.dataAccess.getCapacity(), index.lineIntIndex.dataAccess.getCapacity());
+        for (long pointer = 0; pointer < expected.lineIntIndex.dataAccess.getCapacity(); pointer += 4)
+            assertEquals(expected.lineIntIndex.dataAccess.getInt(pointer), index.lineIntIndex.dataAccess.getInt(pointer));
+        for (int i = 0; i < 100; i++) {
+            double lat = 49.4 + rnd.nextDouble() * 0.01, lon = 9.7 + rnd.nextDouble() * 0.01;
+            assertEquals(expected.findClosest(lat, lon, EdgeFilter.ALL_EDGES).getClosestEdge().getEdge(),
+                    index.findClosest(lat, lon, EdgeFilter.ALL_EDGES).getClosestEdge().getEdge());
+        }
+        g.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3})
+    public void testFindClosestBatch(int threads) {
+        BaseGraph g = new BaseGraph.Builder(encodingManager).create();
+        Random rnd = new Random(42);
+        GHUtility.buildRandomGraph(g, rnd, 500, 2.5, true, speedEnc, 60d, 0.8, 0.5);
+        AllEdgesIterator iter = g.getAllEdges();
+        while (iter.next()) {
+            if (rnd.nextBoolean())
+                iter.setWayGeometry(Helper.createPointList(49.401 + rnd.nextDouble() * 0.008, 9.701 + rnd.nextDouble() * 0.008));
+        }
+        LocationIndexTree index = createIndexNoPrepare(g, 50);
+        index.prepareIndex();
+        List<GHPoint> points = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            // include some duplicate points and some points that are close to each other
+            if (i > 0 && rnd.nextInt(5) == 0)
+                points.add(points.get(rnd.nextInt(points.size())));
+            else
+                points.add(new GHPoint(49.39 + rnd.nextDouble() * 0.03, 9.69 + rnd.nextDouble() * 0.03));
+        }
+        EdgeFilter filter = edge -> edge.getEdge() % 3 != 0;
+        List<Snap> snaps = index.findClosest(points, filter, threads);
+        assertEquals(points.size(), snaps.size());
+        for (int i = 0; i < points.size(); i++) {
+            Snap expected = index.findClosest(points.get(i).lat, points.get(i).lon, filter);
+            assertEquals(expected.isValid(), snaps.get(i).isValid());
+            if (!expected.isValid())
+                continue;
+            assertEquals(expected.getClosestEdge().getEdge(), snaps.get(i).getClosestEdge().getEdge());
+            assertEquals(expected.getClosestNode(), snaps.get(i).getClosestNode());
+            assertEquals(expected.getWayIndex(), snaps.get(i).getWayIndex());
+            assertEquals(expected.getSnappedPosition(), snaps.get(i).getSnappedPosition());
+            assertEquals(expected.getSnappedPoint(), snaps.get(i).getSnappedPoint());
+            assertEquals(expected.getQueryDistance(), snaps.get(i).getQueryDistance(), 1.e-6);
+        }
+        g.close();
+    }
+
+    @Test
+    public void testFindNearestAndWithinRadius() {
+        BaseGraph g = new BaseGraph.Builder(encodingManager).create();
+        Random rnd = new Random(21);
+        GHUtility.buildRandomGraph(g, rnd, 500, 2.5, true, speedEnc, 60d, 0.8, 0.5);
+        AllEdgesIterator iter = g.getAllEdges();
+        while (iter.next()) {
+            if (rnd.nextBoolean())
+                iter.setWayGeometry(Helper.createPointList(49.401 + rnd.nextDouble() * 0.008, 9.701 + rnd.nextDouble() * 0.008));
+        }
+        LocationIndexTree index = createIndexNoPrepare(g, 50);
+        index.prepareIndex();
+        EdgeFilter filter = edge -> edge.getEdge() % 3 != 0;
+        // the same buffer is reused for all queries
+        SnapBuffer buffer = new SnapBuffer(2);
+        for (int i = 0; i < 100; i++) {
+            double lat = 49.39 + rnd.nextDouble() * 0.03, lon = 9.69 + rnd.nextDouble() * 0.03;
+            Snap expected = index.findClosest(lat, lon, filter);
+            index.findNearest(lat, lon, 1, filter, buffer);
+            assertEquals(expected.isValid() ? 1 : 0, buffer.size());
+            if (expected.isValid()) {
+                assertEquals(expected.getClosestEdge().getEdge(), buffer.getEdge(0));
+                assertEquals(expected.getClosestNode(), buffer.getClosestNode(0));
+                assertEquals(expected.getWayIndex(), buffer.getWayIndex(0));
+                assertEquals(expected.getSnappedPosition(), buffer.getPosition(0));
+                assertEquals(expected.getSnappedPoint().lat, buffer.getSnappedLat(0), 1.e-9);
+                assertEquals(expected.getSnappedPoint().lon, buffer.getSnappedLon(0), 1.e-9);
+                assertEquals(expected.getQueryDistance(), buffer.getDistance(0), 1.e-3);
+            }
+
+            index.findNearest(lat, lon, 5, filter, buffer);
+            assertTrue(buffer.size() <= 5);
+            if (expected.isValid())
+                assertEquals(expected.getClosestEdge().getEdge(), buffer.getEdge(0));
+            for (int j = 1; j < buffer.size(); j++)
+                assertTrue(buffer.getDistance(j - 1) <= buffer.getDistance(j));
+
+            // compare the radius query with the distances to all edges
+            double radius = 100;
+            IntHashSet expectedEdges = new IntHashSet();
+            AllEdgesIterator edges = g.getAllEdges();
+            while (edges.next()) {
+                if (!filter.accept(edges))
+                    continue;
+                EdgeIteratorState edge = g.getEdgeIteratorState(edges.getEdge(), edges.getAdjNode());
+                double[] minNormedDist = {Double.MAX_VALUE};
+                index.traverseEdge(lat, lon, edge, (node, normedDist, wayIndex, pos) -> minNormedDist[0] = Math.min(minNormedDist[0], normedDist));
+                if (DistancePlaneProjection.DIST_PLANE.calcDenormalizedDist(minNormedDist[0]) <= radius)
+                    expectedEdges.add(edges.getEdge());
+            }
+            index.findWithinRadius(lat, lon, radius, filter, buffer);
+            IntHashSet foundEdges = new IntHashSet();
+            for (int j = 0; j < buffer.size(); j++) {
+                assertTrue(buffer.getDistance(j) <= radius);
+                if (j > 0)
+                    assertTrue(buffer.getDistance(j - 1) <= buffer.getDistance(j));
+                foundEdges.add(buffer.getEdge(j));
+                Snap snap = buffer.createSnap(j, g, DistancePlaneProjection.DIST_PLANE);
+                assertEquals(buffer.getEdge(j), snap.getClosestEdge().getEdge());
+                assertEquals(buffer.getSnappedLat(j), snap.getSnappedPoint().lat, 1.e-9);
+                assertEquals(buffer.getSnappedLon(j), snap.getSnappedPoint().lon, 1.e-9);
+            }
+            assertEquals(expectedEdges, foundEdges);
+        }
+        g.close();
+    }
+
+    @Test
+    public void testFindNearestAndWithinRadiusDefaults() {
+        Graph graph = createTestGraph(encodingManager, speedEnc);
+        LocationIndexTree tree = createIndexNoPrepare(graph, 500000);
+        tree.prepareIndex();
+        // an implementation that does not override findNearest and findWithinRadius
+        LocationIndex index = new LocationIndex() {
+            @Override
+            public Snap findClosest(double lat, double lon, EdgeFilter edgeFilter) {
+                return tree.findClosest(lat, lon, edgeFilter);
+            }
+
+            @Override
+            public void query(TileFilter tileFilter, Visitor function) {
+                tree.query(tileFilter, function);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        SnapBuffer buffer = new SnapBuffer();
+        Snap expected = tree.findClosest(-0.2, 0.3, EdgeFilter.ALL_EDGES);
+        index.findNearest(-0.2, 0.3, 3, EdgeFilter.ALL_EDGES, buffer);
+        assertEquals(1, buffer.size());
+        assertEquals(expected.getClosestEdge().getEdge(), buffer.getEdge(0));
+        assertEquals(expected.getClosestNode(), buffer.getClosestNode(0));
+        assertEquals(expected.getQueryDistance(), buffer.getDistance(0), 1.e-6);
+
+        index.findWithinRadius(-0.2, 0.3, expected.getQueryDistance() + 1, EdgeFilter.ALL_EDGES, buffer);
+        assertEquals(1, buffer.size());
+        assertEquals(expected.getClosestEdge().getEdge(), buffer.getEdge(0));
+        index.findWithinRadius(-0.2, 0.3, expected.getQueryDistance() - 1, EdgeFilter.ALL_EDGES, buffer);
+        assertTrue(buffer.isEmpty());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3})
+    public void testPrepareIndexFails(int threads) {
+        BaseGraph g = new BaseGraph.Builder(encodingManager).create();
+        GHUtility.buildRandomGraph(g, new Random(42), 100, 2.5, true, speedEnc, 60d, 0.8, 0.5);
+        LocationIndexTree index = createIndexNoPrepare(g, 50).setThreads(threads);
+        // the index must not be created silently without the failed edge
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> index.prepareIndex(edgeState -> {
+            if (edgeState.getEdge() == 42)
+                throw new IllegalArgumentException("invalid edge");
+            return true;
+        }));
+        assertTrue(ex.getMessage().contains("edge:42"), ex.getMessage());
+        g.close();
+    }
+
     @Test
     public void testNoErrorOnEdgeCase_lastIndex() {
         final EncodingManager encodingManager = new EncodingManager.Builder().build();
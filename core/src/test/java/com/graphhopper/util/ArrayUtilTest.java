@@ -19,6 +19,7 @@
 package com.graphhopper.util;
 
 import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.sorting.IndirectSort;
 import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
@@ -156,6 +157,21 @@ class ArrayUtilTest {
         assertEquals(from(2, 3, 1, 0), from(ArrayUtil.calcSortOrder(new int[]{3, 3, 0, 0}, new int[]{0, -1, 1, 2}, 4)));
     }
 
+    @Test
+    public void testCalcSortOrderConcurrently() {
+        assertEquals(from(), from(ArrayUtil.calcSortOrder(new long[]{}, 2)));
+        assertEquals(from(0), from(ArrayUtil.calcSortOrder(new long[]{5}, 3)));
+        assertEquals(from(1, 4, 0, 2, 3), from(ArrayUtil.calcSortOrder(new long[]{3, 1, 3, 7, 2}, 2)));
+        Random rnd = new Random(42);
+        for (int threads = 1; threads <= 5; threads++) {
+            long[] keys = new long[1000];
+            for (int i = 0; i < keys.length; i++)
+                keys[i] = rnd.nextInt(100) * (1L << 40);
+            int[] expected = IndirectSort.mergesort(0, keys.length, (a, b) -> Long.compare(keys[a], keys[b]));
+            assertEquals(from(expected), from(ArrayUtil.calcSortOrder(keys, threads)));
+        }
+    }
+
     @Test
     public void testApplyOrder() {
         assertEquals(from(0, 6, 3, 1, 4), from(ArrayUtil.applyOrder(new int[]{3, 4, 6, 0, 1}, new int[]{3, 2, 0, 4, 1})));
@@ -0,0 +1,305 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.matching;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Matches many traces with a bounded pool of worker threads. The traces are pulled lazily from an iterator, so only a
+ * limited number of traces is held in memory at any time, and every result is passed to a consumer as soon as its
+ * trace is finished, i.e. the results are usually not in the order of the input. Every trace can be given a time
+ * budget such that a few long traces cannot block the workers for long.
+ */
+public class BatchMapMatching {
+    private final Supplier<MapMatching> mapMatchingFactory;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int maxPendingTraces = -1;
+    private long timeoutMillis = Long.MAX_VALUE;
+    private ExecutorService executor;
+
+    /**
+     * @param mapMatchingFactory creates the (not thread-safe) MapMatching instance for a single trace
+     */
+    public BatchMapMatching(Supplier<MapMatching> mapMatchingFactory) {
+        this.mapMatchingFactory = mapMatchingFactory;
+    }
+
+    /**
+     * The number of threads of the thread pool that is created for every batch. If an executor is set it is only used
+     * for the default of {@link #setMaxPendingTraces}.
+     */
+    public BatchMapMatching setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive but was " + threads);
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Runs the traces on the given executor instead of a thread pool that is created for every batch. This limits the
+     * number of threads if several batches run at the same time. The executor is not shut down after the batch.
+     */
+    public BatchMapMatching setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * The maximum number of traces that were read from the input but are not finished yet. The default is twice the
+     * number of threads.
+     */
+    public BatchMapMatching setMaxPendingTraces(int maxPendingTraces) {
+        if (maxPendingTraces < 1)
+            throw new IllegalArgumentException("maxPendingTraces must be positive but was " + maxPendingTraces);
+        this.maxPendingTraces = maxPendingTraces;
+        return this;
+    }
+
+    /**
+     * The time budget of a single trace, see {@link MapMatching#setTimeoutMillis}
+     */
+    public BatchMapMatching setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    /**
+     * Matches all traces and blocks until they are finished. The consumer is called from the worker threads, but
+     * never concurrently. A trace that cannot be matched does not stop the batch, instead its result contains the
+     * error. Exceptions thrown by the iterator or the consumer stop the batch and are rethrown.
+     */
+    public Statistics match(Iterator<Trace> traces, Consumer<TraceResult> consumer) {
+        Statistics statistics = new Statistics();
+        int maxPending = maxPendingTraces > 0 ? maxPendingTraces : 2 * threads;
+        Semaphore pending = new Semaphore(maxPending);
+        AtomicReference<RuntimeException> consumerException = new AtomicReference<>();
+        Object consumerLock = new Object();
+        ExecutorService executorService = executor != null ? executor : Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        int index = 0;
+        try {
+            while (consumerException.get() == null && traces.hasNext()) {
+                Trace trace = traces.next();
+                int traceIndex = index++;
+                pending.acquireUninterruptibly();
+                try {
+                    executorService.execute(() -> {
+                        try {
+                            TraceResult result = matchTrace(traceIndex, trace);
+                            synchronized (consumerLock) {
+                                statistics.add(result);
+                                if (consumerException.get() == null)
+                                    consumer.accept(result);
+                            }
+                        } catch (RuntimeException e) {
+                            consumerException.compareAndSet(null, e);
+                        } finally {
+                            pending.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // e.g. the shared executor was shut down
+                    pending.release();
+                    throw e;
+                }
+            }
+        } finally {
+            if (executor == null) {
+                executorService.shutdown();
+                try {
+                    executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    executorService.shutdownNow();
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                // other batches can use the shared executor, so wait until all traces of this batch are finished
+                try {
+                    pending.acquire(maxPending);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            statistics.elapsedNanos = System.nanoTime() - start;
+        }
+        if (consumerException.get() != null)
+            throw consumerException.get();
+        return statistics;
+    }
+
+    private TraceResult matchTrace(int index, Trace trace) {
+        long start = System.nanoTime();
+        MapMatching mapMatching = mapMatchingFactory.get();
+        mapMatching.setTimeoutMillis(timeoutMillis);
+        MatchResult matchResult = null;
+        RuntimeException error = null;
+        try {
+            matchResult = mapMatching.match(trace.getObservations());
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        return new TraceResult(index, trace, matchResult, error, System.nanoTime() - start);
+    }
+
+    public static class Trace {
+        private final String id;
+        private final List<Observation> observations;
+
+        public Trace(String id, List<Observation> observations) {
+            this.id = id;
+            this.observations = observations;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public List<Observation> getObservations() {
+            return observations;
+        }
+    }
+
+    public static class TraceResult {
+        private final int index;
+        private final Trace trace;
+        private final MatchResult matchResult;
+        private final RuntimeException error;
+        private final long nanos;
+
+        TraceResult(int index, Trace trace, MatchResult matchResult, RuntimeException error, long nanos) {
+            this.index = index;
+            this.trace = trace;
+            this.matchResult = matchResult;
+            this.error = error;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return the position of the trace in the input
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public Trace getTrace() {
+            return trace;
+        }
+
+        /**
+         * @return the match result or null if matching failed
+         */
+        public MatchResult getMatchResult() {
+            return matchResult;
+        }
+
+        /**
+         * @return the reason why matching failed or null if it succeeded
+         */
+        public RuntimeException getError() {
+            return error;
+        }
+
+        public boolean isTimedOut() {
+            return error instanceof MapMatchingTimeoutException;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+    }
+
+    /**
+     * Throughput metrics of a batch. Only the final values returned by {@link #match} are complete.
+     */
+    public static class Statistics {
+        private int traces;
+        private int matched;
+        private int timedOut;
+        private long observations;
+        private long matchNanos;
+        private long elapsedNanos;
+
+        private void add(TraceResult result) {
+            traces++;
+            observations += result.getTrace().getObservations().size();
+            matchNanos += result.getNanos();
+            if (result.getMatchResult() != null)
+                matched++;
+            else if (result.isTimedOut())
+                timedOut++;
+        }
+
+        public int getTraces() {
+            return traces;
+        }
+
+        public int getMatched() {
+            return matched;
+        }
+
+        public int getTimedOut() {
+            return timedOut;
+        }
+
+        /**
+         * @return the number of traces that failed for other reasons than a timeout
+         */
+        public int getFailed() {
+            return traces - matched - timedOut;
+        }
+
+        public long getObservations() {
+            return observations;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        /**
+         * @return the average time a worker spent on a single trace
+         */
+        public double getMeanTraceMillis() {
+            return traces == 0 ? 0 : matchNanos / 1e6 / traces;
+        }
+
+        public double getTracesPerSecond() {
+            return elapsedNanos == 0 ? 0 : traces * 1e9 / elapsedNanos;
+        }
+
+        public double getObservationsPerSecond() {
+            return elapsedNanos == 0 ? 0 : observations * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "traces: " + traces + ", matched: " + matched + ", timed out: " + timedOut + ", failed: " + getFailed()
+                    + ", observations: " + observations + ", elapsed: " + getElapsedMillis() + "ms"
+                    + ", traces/s: " + Math.round(getTracesPerSecond()) + ", observations/s: " + Math.round(getObservationsPerSecond());
+        }
+    }
+}
@@ -17,11 +17,13 @@
  */
 package com.graphhopper.matching;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntHashSet;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.config.Profile;
 import com.graphhopper.routing.AStarBidirection;
 import com.graphhopper.routing.DijkstraBidirectionRef;
+import com.graphhopper.routing.DijkstraOneToManyPaths;
 import com.graphhopper.routing.Path;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.Subnetwork;
@@ -37,16 +39,14 @@ import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.Snap;
+import com.graphhopper.storage.index.SnapBuffer;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
-import org.locationtech.jts.geom.Envelope;
 
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
-import static com.graphhopper.util.DistancePlaneProjection.DIST_PLANE;
-
 /**
  * This class matches real world GPX entries to the digital road network stored
  * in GraphHopper. The Viterbi algorithm is used to compute the most likely
@@ -71,8 +71,13 @@ public class MapMatching {
     private final LocationIndexTree locationIndex;
     private double measurementErrorSigma = 10.0;
     private double transitionProbabilityBeta = 2.0;
+    private long timeoutMillis = Long.MAX_VALUE;
+    private long finishTimeMillis = Long.MAX_VALUE;
+    private TransitionCache transitionCache;
+    private String transitionCacheProfile;
     private final DistanceCalc distanceCalc = new DistancePlaneProjection();
     private QueryGraph queryGraph;
+    private final SnapBuffer candidates = new SnapBuffer();
 
     private Map<String, Object> statistics = new HashMap<>();
 
@@ -132,6 +137,19 @@ public class MapMatching {
             @Override
             public List<Path> calcPaths(QueryGraph queryGraph, int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges) {
                 assert (toNodes.length == toInEdges.length);
+                // A single search settles all candidates of the next time step, which are usually close to each other.
+                // This is not possible with landmarks, because there is no single goal-directed potential that works for
+                // several targets, so we run one LM search per candidate instead. We also route every candidate on its own
+                // if the number of visited nodes is limited, because max_visited_nodes is meant per search.
+                if (landmarks == null && maxVisitedNodes == Integer.MAX_VALUE) {
+                    DijkstraOneToManyPaths dijkstra = new DijkstraOneToManyPaths(queryGraph, queryGraph.wrapWeighting(weighting), TraversalMode.EDGE_BASED) {
+                        @Override
+                        protected void initCollections(int size) {
+                            super.initCollections(50);
+                        }
+                    };
+                    return dijkstra.calcPaths(fromNode, fromOutEdge, toNodes, toInEdges);
+                }
                 List<Path> result = new ArrayList<>();
                 for (int i = 0; i < toNodes.length; i++) {
                     result.add(calcOnePath(queryGraph, fromNode, toNodes[i], fromOutEdge, toInEdges[i]));
@@ -169,6 +187,11 @@ public class MapMatching {
             public Weighting getWeighting() {
                 return weighting;
             }
+
+            @Override
+            public int getMaxVisitedNodes() {
+                return maxVisitedNodes;
+            }
         };
         return router;
     }
@@ -195,13 +218,40 @@ public class MapMatching {
         this.measurementErrorSigma = measurementErrorSigma;
     }
 
+    /**
+     * Limits the time a single call of {@link #match} may take. The limit is checked before every observation is
+     * snapped and before every routing step, so a single step can exceed it. When the limit is exceeded a
+     * {@link MapMatchingTimeoutException} is thrown. The default is no limit.
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Reuses the routes between pairs of directed real edges from previous transitions, see {@link TransitionCache}.
+     * The cache can be shared between MapMatching instances, but the profile must identify the weighting used by the
+     * router. The cache is not used if the router limits the number of visited nodes.
+     */
+    public void setTransitionCache(TransitionCache transitionCache, String profile) {
+        this.transitionCache = transitionCache;
+        this.transitionCacheProfile = profile;
+    }
+
     public MatchResult match(List<Observation> observations) {
+        try {
+            finishTimeMillis = Math.addExact(System.currentTimeMillis(), timeoutMillis);
+        } catch (ArithmeticException e) {
+            finishTimeMillis = Long.MAX_VALUE;
+        }
         List<Observation> filteredObservations = filterObservations(observations);
         statistics.put("filteredObservations", filteredObservations.size());
 
         // Snap observations to links. Generates multiple candidate snaps per observation.
         List<List<Snap>> snapsPerObservation = filteredObservations.stream()
-                .map(o -> findCandidateSnaps(o.getPoint().lat, o.getPoint().lon))
+                .map(o -> {
+                    checkTimeout();
+                    return findCandidateSnaps(o.getPoint().lat, o.getPoint().lon);
+                })
                 .collect(Collectors.toList());
         statistics.put("snapsPerObservation", snapsPerObservation.stream().mapToInt(Collection::size).toArray());
 
@@ -275,49 +325,36 @@ public class MapMatching {
         return filtered;
     }
 
+    /**
+     * Finds the candidates within a square around the query point whose half side length grows in steps of
+     * measurementErrorSigma until at least one candidate is found.
+     */
     public List<Snap> findCandidateSnaps(final double queryLat, final double queryLon) {
+        EdgeFilter edgeFilter = router.getSnapFilter();
         double rLon = (measurementErrorSigma * 360.0 / DistanceCalcEarth.DIST_EARTH.calcCircumference(queryLat));
         double rLat = measurementErrorSigma / DistanceCalcEarth.METERS_PER_DEGREE;
-        Envelope envelope = new Envelope(queryLon, queryLon, queryLat, queryLat);
-        for (int i = 0; i < 50; i++) {
-            envelope.expandBy(rLon, rLat);
-            List<Snap> snaps = findCandidateSnapsInBBox(queryLat, queryLon, BBox.fromEnvelope(envelope));
-            if (!snaps.isEmpty()) {
+        for (int i = 1; i <= 50; i++) {
+            // the corners of the square are sqrt(2) * half side length away, the candidates outside of it are skipped
+            locationIndex.findWithinRadius(queryLat, queryLon, 1.5 * i * measurementErrorSigma, edgeFilter, candidates);
+            BBox square = new BBox(queryLon - i * rLon, queryLon + i * rLon, queryLat - i * rLat, queryLat + i * rLat);
+            List<Snap> snaps = createCandidateSnaps(square);
+            if (!snaps.isEmpty())
                 return snaps;
-            }
         }
         return Collections.emptyList();
     }
 
-    private List<Snap> findCandidateSnapsInBBox(double queryLat, double queryLon, BBox queryShape) {
-        EdgeFilter edgeFilter = router.getSnapFilter();
-        List<Snap> snaps = new ArrayList<>();
-        IntHashSet seenEdges = new IntHashSet();
+    private List<Snap> createCandidateSnaps(BBox square) {
+        List<Snap> snaps = new ArrayList<>(candidates.size());
         IntHashSet seenNodes = new IntHashSet();
-        locationIndex.query(queryShape, edgeId -> {
-            EdgeIteratorState edge = graph.getEdgeIteratorStateForKey(edgeId * 2);
-            if (seenEdges.add(edgeId) && edgeFilter.accept(edge)) {
-                Snap snap = new Snap(queryLat, queryLon);
-                locationIndex.traverseEdge(queryLat, queryLon, edge, (node, normedDist, wayIndex, pos) -> {
-                    if (normedDist < snap.getQueryDistance()) {
-                        snap.setQueryDistance(normedDist);
-                        snap.setClosestNode(node);
-                        snap.setWayIndex(wayIndex);
-                        snap.setSnappedPosition(pos);
-                    }
-                });
-                double dist = DIST_PLANE.calcDenormalizedDist(snap.getQueryDistance());
-                snap.setClosestEdge(edge);
-                snap.setQueryDistance(dist);
-                if (snap.isValid() && (snap.getSnappedPosition() != Snap.Position.TOWER || seenNodes.add(snap.getClosestNode()))) {
-                    snap.calcSnappedPoint(DistanceCalcEarth.DIST_EARTH);
-                    if (queryShape.contains(snap.getSnappedPoint().lat, snap.getSnappedPoint().lon)) {
-                        snaps.add(snap);
-                    }
-                }
-            }
-        });
-        snaps.sort(Comparator.comparingDouble(Snap::getQueryDistance));
+        for (int i = 0; i < candidates.size(); i++) {
+            if (!square.contains(candidates.getSnappedLat(i), candidates.getSnappedLon(i)))
+                continue;
+            // several edges can snap to the same junction, but we need only one candidate for it
+            if (candidates.getPosition(i) == Snap.Position.TOWER && !seenNodes.add(candidates.getClosestNode(i)))
+                continue;
+            snaps.add(candidates.createSnap(i, graph, DistanceCalcEarth.DIST_EARTH));
+        }
         return snaps;
     }
 
@@ -337,38 +374,46 @@ public class MapMatching {
             Observation observation = filteredObservations.get(i);
             Collection<Snap> splits = splitsPerObservation.get(i);
             List<State> candidates = new ArrayList<>();
-            for (Snap split : splits) {
-                if (queryGraph.isVirtualNode(split.getClosestNode())) {
-                    List<VirtualEdgeIteratorState> virtualEdges = new ArrayList<>();
-                    EdgeIterator iter = queryGraph.createEdgeExplorer().setBaseNode(split.getClosestNode());
-                    while (iter.next()) {
-                        if (!queryGraph.isVirtualEdge(iter.getEdge())) {
-                            throw new RuntimeException("Virtual nodes must only have virtual edges "
-                                    + "to adjacent nodes.");
-                        }
-                        virtualEdges.add((VirtualEdgeIteratorState) queryGraph.getEdgeIteratorState(iter.getEdge(), iter.getAdjNode()));
-                    }
-                    if (virtualEdges.size() != 2) {
-                        throw new RuntimeException("Each virtual node must have exactly 2 "
-                                + "virtual edges (reverse virtual edges are not returned by the "
-                                + "EdgeIterator");
-                    }
+            for (Snap split : splits)
+                candidates.addAll(createStates(queryGraph, observation, split));
 
-                    // Create a directed candidate for each of the two possible directions through
-                    // the virtual node. We need to add candidates for both directions because
-                    // we don't know yet which is the correct one. This will be figured
-                    // out by the Viterbi algorithm.
-                    candidates.add(new State(observation, split, virtualEdges.get(0), virtualEdges.get(1)));
-                    candidates.add(new State(observation, split, virtualEdges.get(1), virtualEdges.get(0)));
-                } else {
-                    // Create an undirected candidate for the real node.
-                    candidates.add(new State(observation, split));
+            timeSteps.add(new ObservationWithCandidateStates(observation, candidates));
+        }
+        return timeSteps;
+    }
+
+    /**
+     * Creates two directed candidates if the snap is a virtual node of the given query graph, otherwise an undirected
+     * candidate for the real node.
+     */
+    static List<State> createStates(QueryGraph queryGraph, Observation observation, Snap split) {
+        if (queryGraph.isVirtualNode(split.getClosestNode())) {
+            List<VirtualEdgeIteratorState> virtualEdges = new ArrayList<>();
+            EdgeIterator iter = queryGraph.createEdgeExplorer().setBaseNode(split.getClosestNode());
+            while (iter.next()) {
+                if (!queryGraph.isVirtualEdge(iter.getEdge())) {
+                    throw new RuntimeException("Virtual nodes must only have virtual edges "
+                            + "to adjacent nodes.");
                 }
+                virtualEdges.add((VirtualEdgeIteratorState) queryGraph.getEdgeIteratorState(iter.getEdge(), iter.getAdjNode()));
+            }
+            if (virtualEdges.size() != 2) {
+                throw new RuntimeException("Each virtual node must have exactly 2 "
+                        + "virtual edges (reverse virtual edges are not returned by the "
+                        + "EdgeIterator");
             }
 
-            timeSteps.add(new ObservationWithCandidateStates(observation, candidates));
+            // Create a directed candidate for each of the two possible directions through
+            // the virtual node. We need to add candidates for both directions because
+            // we don't know yet which is the correct one. This will be figured
+            // out by the Viterbi algorithm.
+            return Arrays.asList(
+                    new State(observation, split, virtualEdges.get(0), virtualEdges.get(1)),
+                    new State(observation, split, virtualEdges.get(1), virtualEdges.get(0)));
+        } else {
+            // Create an undirected candidate for the real node.
+            return Collections.singletonList(new State(observation, split));
         }
-        return timeSteps;
     }
 
     static class Label {
@@ -405,6 +450,7 @@ public class MapMatching {
                 continue;
             if (qe.timeStep == timeSteps.size() - 1)
                 break;
+            checkTimeout();
             State from = qe.state;
             ObservationWithCandidateStates timeStep = timeSteps.get(qe.timeStep);
             ObservationWithCandidateStates nextTimeStep = timeSteps.get(qe.timeStep + 1);
@@ -415,7 +461,9 @@ public class MapMatching {
             int fromOutEdge = from.isOnDirectedEdge() ? from.getOutgoingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE;
             int[] toNodes = nextTimeStep.candidates.stream().mapToInt(c -> c.getSnap().getClosestNode()).toArray();
             int[] toInEdges = nextTimeStep.candidates.stream().mapToInt(to -> to.isOnDirectedEdge() ? to.getIncomingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE).toArray();
-            List<Path> paths = router.calcPaths(queryGraph, fromNode, fromOutEdge, toNodes, toInEdges);
+            List<Path> paths = transitionCache == null
+                    ? router.calcPaths(queryGraph, fromNode, fromOutEdge, toNodes, toInEdges)
+                    : calcPathsWithTransitionCache(from, nextTimeStep.candidates, fromNode, fromOutEdge, toNodes, toInEdges);
             for (int i = 0; i < nextTimeStep.candidates.size(); i++) {
                 State to = nextTimeStep.candidates.get(i);
                 Path path = paths.get(i);
@@ -455,6 +503,170 @@ public class MapMatching {
         return result;
     }
 
+    private List<Path> calcPathsWithTransitionCache(State from, List<State> candidates, int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges) {
+        // a cached transition does not tell how many nodes a search would visit, so it must not be used when a search
+        // with the limit could fail
+        if (router.getMaxVisitedNodes() < Integer.MAX_VALUE)
+            return router.calcPaths(queryGraph, fromNode, fromOutEdge, toNodes, toInEdges);
+        EdgeIteratorState fromEdge = from.isOnDirectedEdge() ? resolveToRealEdge(from.getOutgoingVirtualEdge()) : null;
+        if (fromEdge == null || fromEdge.getBaseNode() == fromEdge.getAdjNode())
+            return router.calcPaths(queryGraph, fromNode, fromOutEdge, toNodes, toInEdges);
+        long cacheVersion = transitionCache.getVersion();
+
+        // only transitions between two different (non-loop) edges can be split into the parts on these edges and the
+        // part in between, which does not depend on where the observations were snapped to
+        Path[] paths = new Path[candidates.size()];
+        int[] toEdgeKeys = new int[candidates.size()];
+        IntArrayList missing = new IntArrayList();
+        Weighting queryGraphWeighting = queryGraph.wrapWeighting(router.getWeighting());
+        for (int i = 0; i < candidates.size(); i++) {
+            State to = candidates.get(i);
+            toEdgeKeys[i] = -1;
+            if (to.isOnDirectedEdge()) {
+                EdgeIteratorState toEdge = resolveToRealEdge(queryGraph.getEdgeIteratorState(to.getIncomingVirtualEdge().getEdge(), to.getSnap().getClosestNode()));
+                if (toEdge.getEdge() != fromEdge.getEdge() && toEdge.getBaseNode() != toEdge.getAdjNode()) {
+                    toEdgeKeys[i] = toEdge.getEdgeKey();
+                    TransitionCache.Entry entry = transitionCache.get(transitionCacheProfile, fromEdge.getEdgeKey(), toEdgeKeys[i]);
+                    if (entry != null) {
+                        paths[i] = createCachedPath(from, to, entry, queryGraphWeighting);
+                        continue;
+                    }
+                }
+            }
+            missing.add(i);
+        }
+        if (!missing.isEmpty()) {
+            int[] missingToNodes = new int[missing.size()];
+            int[] missingToInEdges = new int[missing.size()];
+            for (int j = 0; j < missing.size(); j++) {
+                missingToNodes[j] = toNodes[missing.get(j)];
+                missingToInEdges[j] = toInEdges[missing.get(j)];
+            }
+            List<Path> missingPaths = router.calcPaths(queryGraph, fromNode, fromOutEdge, missingToNodes, missingToInEdges);
+            for (int j = 0; j < missing.size(); j++) {
+                int i = missing.get(j);
+                paths[i] = missingPaths.get(j);
+                if (toEdgeKeys[i] >= 0 && paths[i].isFound()) {
+                    TransitionCache.Entry entry = createCacheEntry(from, candidates.get(i), paths[i], queryGraphWeighting);
+                    if (entry != null)
+                        transitionCache.put(transitionCacheProfile, fromEdge.getEdgeKey(), toEdgeKeys[i], cacheVersion, entry);
+                }
+            }
+        }
+        return Arrays.asList(paths);
+    }
+
+    private TransitionCache.Entry createCacheEntry(State from, State to, Path path, Weighting queryGraphWeighting) {
+        List<EdgeIteratorState> head = virtualEdgesToTowerNode(from);
+        List<EdgeIteratorState> tail = virtualEdgesFromTowerNode(to);
+        List<EdgeIteratorState> edges = path.calcEdges();
+        if (edges.size() < head.size() + tail.size())
+            return null;
+        for (int i = 0; i < head.size(); i++)
+            if (edges.get(i).getEdge() != head.get(i).getEdge())
+                return null;
+        for (int i = 0; i < tail.size(); i++)
+            if (edges.get(edges.size() - tail.size() + i).getEdge() != tail.get(i).getEdge())
+                return null;
+        IntArrayList middle = new IntArrayList();
+        for (EdgeIteratorState edge : edges.subList(head.size(), edges.size() - tail.size())) {
+            // the middle part starts and ends at tower nodes, so the pieces of an edge that was split by the
+            // observations of this trace can be merged into the real edge at the end of the last piece
+            if (!queryGraph.isVirtualEdge(edge.getEdge()))
+                middle.add(edge.getEdge());
+            else if (!queryGraph.isVirtualNode(edge.getAdjNode()))
+                middle.add(resolveToRealEdge(edge).getEdge());
+        }
+        return new TransitionCache.Entry(middle.toArray(),
+                path.getDistance() - sumDistance(head) - sumDistance(tail),
+                path.getTime() - sumMillis(head, queryGraphWeighting) - sumMillis(tail, queryGraphWeighting),
+                path.getWeight() - sumWeight(head, queryGraphWeighting) - sumWeight(tail, queryGraphWeighting));
+    }
+
+    private Path createCachedPath(State from, State to, TransitionCache.Entry entry, Weighting queryGraphWeighting) {
+        List<EdgeIteratorState> head = virtualEdgesToTowerNode(from);
+        List<EdgeIteratorState> tail = virtualEdgesFromTowerNode(to);
+        Path path = new Path(queryGraph);
+        path.setFromNode(from.getSnap().getClosestNode());
+        for (EdgeIteratorState edge : head)
+            path.addEdge(edge.getEdge());
+        for (int edge : entry.getEdgeIds())
+            path.addEdge(edge);
+        for (EdgeIteratorState edge : tail)
+            path.addEdge(edge.getEdge());
+        path.setEndNode(to.getSnap().getClosestNode());
+        path.setDistance(sumDistance(head) + entry.getDistance() + sumDistance(tail));
+        path.setTime(sumMillis(head, queryGraphWeighting) + entry.getTime() + sumMillis(tail, queryGraphWeighting));
+        path.setWeight(sumWeight(head, queryGraphWeighting) + entry.getWeight() + sumWeight(tail, queryGraphWeighting));
+        return path.setFound(true);
+    }
+
+    /**
+     * @return the virtual edges from the given directed state to the next tower node in driving direction
+     */
+    private List<EdgeIteratorState> virtualEdgesToTowerNode(State state) {
+        List<EdgeIteratorState> edges = new ArrayList<>(2);
+        EdgeIteratorState edge = state.getOutgoingVirtualEdge();
+        edges.add(edge);
+        EdgeExplorer explorer = queryGraph.createEdgeExplorer();
+        while (queryGraph.isVirtualNode(edge.getAdjNode())) {
+            EdgeIterator iter = explorer.setBaseNode(edge.getAdjNode());
+            while (iter.next())
+                if (iter.getAdjNode() != edge.getBaseNode())
+                    break;
+            edge = iter.detach(false);
+            edges.add(edge);
+        }
+        return edges;
+    }
+
+    /**
+     * @return the virtual edges from the previous tower node to the given directed state in driving direction
+     */
+    private List<EdgeIteratorState> virtualEdgesFromTowerNode(State state) {
+        List<EdgeIteratorState> edges = new ArrayList<>(2);
+        EdgeIteratorState edge = queryGraph.getEdgeIteratorState(state.getIncomingVirtualEdge().getEdge(), state.getSnap().getClosestNode());
+        edges.add(edge);
+        EdgeExplorer explorer = queryGraph.createEdgeExplorer();
+        while (queryGraph.isVirtualNode(edge.getBaseNode())) {
+            EdgeIterator iter = explorer.setBaseNode(edge.getBaseNode());
+            while (iter.next())
+                if (iter.getAdjNode() != edge.getAdjNode())
+                    break;
+            edge = queryGraph.getEdgeIteratorState(iter.getEdge(), edge.getBaseNode());
+            edges.add(edge);
+        }
+        Collections.reverse(edges);
+        return edges;
+    }
+
+    private static double sumDistance(List<EdgeIteratorState> edges) {
+        double distance = 0;
+        for (EdgeIteratorState edge : edges)
+            distance += edge.getDistance();
+        return distance;
+    }
+
+    private static long sumMillis(List<EdgeIteratorState> edges, Weighting weighting) {
+        // there are no turn costs at virtual nodes
+        long millis = 0;
+        for (EdgeIteratorState edge : edges)
+            millis += weighting.calcEdgeMillis(edge, false);
+        return millis;
+    }
+
+    private static double sumWeight(List<EdgeIteratorState> edges, Weighting weighting) {
+        double weight = 0;
+        for (EdgeIteratorState edge : edges)
+            weight += weighting.calcEdgeWeight(edge, false);
+        return weight;
+    }
+
+    private void checkTimeout() {
+        if (finishTimeMillis < Long.MAX_VALUE && System.currentTimeMillis() > finishTimeMillis)
+            throw new MapMatchingTimeoutException("Map matching exceeded the time limit of " + timeoutMillis + "ms");
+    }
+
     private List<EdgeMatch> prepareEdgeMatches(List<SequenceState<State, Observation, Path>> seq) {
         // This creates a list of directed edges (EdgeIteratorState instances turned the right way),
         // each associated with 0 or more of the observations.
@@ -527,13 +739,17 @@ public class MapMatching {
         }
     }
 
-    private boolean equalEdges(EdgeIteratorState edge1, EdgeIteratorState edge2) {
+    static boolean equalEdges(EdgeIteratorState edge1, EdgeIteratorState edge2) {
         return edge1.getEdge() == edge2.getEdge()
                 && edge1.getBaseNode() == edge2.getBaseNode()
                 && edge1.getAdjNode() == edge2.getAdjNode();
     }
 
     private EdgeIteratorState resolveToRealEdge(EdgeIteratorState edgeIteratorState) {
+        return resolveToRealEdge(graph, queryGraph, edgeIteratorState);
+    }
+
+    static EdgeIteratorState resolveToRealEdge(Graph graph, QueryGraph queryGraph, EdgeIteratorState edgeIteratorState) {
         if (queryGraph.isVirtualNode(edgeIteratorState.getBaseNode()) || queryGraph.isVirtualNode(edgeIteratorState.getAdjNode())) {
             return graph.getEdgeIteratorStateForKey(((VirtualEdgeIteratorState) edgeIteratorState).getOriginalEdgeKey());
         } else {
@@ -574,6 +790,13 @@ public class MapMatching {
         default long getVisitedNodes() {
             return 0L;
         }
+
+        /**
+         * @return the maximum number of nodes a search of {@link #calcPaths} may visit
+         */
+        default int getMaxVisitedNodes() {
+            return Integer.MAX_VALUE;
+        }
     }
 
 }
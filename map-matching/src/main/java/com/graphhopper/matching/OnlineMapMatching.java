@@ -0,0 +1,394 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.matching;
+
+import com.carrotsearch.hppc.LongObjectHashMap;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.*;
+
+import java.util.*;
+
+/**
+ * Matches observations that arrive one at a time, e.g. from a live vehicle feed. In contrast to
+ * {@link MapMatching#match(List)} the complete trace is not required: the Viterbi algorithm only keeps the candidates
+ * of the time steps that are not final yet. As soon as the most likely sequences of all candidates of the latest time
+ * step share a common candidate, the sequence up to this candidate cannot change anymore and the corresponding edge
+ * matches are returned. The query graph only contains the snaps of the two latest time steps and is discarded after
+ * every time step.
+ * <p>
+ * Use one instance per trace, this class is not thread-safe.
+ */
+public class OnlineMapMatching {
+    private final BaseGraph graph;
+    private final MapMatching.Router router;
+    private final MapMatching mapMatching;
+    private final DistanceCalc distanceCalc = new DistancePlaneProjection();
+    private double measurementErrorSigma = 10.0;
+    private double transitionProbabilityBeta = 2.0;
+    private int maxWindowSize = 50;
+    private HmmProbabilities probabilities;
+    private boolean finished;
+
+    // the observation of the latest time step and copies of its snaps, which are not yet modified by a query graph
+    private Observation prevObservation;
+    private List<Snap> prevSnaps;
+    private List<Candidate> prevCandidates = Collections.emptyList();
+    private int timeStep = -1;
+    private int sequenceStart;
+    // the observations since the latest time step, which were skipped because they are too close to it
+    private Observation lastObservation;
+    private Observation skippedObservation;
+    private double accumulatedDistance;
+    // the latest candidate of the final sequence
+    private Candidate finalCandidate;
+    // the final edge that can still get more states, because the next final candidates could be on the same edge
+    private EdgeIteratorState openEdge;
+    private List<State> openStates = new ArrayList<>();
+
+    public static OnlineMapMatching fromGraphHopper(GraphHopper graphHopper, PMap hints) {
+        MapMatching.Router router = MapMatching.routerFromGraphHopper(graphHopper, hints);
+        return new OnlineMapMatching(graphHopper.getBaseGraph(), (LocationIndexTree) graphHopper.getLocationIndex(), router);
+    }
+
+    public OnlineMapMatching(BaseGraph graph, LocationIndexTree locationIndex, MapMatching.Router router) {
+        this.graph = graph;
+        this.router = router;
+        this.mapMatching = new MapMatching(graph, locationIndex, router);
+    }
+
+    /**
+     * Beta parameter of the exponential distribution for modeling transition probabilities.
+     */
+    public OnlineMapMatching setTransitionProbabilityBeta(double transitionProbabilityBeta) {
+        checkNotStarted();
+        this.transitionProbabilityBeta = transitionProbabilityBeta;
+        return this;
+    }
+
+    /**
+     * Standard deviation of the normal distribution [m] used for modeling the GPS error.
+     */
+    public OnlineMapMatching setMeasurementErrorSigma(double measurementErrorSigma) {
+        checkNotStarted();
+        this.measurementErrorSigma = measurementErrorSigma;
+        mapMatching.setMeasurementErrorSigma(measurementErrorSigma);
+        return this;
+    }
+
+    /**
+     * The maximum number of time steps that are not final. If the most likely sequences did not converge within this
+     * window, the oldest time step is finalized using the currently most likely sequence.
+     */
+    public OnlineMapMatching setMaxWindowSize(int maxWindowSize) {
+        if (maxWindowSize < 2)
+            throw new IllegalArgumentException("maxWindowSize must be at least 2 but was " + maxWindowSize);
+        this.maxWindowSize = maxWindowSize;
+        return this;
+    }
+
+    private void checkNotStarted() {
+        if (probabilities != null)
+            throw new IllegalStateException("Parameters cannot be changed after the first observation was added");
+    }
+
+    /**
+     * Adds the next observation of the trace.
+     *
+     * @return the edge matches that became final due to this observation, which is often an empty list. The edge
+     * matches of all calls of this method and {@link #finish()} together form the same kind of list as
+     * {@link MatchResult#getEdgeMatches()}.
+     */
+    public List<EdgeMatch> add(Observation observation) {
+        if (finished)
+            throw new IllegalStateException("The matching was already finished");
+        if (probabilities == null)
+            probabilities = new HmmProbabilities(measurementErrorSigma, transitionProbabilityBeta);
+
+        // like MapMatching#filterObservations we skip observations that are close to the previous one, but keep the
+        // distance we are missing due to the filtering
+        if (lastObservation != null)
+            accumulatedDistance += calcDist(lastObservation, observation);
+        lastObservation = observation;
+        if (prevObservation != null && calcDist(prevObservation, observation) <= 2 * measurementErrorSigma) {
+            skippedObservation = observation;
+            return Collections.emptyList();
+        }
+        skippedObservation = null;
+        List<EdgeMatch> result = new ArrayList<>();
+        addTimeStep(observation, result);
+        return result;
+    }
+
+    /**
+     * Finalizes the most likely sequence after the last observation was added.
+     *
+     * @return the edge matches that were not yet returned by {@link #add(Observation)}
+     */
+    public List<EdgeMatch> finish() {
+        if (finished)
+            throw new IllegalStateException("The matching was already finished");
+        List<EdgeMatch> result = new ArrayList<>();
+        // the last observation is always used, even if it is close to the previous one
+        if (skippedObservation != null)
+            addTimeStep(skippedObservation, result);
+        finalizeBestSequence(result);
+        finished = true;
+        prevSnaps = null;
+        prevCandidates = Collections.emptyList();
+        return result;
+    }
+
+    private double calcDist(Observation from, Observation to) {
+        return distanceCalc.calcDist(from.getPoint().lat, from.getPoint().lon, to.getPoint().lat, to.getPoint().lon);
+    }
+
+    private void addTimeStep(Observation observation, List<EdgeMatch> result) {
+        List<Snap> snaps = mapMatching.findCandidateSnaps(observation.getPoint().lat, observation.getPoint().lon);
+        if (snaps.isEmpty())
+            // an observation without any candidates is ignored, it would break the sequence anyway
+            return;
+        observation.setAccumulatedLinearDistanceToPrevious(prevObservation == null ? 0 : accumulatedDistance - calcDist(prevObservation, observation));
+        accumulatedDistance = 0;
+        timeStep++;
+
+        List<Snap> snapsCopy = new ArrayList<>(snaps.size());
+        for (Snap snap : snaps)
+            snapsCopy.add(copySnap(snap));
+        List<Snap> allSnaps = new ArrayList<>(snaps);
+        if (prevSnaps != null)
+            allSnaps.addAll(prevSnaps);
+        QueryGraph queryGraph = QueryGraph.create(graph, allSnaps);
+
+        List<Candidate> candidates = createCandidates(queryGraph, observation, snaps);
+        if (prevSnaps != null && calcTransitions(queryGraph, observation, candidates)) {
+            candidates.removeIf(c -> c.back == null);
+        } else {
+            // this is the first time step or no candidate can be reached from the previous time step. in the latter
+            // case we finalize the sequence so far and start a new one
+            finalizeBestSequence(result);
+            sequenceStart = timeStep;
+            for (Candidate candidate : candidates)
+                candidate.minusLogProbability = -probabilities.emissionLogProbability(candidate.state.getSnap().getQueryDistance());
+        }
+        prevObservation = observation;
+        prevSnaps = snapsCopy;
+        prevCandidates = candidates;
+
+        finalizeConvergedSequence(result);
+        forceFinalization(result);
+    }
+
+    private List<Candidate> createCandidates(QueryGraph queryGraph, Observation observation, List<Snap> snaps) {
+        List<Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < snaps.size(); i++) {
+            for (State state : MapMatching.createStates(queryGraph, observation, snaps.get(i))) {
+                EdgeIteratorState edge = state.isOnDirectedEdge() ? MapMatching.resolveToRealEdge(graph, queryGraph, state.getOutgoingVirtualEdge()) : null;
+                candidates.add(new Candidate(timeStep, i, state, edge));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Calculates the transitions from the candidates of the previous time step to the given candidates.
+     *
+     * @return true if at least one of the given candidates can be reached
+     */
+    private boolean calcTransitions(QueryGraph queryGraph, Observation observation, List<Candidate> candidates) {
+        // the candidates of the previous time step were created for another query graph, so we create them again and
+        // identify them via their snap index and direction
+        LongObjectHashMap<Candidate> prevCandidatesByKey = new LongObjectHashMap<>(prevCandidates.size());
+        for (Candidate prevCandidate : prevCandidates)
+            prevCandidatesByKey.put(prevCandidate.getKey(), prevCandidate);
+        int[] toNodes = new int[candidates.size()];
+        int[] toInEdges = new int[candidates.size()];
+        for (int i = 0; i < candidates.size(); i++) {
+            State to = candidates.get(i).state;
+            toNodes[i] = to.getSnap().getClosestNode();
+            toInEdges[i] = to.isOnDirectedEdge() ? to.getIncomingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE;
+        }
+        double linearDistance = calcDist(prevObservation, observation) + observation.getAccumulatedLinearDistanceToPrevious();
+        boolean reachable = false;
+        for (Candidate fromCandidate : createCandidates(queryGraph, prevObservation, prevSnaps)) {
+            Candidate prevCandidate = prevCandidatesByKey.get(fromCandidate.getKey());
+            if (prevCandidate == null)
+                continue;
+            State from = fromCandidate.state;
+            int fromOutEdge = from.isOnDirectedEdge() ? from.getOutgoingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE;
+            List<Path> paths = router.calcPaths(queryGraph, from.getSnap().getClosestNode(), fromOutEdge, toNodes, toInEdges);
+            for (int i = 0; i < candidates.size(); i++) {
+                Path path = paths.get(i);
+                if (!path.isFound())
+                    continue;
+                Candidate to = candidates.get(i);
+                double minusLogProbability = prevCandidate.minusLogProbability
+                        - probabilities.emissionLogProbability(to.state.getSnap().getQueryDistance())
+                        - probabilities.transitionLogProbability(path.getDistance(), linearDistance);
+                if (to.back == null || minusLogProbability < to.minusLogProbability) {
+                    List<EdgeIteratorState> transitionEdges = new ArrayList<>();
+                    for (EdgeIteratorState edge : path.calcEdges())
+                        transitionEdges.add(MapMatching.resolveToRealEdge(graph, queryGraph, edge));
+                    to.back = prevCandidate;
+                    to.transitionEdges = transitionEdges;
+                    to.minusLogProbability = minusLogProbability;
+                    reachable = true;
+                }
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Finalizes the sequence up to the latest candidate that is shared by the most likely sequences of all candidates
+     * of the latest time step.
+     */
+    private void finalizeConvergedSequence(List<EdgeMatch> result) {
+        Set<Candidate> candidates = Collections.newSetFromMap(new IdentityHashMap<>());
+        candidates.addAll(prevCandidates);
+        while (candidates.size() > 1) {
+            Set<Candidate> backCandidates = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Candidate candidate : candidates) {
+                if (candidate.back == null)
+                    // we reached the final sequence (or its start) without convergence
+                    return;
+                backCandidates.add(candidate.back);
+            }
+            candidates = backCandidates;
+        }
+        if (candidates.size() == 1)
+            finalizeSequence(candidates.iterator().next(), result);
+    }
+
+    /**
+     * Finalizes the oldest time step that is not final yet using the currently most likely sequence and removes all
+     * candidates whose most likely sequence does not contain the finalized candidate.
+     */
+    private void forceFinalization(List<EdgeMatch> result) {
+        int lastFinalTimeStep = finalCandidate == null ? sequenceStart - 1 : finalCandidate.timeStep;
+        if (timeStep - lastFinalTimeStep <= maxWindowSize)
+            return;
+        Candidate best = findBestCandidate();
+        if (best == null)
+            return;
+        int forcedTimeStep = timeStep - maxWindowSize + 1;
+        Candidate forced = best;
+        while (forced.timeStep > forcedTimeStep && forced.back != null)
+            forced = forced.back;
+        if (forced == finalCandidate)
+            return;
+        final Candidate finalized = forced;
+        prevCandidates.removeIf(c -> {
+            while (c.timeStep > finalized.timeStep && c.back != null)
+                c = c.back;
+            return c != finalized;
+        });
+        finalizeSequence(finalized, result);
+    }
+
+    private void finalizeBestSequence(List<EdgeMatch> result) {
+        Candidate best = findBestCandidate();
+        if (best != null)
+            finalizeSequence(best, result);
+        // the next sequence does not continue the current one
+        if (openEdge != null)
+            result.add(new EdgeMatch(openEdge, openStates));
+        openEdge = null;
+        openStates = new ArrayList<>();
+        finalCandidate = null;
+    }
+
+    private Candidate findBestCandidate() {
+        Candidate best = null;
+        for (Candidate candidate : prevCandidates)
+            if (best == null || candidate.minusLogProbability < best.minusLogProbability)
+                best = candidate;
+        return best;
+    }
+
+    /**
+     * Creates the edge matches for the most likely sequence from the current final candidate to the given candidate,
+     * in the same way as MapMatching does it for the complete sequence.
+     */
+    private void finalizeSequence(Candidate last, List<EdgeMatch> result) {
+        if (last == finalCandidate)
+            return;
+        List<Candidate> sequence = new ArrayList<>();
+        for (Candidate candidate = last; candidate != null && candidate != finalCandidate; candidate = candidate.back)
+            sequence.add(candidate);
+        Collections.reverse(sequence);
+        for (Candidate candidate : sequence) {
+            if (candidate.transitionEdges != null)
+                for (EdgeIteratorState edge : candidate.transitionEdges)
+                    addEdge(edge, result);
+            if (candidate.edge != null)
+                addEdge(candidate.edge, result);
+            openStates.add(candidate.state);
+        }
+        // the older candidates are not needed anymore
+        last.back = null;
+        last.transitionEdges = null;
+        finalCandidate = last;
+    }
+
+    private void addEdge(EdgeIteratorState edge, List<EdgeMatch> result) {
+        if (openEdge != null && !MapMatching.equalEdges(openEdge, edge)) {
+            result.add(new EdgeMatch(openEdge, openStates));
+            openStates = new ArrayList<>();
+        }
+        openEdge = edge;
+    }
+
+    private static Snap copySnap(Snap snap) {
+        Snap copy = new Snap(snap.getQueryPoint().lat, snap.getQueryPoint().lon);
+        copy.setClosestEdge(snap.getClosestEdge());
+        copy.setClosestNode(snap.getClosestNode());
+        copy.setWayIndex(snap.getWayIndex());
+        copy.setSnappedPosition(snap.getSnappedPosition());
+        copy.setQueryDistance(snap.getQueryDistance());
+        copy.setSnappedPoint(snap.getSnappedPoint());
+        return copy;
+    }
+
+    private static class Candidate {
+        final int timeStep;
+        final int snapIndex;
+        final State state;
+        // the real edge in the direction of the candidate, or null if the candidate is not on an edge
+        final EdgeIteratorState edge;
+        double minusLogProbability;
+        Candidate back;
+        // the real edges of the transition from the back candidate
+        List<EdgeIteratorState> transitionEdges;
+
+        Candidate(int timeStep, int snapIndex, State state, EdgeIteratorState edge) {
+            this.timeStep = timeStep;
+            this.snapIndex = snapIndex;
+            this.state = state;
+            this.edge = edge;
+        }
+
+        long getKey() {
+            return ((long) snapIndex << 32) | (edge == null ? 0xFFFFFFFFL : edge.getEdgeKey() & 0xFFFFFFFFL);
+        }
+    }
+}
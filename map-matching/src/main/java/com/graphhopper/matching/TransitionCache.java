@@ -0,0 +1,213 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.matching;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded least-recently-used cache for the transitions of {@link MapMatching}. Traces that cover the same roads
+ * again and again lead to the same transitions between the same pairs of directed real edges. The part of such a
+ * transition between the end of the first edge and the start of the last edge does not depend on where exactly the
+ * observations were snapped to these edges, so it can be stored for the pair of edges and reused without routing.
+ * <p>
+ * The entries are keyed by profile, so the same cache can be shared by all MapMatching instances and threads. All
+ * entries are removed when the data version changes, e.g. because external encoded values used by a profile were
+ * updated.
+ */
+public class TransitionCache {
+    // rough estimates of the memory used by an entry without its edges, i.e. key, entry, array and hash map node
+    private static final int BYTES_PER_ENTRY = 32 + 40 + 16 + 48;
+    private final int maxEntries;
+    private final LinkedHashMap<Key, Entry> entries;
+    private final LongSupplier dataVersion;
+    private long version;
+    private long hits;
+    private long misses;
+    private long edges;
+
+    public TransitionCache(int maxEntries) {
+        this(maxEntries, () -> 0);
+    }
+
+    /**
+     * @param dataVersion must change whenever the weights of the cached transitions can change, see
+     *                    {@link com.graphhopper.routing.ev.ExternalEncodedValue#getVersionSum}
+     */
+    public TransitionCache(int maxEntries, LongSupplier dataVersion) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be positive but was " + maxEntries);
+        this.maxEntries = maxEntries;
+        // the version is read lazily, i.e. the supplier can depend on a graph that is not loaded yet
+        this.dataVersion = dataVersion;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() <= TransitionCache.this.maxEntries)
+                    return false;
+                edges -= eldest.getValue().edgeIds.length;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return the cached transition between the two directed real edges or null if there is none
+     */
+    public synchronized Entry get(String profile, int fromEdgeKey, int toEdgeKey) {
+        updateVersion();
+        Entry entry = entries.get(new Key(profile, fromEdgeKey, toEdgeKey));
+        if (entry == null)
+            misses++;
+        else
+            hits++;
+        return entry;
+    }
+
+    /**
+     * @param version the version returned by {@link #getVersion()} before the transition was calculated. The entry is
+     *                ignored if the data changed in the meantime.
+     */
+    public synchronized void put(String profile, int fromEdgeKey, int toEdgeKey, long version, Entry entry) {
+        updateVersion();
+        if (version != this.version)
+            return;
+        Entry old = entries.put(new Key(profile, fromEdgeKey, toEdgeKey), entry);
+        if (old != null)
+            edges -= old.edgeIds.length;
+        edges += entry.edgeIds.length;
+    }
+
+    /**
+     * @return the current data version, see {@link #put}
+     */
+    public synchronized long getVersion() {
+        updateVersion();
+        return version;
+    }
+
+    private void updateVersion() {
+        long currentVersion = dataVersion.getAsLong();
+        if (currentVersion != version) {
+            entries.clear();
+            edges = 0;
+            version = currentVersion;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        edges = 0;
+        hits = 0;
+        misses = 0;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized double getHitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    /**
+     * @return a rough estimate of the memory used by the cached entries in bytes
+     */
+    public synchronized long getEstimatedBytes() {
+        return entries.size() * (long) BYTES_PER_ENTRY + 4 * edges;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "entries: " + entries.size() + "/" + maxEntries + ", hits: " + hits + ", misses: " + misses
+                + ", hit rate: " + Math.round(getHitRate() * 100) + "%, estimated bytes: " + getEstimatedBytes();
+    }
+
+    /**
+     * The part of a transition between the end node of the first edge and the start node of the last edge. The
+     * distance, time and weight include the turn costs at both nodes.
+     */
+    public static class Entry {
+        private final int[] edgeIds;
+        private final double distance;
+        private final long time;
+        private final double weight;
+
+        public Entry(int[] edgeIds, double distance, long time, double weight) {
+            this.edgeIds = edgeIds;
+            this.distance = distance;
+            this.time = time;
+            this.weight = weight;
+        }
+
+        public int[] getEdgeIds() {
+            return edgeIds;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public double getWeight() {
+            return weight;
+        }
+    }
+
+    private static class Key {
+        final String profile;
+        final int fromEdgeKey;
+        final int toEdgeKey;
+
+        Key(String profile, int fromEdgeKey, int toEdgeKey) {
+            this.profile = profile;
+            this.fromEdgeKey = fromEdgeKey;
+            this.toEdgeKey = toEdgeKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return fromEdgeKey == key.fromEdgeKey && toEdgeKey == key.toEdgeKey && profile.equals(key.profile);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(profile, fromEdgeKey, toEdgeKey);
+        }
+    }
+}
@@ -18,6 +18,8 @@
 package com.graphhopper.tools;
 
 import com.carrotsearch.hppc.IntArrayList;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.graphhopper.*;
 import com.graphhopper.coll.GHBitSet;
@@ -26,6 +28,9 @@ import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.config.Profile;
 import com.graphhopper.jackson.Jackson;
+import com.graphhopper.jackson.ResponsePathDeserializerHelper;
+import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.json.Statement;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.ev.*;
@@ -33,6 +38,7 @@ import com.graphhopper.routing.lm.LMConfig;
 import com.graphhopper.routing.lm.PrepareLandmarks;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.routing.weighting.custom.CustomModelParser;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
 import com.graphhopper.storage.*;
 import com.graphhopper.storage.index.LocationIndex;
@@ -48,6 +54,8 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
@@ -184,6 +192,7 @@ public class Measurement {
             printGraphDetails(g, vehicle);
             measureGraphTraversal(g, accessEnc, count * 100);
             measureLocationIndex(g, hopper.getLocationIndex(), count);
+            measureCustomModelEvaluators(g, encodingManager, hopper.getProfile("profile_no_tc").getCustomModel(), count);
 
             if (runSlow) {
                 boolean isCH = false;
@@ -265,6 +274,7 @@ public class Measurement {
                 }
             }
             measureCountryAreaIndex(count);
+            measurePolyline(count);
 
         } catch (Exception ex) {
             logger.error("Problem while measuring " + graphLocation, ex);
@@ -426,6 +436,37 @@ public class Measurement {
         print("location_index", miniPerf);
     }
 
+    private void measureCustomModelEvaluators(final Graph graph, EncodingManager encodingManager, CustomModel profileModel, int count) {
+        final int maxEdgesId = graph.getAllEdges().length();
+        // the road classes of these conditions make the structure of every model unique, so the Janino evaluator
+        // cannot reuse a compiled class and we measure the latency of a model that is seen for the first time
+        final RoadClass[] roadClasses = RoadClass.values();
+        final AtomicInteger modelCounter = new AtomicInteger();
+        for (CustomModelParser.Evaluator evaluator : CustomModelParser.Evaluator.values()) {
+            String name = evaluator.name().toLowerCase(Locale.ROOT);
+            MiniPerfTest miniPerf = new MiniPerfTest().setIterations(Math.max(1, count / 100)).start((warmup, run) -> {
+                int id = modelCounter.getAndIncrement();
+                String condition = "road_class == " + roadClasses[id % roadClasses.length]
+                        + " || road_class == " + roadClasses[(id / roadClasses.length) % roadClasses.length]
+                        + " || road_class == " + roadClasses[(id / roadClasses.length / roadClasses.length) % roadClasses.length];
+                CustomModel model = new CustomModel().addToPriority(Statement.If(condition, Statement.Op.MULTIPLY, "0.9"));
+                CustomWeighting.Parameters parameters = CustomModelParser.createWeightingParameters(
+                        CustomModel.merge(profileModel, model), encodingManager, evaluator);
+                return (int) parameters.getMaxSpeedCalc().calcMax();
+            });
+            print("custom_model.create_" + name, miniPerf);
+
+            final Random rand = new Random(seed);
+            final CustomWeighting.Parameters parameters = CustomModelParser.createWeightingParameters(profileModel, encodingManager, evaluator);
+            miniPerf = new MiniPerfTest().setIterations(count * 100).start((warmup, run) -> {
+                EdgeIteratorState edge = graph.getEdgeIteratorState(rand.nextInt(maxEdgesId), Integer.MIN_VALUE);
+                boolean reverse = rand.nextBoolean();
+                return (int) (parameters.getEdgeToSpeedMapping().get(edge, reverse) + parameters.getEdgeToPriorityMapping().get(edge, reverse));
+            });
+            print("custom_model.eval_" + name, miniPerf);
+        }
+    }
+
     private void measureGraphTraversal(final Graph graph, BooleanEncodedValue accessEnc, int count) {
         final Random rand = new Random(seed);
 
@@ -516,6 +557,39 @@ public class Measurement {
         print("area_index.query", lookupPerfTest);
     }
 
+    private void measurePolyline(int count) {
+        Random rnd = new Random(seed);
+        // a random walk in Europe with roughly the point density of a long route
+        final PointList points = new PointList(10_000, true);
+        double lat = 50, lon = 10;
+        for (int i = 0; i < 10_000; i++) {
+            lat += rnd.nextDouble() * 0.002 - 0.001;
+            lon += rnd.nextDouble() * 0.002 - 0.001;
+            points.add(lat, lon, rnd.nextDouble() * 1000);
+        }
+        final String encoded = ResponsePathSerializer.encodePolyline(points, true, 1e5);
+        final PointList decoded = new PointList(points.size(), true);
+        final JsonFactory jsonFactory = new JsonFactory();
+        MiniPerfTest encodePerfTest = new MiniPerfTest().setIterations(count / 10).start((warmup, run) ->
+                ResponsePathSerializer.encodePolyline(points, true, 1e5).length());
+        print("polyline.encode", encodePerfTest);
+        MiniPerfTest writePerfTest = new MiniPerfTest().setIterations(count / 10).start((warmup, run) -> {
+            try (JsonGenerator gen = jsonFactory.createGenerator(OutputStream.nullOutputStream())) {
+                ResponsePathSerializer.writePolyline(gen, points, true, 1e5);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return 0;
+        });
+        print("polyline.write", writePerfTest);
+        MiniPerfTest decodePerfTest = new MiniPerfTest().setIterations(count / 10).start((warmup, run) -> {
+            decoded.clear();
+            ResponsePathDeserializerHelper.decodePolyline(encoded, decoded, 1e5);
+            return decoded.size();
+        });
+        print("polyline.decode", decodePerfTest);
+    }
+
     private void measureRouting(final GraphHopper hopper, final QuerySettings querySettings) {
         final Graph g = hopper.getBaseGraph();
         final AtomicLong maxDistance = new AtomicLong(0);
@@ -0,0 +1,427 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.jackson;
+
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.util.*;
+import com.graphhopper.util.details.PathDetail;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.NumberFormat;
+import java.util.*;
+
+/**
+ * A compact binary alternative to the JSON response of the routing API, which is cheaper to create and to parse.
+ * It contains the same information as the JSON response except for the public transit legs and the bounding box:
+ * <ul>
+ * <li>points and snapped waypoints are delta encoded integers, like in the encoded polyline of the JSON response</li>
+ * <li>path details are written as columns: the interval starts, the interval lengths and the values</li>
+ * <li>instructions are written as records of sign, text, street name, distance, time, point count and extra info</li>
+ * </ul>
+ * Integers are written as zigzag encoded variable length integers and strings as UTF-8 with their length in front.
+ * Values of hints, path details and instructions keep their type, i.e. booleans, integers, decimals, strings, lists
+ * and maps.
+ */
+public class BinaryResponseFormat {
+    public static final String MEDIA_TYPE = "application/x-graphhopper-route";
+    // "GHRB"
+    private static final int MAGIC = 0x47485242;
+    private static final int VERSION = 1;
+
+    private static final int NULL = 0, FALSE = 1, TRUE = 2, LONG = 3, DOUBLE = 4, STRING = 5, LIST = 6, MAP = 7;
+
+    public static void write(ResponsePathSerializer.JsonResponse rsp, OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        Map<String, Object> hints = rsp.ghRsp().getHints().toMap();
+        writeVarInt(out, hints.size());
+        for (Map.Entry<String, Object> entry : hints.entrySet()) {
+            writeString(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+        writeValue(out, rsp.info().copyrights());
+        writeVarLong(out, rsp.info().took());
+        writeValue(out, rsp.info().roadDataTimestamp());
+
+        List<ResponsePath> paths = rsp.ghRsp().getAll();
+        writeVarInt(out, paths.size());
+        for (ResponsePath p : paths) {
+            out.writeDouble(Helper.round(p.getDistance(), 3));
+            out.writeDouble(Helper.round6(p.getRouteWeight()));
+            writeVarLong(out, p.getTime());
+            writeVarInt(out, p.getNumChanges());
+            writeValue(out, p.getDescription());
+            out.writeBoolean(rsp.enableElevation());
+            out.writeDouble(rsp.pointsMultiplier());
+            out.writeBoolean(rsp.calcPoints());
+            if (rsp.calcPoints()) {
+                writePoints(out, p.getPoints(), rsp.enableElevation(), rsp.pointsMultiplier());
+                boolean instructions = rsp.enableInstructions() && p.getInstructions() != null;
+                out.writeBoolean(instructions);
+                if (instructions)
+                    writeInstructions(out, p.getInstructions());
+                writeDetails(out, p.getPathDetails());
+                out.writeDouble(p.getAscend());
+                out.writeDouble(p.getDescend());
+            }
+            writePoints(out, p.getWaypoints(), rsp.enableElevation(), rsp.pointsMultiplier());
+            writeValue(out, p.getFare() == null ? null : NumberFormat.getCurrencyInstance(Locale.ROOT).format(p.getFare()));
+        }
+        out.flush();
+    }
+
+    private static void writePoints(DataOutputStream out, PointList points, boolean includeElevation, double multiplier) throws IOException {
+        writeVarInt(out, points.size());
+        int prevLat = 0, prevLon = 0, prevEle = 0;
+        for (int i = 0; i < points.size(); i++) {
+            int lat = (int) Math.round(points.getLat(i) * multiplier);
+            int lon = (int) Math.round(points.getLon(i) * multiplier);
+            writeVarLong(out, lat - prevLat);
+            writeVarLong(out, lon - prevLon);
+            prevLat = lat;
+            prevLon = lon;
+            if (includeElevation) {
+                int ele = (int) Math.round(points.getEle(i) * 100);
+                writeVarLong(out, ele - prevEle);
+                prevEle = ele;
+            }
+        }
+    }
+
+    private static void writeInstructions(DataOutputStream out, InstructionList instructions) throws IOException {
+        writeVarInt(out, instructions.size());
+        for (Instruction instruction : instructions) {
+            writeVarLong(out, instruction.getSign());
+            writeString(out, Helper.firstBig(instruction.getTurnDescription(instructions.getTr())));
+            writeValue(out, instruction.getName());
+            out.writeDouble(Helper.round(instruction.getDistance(), 3));
+            writeVarLong(out, instruction.getTime());
+            writeVarInt(out, instruction.getLength());
+            writeValue(out, instruction.getExtraInfoJSON());
+        }
+    }
+
+    private static void writeDetails(DataOutputStream out, Map<String, List<PathDetail>> details) throws IOException {
+        writeVarInt(out, details.size());
+        for (Map.Entry<String, List<PathDetail>> entry : details.entrySet()) {
+            writeString(out, entry.getKey());
+            List<PathDetail> list = entry.getValue();
+            writeVarInt(out, list.size());
+            int prevLast = 0;
+            for (PathDetail detail : list) {
+                writeVarLong(out, detail.getFirst() - prevLast);
+                prevLast = detail.getLast();
+            }
+            for (PathDetail detail : list)
+                writeVarInt(out, detail.getLength());
+            for (PathDetail detail : list)
+                writeValue(out, detail.getValue());
+        }
+    }
+
+    /**
+     * Reads a response written by {@link #write}.
+     *
+     * @param turnDescription if false the instruction texts are replaced by the street names, like for the JSON
+     *                        response, see {@link ResponsePathDeserializerHelper}
+     */
+    public static GHResponse read(InputStream inputStream, boolean turnDescription) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        int magic = in.readInt();
+        if (magic != MAGIC)
+            throw new IllegalArgumentException("Not a binary route response, unexpected start: " + Integer.toHexString(magic));
+        int version = in.readUnsignedByte();
+        if (version != VERSION)
+            throw new IllegalArgumentException("Unsupported version of the binary route response: " + version + ", expected: " + VERSION);
+
+        GHResponse rsp = new GHResponse();
+        int hintCount = readVarInt(in);
+        for (int i = 0; i < hintCount; i++) {
+            String key = readString(in);
+            rsp.getHints().putObject(key, readValue(in));
+        }
+        // copyrights, took and road data timestamp
+        readValue(in);
+        readVarLong(in);
+        readValue(in);
+
+        int pathCount = readVarInt(in);
+        for (int i = 0; i < pathCount; i++) {
+            ResponsePath path = new ResponsePath();
+            path.setDistance(in.readDouble());
+            path.setRouteWeight(in.readDouble());
+            path.setTime(readVarLong(in));
+            path.setNumChanges(readVarInt(in));
+            path.setDescription(readStrings(in));
+            boolean hasElevation = in.readBoolean();
+            double multiplier = in.readDouble();
+            if (in.readBoolean()) {
+                PointList points = readPoints(in, hasElevation, multiplier);
+                path.setPoints(points);
+                if (in.readBoolean())
+                    path.setInstructions(readInstructions(in, points, turnDescription));
+                path.addPathDetails(readDetails(in));
+                path.setAscend(in.readDouble());
+                path.setDescend(in.readDouble());
+            }
+            path.setWaypoints(readPoints(in, hasElevation, multiplier));
+            List<Integer> pointsOrder = new ArrayList<>(path.getWaypoints().size());
+            for (int j = 0; j < path.getWaypoints().size(); j++) {
+                pointsOrder.add(j);
+            }
+            path.setPointsOrder(pointsOrder);
+            // the fare is only informational
+            readValue(in);
+            rsp.add(path);
+        }
+        return rsp;
+    }
+
+    private static PointList readPoints(DataInputStream in, boolean hasElevation, double multiplier) throws IOException {
+        int size = readVarInt(in);
+        PointList points = new PointList(size, hasElevation);
+        int lat = 0, lon = 0, ele = 0;
+        for (int i = 0; i < size; i++) {
+            lat += (int) readVarLong(in);
+            lon += (int) readVarLong(in);
+            if (hasElevation) {
+                ele += (int) readVarLong(in);
+                points.add(lat / multiplier, lon / multiplier, ele / 100.0);
+            } else {
+                points.add(lat / multiplier, lon / multiplier);
+            }
+        }
+        return points;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static InstructionList readInstructions(DataInputStream in, PointList points, boolean turnDescription) throws IOException {
+        int size = readVarInt(in);
+        InstructionList il = new InstructionList(size, null);
+        int from = 0;
+        int viaCount = 1;
+        for (int i = 0; i < size; i++) {
+            int sign = (int) readVarLong(in);
+            String text = readString(in);
+            Object name = readValue(in);
+            double distance = in.readDouble();
+            long time = readVarLong(in);
+            int to = from + readVarInt(in);
+            Map<String, Object> extraInfo = (Map<String, Object>) readValue(in);
+            if (!turnDescription)
+                text = name == null ? null : name.toString();
+
+            PointList instPL = new PointList(to - from, points.is3D());
+            for (int j = from; j <= to; j++) {
+                instPL.add(points, j);
+            }
+            from = to;
+
+            Instruction instr;
+            if (sign == Instruction.USE_ROUNDABOUT || sign == Instruction.LEAVE_ROUNDABOUT) {
+                RoundaboutInstruction ri = new RoundaboutInstruction(sign, text, instPL);
+                if (extraInfo.get("exit_number") instanceof Number exitNumber)
+                    ri.setExitNumber(exitNumber.intValue());
+                if (Boolean.TRUE.equals(extraInfo.get("exited")))
+                    ri.setExited();
+                if (extraInfo.get("turn_angle") instanceof Number turnAngle) {
+                    double angle = turnAngle.doubleValue();
+                    ri.setDirOfRotation(angle);
+                    ri.setRadian((angle < 0 ? -Math.PI : Math.PI) - angle);
+                }
+                instr = ri;
+            } else if (sign == Instruction.REACHED_VIA) {
+                ViaInstruction tmpInstr = new ViaInstruction(text, instPL);
+                tmpInstr.setViaCount(viaCount);
+                viaCount++;
+                instr = tmpInstr;
+            } else if (sign == Instruction.FINISH) {
+                instr = new FinishInstruction(text, instPL, 0);
+            } else {
+                instr = new Instruction(sign, text, instPL);
+                if (sign == Instruction.CONTINUE_ON_STREET && extraInfo.get("heading") instanceof Number heading)
+                    instr.setExtraInfo("heading", heading.doubleValue());
+            }
+            if (turnDescription)
+                instr.setUseRawName();
+            instr.setDistance(distance).setTime(time);
+            il.add(instr);
+        }
+        return il;
+    }
+
+    private static Map<String, List<PathDetail>> readDetails(DataInputStream in) throws IOException {
+        int size = readVarInt(in);
+        Map<String, List<PathDetail>> details = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            String name = readString(in);
+            int count = readVarInt(in);
+            int[] firsts = new int[count];
+            int prevLast = 0;
+            int[] lengths = new int[count];
+            for (int j = 0; j < count; j++)
+                firsts[j] = (int) readVarLong(in);
+            for (int j = 0; j < count; j++)
+                lengths[j] = readVarInt(in);
+            List<PathDetail> list = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) {
+                PathDetail detail = new PathDetail(readValue(in));
+                detail.setFirst(prevLast + firsts[j]);
+                detail.setLast(detail.getFirst() + lengths[j]);
+                prevLast = detail.getLast();
+                list.add(detail);
+            }
+            details.put(name, list);
+        }
+        return details;
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        List<String> strings = new ArrayList<>();
+        for (Object value : (List<?>) readValue(in))
+            strings.add((String) value);
+        return strings;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean b) {
+            out.writeByte(b ? TRUE : FALSE);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(LONG);
+            writeVarLong(out, ((Number) value).longValue());
+        } else if (value instanceof Number number) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(number.doubleValue());
+        } else if (value instanceof Collection<?> collection) {
+            out.writeByte(LIST);
+            writeVarInt(out, collection.size());
+            for (Object o : collection)
+                writeValue(out, o);
+        } else if (value instanceof Map<?, ?> map) {
+            out.writeByte(MAP);
+            writeVarInt(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, entry.getKey().toString());
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            out.writeByte(STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case FALSE:
+                return false;
+            case TRUE:
+                return true;
+            case LONG:
+                return readVarLong(in);
+            case DOUBLE:
+                return in.readDouble();
+            case STRING:
+                return readString(in);
+            case LIST: {
+                int size = readVarInt(in);
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++)
+                    list.add(readValue(in));
+                return list;
+            }
+            case MAP: {
+                int size = readVarInt(in);
+                Map<String, Object> map = new LinkedHashMap<>(size);
+                for (int i = 0; i < size; i++) {
+                    String key = readString(in);
+                    map.put(key, readValue(in));
+                }
+                return map;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown value type: " + type);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a non-negative int using 7 bits per byte
+     */
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        if (value < 0)
+            throw new IllegalArgumentException("value must not be negative: " + value);
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Malformed variable length integer");
+    }
+
+    /**
+     * Writes a long using zigzag encoding, i.e. small negative values need only a few bytes as well
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.writeByte((int) zigzag);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+        throw new IllegalArgumentException("Malformed variable length integer");
+    }
+}
@@ -37,6 +37,7 @@ public class GraphHopperModule extends SimpleModule {
         addSerializer(PathDetail.class, new PathDetailSerializer());
         addSerializer(InstructionList.class, new InstructionListSerializer());
         addSerializer(MultiException.class, new MultiExceptionSerializer());
+        addSerializer(ResponsePathSerializer.JsonResponse.class, new JsonResponseSerializer());
     }
 
 }
@@ -0,0 +1,84 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.jackson;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.util.Helper;
+
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+import static com.graphhopper.jackson.ResponsePathSerializer.writePolyline;
+
+/**
+ * Writes the JSON response of the routing API token by token, see {@link ResponsePathSerializer.JsonResponse}.
+ */
+public class JsonResponseSerializer extends JsonSerializer<ResponsePathSerializer.JsonResponse> {
+    @Override
+    public void serialize(ResponsePathSerializer.JsonResponse rsp, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject();
+        provider.defaultSerializeField("hints", rsp.ghRsp().getHints().toMap(), gen);
+        provider.defaultSerializeField("info", rsp.info(), gen);
+        gen.writeArrayFieldStart("paths");
+        for (ResponsePath p : rsp.ghRsp().getAll()) {
+            gen.writeStartObject();
+            gen.writeNumberField("distance", Helper.round(p.getDistance(), 3));
+            gen.writeNumberField("weight", Helper.round6(p.getRouteWeight()));
+            gen.writeNumberField("time", p.getTime());
+            gen.writeNumberField("transfers", p.getNumChanges());
+            provider.defaultSerializeField("legs", p.getLegs(), gen);
+            if (!p.getDescription().isEmpty()) {
+                provider.defaultSerializeField("description", p.getDescription(), gen);
+            }
+
+            // for points and snapped_waypoints:
+            gen.writeBooleanField("points_encoded", rsp.pointsEncoded());
+            if (rsp.pointsEncoded()) gen.writeNumberField("points_encoded_multiplier", rsp.pointsMultiplier());
+
+            if (rsp.calcPoints()) {
+                provider.defaultSerializeField("bbox", p.calcBBox2D(), gen);
+                gen.writeFieldName("points");
+                if (rsp.pointsEncoded())
+                    writePolyline(gen, p.getPoints(), rsp.enableElevation(), rsp.pointsMultiplier());
+                else
+                    provider.defaultSerializeValue(p.getPoints().toLineString(rsp.enableElevation()), gen);
+                if (rsp.enableInstructions()) {
+                    provider.defaultSerializeField("instructions", p.getInstructions(), gen);
+                }
+                provider.defaultSerializeField("details", p.getPathDetails(), gen);
+                gen.writeNumberField("ascend", p.getAscend());
+                gen.writeNumberField("descend", p.getDescend());
+            }
+            gen.writeFieldName("snapped_waypoints");
+            if (rsp.pointsEncoded())
+                writePolyline(gen, p.getWaypoints(), rsp.enableElevation(), rsp.pointsMultiplier());
+            else
+                provider.defaultSerializeValue(p.getWaypoints().toLineString(rsp.enableElevation()), gen);
+            if (p.getFare() != null) {
+                gen.writeStringField("fare", NumberFormat.getCurrencyInstance(Locale.ROOT).format(p.getFare()));
+            }
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+}
@@ -187,10 +187,20 @@ public class ResponsePathDeserializerHelper {
     }
 
     public static PointList decodePolyline(String encoded, int initCap, boolean is3D, double multiplier) {
+        PointList poly = new PointList(initCap, is3D);
+        decodePolyline(encoded, poly, multiplier);
+        return poly;
+    }
+
+    /**
+     * Decodes the polyline and appends its points to the given PointList. The elevation is decoded if the PointList
+     * is 3D. Reusing a PointList or creating it with a sufficient capacity avoids growing its arrays while decoding.
+     */
+    public static void decodePolyline(String encoded, PointList poly, double multiplier) {
         if (multiplier < 1)
             throw new IllegalArgumentException("multiplier cannot be smaller than 1 but was " + multiplier + " for polyline " + encoded);
 
-        PointList poly = new PointList(initCap, is3D);
+        boolean is3D = poly.is3D();
         int index = 0;
         int len = encoded.length();
         int lat = 0, lng = 0, ele = 0;
@@ -231,7 +241,6 @@ public class ResponsePathDeserializerHelper {
             } else
                 poly.add((double) lat / multiplier, (double) lng / multiplier);
         }
-        return poly;
     }
 
     public static List<Throwable> readErrors(ObjectMapper objectMapper, JsonNode json) {
@@ -18,17 +18,15 @@
 
 package com.graphhopper.jackson;
 
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.JsonNodeFactory;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.json.UTF8JsonGenerator;
 import com.graphhopper.GHResponse;
-import com.graphhopper.ResponsePath;
-import com.graphhopper.util.Helper;
 import com.graphhopper.util.PointList;
 
-import java.text.NumberFormat;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Locale;
 
 /**
  * Code which constructs the JSON response of the routing API, including polyline encoding.
@@ -41,85 +39,103 @@ import java.util.Locale;
  * @author Peter Karich
  */
 public class ResponsePathSerializer {
+    // the polylines of most routes fit into this buffer, larger ones are encoded into a temporary buffer
+    private static final int MAX_POOLED_BUFFER_LENGTH = 64 * 1024;
+    private static final ThreadLocal<PolylineBuffer> BUFFERS = ThreadLocal.withInitial(() -> new PolylineBuffer(1024));
 
     public static String encodePolyline(PointList poly, boolean includeElevation, double multiplier) {
+        PolylineBuffer buffer = encode(poly, includeElevation, multiplier);
+        String result = new String(buffer.bytes, 0, buffer.length, StandardCharsets.US_ASCII);
+        release(buffer);
+        return result;
+    }
+
+    /**
+     * Writes the encoded polyline as JSON string. Unlike {@link #encodePolyline} this does not create a String and,
+     * if the generator writes UTF-8 bytes, the encoded ASCII bytes are copied to the output without conversion.
+     */
+    public static void writePolyline(JsonGenerator gen, PointList poly, boolean includeElevation, double multiplier) throws IOException {
+        PolylineBuffer buffer = encode(poly, includeElevation, multiplier);
+        // other generators like the TokenBuffer used for valueToTree do not support writeUTF8String
+        if (gen instanceof UTF8JsonGenerator)
+            gen.writeUTF8String(buffer.bytes, 0, buffer.length);
+        else
+            gen.writeString(new String(buffer.bytes, 0, buffer.length, StandardCharsets.US_ASCII));
+        release(buffer);
+    }
+
+    private static PolylineBuffer encode(PointList poly, boolean includeElevation, double multiplier) {
         if (multiplier < 1)
             throw new IllegalArgumentException("multiplier cannot be smaller than 1 but was " + multiplier + " for polyline");
 
-        StringBuilder sb = new StringBuilder(Math.max(20, poly.size() * 3));
+        PolylineBuffer buffer = BUFFERS.get();
+        buffer.length = 0;
         int size = poly.size();
+        int maxPointLength = (includeElevation ? 3 : 2) * PolylineBuffer.MAX_NUMBER_LENGTH;
         int prevLat = 0;
         int prevLon = 0;
         int prevEle = 0;
         for (int i = 0; i < size; i++) {
+            buffer.ensureCapacity(maxPointLength);
             int num = (int) Math.round(poly.getLat(i) * multiplier);
-            encodeNumber(sb, num - prevLat);
+            buffer.encodeNumber(num - prevLat);
             prevLat = num;
             num = (int) Math.round(poly.getLon(i) * multiplier);
-            encodeNumber(sb, num - prevLon);
+            buffer.encodeNumber(num - prevLon);
             prevLon = num;
             if (includeElevation) {
                 num = (int) Math.round(poly.getEle(i) * 100);
-                encodeNumber(sb, num - prevEle);
+                buffer.encodeNumber(num - prevEle);
                 prevEle = num;
             }
         }
-        return sb.toString();
+        return buffer;
     }
 
-    private static void encodeNumber(StringBuilder sb, int num) {
-        num = num << 1;
-        if (num < 0) {
-            num = ~num;
-        }
-        while (num >= 0x20) {
-            int nextValue = (0x20 | (num & 0x1f)) + 63;
-            sb.append((char) (nextValue));
-            num >>= 5;
-        }
-        num += 63;
-        sb.append((char) (num));
+    private static void release(PolylineBuffer buffer) {
+        // do not keep the memory of a very long polyline for the rest of the thread's lifetime
+        if (buffer.bytes.length > MAX_POOLED_BUFFER_LENGTH)
+            BUFFERS.remove();
     }
 
-    public record Info(List<String> copyrights, long took, String roadDataTimestamp) {
-    }
+    private static final class PolylineBuffer {
+        // an int needs at most 7 characters
+        private static final int MAX_NUMBER_LENGTH = 7;
+        private byte[] bytes;
+        private int length;
 
-    public static ObjectNode jsonObject(GHResponse ghRsp, Info info, boolean enableInstructions,
-                                        boolean calcPoints, boolean enableElevation, boolean pointsEncoded, double pointsMultiplier) {
-        ObjectNode json = JsonNodeFactory.instance.objectNode();
-        json.putPOJO("hints", ghRsp.getHints().toMap());
-        json.putPOJO("info", info);
-        ArrayNode jsonPathList = json.putArray("paths");
-        for (ResponsePath p : ghRsp.getAll()) {
-            ObjectNode jsonPath = jsonPathList.addObject();
-            jsonPath.put("distance", Helper.round(p.getDistance(), 3));
-            jsonPath.put("weight", Helper.round6(p.getRouteWeight()));
-            jsonPath.put("time", p.getTime());
-            jsonPath.put("transfers", p.getNumChanges());
-            jsonPath.putPOJO("legs", p.getLegs());
-            if (!p.getDescription().isEmpty()) {
-                jsonPath.putPOJO("description", p.getDescription());
-            }
+        PolylineBuffer(int capacity) {
+            bytes = new byte[capacity];
+        }
 
-            // for points and snapped_waypoints:
-            jsonPath.put("points_encoded", pointsEncoded);
-            if (pointsEncoded) jsonPath.put("points_encoded_multiplier", pointsMultiplier);
+        void ensureCapacity(int additionalLength) {
+            if (bytes.length - length < additionalLength)
+                bytes = Arrays.copyOf(bytes, bytes.length * 2 + additionalLength);
+        }
 
-            if (calcPoints) {
-                jsonPath.putPOJO("bbox", p.calcBBox2D());
-                jsonPath.putPOJO("points", pointsEncoded ? encodePolyline(p.getPoints(), enableElevation, pointsMultiplier) : p.getPoints().toLineString(enableElevation));
-                if (enableInstructions) {
-                    jsonPath.putPOJO("instructions", p.getInstructions());
-                }
-                jsonPath.putPOJO("details", p.getPathDetails());
-                jsonPath.put("ascend", p.getAscend());
-                jsonPath.put("descend", p.getDescend());
+        void encodeNumber(int num) {
+            num = num << 1;
+            if (num < 0) {
+                num = ~num;
             }
-            jsonPath.putPOJO("snapped_waypoints", pointsEncoded ? encodePolyline(p.getWaypoints(), enableElevation, pointsMultiplier) : p.getWaypoints().toLineString(enableElevation));
-            if (p.getFare() != null) {
-                jsonPath.put("fare", NumberFormat.getCurrencyInstance(Locale.ROOT).format(p.getFare()));
+            while (num >= 0x20) {
+                int nextValue = (0x20 | (num & 0x1f)) + 63;
+                bytes[length++] = (byte) nextValue;
+                num >>= 5;
             }
+            num += 63;
+            bytes[length++] = (byte) num;
         }
-        return json;
+    }
+
+    public record Info(List<String> copyrights, long took, String roadDataTimestamp) {
+    }
+
+    /**
+     * The routing response together with the options for its JSON representation. It is written by the
+     * {@link JsonResponseSerializer} directly to the output, i.e. without building a tree of JSON nodes first.
+     */
+    public record JsonResponse(GHResponse ghRsp, Info info, boolean enableInstructions, boolean calcPoints,
+                               boolean enableElevation, boolean pointsEncoded, double pointsMultiplier) {
     }
 }
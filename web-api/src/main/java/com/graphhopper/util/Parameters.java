@@ -40,6 +40,10 @@ public class Parameters {
          * one to many Dijkstra (not yet for edge based #394, not yet for CH)
          */
         public static final String DIJKSTRA_ONE_TO_MANY = "dijkstra_one_to_many";
+        /**
+         * one to many Dijkstra that returns the paths to all targets (not for CH)
+         */
+        public static final String DIJKSTRA_ONE_TO_MANY_PATHS = "dijkstra_one_to_many_paths";
         /**
          * Unidirectional A* (not for CH)
          */
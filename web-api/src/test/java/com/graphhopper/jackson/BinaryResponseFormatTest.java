@@ -0,0 +1,90 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.jackson;
+
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.details.PathDetail;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryResponseFormatTest {
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        PointList points = Helper.createPointList3D(49.9, 11.5, 300, 49.89985, 11.50034, 310.5, 49.91, 11.52, 290);
+        ResponsePath path = new ResponsePath().setPoints(points).setWaypoints(Helper.createPointList3D(49.9, 11.5, 300, 49.91, 11.52, 290)).
+                setDistance(1234.5678).setTime(123_000).setRouteWeight(150.1234567).setAscend(10.5).setDescend(20.5);
+        path.setDescription(List.of("a", "b"));
+        path.addPathDetails(Map.of(
+                "max_speed", List.of(createDetail(50.0, 0, 1), createDetail(null, 1, 2)),
+                "road_class", List.of(createDetail("primary", 0, 2)),
+                "intersection", List.of(createDetail(Map.of("in", 1L, "bearings", List.of(90L, 180L)), 1, 1))));
+        GHResponse ghRsp = new GHResponse();
+        ghRsp.add(path);
+        ghRsp.getHints().putObject("visited_nodes.sum", 42);
+        ghRsp.getHints().putObject("visited_nodes.average", 21.5);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryResponseFormat.write(new ResponsePathSerializer.JsonResponse(ghRsp,
+                new ResponsePathSerializer.Info(List.of("GraphHopper"), 5, null), false, true, true, true, 1e6), out);
+        String json = Jackson.newObjectMapper().writeValueAsString(new ResponsePathSerializer.JsonResponse(ghRsp,
+                new ResponsePathSerializer.Info(List.of("GraphHopper"), 5, null), false, true, true, true, 1e6));
+        assertTrue(out.size() < json.length() / 2, out.size() + " vs. " + json.length());
+
+        GHResponse parsed = BinaryResponseFormat.read(new ByteArrayInputStream(out.toByteArray()), true);
+        assertEquals(42, parsed.getHints().getInt("visited_nodes.sum", 0));
+        assertEquals(21.5, parsed.getHints().getDouble("visited_nodes.average", 0));
+        assertEquals(1, parsed.getAll().size());
+        ResponsePath parsedPath = parsed.getBest();
+        assertEquals(1234.568, parsedPath.getDistance(), 1.e-6);
+        assertEquals(150.123457, parsedPath.getRouteWeight(), 1.e-6);
+        assertEquals(123_000, parsedPath.getTime());
+        assertEquals(10.5, parsedPath.getAscend());
+        assertEquals(20.5, parsedPath.getDescend());
+        assertEquals(List.of("a", "b"), parsedPath.getDescription());
+        assertEquals(points, parsedPath.getPoints());
+        assertEquals(path.getWaypoints(), parsedPath.getWaypoints());
+        assertEquals(List.of(0, 1), parsedPath.getPointsOrder());
+        assertEquals(path.getPathDetails().keySet(), parsedPath.getPathDetails().keySet());
+        for (String name : path.getPathDetails().keySet())
+            assertEquals(path.getPathDetails().get(name).toString(), parsedPath.getPathDetails().get(name).toString(), name);
+    }
+
+    @Test
+    public void testInvalidInput() {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> BinaryResponseFormat.read(new ByteArrayInputStream("{\"paths\":[]}".getBytes()), true));
+        assertTrue(ex.getMessage().contains("Not a binary route response"), ex.getMessage());
+    }
+
+    private static PathDetail createDetail(Object value, int first, int last) {
+        PathDetail detail = new PathDetail(value);
+        detail.setFirst(first);
+        detail.setLast(last);
+        return detail;
+    }
+}
@@ -17,11 +17,22 @@
  */
 package com.graphhopper.jackson;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PointList;
+import com.graphhopper.util.details.PathDetail;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * @author Peter Karich
@@ -79,4 +90,81 @@ public class ResponsePathRepresentationTest {
     public void testEncode1e6() {
         assertEquals("ohdfzAgt}bVoEL", ResponsePathSerializer.encodePolyline(Helper.createPointList(47.827608, 12.123476, 47.827712, 12.123469), false, 1e6));
     }
+
+    @Test
+    public void testDecodeIntoPointList() {
+        PointList list = new PointList(10, true);
+        ResponsePathDeserializerHelper.decodePolyline("_p~iF~ps|Uo}@", list, 1e5);
+        assertEquals(Helper.createPointList3D(38.5, -120.2, 10), list);
+        // the points are appended, the deltas of the second polyline start again from zero
+        ResponsePathDeserializerHelper.decodePolyline("_ulLnnqC_anF", list, 1e5);
+        assertEquals(Helper.createPointList3D(38.5, -120.2, 10, 2.2, -0.75, 1224), list);
+
+        list.clear();
+        ResponsePathDeserializerHelper.decodePolyline("_p~iF~ps|Uo}@_ulLnnqC_anF_mqNvxq`@?", list, 1e5);
+        assertEquals(Helper.createPointList3D(38.5, -120.2, 10, 40.7, -120.95, 1234, 43.252, -126.453, 1234), list);
+    }
+
+    @Test
+    public void testEncodeLongPolyline() {
+        // the encoded polyline is larger than the reused buffer is allowed to be
+        Random rnd = new Random(123);
+        PointList longList = new PointList(30_000, true);
+        double lat = 50, lon = 10;
+        for (int i = 0; i < 30_000; i++) {
+            lat += rnd.nextDouble() * 0.01 - 0.005;
+            lon += rnd.nextDouble() * 0.01 - 0.005;
+            longList.add(Helper.round(lat, 5), Helper.round(lon, 5), Helper.round2(rnd.nextDouble() * 1000));
+        }
+        String encoded = ResponsePathSerializer.encodePolyline(longList, true, 1e5);
+        assertTrue(encoded.length() > 64 * 1024, "length: " + encoded.length());
+        PointList decoded = new PointList(longList.size(), true);
+        ResponsePathDeserializerHelper.decodePolyline(encoded, decoded, 1e5);
+        assertEquals(longList, decoded);
+
+        // encoding a short polyline after a long one must not return leftovers
+        PointList shortList = Helper.createPointList(38.5, -120.2);
+        assertEquals("_p~iF~ps|U", ResponsePathSerializer.encodePolyline(shortList, false, 1e5));
+        assertEquals(encoded, ResponsePathSerializer.encodePolyline(longList, true, 1e5));
+    }
+
+    @Test
+    public void testJsonResponse() throws Exception {
+        // the encoded polyline of these points contains a backslash that needs to be escaped
+        PointList points = Helper.createPointList(49.9, 11.5, 49.89985, 11.50034, 49.91, 11.52);
+        ResponsePath path = new ResponsePath().setPoints(points).setWaypoints(Helper.createPointList(49.9, 11.5, 49.91, 11.52)).
+                setDistance(1234.5678).setTime(123_000).setRouteWeight(150.1234567);
+        PathDetail detail = new PathDetail(50);
+        detail.setFirst(0);
+        detail.setLast(2);
+        path.addPathDetails(Map.of("max_speed", List.of(detail)));
+        GHResponse ghRsp = new GHResponse();
+        ghRsp.add(path);
+        ghRsp.getHints().putObject("visited_nodes.sum", 42);
+        ResponsePathSerializer.Info info = new ResponsePathSerializer.Info(List.of("GraphHopper"), 5, null);
+
+        ObjectMapper objectMapper = Jackson.newObjectMapper();
+        for (boolean pointsEncoded : List.of(true, false)) {
+            String str = objectMapper.writeValueAsString(new ResponsePathSerializer.JsonResponse(ghRsp, info, false, true, false, pointsEncoded, 1e5));
+            JsonNode json = objectMapper.readTree(str);
+            // the generator writing bytes directly copies the encoded polyline
+            assertEquals(str, new String(objectMapper.writeValueAsBytes(new ResponsePathSerializer.JsonResponse(ghRsp, info, false, true, false, pointsEncoded, 1e5)), StandardCharsets.UTF_8));
+            // a tree created from the response has exactly the same content
+            assertEquals(str, objectMapper.writeValueAsString(objectMapper.valueToTree(new ResponsePathSerializer.JsonResponse(ghRsp, info, false, true, false, pointsEncoded, 1e5))));
+            assertEquals(42, json.get("hints").get("visited_nodes.sum").asInt());
+            assertEquals(5, json.get("info").get("took").asInt());
+            JsonNode jsonPath = json.get("paths").get(0);
+            assertEquals(1234.568, jsonPath.get("distance").asDouble(), 1.e-6);
+            assertEquals(150.123457, jsonPath.get("weight").asDouble(), 1.e-6);
+            assertEquals(123_000, jsonPath.get("time").asLong());
+            assertEquals(pointsEncoded, jsonPath.get("points_encoded").asBoolean());
+            assertEquals(50, jsonPath.get("details").get("max_speed").get(0).get(2).asInt());
+
+            ResponsePath parsed = ResponsePathDeserializerHelper.createResponsePath(objectMapper, jsonPath, false, false);
+            assertEquals(points, parsed.getPoints());
+            assertEquals(path.getWaypoints(), parsed.getWaypoints());
+        }
+        String encoded = ResponsePathSerializer.encodePolyline(points, false, 1e5);
+        assertTrue(encoded.contains("\\"), encoded);
+    }
 }
@@ -18,6 +18,7 @@
 
 package com.graphhopper.http;
 
+import com.codahale.metrics.Gauge;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.util.StdDateFormat;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
@@ -29,10 +30,13 @@ import com.graphhopper.isochrone.algorithm.JTSTriangulator;
 import com.graphhopper.isochrone.algorithm.Triangulator;
 import com.graphhopper.jackson.Jackson;
 import com.graphhopper.matching.MapMatching;
+import com.graphhopper.matching.TransitionCache;
 import com.graphhopper.resources.*;
+import com.graphhopper.routing.ev.ExternalEncodedValue;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.util.PMap;
 import com.graphhopper.util.TranslationMap;
 import com.graphhopper.util.details.PathDetailsBuilderFactory;
 import io.dropwizard.client.HttpClientBuilder;
@@ -45,6 +49,8 @@ import org.apache.hc.client5.http.classic.HttpClient;
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 
+import java.util.concurrent.ExecutorService;
+
 public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConfiguration> {
 
     static class TranslationMapFactory implements Factory<TranslationMap> {
@@ -170,13 +176,34 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
     }
 
     static class MapMatchingRouterFactoryFactory implements Factory<MapMatchingResource.MapMatchingRouterFactory> {
-
-        @Inject
-        GraphHopper graphHopper;
+        private final GraphHopper graphHopper;
+        private final TransitionCache transitionCache;
+        private final ExecutorService batchExecutor;
+
+        MapMatchingRouterFactoryFactory(GraphHopper graphHopper, TransitionCache transitionCache, ExecutorService batchExecutor) {
+            this.graphHopper = graphHopper;
+            this.transitionCache = transitionCache;
+            this.batchExecutor = batchExecutor;
+        }
 
         @Override
         public MapMatchingResource.MapMatchingRouterFactory provide() {
-            return hints -> MapMatching.routerFromGraphHopper(graphHopper, hints);
+            return new MapMatchingResource.MapMatchingRouterFactory() {
+                @Override
+                public MapMatching.Router createMapMatchingRouter(PMap hints) {
+                    return MapMatching.routerFromGraphHopper(graphHopper, hints);
+                }
+
+                @Override
+                public TransitionCache getTransitionCache() {
+                    return transitionCache;
+                }
+
+                @Override
+                public ExecutorService getBatchExecutor() {
+                    return batchExecutor;
+                }
+            };
         }
 
         @Override
@@ -268,6 +295,9 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         environment.jersey().register(new MultiExceptionMapper());
         environment.jersey().register(new MultiExceptionGPXMessageBodyWriter());
 
+        // The routing response can be requested in a binary format via the Accept header
+        environment.jersey().register(new BinaryResponseMessageBodyWriter());
+
         // This makes an IllegalArgumentException come out as a MultiException with
         // a single entry.
         environment.jersey().register(new IllegalArgumentExceptionMapper());
@@ -275,14 +305,38 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         final GraphHopperManaged graphHopperManaged = new GraphHopperManaged(configuration.getGraphHopperConfiguration());
         environment.lifecycle().manage(graphHopperManaged);
         final GraphHopper graphHopper = graphHopperManaged.getGraphHopper();
+        // the transitions of map matching requests can be cached across requests, see TransitionCache
+        int transitionCacheSize = configuration.getGraphHopperConfiguration().getInt("map_matching.transition_cache.size", 0);
+        final TransitionCache transitionCache = transitionCacheSize > 0 ? new TransitionCache(transitionCacheSize,
+                // the cached transitions become outdated when external encoded values are updated
+                () -> ExternalEncodedValue.getVersionSum(graphHopper.getEncodingManager())) : null;
+        if (transitionCache != null) {
+            environment.metrics().register("map_matching.transition_cache.entries", (Gauge<Integer>) transitionCache::size);
+            environment.metrics().register("map_matching.transition_cache.hits", (Gauge<Long>) transitionCache::getHits);
+            environment.metrics().register("map_matching.transition_cache.misses", (Gauge<Long>) transitionCache::getMisses);
+            environment.metrics().register("map_matching.transition_cache.hit_rate", (Gauge<Double>) transitionCache::getHitRate);
+            environment.metrics().register("map_matching.transition_cache.estimated_bytes", (Gauge<Long>) transitionCache::getEstimatedBytes);
+        }
+        // all /match/batch requests share these threads, the executor is shut down with the server
+        int batchThreads = configuration.getGraphHopperConfiguration().getInt("map_matching.batch.threads", Runtime.getRuntime().availableProcessors());
+        final ExecutorService mapMatchingBatchExecutor = environment.lifecycle().executorService("map-matching-batch-%d").
+                minThreads(batchThreads).maxThreads(batchThreads).build();
+        // the vector tiles are rendered after the graph was loaded, so this needs to be managed after graphHopperManaged
+        final MVTTileCache mvtTileCache = new MVTTileCache(graphHopper, configuration.getGraphHopperConfiguration());
+        environment.lifecycle().manage(mvtTileCache);
+        environment.metrics().register("mvt.tile_cache.entries", (Gauge<Long>) mvtTileCache::getSize);
+        environment.metrics().register("mvt.tile_cache.memory_hits", (Gauge<Long>) mvtTileCache::getMemoryHits);
+        environment.metrics().register("mvt.tile_cache.disk_hits", (Gauge<Long>) mvtTileCache::getDiskHits);
+        environment.metrics().register("mvt.tile_cache.rendered", (Gauge<Long>) mvtTileCache::getRenderedTiles);
         environment.jersey().register(new AbstractBinder() {
             @Override
             protected void configure() {
                 bind(configuration.getGraphHopperConfiguration()).to(GraphHopperConfig.class);
                 bind(graphHopper).to(GraphHopper.class);
+                bind(mvtTileCache).to(MVTTileCache.class);
 
                 bind(new JTSTriangulator(graphHopper.getRouterConfig())).to(Triangulator.class);
-                bindFactory(MapMatchingRouterFactoryFactory.class).to(MapMatchingResource.MapMatchingRouterFactory.class);
+                bindFactory(new MapMatchingRouterFactoryFactory(graphHopper, transitionCache, mapMatchingBatchExecutor)).to(MapMatchingResource.MapMatchingRouterFactory.class);
                 bindFactory(PathDetailsBuilderFactoryFactory.class).to(PathDetailsBuilderFactory.class);
                 bindFactory(ProfileResolverFactory.class).to(ProfileResolver.class);
                 bindFactory(GHRequestTransformerFactory.class).to(GHRequestTransformer.class);
@@ -0,0 +1,338 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.carrotsearch.hppc.LongIntHashMap;
+import com.carrotsearch.hppc.ObjectIntHashMap;
+import com.graphhopper.util.PointList;
+import vector_tile.VectorTile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes line features of a single layer into a Mapbox vector tile. Unlike the generic no.ecc VectorTileEncoder this
+ * encoder does not create JTS geometries: the coordinates are projected into the tile, clipped and written as
+ * geometry commands directly. Attribute keys and values are stored in dictionaries and referenced by their index, so
+ * callers can look up the index of a frequently used value once and reuse it for many features.
+ * <p>
+ * Usage: add the points of a line via {@link #addPoint}, call {@link #encodeLine}, and if it returns true add the tags
+ * and call {@link #addFeature}. An instance must not be shared between threads.
+ */
+public class MVTLineEncoder {
+    private static final int MOVE_TO = 1;
+    private static final int LINE_TO = 2;
+    private final String layerName;
+    private final int extent;
+    private final double minLon, maxLat, scaleX, scaleY;
+    private final double clipMin, clipMax;
+    private final VectorTile.Tile.Layer.Builder layer;
+    private final ObjectIntHashMap<String> keyIndex = new ObjectIntHashMap<>();
+    private final List<String> keys = new ArrayList<>();
+    private final ObjectIntHashMap<String> stringValueIndex = new ObjectIntHashMap<>();
+    private final LongIntHashMap intValueIndex = new LongIntHashMap();
+    private final LongIntHashMap doubleValueIndex = new LongIntHashMap();
+    private final List<VectorTile.Tile.Value> values = new ArrayList<>();
+    private int featureCount;
+
+    // the points of the current line in tile coordinates
+    private double[] points = new double[64];
+    private int pointCount;
+    // the geometry commands of the current feature
+    private int[] commands = new int[64];
+    private int commandCount;
+    private int[] tags = new int[32];
+    private int tagCount;
+    // the cursor of the geometry command encoding, i.e. the previous point
+    private int cursorX, cursorY;
+    // state of the currently open line part, see beginPart
+    private int partStart = -1, partCursorX, partCursorY, partLength;
+    // the parameters of the clipped segment, see clipSegment
+    private double tEnter, tExit;
+
+    /**
+     * @param minLon     the longitude of the western tile border
+     * @param maxLat     the latitude of the northern tile border
+     * @param maxLon     the longitude of the eastern tile border
+     * @param minLat     the latitude of the southern tile border
+     * @param extent     the number of coordinate units along one tile side, 4096 is a good value
+     * @param clipBuffer the number of coordinate units outside of the tile that are kept when lines are clipped
+     */
+    public MVTLineEncoder(String layerName, double minLon, double maxLat, double maxLon, double minLat, int extent, int clipBuffer) {
+        this.layerName = layerName;
+        this.extent = extent;
+        this.minLon = minLon;
+        this.maxLat = maxLat;
+        this.scaleX = extent / (maxLon - minLon);
+        this.scaleY = extent / (maxLat - minLat);
+        this.clipMin = -clipBuffer;
+        this.clipMax = extent + clipBuffer;
+        this.layer = VectorTile.Tile.Layer.newBuilder();
+    }
+
+    /**
+     * @return the index of the given attribute key, the key is added to the layer if necessary
+     */
+    public int key(String key) {
+        int index = keyIndex.getOrDefault(key, -1);
+        if (index < 0) {
+            index = keys.size();
+            keys.add(key);
+            keyIndex.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return the index of the given string value, the value is added to the layer if necessary
+     */
+    public int value(String value) {
+        int index = stringValueIndex.getOrDefault(value, -1);
+        if (index < 0) {
+            index = addValue(VectorTile.Tile.Value.newBuilder().setStringValue(value).build());
+            stringValueIndex.put(value, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return the index of the given integer value, the value is added to the layer if necessary
+     */
+    public int value(long value) {
+        int index = intValueIndex.getOrDefault(value, -1);
+        if (index < 0) {
+            index = addValue(VectorTile.Tile.Value.newBuilder().setSintValue(value).build());
+            intValueIndex.put(value, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return the index of the given floating point value, the value is added to the layer if necessary
+     */
+    public int value(double value) {
+        long bits = Double.doubleToLongBits(value);
+        int index = doubleValueIndex.getOrDefault(bits, -1);
+        if (index < 0) {
+            index = addValue(VectorTile.Tile.Value.newBuilder().setDoubleValue(value).build());
+            doubleValueIndex.put(bits, index);
+        }
+        return index;
+    }
+
+    private int addValue(VectorTile.Tile.Value value) {
+        values.add(value);
+        return values.size() - 1;
+    }
+
+    public void addPoint(double lat, double lon) {
+        if (2 * pointCount + 2 > points.length)
+            points = Arrays.copyOf(points, points.length * 2);
+        points[2 * pointCount] = (lon - minLon) * scaleX;
+        points[2 * pointCount + 1] = (maxLat - lat) * scaleY;
+        pointCount++;
+    }
+
+    public void addPoints(PointList pointList) {
+        for (int i = 0; i < pointList.size(); i++)
+            addPoint(pointList.getLat(i), pointList.getLon(i));
+    }
+
+    /**
+     * Clips the line built from the points added since the last call and encodes it as geometry commands. The points
+     * are cleared afterwards.
+     *
+     * @return false if nothing of the line remains after clipping and rounding, i.e. if the feature should be skipped
+     */
+    public boolean encodeLine() {
+        commandCount = 0;
+        tagCount = 0;
+        cursorX = 0;
+        cursorY = 0;
+        partStart = -1;
+        if (pointCount < 2 || isTooShort()) {
+            pointCount = 0;
+            return false;
+        }
+        for (int i = 1; i < pointCount; i++)
+            clipSegment(points[2 * i - 2], points[2 * i - 1], points[2 * i], points[2 * i + 1]);
+        endPart();
+        pointCount = 0;
+        return commandCount > 0;
+    }
+
+    private boolean isTooShort() {
+        // like the no.ecc encoder we skip lines that are shorter than a single coordinate unit
+        double length = 0;
+        for (int i = 1; i < pointCount; i++) {
+            length += Math.hypot(points[2 * i] - points[2 * i - 2], points[2 * i + 1] - points[2 * i - 1]);
+            if (length >= 1)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Clips the segment against the buffered tile using the Liang-Barsky algorithm. A new line part is started
+     * whenever the segment enters the tile and the current part is ended when it leaves the tile.
+     */
+    private void clipSegment(double x0, double y0, double x1, double y1) {
+        double dx = x1 - x0, dy = y1 - y0;
+        tEnter = 0;
+        tExit = 1;
+        if (!clipTest(-dx, x0 - clipMin) || !clipTest(dx, clipMax - x0)
+                || !clipTest(-dy, y0 - clipMin) || !clipTest(dy, clipMax - y0)) {
+            endPart();
+            return;
+        }
+        if (partStart < 0 || tEnter > 0) {
+            endPart();
+            beginPart(x0 + tEnter * dx, y0 + tEnter * dy);
+        }
+        lineTo(x0 + tExit * dx, y0 + tExit * dy);
+        if (tExit < 1)
+            endPart();
+    }
+
+    private boolean clipTest(double p, double q) {
+        if (p == 0)
+            return q >= 0;
+        double r = q / p;
+        if (p < 0) {
+            if (r > tExit)
+                return false;
+            if (r > tEnter)
+                tEnter = r;
+        } else {
+            if (r < tEnter)
+                return false;
+            if (r < tExit)
+                tExit = r;
+        }
+        return true;
+    }
+
+    private void beginPart(double x, double y) {
+        partStart = commandCount;
+        partCursorX = cursorX;
+        partCursorY = cursorY;
+        partLength = 0;
+        int ix = (int) Math.round(x), iy = (int) Math.round(y);
+        ensureCommandCapacity(4);
+        commands[commandCount++] = commandAndLength(MOVE_TO, 1);
+        commands[commandCount++] = zigZagEncode(ix - cursorX);
+        commands[commandCount++] = zigZagEncode(iy - cursorY);
+        // placeholder for the LineTo command, its length is set in endPart
+        commandCount++;
+        cursorX = ix;
+        cursorY = iy;
+    }
+
+    private void lineTo(double x, double y) {
+        int ix = (int) Math.round(x), iy = (int) Math.round(y);
+        // skip points that are equal to the previous one after rounding
+        if (ix == cursorX && iy == cursorY)
+            return;
+        ensureCommandCapacity(2);
+        commands[commandCount++] = zigZagEncode(ix - cursorX);
+        commands[commandCount++] = zigZagEncode(iy - cursorY);
+        cursorX = ix;
+        cursorY = iy;
+        partLength++;
+    }
+
+    private void endPart() {
+        if (partStart < 0)
+            return;
+        if (partLength == 0) {
+            // a line needs at least two distinct points, so we remove the part
+            commandCount = partStart;
+            cursorX = partCursorX;
+            cursorY = partCursorY;
+        } else {
+            commands[partStart + 3] = commandAndLength(LINE_TO, partLength);
+        }
+        partStart = -1;
+    }
+
+    private void ensureCommandCapacity(int additional) {
+        if (commandCount + additional > commands.length)
+            commands = Arrays.copyOf(commands, Math.max(commands.length * 2, commandCount + additional));
+    }
+
+    /**
+     * Adds a tag to the feature whose line was encoded last.
+     *
+     * @param key   the index returned by {@link #key}
+     * @param value the index returned by one of the value methods
+     */
+    public void addTag(int key, int value) {
+        if (tagCount + 2 > tags.length)
+            tags = Arrays.copyOf(tags, tags.length * 2);
+        tags[tagCount++] = key;
+        tags[tagCount++] = value;
+    }
+
+    /**
+     * Adds the feature with the line encoded last and the tags added since then to the layer.
+     */
+    public void addFeature(long id) {
+        if (commandCount == 0)
+            throw new IllegalStateException("There is no encoded line for the feature " + id);
+        VectorTile.Tile.Feature.Builder feature = VectorTile.Tile.Feature.newBuilder();
+        feature.setId(id);
+        feature.setType(VectorTile.Tile.GeomType.LINESTRING);
+        for (int i = 0; i < tagCount; i++)
+            feature.addTags(tags[i]);
+        for (int i = 0; i < commandCount; i++)
+            feature.addGeometry(commands[i]);
+        layer.addFeatures(feature);
+        featureCount++;
+        commandCount = 0;
+        tagCount = 0;
+    }
+
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    /**
+     * @return the vector tile, which contains the layer unless no feature was added
+     */
+    public byte[] encode() {
+        VectorTile.Tile.Builder tile = VectorTile.Tile.newBuilder();
+        if (featureCount > 0) {
+            layer.setVersion(2);
+            layer.setName(layerName);
+            layer.setExtent(extent);
+            layer.addAllKeys(keys);
+            layer.addAllValues(values);
+            tile.addLayers(layer);
+        }
+        return tile.build().toByteArray();
+    }
+
+    static int commandAndLength(int command, int repeat) {
+        return repeat << 3 | command;
+    }
+
+    static int zigZagEncode(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.routing.ev.ExternalEncodedValue;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.StorableProperties;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.shapes.BBox;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Caches the vector tiles of the /mvt endpoint. The tiles are kept in memory (least recently used tiles are evicted
+ * when the configured size is exceeded) and optionally in a directory, so they survive a restart. The tiles in the
+ * directory are stored per graph version, i.e. the tiles of a previous import are not used, and per version of the
+ * external encoded values, i.e. tiles rendered before an update of these values are not used either and are deleted.
+ * The tiles of the lower zoom levels can be rendered in the background when the server starts, because these are the
+ * most expensive ones.
+ * <p>
+ * The graph is loaded when the server starts, so the tiles can only be rendered after {@link #start}.
+ */
+public class MVTTileCache implements Managed {
+
+    private static final Logger logger = LoggerFactory.getLogger(MVTTileCache.class);
+    private static final String EXTERNAL_PREFIX = "ext_";
+    private final GraphHopper graphHopper;
+    private final long maxBytes;
+    private final String directoryName;
+    private final int seedMaxZoom;
+    private final int seedThreads;
+    private final Cache<String, byte[]> cache;
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong renderedTiles = new AtomicLong();
+    private final AtomicLong newestExternalVersionSum = new AtomicLong(-1);
+    private volatile MVTTileRenderer renderer;
+    private List<ExternalEncodedValue> externalEncodedValues = List.of();
+    private Path directory;
+    private ExecutorService seedExecutor;
+    private Thread seedThread;
+
+    public MVTTileCache(GraphHopper graphHopper, GraphHopperConfig config) {
+        this(graphHopper, config.getLong("mvt.cache.size_mb", 0) * 1024 * 1024, config.getString("mvt.cache.directory", ""),
+                config.getInt("mvt.cache.seed_max_zoom", -1), config.getInt("mvt.cache.seed_threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param maxBytes      the maximum size of the tiles kept in memory, 0 disables the memory cache
+     * @param directoryName the directory to store the tiles, empty to not store the tiles on disk
+     * @param seedMaxZoom   the tiles up to this zoom level are rendered when the server starts, -1 to disable this
+     */
+    public MVTTileCache(GraphHopper graphHopper, long maxBytes, String directoryName, int seedMaxZoom, int seedThreads) {
+        if (seedThreads < 1)
+            throw new IllegalArgumentException("mvt.cache.seed_threads must be positive but was " + seedThreads);
+        this.graphHopper = graphHopper;
+        this.maxBytes = maxBytes;
+        this.directoryName = directoryName;
+        this.seedMaxZoom = seedMaxZoom;
+        this.seedThreads = seedThreads;
+        this.cache = maxBytes > 0
+                ? CacheBuilder.newBuilder().maximumWeight(maxBytes).<String, byte[]>weigher((key, tile) -> tile.length).recordStats().build()
+                : null;
+    }
+
+    @Override
+    public void start() {
+        renderer = new MVTTileRenderer(graphHopper, graphHopper.getEncodingManager());
+        externalEncodedValues = getExternalEncodedValues(graphHopper);
+        if (!Helper.isEmpty(directoryName)) {
+            directory = Paths.get(directoryName, getGraphVersion(graphHopper));
+            try {
+                Files.createDirectories(directory);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Cannot create the tile directory " + directory, ex);
+            }
+            long[] versions = getExternalVersions();
+            newestExternalVersionSum.set(sum(versions));
+            deleteStaleExternalTiles(versions);
+        }
+        if (seedMaxZoom >= MVTTileRenderer.MIN_ZOOM) {
+            if (!isEnabled())
+                logger.warn("mvt.cache.seed_max_zoom is ignored because neither mvt.cache.size_mb nor mvt.cache.directory is set");
+            else
+                seed();
+        }
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        if (seedThread != null)
+            seedThread.interrupt();
+        if (seedExecutor != null) {
+            seedExecutor.shutdownNow();
+            seedExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private boolean isEnabled() {
+        return cache != null || directory != null;
+    }
+
+    /**
+     * Renders the tiles from the minimum zoom level up to seedMaxZoom that overlap with the graph in the background
+     */
+    private void seed() {
+        BBox bounds = graphHopper.getBaseGraph().getBounds();
+        if (!bounds.isValid())
+            return;
+        long tiles = 0;
+        for (int z = MVTTileRenderer.MIN_ZOOM; z <= seedMaxZoom; z++) {
+            int minX = MVTTileRenderer.lon2tile(bounds.minLon, z), maxX = MVTTileRenderer.lon2tile(bounds.maxLon, z);
+            int minY = MVTTileRenderer.lat2tile(bounds.maxLat, z), maxY = MVTTileRenderer.lat2tile(bounds.minLat, z);
+            tiles += (long) (maxX - minX + 1) * (maxY - minY + 1);
+        }
+        seedExecutor = Executors.newFixedThreadPool(seedThreads);
+        seedThread = new Thread(() -> seed(bounds), "mvt-tile-seed");
+        seedThread.setDaemon(true);
+        seedThread.start();
+        logger.info("rendering " + tiles + " tiles up to zoom " + seedMaxZoom + " in the background, threads: " + seedThreads);
+    }
+
+    private void seed(BBox bounds) {
+        // the number of tiles grows by a factor of four per zoom level, so only a few tiles are submitted at once
+        Semaphore pending = new Semaphore(2 * seedThreads);
+        long start = System.nanoTime();
+        try {
+            for (int z = MVTTileRenderer.MIN_ZOOM; z <= seedMaxZoom; z++) {
+                int minX = MVTTileRenderer.lon2tile(bounds.minLon, z), maxX = MVTTileRenderer.lon2tile(bounds.maxLon, z);
+                int minY = MVTTileRenderer.lat2tile(bounds.maxLat, z), maxY = MVTTileRenderer.lat2tile(bounds.minLat, z);
+                for (int x = minX; x <= maxX; x++) {
+                    for (int y = minY; y <= maxY; y++) {
+                        final int fz = z, fx = x, fy = y;
+                        pending.acquire();
+                        seedExecutor.execute(() -> {
+                            try {
+                                getTile(fz, fx, fy, false);
+                            } catch (Exception ex) {
+                                logger.warn("Could not render tile " + fz + "/" + fx + "/" + fy, ex);
+                            } finally {
+                                pending.release();
+                            }
+                        });
+                    }
+                }
+            }
+            seedExecutor.shutdown();
+            if (seedExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS))
+                logger.info("rendered tiles up to zoom " + seedMaxZoom + " in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        } catch (InterruptedException | RejectedExecutionException ex) {
+            // the server is stopped
+        }
+    }
+
+    /**
+     * @return the encoded vector tile, which is rendered only if it is neither in memory nor on disk
+     */
+    public byte[] getTile(int z, int x, int y, boolean renderAll) {
+        MVTTileRenderer renderer = this.renderer;
+        if (renderer == null)
+            throw new IllegalStateException("The tile cache was not started yet");
+        if (z < MVTTileRenderer.MIN_ZOOM || !isEnabled())
+            return render(renderer, z, x, y, renderAll);
+
+        long[] versions = getExternalVersions();
+        if (directory != null)
+            checkExternalVersions(versions);
+        String key = getExternalVersionPrefix(versions) + z + "/" + x + "/" + (renderAll ? y + "_all" : y);
+        if (cache == null)
+            return load(renderer, key, z, x, y, renderAll);
+        try {
+            return cache.get(key, () -> load(renderer, key, z, x, y, renderAll));
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    private byte[] load(MVTTileRenderer renderer, String key, int z, int x, int y, boolean renderAll) {
+        if (directory == null)
+            return render(renderer, z, x, y, renderAll);
+        Path file = directory.resolve(key + ".mvt");
+        try {
+            if (Files.exists(file)) {
+                diskHits.incrementAndGet();
+                return Files.readAllBytes(file);
+            }
+            byte[] tile = render(renderer, z, x, y, renderAll);
+            Files.createDirectories(file.getParent());
+            // write to a temporary file first, so other threads or processes never read an incomplete tile
+            Path tmpFile = Files.createTempFile(file.getParent(), "tile", ".tmp");
+            Files.write(tmpFile, tile);
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return tile;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot read or write the tile " + file, ex);
+        }
+    }
+
+    private byte[] render(MVTTileRenderer renderer, int z, int x, int y, boolean renderAll) {
+        renderedTiles.incrementAndGet();
+        return renderer.render(z, x, y, renderAll);
+    }
+
+    private long[] getExternalVersions() {
+        long[] versions = new long[externalEncodedValues.size()];
+        for (int i = 0; i < versions.length; i++)
+            versions[i] = externalEncodedValues.get(i).getVersion();
+        return versions;
+    }
+
+    /**
+     * The external encoded values can change at runtime and the tiles contain their values, so the tiles are stored
+     * per tuple of their versions. Tiles of older versions are not used anymore and will be evicted from memory.
+     *
+     * @return a prefix for the tile keys that changes whenever an external encoded value changes
+     */
+    static String getExternalVersionPrefix(long[] versions) {
+        if (versions.length == 0)
+            return "";
+        StringBuilder sb = new StringBuilder(EXTERNAL_PREFIX);
+        for (int i = 0; i < versions.length; i++) {
+            if (i > 0)
+                sb.append('_');
+            sb.append(versions[i]);
+        }
+        return sb.append('/').toString();
+    }
+
+    /**
+     * Deletes the tiles of the previous versions in the background when an external encoded value was changed. The
+     * versions only increase, so their sum tells if the versions are newer than all versions seen before.
+     */
+    private void checkExternalVersions(long[] versions) {
+        long sum = sum(versions);
+        long newest = newestExternalVersionSum.get();
+        if (sum > newest && newestExternalVersionSum.compareAndSet(newest, sum))
+            CompletableFuture.runAsync(() -> deleteStaleExternalTiles(versions));
+    }
+
+    private void deleteStaleExternalTiles(long[] versions) {
+        if (versions.length == 0)
+            return;
+        try (Stream<Path> dirs = Files.list(directory)) {
+            for (Path dir : dirs.filter(d -> Files.isDirectory(d) && isStale(d.getFileName().toString(), versions)).toList()) {
+                logger.info("deleting the tiles of outdated external encoded values " + dir);
+                Helper.removeDir(dir.toFile());
+            }
+        } catch (IOException ex) {
+            logger.warn("Cannot delete the outdated tiles in " + directory, ex);
+        }
+    }
+
+    /**
+     * @return true if the directory contains tiles of versions that are older than the given ones. Directories of
+     * newer versions are kept, because a concurrent request might already use them.
+     */
+    static boolean isStale(String directoryName, long[] versions) {
+        if (!directoryName.startsWith(EXTERNAL_PREFIX))
+            return false;
+        String[] parts = directoryName.substring(EXTERNAL_PREFIX.length()).split("_");
+        if (parts.length != versions.length)
+            return true;
+        boolean same = true;
+        for (int i = 0; i < parts.length; i++) {
+            long version;
+            try {
+                version = Long.parseLong(parts[i]);
+            } catch (NumberFormatException ex) {
+                return false;
+            }
+            if (version > versions[i])
+                return false;
+            same &= version == versions[i];
+        }
+        return !same;
+    }
+
+    private static long sum(long[] versions) {
+        long sum = 0;
+        for (long version : versions)
+            sum += version;
+        return sum;
+    }
+
+    private static List<ExternalEncodedValue> getExternalEncodedValues(GraphHopper graphHopper) {
+        return graphHopper.getEncodingManager().getEncodedValues().stream().
+                filter(ev -> ev instanceof ExternalEncodedValue).map(ev -> (ExternalEncodedValue) ev).toList();
+    }
+
+    /**
+     * @return an identifier that changes when the graph is imported again or the encoded values change. Changes of
+     * the external encoded values are considered separately for every tile, see {@link #getExternalVersionPrefix}.
+     */
+    static String getGraphVersion(GraphHopper graphHopper) {
+        StorableProperties properties = graphHopper.getProperties();
+        BaseGraph graph = graphHopper.getBaseGraph();
+        String encodedValues = graphHopper.getEncodingManager().getEncodedValues().stream().map(ev -> ev.getName()).collect(Collectors.joining(","));
+        int hash = Objects.hash(properties.get("datareader.import.date"), properties.get("datareader.data.date"),
+                graph.getNodes(), graph.getEdges(), encodedValues);
+        return Integer.toHexString(hash);
+    }
+
+    public long getMemoryHits() {
+        return cache == null ? 0 : cache.stats().hitCount();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getRenderedTiles() {
+        return renderedTiles.get();
+    }
+
+    public long getSize() {
+        return cache == null ? 0 : cache.size();
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.search.KVStorage;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.FetchMode;
+import com.graphhopper.util.shapes.BBox;
+import org.locationtech.jts.geom.Coordinate;
+import vector_tile.VectorTile;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders the roads of a tile as Mapbox vector tile. Which edges are shown at which zoom level depends on their road
+ * class. This is determined once for all edges when the renderer is created, so that rendering a tile at a low zoom
+ * level does not need to look up the road class of every edge in the tile.
+ */
+public class MVTTileRenderer {
+    /**
+     * For smaller zoom levels the tiles are empty
+     */
+    public static final int MIN_ZOOM = 10;
+    /**
+     * From this zoom level on all edges are rendered with their full geometry, for smaller zoom levels only some
+     * edges are rendered as straight lines
+     */
+    public static final int FULL_GEOMETRY_ZOOM = 14;
+    private final GraphHopper graphHopper;
+    // the smallest zoom level at which the edge is rendered (when render_all is not set), null without road_class
+    private final byte[] minZoomByEdge;
+    private final List<EncodedValue> encodedValues;
+    // the precomputed attribute values for enum and boolean encoded values, null for other encoded values
+    private final String[][] encodedValueLabels;
+    private final int[] encodedValueCounts;
+
+    public MVTTileRenderer(GraphHopper graphHopper, EncodingManager encodingManager) {
+        this.graphHopper = graphHopper;
+        this.minZoomByEdge = encodingManager.hasEncodedValue(RoadClass.KEY)
+                ? calcMinZoomByEdge(graphHopper.getBaseGraph(), encodingManager.getEnumEncodedValue(RoadClass.KEY, RoadClass.class))
+                : null;
+        this.encodedValues = encodingManager.getEncodedValues();
+        this.encodedValueCounts = new int[encodedValues.size()];
+        this.encodedValueLabels = calcEncodedValueLabels(encodedValues, encodedValueCounts);
+    }
+
+    private static byte[] calcMinZoomByEdge(BaseGraph graph, EnumEncodedValue<RoadClass> roadClassEnc) {
+        byte[] minZoomByEdge = new byte[graph.getEdges()];
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            RoadClass rc = iter.get(roadClassEnc);
+            int minZoom;
+            if (rc == RoadClass.MOTORWAY)
+                minZoom = MIN_ZOOM;
+            else if (rc == RoadClass.PRIMARY || rc == RoadClass.TRUNK)
+                minZoom = 11;
+            else if (rc == RoadClass.SECONDARY)
+                minZoom = 12;
+            else
+                minZoom = 13;
+            minZoomByEdge[iter.getEdge()] = (byte) minZoom;
+        }
+        return minZoomByEdge;
+    }
+
+    /**
+     * Precomputes the attribute values of the enum and boolean encoded values, which have only a few possible values
+     * each. The value of an edge is then looked up via its ordinal(s) instead of being created for every edge.
+     */
+    private static String[][] calcEncodedValueLabels(List<EncodedValue> encodedValues, int[] valueCounts) {
+        String[][] labels = new String[encodedValues.size()][];
+        for (int i = 0; i < encodedValues.size(); i++) {
+            EncodedValue ev = encodedValues.get(i);
+            String[] values;
+            if (ev instanceof EnumEncodedValue)
+                values = Arrays.stream(((EnumEncodedValue<?>) ev).getValues()).map(Object::toString).toArray(String[]::new);
+            else if (ev instanceof BooleanEncodedValue)
+                values = new String[]{"false", "true"};
+            else
+                continue;
+            valueCounts[i] = values.length;
+            if (ev.isStoreTwoDirections()) {
+                // labels[i][fwd * n + bwd] = "fwd | bwd"
+                int n = values.length;
+                labels[i] = new String[n * n];
+                for (int fwd = 0; fwd < n; fwd++)
+                    for (int bwd = 0; bwd < n; bwd++)
+                        labels[i][fwd * n + bwd] = values[fwd] + " | " + values[bwd];
+            } else {
+                labels[i] = values;
+            }
+        }
+        return labels;
+    }
+
+    public byte[] render(int zInfo, int xInfo, int yInfo, boolean renderAll) {
+        if (zInfo < MIN_ZOOM)
+            return VectorTile.Tile.newBuilder().build().toByteArray();
+
+        Coordinate nw = num2deg(xInfo, yInfo, zInfo);
+        Coordinate se = num2deg(xInfo + 1, yInfo + 1, zInfo);
+        LocationIndexTree locationIndex = (LocationIndexTree) graphHopper.getLocationIndex();
+        final BaseGraph graph = graphHopper.getBaseGraph();
+        final NodeAccess na = graph.getNodeAccess();
+        BBox bbox = new BBox(nw.x, se.x, se.y, nw.y);
+        if (!bbox.isValid())
+            throw new IllegalStateException("Invalid bbox " + bbox);
+
+        if (minZoomByEdge == null)
+            throw new IllegalStateException("You need to configure GraphHopper to store road_class, e.g. graph.encoded_values: road_class,max_speed,... ");
+
+        // the coordinates are transformed from the global coordinate system to the local one of the tile, the clip
+        // buffer of 128 units corresponds to 8 of 256 pixels
+        MVTLineEncoder encoder = new MVTLineEncoder("roads", nw.x, nw.y, se.x, se.y, 4096, 128);
+        final int edgeIdKey = encoder.key("edge_id");
+        final int edgeKeyKey = encoder.key("edge_key");
+        final int baseNodeKey = encoder.key("base_node");
+        final int adjNodeKey = encoder.key("adj_node");
+        final int distanceKey = encoder.key("distance");
+        final int[] evKeys = new int[encodedValues.size()];
+        final int[][] evValueIndices = new int[encodedValues.size()][];
+        for (int i = 0; i < encodedValues.size(); i++) {
+            evKeys[i] = encoder.key(encodedValues.get(i).getName());
+            if (encodedValueLabels[i] != null) {
+                evValueIndices[i] = new int[encodedValueLabels[i].length];
+                Arrays.fill(evValueIndices[i], -1);
+            }
+        }
+        locationIndex.query(bbox, edgeId -> {
+            // skip edge for certain zoom
+            if (!renderAll && zInfo < minZoomByEdge[edgeId])
+                return;
+            EdgeIteratorState edge = graph.getEdgeIteratorStateForKey(edgeId * 2);
+            if (renderAll || zInfo >= FULL_GEOMETRY_ZOOM) {
+                encoder.addPoints(edge.fetchWayGeometry(FetchMode.ALL));
+            } else {
+                encoder.addPoint(na.getLat(edge.getBaseNode()), na.getLon(edge.getBaseNode()));
+                encoder.addPoint(na.getLat(edge.getAdjNode()), na.getLon(edge.getAdjNode()));
+            }
+            // the attributes are only needed if the edge is actually visible in this tile
+            if (!encoder.encodeLine())
+                return;
+
+            for (Map.Entry<String, KVStorage.KValue> e : edge.getKeyValues().entrySet()) {
+                encoder.addTag(encoder.key(e.getKey()), encoder.value(e.getValue().toString()));
+            }
+            encoder.addTag(edgeIdKey, encoder.value(edge.getEdge()));
+            encoder.addTag(edgeKeyKey, encoder.value(edge.getEdgeKey()));
+            encoder.addTag(baseNodeKey, encoder.value(edge.getBaseNode()));
+            encoder.addTag(adjNodeKey, encoder.value(edge.getAdjNode()));
+            encoder.addTag(distanceKey, encoder.value(edge.getDistance()));
+            for (int i = 0; i < encodedValues.size(); i++) {
+                EncodedValue ev = encodedValues.get(i);
+                int valueIndex;
+                if (evValueIndices[i] != null) {
+                    int slot = ordinal(edge, ev, false);
+                    if (ev.isStoreTwoDirections())
+                        slot = slot * encodedValueCounts[i] + ordinal(edge, ev, true);
+                    valueIndex = evValueIndices[i][slot];
+                    if (valueIndex < 0)
+                        valueIndex = evValueIndices[i][slot] = encoder.value(encodedValueLabels[i][slot]);
+                } else if (ev instanceof DecimalEncodedValue)
+                    valueIndex = encoder.value(edge.get((DecimalEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((DecimalEncodedValue) ev) : ""));
+                else if (ev instanceof StringEncodedValue)
+                    valueIndex = encoder.value(edge.get((StringEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((StringEncodedValue) ev) : ""));
+                else if (ev instanceof IntEncodedValue)
+                    valueIndex = encoder.value(edge.get((IntEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((IntEncodedValue) ev) : ""));
+                else
+                    continue;
+                encoder.addTag(evKeys[i], valueIndex);
+            }
+            encoder.addFeature(edge.getEdge());
+        });
+        return encoder.encode();
+    }
+
+    private static int ordinal(EdgeIteratorState edge, EncodedValue ev, boolean reverse) {
+        if (ev instanceof EnumEncodedValue) {
+            EnumEncodedValue<?> enumEnc = (EnumEncodedValue<?>) ev;
+            return (reverse ? edge.getReverse(enumEnc) : edge.get(enumEnc)).ordinal();
+        }
+        BooleanEncodedValue booleanEnc = (BooleanEncodedValue) ev;
+        return (reverse ? edge.getReverse(booleanEnc) : edge.get(booleanEnc)) ? 1 : 0;
+    }
+
+    static Coordinate num2deg(int xInfo, int yInfo, int zoom) {
+        // inverse web mercator projection
+        double n = Math.pow(2, zoom);
+        double lonDeg = xInfo / n * 360.0 - 180.0;
+        // unfortunately latitude numbers goes from north to south
+        double latRad = Math.atan(Math.sinh(Math.PI * (1 - 2 * yInfo / n)));
+        double latDeg = Math.toDegrees(latRad);
+        return new Coordinate(lonDeg, latDeg);
+    }
+
+    /**
+     * @return the x index of the tile containing the given longitude
+     */
+    static int lon2tile(double lon, int zoom) {
+        int n = 1 << zoom;
+        return Math.max(0, Math.min(n - 1, (int) Math.floor((lon + 180) / 360 * n)));
+    }
+
+    /**
+     * @return the y index of the tile containing the given latitude
+     */
+    static int lat2tile(double lat, int zoom) {
+        int n = 1 << zoom;
+        double latRad = Math.toRadians(lat);
+        return Math.max(0, Math.min(n - 1, (int) Math.floor((1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * n)));
+    }
+}
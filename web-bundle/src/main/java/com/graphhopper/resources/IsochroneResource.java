@@ -8,6 +8,7 @@ import com.graphhopper.config.Profile;
 import com.graphhopper.http.GHPointParam;
 import com.graphhopper.http.ProfileResolver;
 import com.graphhopper.isochrone.algorithm.ContourBuilder;
+import com.graphhopper.isochrone.algorithm.ReachabilityGrid;
 import com.graphhopper.isochrone.algorithm.ShortestPathTree;
 import com.graphhopper.isochrone.algorithm.Triangulator;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
@@ -31,9 +32,14 @@ import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import jakarta.ws.rs.core.UriInfo;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.OptionalInt;
 import java.util.OptionalLong;
 import java.util.function.ToDoubleFunction;
@@ -53,6 +59,7 @@ public class IsochroneResource {
     private final Triangulator triangulator;
     private final ProfileResolver profileResolver;
     private final String osmDate;
+    private final int maxRasterCells;
 
     @Inject
     public IsochroneResource(GraphHopperConfig config, GraphHopper graphHopper, Triangulator triangulator, ProfileResolver profileResolver) {
@@ -61,6 +68,7 @@ public class IsochroneResource {
         this.triangulator = triangulator;
         this.profileResolver = profileResolver;
         this.osmDate = graphHopper.getProperties().get("datareader.data.date");
+        this.maxRasterCells = config.getInt("isochrone.raster.max_cells", 4_000_000);
     }
 
     public enum ResponseType {json, geojson}
@@ -72,37 +80,19 @@ public class IsochroneResource {
             @QueryParam("profile") String profileName,
             @QueryParam("buckets") @Range(min = 1, max = 20) @DefaultValue("1") OptionalInt nBuckets,
             @QueryParam("reverse_flow") @DefaultValue("false") boolean reverseFlow,
-            @QueryParam("point") @NotNull GHPointParam point,
+            @QueryParam("point") @NotNull List<GHPointParam> points,
             @QueryParam("time_limit") @DefaultValue("600") OptionalLong timeLimitInSeconds,
             @QueryParam("distance_limit") @DefaultValue("-1") OptionalLong distanceLimitInMeter,
             @QueryParam("weight_limit") @DefaultValue("-1") OptionalLong weightLimit,
             @QueryParam("type") @DefaultValue("json") ResponseType respType,
             @QueryParam("tolerance") @DefaultValue("0") double toleranceInMeter,
-            @QueryParam("full_geometry") @DefaultValue("false") boolean fullGeometry) {
+            @QueryParam("full_geometry") @DefaultValue("false") boolean fullGeometry,
+            @QueryParam("prune_frontier") @DefaultValue("false") boolean pruneFrontier) {
         StopWatch sw = new StopWatch().start();
-        PMap hintsMap = new PMap();
-        RouteResource.initHints(hintsMap, uriInfo.getQueryParameters());
-        hintsMap.putObject(Parameters.CH.DISABLE, true);
-        hintsMap.putObject(Parameters.Landmark.DISABLE, true);
-
-        PMap profileResolverHints = new PMap(hintsMap);
-        profileResolverHints.putObject("profile", profileName);
-        profileName = profileResolver.resolveProfile(profileResolverHints);
-        removeLegacyParameters(hintsMap);
-
-        Profile profile = graphHopper.getProfile(profileName);
-        if (profile == null)
-            throw new IllegalArgumentException("The requested profile '" + profileName + "' does not exist");
-        LocationIndex locationIndex = graphHopper.getLocationIndex();
-        BaseGraph graph = graphHopper.getBaseGraph();
-        Weighting weighting = graphHopper.createWeighting(profile, hintsMap);
-        BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileName));
-        Snap snap = locationIndex.findClosest(point.get().lat, point.get().lon, new DefaultSnapFilter(weighting, inSubnetworkEnc));
-        if (!snap.isValid())
-            throw new IllegalArgumentException("Point not found:" + point);
-        QueryGraph queryGraph = QueryGraph.create(graph, snap);
-        TraversalMode traversalMode = profile.hasTurnCosts() ? EDGE_BASED : NODE_BASED;
-        ShortestPathTree shortestPathTree = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
+        Search search = createSearch(graphHopper, profileResolver, uriInfo, profileName, reverseFlow, points);
+        List<Snap> snaps = search.snaps();
+        QueryGraph queryGraph = search.queryGraph();
+        ShortestPathTree shortestPathTree = search.shortestPathTree();
 
         double limit;
         ToDoubleFunction<ShortestPathTree.IsoLabel> fz;
@@ -119,24 +109,25 @@ public class IsochroneResource {
             shortestPathTree.setTimeLimit(limit + Math.max(limit * 0.14, 200_000));
             fz = l -> l.time;
         }
-        ArrayList<Double> zs = new ArrayList<>();
-        double delta = limit / nBuckets.orElseThrow(() -> new IllegalArgumentException("query param buckets is not a number."));
-        for (int i = 0; i < nBuckets.getAsInt(); i++) {
-            zs.add((i + 1) * delta);
+        double[] zs = new double[nBuckets.orElseThrow(() -> new IllegalArgumentException("query param buckets is not a number."))];
+        double delta = limit / zs.length;
+        for (int i = 0; i < zs.length; i++) {
+            zs[i] = (i + 1) * delta;
         }
 
-        Triangulator.Result result = triangulator.triangulate(snap, queryGraph, shortestPathTree, fz, degreesFromMeters(toleranceInMeter));
+        // with several points a single search starts from all of them, so we get the union of their isochrones.
+        // Pruning the frontier is faster but can change the largest isoline slightly, so it has to be requested.
+        double maxZ = pruneFrontier ? zs[zs.length - 1] : Double.POSITIVE_INFINITY;
+        Triangulator.Result result = triangulator.triangulate(snaps, queryGraph, shortestPathTree, fz, degreesFromMeters(toleranceInMeter), maxZ);
 
         ContourBuilder contourBuilder = new ContourBuilder(result.triangulation);
         ArrayList<Geometry> isochrones = new ArrayList<>();
-        for (Double z : zs) {
-            logger.info("Building contour z={}", z);
-            MultiPolygon isochrone = contourBuilder.computeIsoline(z, result.seedEdges);
+        logger.info("Building contours z={}", Arrays.toString(zs));
+        for (MultiPolygon isochrone : contourBuilder.computeIsolines(zs, result.seedEdges)) {
             if (fullGeometry) {
                 isochrones.add(isochrone);
             } else {
-                Polygon maxPolygon = heuristicallyFindMainConnectedComponent(isochrone, isochrone.getFactory().createPoint(new Coordinate(point.get().lon, point.get().lat)));
-                isochrones.add(isochrone.getFactory().createPolygon(((LinearRing) maxPolygon.getExteriorRing())));
+                isochrones.add(heuristicallyFindMainConnectedComponents(isochrone, points));
             }
         }
         ArrayList<JsonFeature> features = new ArrayList<>();
@@ -173,6 +164,123 @@ public class IsochroneResource {
                 build();
     }
 
+    /**
+     * Returns the reachable area as a grid of cells with the minimum time (in ms), distance or weight per cell instead
+     * of polygons. This is much cheaper for large areas because no triangulation is required. See
+     * {@link ReachabilityGrid#write} for the binary format.
+     */
+    @GET
+    @Path("raster")
+    @Produces({MediaType.APPLICATION_OCTET_STREAM, MediaType.APPLICATION_JSON})
+    public Response doGetRaster(
+            @Context UriInfo uriInfo,
+            @QueryParam("profile") String profileName,
+            @QueryParam("reverse_flow") @DefaultValue("false") boolean reverseFlow,
+            @QueryParam("point") @NotNull List<GHPointParam> points,
+            @QueryParam("time_limit") @DefaultValue("600") OptionalLong timeLimitInSeconds,
+            @QueryParam("distance_limit") @DefaultValue("-1") OptionalLong distanceLimitInMeter,
+            @QueryParam("weight_limit") @DefaultValue("-1") OptionalLong weightLimit,
+            @QueryParam("cell_size") @DefaultValue("100") double cellSizeInMeter) {
+        StopWatch sw = new StopWatch().start();
+        if (cellSizeInMeter <= 0)
+            throw new IllegalArgumentException("query param cell_size must be positive.");
+        Search search = createSearch(graphHopper, profileResolver, uriInfo, profileName, reverseFlow, points);
+        List<Snap> snaps = search.snaps();
+        ShortestPathTree shortestPathTree = search.shortestPathTree();
+
+        double limit;
+        if (weightLimit.orElseThrow(() -> new IllegalArgumentException("query param weight_limit is not a number.")) > 0) {
+            limit = weightLimit.getAsLong();
+            shortestPathTree.setWeightLimit(limit);
+        } else if (distanceLimitInMeter.orElseThrow(() -> new IllegalArgumentException("query param distance_limit is not a number.")) > 0) {
+            limit = distanceLimitInMeter.getAsLong();
+            shortestPathTree.setDistanceLimit(limit);
+        } else {
+            limit = timeLimitInSeconds.orElseThrow(() -> new IllegalArgumentException("query param time_limit is not a number.")) * 1000d;
+            shortestPathTree.setTimeLimit(limit);
+        }
+        int[] fromNodes = snaps.stream().mapToInt(Snap::getClosestNode).toArray();
+        ReachabilityGrid grid = ReachabilityGrid.create(search.queryGraph(), search.queryWeighting(), shortestPathTree, fromNodes,
+                reverseFlow, limit, cellSizeInMeter, maxRasterCells);
+        sw.stop();
+        logger.info("took: " + sw.getSeconds() + ", visited nodes:" + shortestPathTree.getVisitedNodes() + ", grid: " + grid.getRows() + "x" + grid.getCols());
+
+        StreamingOutput out = output -> {
+            DataOutputStream dataOutput = new DataOutputStream(new BufferedOutputStream(output));
+            grid.write(dataOutput);
+            dataOutput.flush();
+        };
+        return Response.ok(out).type(MediaType.APPLICATION_OCTET_STREAM).
+                header("X-GH-Took", "" + sw.getSeconds() * 1000).
+                build();
+    }
+
+    record Search(List<Snap> snaps, QueryGraph queryGraph, Weighting queryWeighting, ShortestPathTree shortestPathTree) {
+    }
+
+    /**
+     * Validates the points, resolves the profile and creates the (not yet started) shortest path tree from the
+     * snapped points. The limits are set by the caller. This is also used by the SPTResource.
+     */
+    static Search createSearch(GraphHopper graphHopper, ProfileResolver profileResolver, UriInfo uriInfo, String profileName,
+                               boolean reverseFlow, List<GHPointParam> points) {
+        if (points.isEmpty())
+            throw new IllegalArgumentException("query param point must not be null");
+        PMap hintsMap = new PMap();
+        RouteResource.initHints(hintsMap, uriInfo.getQueryParameters());
+        hintsMap.putObject(Parameters.CH.DISABLE, true);
+        hintsMap.putObject(Parameters.Landmark.DISABLE, true);
+
+        PMap profileResolverHints = new PMap(hintsMap);
+        profileResolverHints.putObject("profile", profileName);
+        profileName = profileResolver.resolveProfile(profileResolverHints);
+        removeLegacyParameters(hintsMap);
+
+        Profile profile = graphHopper.getProfile(profileName);
+        if (profile == null)
+            throw new IllegalArgumentException("The requested profile '" + profileName + "' does not exist");
+        LocationIndex locationIndex = graphHopper.getLocationIndex();
+        BaseGraph graph = graphHopper.getBaseGraph();
+        Weighting weighting = graphHopper.createWeighting(profile, hintsMap);
+        BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileName));
+        List<Snap> snaps = snapPoints(locationIndex, points, new DefaultSnapFilter(weighting, inSubnetworkEnc));
+        QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+        TraversalMode traversalMode = profile.hasTurnCosts() ? EDGE_BASED : NODE_BASED;
+        Weighting queryWeighting = queryGraph.wrapWeighting(weighting);
+        ShortestPathTree shortestPathTree = new ShortestPathTree(queryGraph, queryWeighting, reverseFlow, traversalMode);
+        return new Search(snaps, queryGraph, queryWeighting, shortestPathTree);
+    }
+
+    private static List<Snap> snapPoints(LocationIndex locationIndex, List<GHPointParam> points, DefaultSnapFilter snapFilter) {
+        List<Snap> snaps = new ArrayList<>(points.size());
+        for (GHPointParam point : points) {
+            Snap snap = locationIndex.findClosest(point.get().lat, point.get().lon, snapFilter);
+            if (!snap.isValid())
+                throw new IllegalArgumentException("Point not found:" + point);
+            snaps.add(snap);
+        }
+        return snaps;
+    }
+
+    /**
+     * Returns the exterior ring of the polygon containing the point, or of the polygons containing any of the points
+     * if there are several.
+     */
+    private Geometry heuristicallyFindMainConnectedComponents(MultiPolygon multiPolygon, List<GHPointParam> points) {
+        GeometryFactory factory = multiPolygon.getFactory();
+        List<Polygon> polygons = new ArrayList<>();
+        for (GHPointParam point : points) {
+            Polygon maxPolygon = heuristicallyFindMainConnectedComponent(multiPolygon, factory.createPoint(new Coordinate(point.get().lon, point.get().lat)));
+            Polygon polygon = factory.createPolygon(((LinearRing) maxPolygon.getExteriorRing()));
+            // several points are often in the same component
+            if (polygons.stream().noneMatch(p -> p.equalsExact(polygon)))
+                polygons.add(polygon);
+        }
+        if (polygons.size() == 1)
+            return polygons.get(0);
+        return factory.createMultiPolygon(polygons.toArray(new Polygon[0]));
+    }
+
     private Polygon heuristicallyFindMainConnectedComponent(MultiPolygon multiPolygon, Point point) {
         int maxPoints = 0;
         Polygon maxPolygon = null;
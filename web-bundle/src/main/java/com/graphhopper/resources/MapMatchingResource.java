@@ -19,6 +19,7 @@ package com.graphhopper.resources;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -34,6 +35,7 @@ import com.graphhopper.jackson.ResponsePathSerializer;
 import com.graphhopper.matching.*;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.GHPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,8 +45,11 @@ import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import jakarta.ws.rs.core.UriInfo;
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 import static com.graphhopper.resources.RouteResource.removeLegacyParameters;
 import static com.graphhopper.util.Parameters.Details.PATH_DETAILS;
@@ -60,6 +65,20 @@ public class MapMatchingResource {
 
     public interface MapMatchingRouterFactory {
         public MapMatching.Router createMapMatchingRouter(PMap hints);
+
+        /**
+         * @return the cache shared by all map matching requests or null if transitions should not be cached
+         */
+        default TransitionCache getTransitionCache() {
+            return null;
+        }
+
+        /**
+         * @return the executor shared by all batch requests or null if every batch should use its own threads
+         */
+        default ExecutorService getBatchExecutor() {
+            return null;
+        }
     }
 
     private static final Logger logger = LoggerFactory.getLogger(MapMatchingResource.class);
@@ -128,6 +147,7 @@ public class MapMatchingResource {
 
         MapMatching matching = new MapMatching(graphHopper.getBaseGraph(), (LocationIndexTree) graphHopper.getLocationIndex(), mapMatchingRouterFactory.createMapMatchingRouter(hints));
         matching.setMeasurementErrorSigma(gpsAccuracy);
+        initTransitionCache(matching, hints);
 
         List<Observation> measurements = GpxConversions.getEntries(gpx.trk.get(0));
         MatchResult matchResult = matching.match(measurements);
@@ -168,8 +188,8 @@ public class MapMatchingResource {
                         header("X-GH-Took", "" + Math.round(sw.getMillisDouble())).
                         build();
             } else {
-                ObjectNode map = ResponsePathSerializer.jsonObject(rsp, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(sw.getMillisDouble()), osmDate), instructions,
-                        calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier);
+                ObjectNode map = objectMapper.valueToTree(new ResponsePathSerializer.JsonResponse(rsp, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(sw.getMillisDouble()), osmDate), instructions,
+                        calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier));
 
                 Map<String, Object> matchStatistics = new HashMap<>();
                 matchStatistics.put("distance", matchResult.getMatchLength());
@@ -193,6 +213,143 @@ public class MapMatchingResource {
         }
     }
 
+    /**
+     * Matches many traces with a single request. Every line of the body is a JSON object like
+     * {"id": "abc", "points": [[lon, lat], ...]}. The traces are matched in parallel and for every trace a summary line
+     * is written as soon as it is finished, so the output order differs from the input order. The last line contains
+     * the statistics of the whole batch.
+     */
+    @POST
+    @jakarta.ws.rs.Path("batch")
+    @Consumes({"application/x-ndjson", MediaType.APPLICATION_JSON})
+    @Produces("application/x-ndjson")
+    public Response matchBatch(
+            @NotNull InputStream body,
+            @Context UriInfo uriInfo,
+            @QueryParam("profile") String profile,
+            @QueryParam("traversal_keys") @DefaultValue("false") boolean enableTraversalKeys,
+            @QueryParam("gps_accuracy") @DefaultValue("10") double gpsAccuracy) {
+        PMap hints = new PMap();
+        RouteResource.initHints(hints, uriInfo.getQueryParameters());
+        PMap profileResolverHints = new PMap(hints);
+        profileResolverHints.putObject("profile", profile);
+        profileResolverHints.putObject(Parameters.CH.DISABLE, true);
+        String resolvedProfile = profileResolver.resolveProfile(profileResolverHints);
+        hints.putObject("profile", resolvedProfile);
+        removeLegacyParameters(hints);
+
+        // the router is stateless and can be shared, but every trace needs its own MapMatching instance
+        MapMatching.Router router = mapMatchingRouterFactory.createMapMatchingRouter(hints);
+        long serverTimeoutMillis = graphHopper.getRouterConfig().getTimeoutMillis();
+        BatchMapMatching batch = new BatchMapMatching(() -> {
+            MapMatching matching = new MapMatching(graphHopper.getBaseGraph(), (LocationIndexTree) graphHopper.getLocationIndex(), router);
+            matching.setMeasurementErrorSigma(gpsAccuracy);
+            initTransitionCache(matching, hints);
+            return matching;
+        }).setExecutor(mapMatchingRouterFactory.getBatchExecutor()).
+                // the shared executor has map_matching.batch.threads threads, and every request reads ahead this many traces
+                setMaxPendingTraces(config.getInt("map_matching.batch.max_pending_traces",
+                        2 * config.getInt("map_matching.batch.threads", Runtime.getRuntime().availableProcessors()))).
+                setTimeoutMillis(Math.min(serverTimeoutMillis, hints.getLong(TIMEOUT_MS, serverTimeoutMillis)));
+
+        StreamingOutput out = output -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, Helper.UTF_CS));
+            Iterator<JsonNode> lines = objectMapper.readerFor(JsonNode.class).readValues(body);
+            Iterator<BatchMapMatching.Trace> traces = new Iterator<BatchMapMatching.Trace>() {
+                @Override
+                public boolean hasNext() {
+                    return lines.hasNext();
+                }
+
+                @Override
+                public BatchMapMatching.Trace next() {
+                    return toTrace(lines.next());
+                }
+            };
+            try {
+                BatchMapMatching.Statistics statistics = batch.match(traces, result -> {
+                    try {
+                        writer.write(objectMapper.writeValueAsString(convertToSummary(result, enableTraversalKeys)));
+                        writer.write('\n');
+                        // flush every line such that the client can process the results while the batch is running
+                        writer.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                ObjectNode statisticsNode = objectMapper.createObjectNode();
+                statisticsNode.putObject("statistics").
+                        put("traces", statistics.getTraces()).
+                        put("matched", statistics.getMatched()).
+                        put("timed_out", statistics.getTimedOut()).
+                        put("failed", statistics.getFailed()).
+                        put("observations", statistics.getObservations()).
+                        put("took", statistics.getElapsedMillis()).
+                        put("mean_trace_took", statistics.getMeanTraceMillis()).
+                        put("traces_per_second", statistics.getTracesPerSecond()).
+                        put("observations_per_second", statistics.getObservationsPerSecond());
+                writer.write(statisticsNode.toString());
+                writer.write('\n');
+                logger.info(objectMapper.createObjectNode()
+                        .put("profile", resolvedProfile)
+                        .put("batch", statistics.toString()).toString());
+            } catch (IllegalArgumentException | UncheckedIOException | RuntimeJsonMappingException e) {
+                // the status code was already sent, so the error can only be reported in the body
+                writer.write(objectMapper.createObjectNode().put("message", e.getMessage()).toString());
+                writer.write('\n');
+            } finally {
+                writer.flush();
+            }
+        };
+        return Response.ok(out).build();
+    }
+
+    private void initTransitionCache(MapMatching matching, PMap hints) {
+        TransitionCache transitionCache = mapMatchingRouterFactory.getTransitionCache();
+        // the cache is keyed by profile, so it cannot be used if the request changes the weighting of the profile
+        if (transitionCache != null && !hints.has(U_TURN_COSTS) && !hints.has(HEADING_PENALTY) && !hints.has(CustomModel.KEY))
+            matching.setTransitionCache(transitionCache, hints.getString("profile", ""));
+    }
+
+    private static BatchMapMatching.Trace toTrace(JsonNode line) {
+        JsonNode points = line.get("points");
+        if (points == null || !points.isArray())
+            throw new IllegalArgumentException("Every line must contain a points array: " + line);
+        List<Observation> observations = new ArrayList<>(points.size());
+        for (JsonNode point : points) {
+            if (!point.isArray() || point.size() < 2)
+                throw new IllegalArgumentException("Points must be specified as [lon, lat] arrays: " + line);
+            observations.add(new Observation(new GHPoint(point.get(1).asDouble(), point.get(0).asDouble())));
+        }
+        return new BatchMapMatching.Trace(line.has("id") ? line.get("id").asText() : null, observations);
+    }
+
+    private ObjectNode convertToSummary(BatchMapMatching.TraceResult result, boolean enableTraversalKeys) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("index", result.getIndex());
+        if (result.getTrace().getId() != null)
+            node.put("id", result.getTrace().getId());
+        node.put("took", Math.round(result.getNanos() / 1e6));
+        node.put("observations", result.getTrace().getObservations().size());
+        MatchResult matchResult = result.getMatchResult();
+        if (matchResult == null) {
+            node.put("status", result.isTimedOut() ? "timed_out" : "failed");
+            node.put("message", result.getError().getMessage());
+            return node;
+        }
+        node.put("status", "matched");
+        node.putObject("map_matching").
+                put("distance", matchResult.getMatchLength()).
+                put("time", matchResult.getMatchMillis()).
+                put("original_distance", matchResult.getGpxEntriesLength());
+        if (enableTraversalKeys) {
+            ArrayNode traversalKeys = node.putArray("traversal_keys");
+            for (EdgeMatch em : matchResult.getEdgeMatches())
+                traversalKeys.add(em.getEdgeState().getEdgeKey());
+        }
+        return node;
+    }
+
     public static JsonNode convertToTree(MatchResult result, boolean elevation, boolean pointsEncoded, double pointsEncodedMultiplier) {
         ObjectNode root = JsonNodeFactory.instance.objectNode();
         ObjectNode diary = root.putObject("diary");
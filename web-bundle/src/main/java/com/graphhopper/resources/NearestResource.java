@@ -22,12 +22,11 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.graphhopper.jackson.MultiException;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.storage.index.LocationIndex;
-import com.graphhopper.storage.index.Snap;
+import com.graphhopper.storage.index.SnapBuffer;
 import com.graphhopper.util.DistanceCalc;
 import com.graphhopper.util.DistanceCalcEarth;
 import com.graphhopper.util.exceptions.PointNotFoundException;
 import com.graphhopper.util.shapes.GHPoint;
-import com.graphhopper.util.shapes.GHPoint3D;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
@@ -67,11 +66,12 @@ public class NearestResource {
 
     @GET
     public Response doGet(@QueryParam("point") GHPoint point, @QueryParam("elevation") @DefaultValue("false") boolean elevation) {
-        Snap snap = index.findClosest(point.lat, point.lon, EdgeFilter.ALL_EDGES);
-        if (snap.isValid()) {
-            GHPoint3D snappedPoint = snap.getSnappedPoint();
-            double[] coordinates = hasElevation && elevation ? new double[]{snappedPoint.lon, snappedPoint.lat, snappedPoint.ele} : new double[]{snappedPoint.lon, snappedPoint.lat};
-            return new Response(coordinates, calc.calcDist(point.lat, point.lon, snappedPoint.lat, snappedPoint.lon));
+        SnapBuffer candidates = new SnapBuffer(1);
+        index.findNearest(point.lat, point.lon, 1, EdgeFilter.ALL_EDGES, candidates);
+        if (!candidates.isEmpty()) {
+            double lat = candidates.getSnappedLat(0), lon = candidates.getSnappedLon(0);
+            double[] coordinates = hasElevation && elevation ? new double[]{lon, lat, candidates.getSnappedEle(0)} : new double[]{lon, lat};
+            return new Response(coordinates, calc.calcDist(point.lat, point.lon, lat, lon));
         } else {
             throw new MultiException(List.of(new PointNotFoundException("Point " + point + " is either out of bounds or cannot be found", 0)));
         }
@@ -1,19 +1,13 @@
 package com.graphhopper.resources;
 
 import com.graphhopper.GraphHopper;
-import com.graphhopper.config.Profile;
 import com.graphhopper.http.GHPointParam;
 import com.graphhopper.http.ProfileResolver;
 import com.graphhopper.isochrone.algorithm.ShortestPathTree;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.querygraph.QueryGraph;
-import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.EncodingManager;
-import com.graphhopper.routing.util.TraversalMode;
-import com.graphhopper.routing.weighting.Weighting;
-import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.NodeAccess;
-import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.GHPoint;
@@ -33,9 +27,6 @@ import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.*;
 
-import static com.graphhopper.resources.RouteResource.removeLegacyParameters;
-import static com.graphhopper.routing.util.TraversalMode.EDGE_BASED;
-import static com.graphhopper.routing.util.TraversalMode.NODE_BASED;
 import static com.graphhopper.util.Parameters.Details.STREET_NAME;
 
 /**
@@ -48,6 +39,7 @@ public class SPTResource {
 
     public static class IsoLabelWithCoordinates {
         public int nodeId = -1;
+        public int origin;
         public int edgeId, prevEdgeId, prevNodeId = -1;
         public int timeMillis, prevTimeMillis;
         public int distance, prevDistance;
@@ -73,35 +65,17 @@ public class SPTResource {
             @Context UriInfo uriInfo,
             @QueryParam("profile") String profileName,
             @QueryParam("reverse_flow") @DefaultValue("false") boolean reverseFlow,
-            @QueryParam("point") @NotNull GHPointParam point,
+            @QueryParam("point") @NotNull List<GHPointParam> points,
             @QueryParam("columns") String columnsParam,
             @QueryParam("time_limit") @DefaultValue("600") OptionalLong timeLimitInSeconds,
             @QueryParam("distance_limit") @DefaultValue("-1") OptionalLong distanceInMeter) {
         StopWatch sw = new StopWatch().start();
-        PMap hintsMap = new PMap();
-        RouteResource.initHints(hintsMap, uriInfo.getQueryParameters());
-        hintsMap.putObject(Parameters.CH.DISABLE, true);
-        hintsMap.putObject(Parameters.Landmark.DISABLE, true);
-
-        PMap profileResolverHints = new PMap(hintsMap);
-        profileResolverHints.putObject("profile", profileName);
-        profileName = profileResolver.resolveProfile(profileResolverHints);
-        removeLegacyParameters(hintsMap);
-
-        Profile profile = graphHopper.getProfile(profileName);
-        if (profile == null)
-            throw new IllegalArgumentException("The requested profile '" + profileName + "' does not exist");
-        LocationIndex locationIndex = graphHopper.getLocationIndex();
-        BaseGraph graph = graphHopper.getBaseGraph();
-        Weighting weighting = graphHopper.createWeighting(profile, hintsMap);
-        BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileName));
-        Snap snap = locationIndex.findClosest(point.get().lat, point.get().lon, new DefaultSnapFilter(weighting, inSubnetworkEnc));
-        if (!snap.isValid())
-            throw new IllegalArgumentException("Point not found:" + point);
-        QueryGraph queryGraph = QueryGraph.create(graph, snap);
+        IsochroneResource.Search search = IsochroneResource.createSearch(graphHopper, profileResolver, uriInfo, profileName, reverseFlow, points);
+        QueryGraph queryGraph = search.queryGraph();
+        ShortestPathTree shortestPathTree = search.shortestPathTree();
+        // with several points the nodes are assigned to the point they can be reached from fastest, see the origin column
+        int[] fromNodes = search.snaps().stream().mapToInt(Snap::getClosestNode).toArray();
         NodeAccess nodeAccess = queryGraph.getNodeAccess();
-        TraversalMode traversalMode = profile.hasTurnCosts() ? EDGE_BASED : NODE_BASED;
-        ShortestPathTree shortestPathTree = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
 
         if (distanceInMeter.orElseThrow(() -> new IllegalArgumentException("query param distance_limit is not a number.")) > 0) {
             shortestPathTree.setDistanceLimit(distanceInMeter.getAsLong());
@@ -136,8 +110,8 @@ public class SPTResource {
                 }
                 sb.append(LINE_SEP);
                 writer.write(sb.toString());
-                shortestPathTree.search(snap.getClosestNode(), l -> {
-                    IsoLabelWithCoordinates label = isoLabelWithCoordinates(nodeAccess, l);
+                shortestPathTree.searchLabels(fromNodes, l -> {
+                    IsoLabelWithCoordinates label = isoLabelWithCoordinates(nodeAccess, shortestPathTree, l);
                     sb.setLength(0);
                     for (int colIndex = 0; colIndex < columns.size(); colIndex++) {
                         String col = columns.get(colIndex);
@@ -148,6 +122,9 @@ public class SPTResource {
                             case "node_id":
                                 sb.append(label.nodeId);
                                 continue;
+                            case "origin":
+                                sb.append(label.origin);
+                                continue;
                             case "prev_node_id":
                                 sb.append(label.prevNodeId);
                                 continue;
@@ -229,25 +206,27 @@ public class SPTResource {
         return Response.ok(out).type("text/csv").build();
     }
 
-    private IsoLabelWithCoordinates isoLabelWithCoordinates(NodeAccess na, ShortestPathTree.IsoLabel label) {
-        double lat = na.getLat(label.node);
-        double lon = na.getLon(label.node);
+    private IsoLabelWithCoordinates isoLabelWithCoordinates(NodeAccess na, ShortestPathTree tree, int label) {
+        int nodeId = tree.getNode(label);
+        double lat = na.getLat(nodeId);
+        double lon = na.getLon(nodeId);
         IsoLabelWithCoordinates isoLabelWC = new IsoLabelWithCoordinates();
-        isoLabelWC.nodeId = label.node;
+        isoLabelWC.nodeId = nodeId;
+        isoLabelWC.origin = tree.getOrigin(label);
         isoLabelWC.coordinate = new GHPoint(lat, lon);
-        isoLabelWC.timeMillis = Math.round(label.time);
-        isoLabelWC.distance = (int) Math.round(label.distance);
-        isoLabelWC.edgeId = label.edge;
-        if (label.parent != null) {
-            ShortestPathTree.IsoLabel prevLabel = label.parent;
-            int prevNodeId = prevLabel.node;
+        isoLabelWC.timeMillis = Math.round(tree.getTime(label));
+        isoLabelWC.distance = (int) Math.round(tree.getDistance(label));
+        isoLabelWC.edgeId = tree.getEdge(label);
+        int prevLabel = tree.getParent(label);
+        if (prevLabel >= 0) {
+            int prevNodeId = tree.getNode(prevLabel);
             double prevLat = na.getLat(prevNodeId);
             double prevLon = na.getLon(prevNodeId);
             isoLabelWC.prevNodeId = prevNodeId;
-            isoLabelWC.prevEdgeId = prevLabel.edge;
+            isoLabelWC.prevEdgeId = tree.getEdge(prevLabel);
             isoLabelWC.prevCoordinate = new GHPoint(prevLat, prevLon);
-            isoLabelWC.prevDistance = (int) Math.round(prevLabel.distance);
-            isoLabelWC.prevTimeMillis = Math.round(prevLabel.time);
+            isoLabelWC.prevDistance = (int) Math.round(tree.getDistance(prevLabel));
+            isoLabelWC.prevTimeMillis = Math.round(tree.getTime(prevLabel));
         }
         return isoLabelWC;
     }
@@ -0,0 +1,106 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import no.ecc.vectortile.VectorTileDecoder;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MVTLineEncoderTest {
+
+    @Test
+    public void encodeLine() throws IOException {
+        // the tile covers one degree, so one degree corresponds to 4096 units
+        MVTLineEncoder encoder = new MVTLineEncoder("roads", 0, 1, 1, 0, 4096, 0);
+        int nameKey = encoder.key("name");
+        assertEquals(nameKey, encoder.key("name"));
+        encoder.addPoint(0.5, 0.25);
+        // the duplicate point is skipped
+        encoder.addPoint(0.5, 0.25);
+        encoder.addPoint(0.25, 0.5);
+        assertTrue(encoder.encodeLine());
+        encoder.addTag(nameKey, encoder.value("a"));
+        encoder.addTag(encoder.key("edge_id"), encoder.value(7));
+        encoder.addTag(encoder.key("distance"), encoder.value(12.5));
+        encoder.addFeature(7);
+
+        List<VectorTileDecoder.Feature> features = decode(encoder.encode());
+        assertEquals(1, features.size());
+        VectorTileDecoder.Feature feature = features.get(0);
+        assertEquals("roads", feature.getLayerName());
+        assertEquals(7, feature.getId());
+        assertEquals(4096, feature.getExtent());
+        assertEquals("a", feature.getAttributes().get("name"));
+        assertEquals(7L, feature.getAttributes().get("edge_id"));
+        assertEquals(12.5, feature.getAttributes().get("distance"));
+        assertTrue(feature.getGeometry() instanceof LineString);
+        assertArrayEquals(new Coordinate[]{new Coordinate(1024, 2048), new Coordinate(2048, 3072)}, feature.getGeometry().getCoordinates());
+    }
+
+    @Test
+    public void clipLine() throws IOException {
+        MVTLineEncoder encoder = new MVTLineEncoder("roads", 0, 1, 1, 0, 4096, 0);
+        // enters the tile from the west, leaves it to the north and enters it again
+        encoder.addPoint(0.5, -0.5);
+        encoder.addPoint(0.5, 0.5);
+        encoder.addPoint(1.5, 0.5);
+        encoder.addPoint(0.5, 0.75);
+        assertTrue(encoder.encodeLine());
+        encoder.addFeature(1);
+
+        // lines that are completely outside of the tile or too short are skipped
+        encoder.addPoint(2, 0);
+        encoder.addPoint(2, 1);
+        assertFalse(encoder.encodeLine());
+        encoder.addPoint(0.5, 0.5);
+        encoder.addPoint(0.5, 0.5001);
+        assertFalse(encoder.encodeLine());
+        assertEquals(1, encoder.getFeatureCount());
+
+        List<VectorTileDecoder.Feature> features = decode(encoder.encode());
+        assertEquals(1, features.size());
+        Geometry geometry = features.get(0).getGeometry();
+        assertTrue(geometry instanceof MultiLineString);
+        assertEquals(2, geometry.getNumGeometries());
+        assertArrayEquals(new Coordinate[]{new Coordinate(0, 2048), new Coordinate(2048, 2048), new Coordinate(2048, 0)},
+                geometry.getGeometryN(0).getCoordinates());
+        assertArrayEquals(new Coordinate[]{new Coordinate(2560, 0), new Coordinate(3072, 2048)},
+                geometry.getGeometryN(1).getCoordinates());
+    }
+
+    @Test
+    public void emptyTile() throws IOException {
+        MVTLineEncoder encoder = new MVTLineEncoder("roads", 0, 1, 1, 0, 4096, 128);
+        VectorTileDecoder.FeatureIterable features = new VectorTileDecoder().decode(encoder.encode());
+        assertTrue(features.getLayerNames().isEmpty());
+    }
+
+    private static List<VectorTileDecoder.Feature> decode(byte[] bytes) throws IOException {
+        VectorTileDecoder decoder = new VectorTileDecoder();
+        decoder.setAutoScale(false);
+        return decoder.decode(bytes).asList();
+    }
+}
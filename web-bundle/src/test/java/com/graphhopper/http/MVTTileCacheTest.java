@@ -0,0 +1,46 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MVTTileCacheTest {
+
+    @Test
+    public void externalVersionPrefix() {
+        assertEquals("", MVTTileCache.getExternalVersionPrefix(new long[0]));
+        // the sums of these versions are equal, but the tiles must not be shared
+        assertEquals("ext_1_0/", MVTTileCache.getExternalVersionPrefix(new long[]{1, 0}));
+        assertEquals("ext_0_1/", MVTTileCache.getExternalVersionPrefix(new long[]{0, 1}));
+    }
+
+    @Test
+    public void staleExternalTiles() {
+        long[] versions = {2, 5};
+        assertFalse(MVTTileCache.isStale("ext_2_5", versions));
+        assertTrue(MVTTileCache.isStale("ext_1_5", versions));
+        assertTrue(MVTTileCache.isStale("ext_2_4", versions));
+        assertTrue(MVTTileCache.isStale("ext_7", versions));
+        // tiles of newer versions might already be written by concurrent requests
+        assertFalse(MVTTileCache.isStale("ext_3_5", versions));
+        assertFalse(MVTTileCache.isStale("15", versions));
+        assertFalse(MVTTileCache.isStale("ext_a_b", versions));
+    }
+}
@@ -22,23 +22,36 @@ import com.graphhopper.GraphHopper;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.gpx.GpxConversions;
 import com.graphhopper.jackson.Gpx;
+import com.graphhopper.matching.BatchMapMatching;
 import com.graphhopper.matching.EdgeMatch;
 import com.graphhopper.matching.MapMatching;
 import com.graphhopper.matching.MatchResult;
+import com.graphhopper.matching.Observation;
+import com.graphhopper.matching.OnlineMapMatching;
 import com.graphhopper.matching.State;
+import com.graphhopper.matching.TransitionCache;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PMap;
+import com.graphhopper.util.shapes.GHPoint;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import static com.graphhopper.application.MapMatchingTest.fetchStreets;
+import static com.graphhopper.util.Parameters.Routing.MAX_VISITED_NODES;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -127,6 +140,189 @@ public class MapMatching2Test {
         assertEquals(0, mr.getMatchMillis(), 50);
     }
 
+    @Test
+    public void testTransitionCache() throws IOException {
+        GraphHopper hopper = new GraphHopper();
+        hopper.setOSMFile("../map-matching/files/map-issue13.osm.gz");
+        hopper.setGraphHopperLocation(GH_LOCATION);
+        hopper.setEncodedValuesString("car_access, car_average_speed");
+        hopper.setProfiles(TestProfiles.accessAndSpeed("my_profile", "car"));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile("my_profile"));
+        hopper.importOrLoad();
+
+        Gpx gpx = xmlMapper.readValue(getClass().getResourceAsStream("/issue-13.gpx"), Gpx.class);
+        List<Observation> observations = GpxConversions.getEntries(gpx.trk.get(0));
+        // the same trace again, but the observations are snapped to slightly different positions
+        List<Observation> shiftedObservations = observations.stream()
+                .map(o -> new Observation(new GHPoint(o.getPoint().lat + 0.00002, o.getPoint().lon - 0.00001)))
+                .collect(Collectors.toList());
+
+        for (boolean useDijkstra : Arrays.asList(false, true)) {
+            PMap hints = new PMap().putObject("profile", "my_profile").putObject("lm.disable", useDijkstra);
+            TransitionCache cache = new TransitionCache(1000);
+            for (List<Observation> trace : Arrays.asList(observations, shiftedObservations, observations)) {
+                MatchResult expected = MapMatching.fromGraphHopper(hopper, hints).match(trace);
+                MapMatching mapMatching = MapMatching.fromGraphHopper(hopper, hints);
+                mapMatching.setTransitionCache(cache, "my_profile");
+                MatchResult mr = mapMatching.match(trace);
+                assertEquals(expected.getEdgeMatches().stream().map(em -> em.getEdgeState().getEdgeKey()).collect(Collectors.toList()),
+                        mr.getEdgeMatches().stream().map(em -> em.getEdgeState().getEdgeKey()).collect(Collectors.toList()));
+                assertEquals(expected.getMatchLength(), mr.getMatchLength(), 1.e-6);
+                assertEquals(expected.getMatchMillis(), mr.getMatchMillis(), 10);
+                assertEquals(expected.getMergedPath().getDistance(), mr.getMergedPath().getDistance(), 1.e-6);
+                for (EdgeMatch em : mr.getEdgeMatches())
+                    validateEdgeMatch(em);
+            }
+            assertTrue(cache.size() > 0);
+            assertTrue(cache.getHitRate() > 0.5, cache.toString());
+            assertTrue(cache.getEstimatedBytes() > 0);
+        }
+
+        // all transitions are removed when the data version changes
+        AtomicLong dataVersion = new AtomicLong();
+        TransitionCache cache = new TransitionCache(1000, dataVersion::get);
+        PMap hints = new PMap().putObject("profile", "my_profile");
+        MapMatching mapMatching = MapMatching.fromGraphHopper(hopper, hints);
+        mapMatching.setTransitionCache(cache, "my_profile");
+        mapMatching.match(observations);
+        assertTrue(cache.size() > 0);
+        dataVersion.incrementAndGet();
+        assertNull(cache.get("my_profile", 0, 1));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getEstimatedBytes());
+
+        // cached transitions are not used if the number of visited nodes is limited
+        mapMatching.match(observations);
+        long hits = cache.getHits();
+        int size = cache.size();
+        mapMatching = MapMatching.fromGraphHopper(hopper, new PMap(hints).putObject(MAX_VISITED_NODES, 100_000));
+        mapMatching.setTransitionCache(cache, "my_profile");
+        mapMatching.match(observations);
+        assertEquals(hits, cache.getHits());
+        assertEquals(size, cache.size());
+    }
+
+    @Test
+    public void testOnlineMatching() throws IOException {
+        GraphHopper hopper = new GraphHopper();
+        hopper.setOSMFile("../map-matching/files/map-issue13.osm.gz");
+        hopper.setGraphHopperLocation(GH_LOCATION);
+        hopper.setEncodedValuesString("car_access, car_average_speed");
+        hopper.setProfiles(TestProfiles.accessAndSpeed("my_profile", "car"));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile("my_profile"));
+        hopper.importOrLoad();
+
+        Gpx gpx = xmlMapper.readValue(getClass().getResourceAsStream("/issue-13.gpx"), Gpx.class);
+        MatchResult mr = MapMatching.fromGraphHopper(hopper, new PMap().putObject("profile", "my_profile"))
+                .match(GpxConversions.getEntries(gpx.trk.get(0)));
+        List<Integer> expectedEdges = mr.getEdgeMatches().stream().map(em -> em.getEdgeState().getEdge()).collect(Collectors.toList());
+
+        for (boolean useDijkstra : Arrays.asList(false, true)) {
+            OnlineMapMatching onlineMapMatching = OnlineMapMatching.fromGraphHopper(hopper,
+                    new PMap().putObject("profile", "my_profile").putObject("lm.disable", useDijkstra));
+            List<EdgeMatch> edgeMatches = new ArrayList<>();
+            int finalizedBeforeEnd = 0;
+            for (Observation observation : GpxConversions.getEntries(gpx.trk.get(0))) {
+                List<EdgeMatch> finalized = onlineMapMatching.add(observation);
+                finalizedBeforeEnd += finalized.size();
+                edgeMatches.addAll(finalized);
+            }
+            edgeMatches.addAll(onlineMapMatching.finish());
+            // the sequences converge long before the end of the trace
+            assertTrue(finalizedBeforeEnd > edgeMatches.size() / 2, finalizedBeforeEnd + " vs. " + edgeMatches.size());
+            assertEquals(expectedEdges, edgeMatches.stream().map(em -> em.getEdgeState().getEdge()).collect(Collectors.toList()));
+            for (EdgeMatch em : edgeMatches)
+                validateEdgeMatch(em);
+        }
+
+        // a small window forces finalization but still yields a valid sequence
+        OnlineMapMatching onlineMapMatching = OnlineMapMatching.fromGraphHopper(hopper, new PMap().putObject("profile", "my_profile"))
+                .setMaxWindowSize(2);
+        List<EdgeMatch> edgeMatches = new ArrayList<>();
+        for (Observation observation : GpxConversions.getEntries(gpx.trk.get(0)))
+            edgeMatches.addAll(onlineMapMatching.add(observation));
+        edgeMatches.addAll(onlineMapMatching.finish());
+        assertFalse(edgeMatches.isEmpty());
+        int edgeCount = hopper.getBaseGraph().getAllEdges().length();
+        for (EdgeMatch em : edgeMatches) {
+            assertTrue(em.getEdgeState().getEdge() < edgeCount, "result contains virtual edges:" + em.getEdgeState().toString());
+            validateEdgeMatch(em);
+        }
+        assertThrows(IllegalStateException.class, () -> onlineMapMatching.add(new Observation(new GHPoint(51.358735, 12.360574))));
+    }
+
+    @Test
+    public void testBatchMatching() throws IOException {
+        GraphHopper hopper = new GraphHopper();
+        hopper.setOSMFile("../map-matching/files/map-issue13.osm.gz");
+        hopper.setGraphHopperLocation(GH_LOCATION);
+        hopper.setEncodedValuesString("car_access, car_average_speed");
+        hopper.setProfiles(TestProfiles.accessAndSpeed("my_profile", "car"));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile("my_profile"));
+        hopper.importOrLoad();
+
+        Gpx gpx = xmlMapper.readValue(getClass().getResourceAsStream("/issue-13.gpx"), Gpx.class);
+        List<Observation> observations = GpxConversions.getEntries(gpx.trk.get(0));
+        PMap hints = new PMap().putObject("profile", "my_profile");
+        MatchResult mr = MapMatching.fromGraphHopper(hopper, hints).match(observations);
+        List<Integer> expectedEdges = mr.getEdgeMatches().stream().map(em -> em.getEdgeState().getEdge()).collect(Collectors.toList());
+
+        List<BatchMapMatching.Trace> traces = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            traces.add(new BatchMapMatching.Trace("trace" + i, observations));
+        // far away from the road network
+        traces.add(new BatchMapMatching.Trace("broken", Arrays.asList(new Observation(new GHPoint(10, 10)), new Observation(new GHPoint(10.1, 10.1)))));
+
+        List<BatchMapMatching.TraceResult> results = Collections.synchronizedList(new ArrayList<>());
+        BatchMapMatching.Statistics statistics = new BatchMapMatching(() -> MapMatching.fromGraphHopper(hopper, hints))
+                .setThreads(4)
+                .setMaxPendingTraces(5)
+                .match(traces.iterator(), results::add);
+        assertEquals(21, results.size());
+        assertEquals(21, statistics.getTraces());
+        assertEquals(20, statistics.getMatched());
+        assertEquals(1, statistics.getFailed());
+        assertEquals(0, statistics.getTimedOut());
+        assertEquals(20L * observations.size() + 2, statistics.getObservations());
+        assertTrue(statistics.getTracesPerSecond() > 0);
+        for (BatchMapMatching.TraceResult result : results) {
+            assertEquals(traces.get(result.getIndex()), result.getTrace());
+            if (result.getTrace().getId().equals("broken")) {
+                assertNull(result.getMatchResult());
+                assertInstanceOf(IllegalArgumentException.class, result.getError());
+            } else {
+                assertNull(result.getError());
+                assertEquals(expectedEdges, result.getMatchResult().getEdgeMatches().stream().map(em -> em.getEdgeState().getEdge()).collect(Collectors.toList()));
+            }
+        }
+
+        // a shared executor is used by several batches and is not shut down after a batch
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        for (int i = 0; i < 2; i++) {
+            statistics = new BatchMapMatching(() -> MapMatching.fromGraphHopper(hopper, hints))
+                    .setExecutor(executor)
+                    .setMaxPendingTraces(3)
+                    .match(traces.iterator(), r -> {
+                    });
+            assertEquals(20, statistics.getMatched());
+            assertEquals(1, statistics.getFailed());
+            assertFalse(executor.isShutdown());
+        }
+        executor.shutdown();
+
+        // with a negative time budget every trace times out
+        statistics = new BatchMapMatching(() -> MapMatching.fromGraphHopper(hopper, hints))
+                .setTimeoutMillis(-1)
+                .match(traces.subList(0, 3).iterator(), r -> assertTrue(r.isTimedOut()));
+        assertEquals(3, statistics.getTimedOut());
+
+        // exceptions of the consumer stop the batch
+        assertThrows(IllegalStateException.class, () -> new BatchMapMatching(() -> MapMatching.fromGraphHopper(hopper, hints))
+                .match(traces.iterator(), r -> {
+                    throw new IllegalStateException("stop");
+                }));
+    }
+
     private void validateEdgeMatch(EdgeMatch edgeMatch) {
         for (State state : edgeMatch.getStates()) {
             if (state.getSnap().getSnappedPosition() == Snap.Position.TOWER) {
@@ -24,6 +24,7 @@ import com.graphhopper.application.GraphHopperServerConfiguration;
 import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.BodyAndStatus;
+import com.graphhopper.util.DistanceCalcEarth;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.JsonFeatureCollection;
 import com.graphhopper.util.TurnCostsConfig;
@@ -40,7 +41,12 @@ import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.Polygon;
 
 import jakarta.ws.rs.client.WebTarget;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 
 import static com.graphhopper.application.resources.Util.getWithStatus;
@@ -96,6 +102,91 @@ public class IsochroneResourceTest {
         assertFalse(polygon1.contains(geometryFactory.createPoint(new Coordinate(1.635246, 42.53841))));
     }
 
+    @Test
+    public void requestWithPrunedFrontier() {
+        JsonFeatureCollection featureCollection = clientTarget(app, "/isochrone")
+                .queryParam("profile", "fast_car")
+                .queryParam("point", "42.531073,1.573792")
+                .queryParam("time_limit", 5 * 60)
+                .queryParam("buckets", 2)
+                .queryParam("prune_frontier", true)
+                .queryParam("type", "geojson")
+                .request().get(JsonFeatureCollection.class);
+
+        assertEquals(2, featureCollection.getFeatures().size());
+        Geometry polygon0 = featureCollection.getFeatures().get(0).getGeometry();
+        Geometry polygon1 = featureCollection.getFeatures().get(1).getGeometry();
+        assertTrue(polygon0.contains(geometryFactory.createPoint(new Coordinate(1.587224, 42.5386))));
+        assertFalse(polygon0.contains(geometryFactory.createPoint(new Coordinate(1.589756, 42.558012))));
+        assertTrue(polygon1.contains(geometryFactory.createPoint(new Coordinate(1.589756, 42.558012))));
+        assertFalse(polygon1.contains(geometryFactory.createPoint(new Coordinate(1.635246, 42.53841))));
+    }
+
+    @Test
+    public void requestMultiplePoints() {
+        JsonFeatureCollection featureCollection = clientTarget(app, "/isochrone")
+                .queryParam("profile", "fast_car")
+                .queryParam("point", "42.531073,1.573792")
+                .queryParam("point", "42.558012,1.589756")
+                .queryParam("time_limit", 60)
+                .queryParam("type", "geojson")
+                .request().get(JsonFeatureCollection.class);
+
+        assertEquals(1, featureCollection.getFeatures().size());
+        Geometry union = featureCollection.getFeatures().get(0).getGeometry();
+        // the points are too far apart for their isochrones to overlap
+        assertEquals(2, union.getNumGeometries());
+        assertTrue(union.contains(geometryFactory.createPoint(new Coordinate(1.573792, 42.531073))));
+        assertTrue(union.contains(geometryFactory.createPoint(new Coordinate(1.589756, 42.558012))));
+        assertFalse(union.contains(geometryFactory.createPoint(new Coordinate(1.587224, 42.5386))));
+    }
+
+    @Test
+    public void requestRaster() throws IOException {
+        Response response = clientTarget(app, "/isochrone/raster")
+                .queryParam("profile", "fast_car")
+                .queryParam("point", "42.531073,1.573792")
+                .queryParam("time_limit", 5 * 60)
+                .queryParam("cell_size", 200)
+                .request().get();
+        assertEquals(200, response.getStatus());
+        assertEquals(MediaType.APPLICATION_OCTET_STREAM_TYPE, response.getMediaType());
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(response.readEntity(byte[].class)));
+        double minLat = input.readDouble();
+        double minLon = input.readDouble();
+        double latStep = input.readDouble();
+        double lonStep = input.readDouble();
+        int rows = input.readInt();
+        int cols = input.readInt();
+        assertEquals(200 / DistanceCalcEarth.METERS_PER_DEGREE, latStep, 1.e-9);
+        assertTrue(lonStep > latStep);
+        assertTrue(rows > 10 && cols > 10, rows + "x" + cols);
+        assertTrue(minLat < 42.531073 && minLat + rows * latStep > 42.531073);
+        assertTrue(minLon < 1.573792 && minLon + cols * lonStep > 1.573792);
+        int reached = 0;
+        for (int i = 0; i < rows * cols; i++) {
+            float value = input.readFloat();
+            if (!Float.isNaN(value)) {
+                reached++;
+                assertTrue(value >= 0 && value <= 5 * 60 * 1000, "unexpected value " + value);
+            }
+        }
+        assertTrue(reached > 50 && reached < rows * cols, "reached cells: " + reached);
+        assertEquals(-1, input.read());
+    }
+
+    @Test
+    public void requestRasterTooManyCells() {
+        Response response = clientTarget(app, "/isochrone/raster")
+                .queryParam("profile", "fast_car")
+                .queryParam("point", "42.531073,1.573792")
+                .queryParam("time_limit", 30 * 60)
+                .queryParam("cell_size", 1)
+                .request().get();
+        assertEquals(400, response.getStatus());
+        assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("too many cells"));
+    }
+
     @Test
     public void requestByTimeLimitNoTurnRestrictions() {
         JsonFeatureCollection featureCollection = clientTarget(app, "/isochrone")
@@ -0,0 +1,129 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.resources;
+
+import com.codahale.metrics.Gauge;
+import com.graphhopper.application.GraphHopperApplication;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import no.ecc.vectortile.VectorTileDecoder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.graphhopper.application.util.TestUtils.clientTarget;
+import static com.graphhopper.util.Parameters.Details.STREET_NAME;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class MVTResourceCacheTest {
+    private static final String DIR = "./target/andorra-mvt-cache-gh/";
+    private static final String CACHE_DIR = "./target/andorra-mvt-cache-tiles/";
+    private static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+
+    private static GraphHopperServerConfiguration createConfig() {
+        // the server is started before @BeforeAll, so we cannot remove the tiles of a previous run there
+        Helper.removeDir(new File(CACHE_DIR));
+        GraphHopperServerConfiguration config = new GraphHopperServerTestConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("graph.encoded_values", "road_class,road_environment,max_speed,surface").
+                putObject("prepare.min_network_size", 0).
+                putObject("datareader.file", "../core/files/andorra.osm.pbf").
+                putObject("import.osm.ignored_highways", "").
+                putObject("graph.location", DIR).
+                putObject("mvt.cache.size_mb", 16).
+                putObject("mvt.cache.directory", CACHE_DIR).
+                putObject("mvt.cache.seed_max_zoom", 11).
+                putObject("mvt.cache.seed_threads", 2).
+                setProfiles(List.of(TestProfiles.constantSpeed("car")));
+        return config;
+    }
+
+    @BeforeAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @AfterAll
+    public static void cleanUpAfter() {
+        Helper.removeDir(new File(DIR));
+        Helper.removeDir(new File(CACHE_DIR));
+    }
+
+    private static long getGauge(String name) {
+        return (Long) ((Gauge<?>) app.getEnvironment().metrics().getGauges().get(name)).getValue();
+    }
+
+    private static byte[] getTile(String path) {
+        return clientTarget(app, path).request().get(byte[].class);
+    }
+
+    @Test
+    public void testCachedTile() throws IOException {
+        byte[] tile = getTile("/mvt/15/16528/12099.mvt");
+        long rendered = getGauge("mvt.tile_cache.rendered");
+        long memoryHits = getGauge("mvt.tile_cache.memory_hits");
+        assertArrayEquals(tile, getTile("/mvt/15/16528/12099.mvt"));
+        assertEquals(rendered, getGauge("mvt.tile_cache.rendered"));
+        assertEquals(memoryHits + 1, getGauge("mvt.tile_cache.memory_hits"));
+
+        VectorTileDecoder.Feature feature = new VectorTileDecoder().decode(tile).iterator().next();
+        assertEquals(51, feature.getGeometry().getCoordinates().length);
+        assertEquals("Camì de les Pardines", feature.getAttributes().get(STREET_NAME));
+
+        // the tile was also written to disk and render_all is cached separately
+        assertArrayEquals(tile, Files.readAllBytes(findTileFile("15/16528/12099.mvt")));
+        assertFalse(Files.exists(findTileFile("15/16528/12099_all.mvt")));
+        byte[] renderAllTile = getTile("/mvt/15/16528/12099.mvt?render_all=true");
+        assertArrayEquals(renderAllTile, Files.readAllBytes(findTileFile("15/16528/12099_all.mvt")));
+    }
+
+    @Test
+    public void testSeeding() throws Exception {
+        // andorra is covered by the tiles x=516-517, y=377-378 at zoom 10 and x=1032-1034, y=755-756 at zoom 11
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (!Files.exists(findTileFile("11/1033/756.mvt")) && System.currentTimeMillis() < deadline)
+            Thread.sleep(100);
+        assertTrue(Files.exists(findTileFile("10/516/378.mvt")));
+        assertTrue(Files.exists(findTileFile("11/1033/756.mvt")));
+        long rendered = getGauge("mvt.tile_cache.rendered");
+        byte[] tile = getTile("/mvt/11/1033/756.mvt");
+        assertArrayEquals(Files.readAllBytes(findTileFile("11/1033/756.mvt")), tile);
+        assertEquals(rendered, getGauge("mvt.tile_cache.rendered"));
+    }
+
+    private static Path findTileFile(String tile) throws IOException {
+        // the tiles are stored in a sub directory named after the graph version
+        try (Stream<Path> versions = Files.list(Paths.get(CACHE_DIR))) {
+            return versions.findFirst().orElseThrow().resolve(tile);
+        }
+    }
+}
@@ -18,9 +18,17 @@
 package com.graphhopper.application.resources;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.graphhopper.application.GraphHopperApplication;
 import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.gpx.GpxConversions;
+import com.graphhopper.jackson.Gpx;
+import com.graphhopper.jackson.Jackson;
 import com.graphhopper.jackson.ResponsePathDeserializerHelper;
+import com.graphhopper.matching.Observation;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.Helper;
 import io.dropwizard.testing.junit5.DropwizardAppExtension;
@@ -36,6 +44,7 @@ import org.locationtech.jts.io.WKTReader;
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.Response;
 import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 
 import static com.graphhopper.application.util.TestUtils.clientTarget;
@@ -84,6 +93,43 @@ public class MapMatchingResourceTest {
         assertEquals(812, json.get("map_matching").get("distance").asDouble(), 1);
     }
 
+    @Test
+    public void testBatch() throws IOException {
+        ObjectMapper objectMapper = Jackson.newObjectMapper();
+        Gpx gpx = new XmlMapper().readValue(getClass().getResourceAsStream("/tour2-with-loop.gpx"), Gpx.class);
+        ArrayNode points = objectMapper.createArrayNode();
+        for (Observation observation : GpxConversions.getEntries(gpx.trk.get(0)))
+            points.addArray().add(observation.getPoint().lon).add(observation.getPoint().lat);
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            ObjectNode trace = objectMapper.createObjectNode().put("id", "trace" + i);
+            trace.set("points", points);
+            body.append(trace).append('\n');
+        }
+        body.append("{\"id\": \"far_away\", \"points\": [[0, 0], [0.001, 0.001]]}\n");
+
+        String response = clientTarget(app, "/match/batch?profile=fast_car")
+                .request()
+                .post(Entity.entity(body.toString(), "application/x-ndjson"), String.class);
+        String[] lines = response.split("\n");
+        assertEquals(7, lines.length);
+        for (int i = 0; i < 6; i++) {
+            JsonNode summary = objectMapper.readTree(lines[i]);
+            if (summary.get("id").asText().equals("far_away")) {
+                assertEquals(5, summary.get("index").asInt());
+                assertEquals("failed", summary.get("status").asText());
+            } else {
+                assertEquals("matched", summary.get("status").asText());
+                assertEquals(812, summary.get("map_matching").get("distance").asDouble(), 1);
+            }
+        }
+        JsonNode statistics = objectMapper.readTree(lines[6]).get("statistics");
+        assertEquals(6, statistics.get("traces").asInt());
+        assertEquals(5, statistics.get("matched").asInt());
+        assertEquals(1, statistics.get("failed").asInt());
+        assertTrue(statistics.get("traces_per_second").asDouble() > 0);
+    }
+
     @Test
     public void testBike() throws ParseException {
         WKTReader wktReader = new WKTReader();
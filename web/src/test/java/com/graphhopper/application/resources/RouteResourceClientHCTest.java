@@ -26,6 +26,7 @@ import com.graphhopper.application.GraphHopperServerConfiguration;
 import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
 import com.graphhopper.application.util.TestUtils;
 import com.graphhopper.config.CHProfile;
+import com.graphhopper.jackson.BinaryResponseFormat;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.*;
 import com.graphhopper.util.details.PathDetail;
@@ -81,21 +82,26 @@ public class RouteResourceClientHCTest {
     // dropwizard extension does not work with @RunWith(Parameterized.class), but we can use an @EnumSource or similar
     // and on each test method. see https://github.com/graphhopper/graphhopper/pull/2003
     private enum TestParam {
-        GET(false, -1),
-        POST_MAX_UNZIPPED_0(true, 0),
-        POST_MAX_UNZIPPED_1000(true, 1000);
+        GET(false, -1, false),
+        POST_MAX_UNZIPPED_0(true, 0, false),
+        POST_MAX_UNZIPPED_1000(true, 1000, false),
+        GET_BINARY(false, -1, true),
+        POST_BINARY(true, 1000, true);
 
         public boolean usePost;
         public int maxUnzippedLength;
+        public boolean binaryResponse;
 
-        TestParam(boolean usePost, int maxUnzippedLength) {
+        TestParam(boolean usePost, int maxUnzippedLength, boolean binaryResponse) {
             this.usePost = usePost;
             this.maxUnzippedLength = maxUnzippedLength;
+            this.binaryResponse = binaryResponse;
         }
     }
 
     private GraphHopperWeb createGH(TestParam p) {
-        return new GraphHopperWeb(TestUtils.clientUrl(app, "/route")).setPostRequest(p.usePost).setMaxUnzippedLength(p.maxUnzippedLength);
+        return new GraphHopperWeb(TestUtils.clientUrl(app, "/route")).setPostRequest(p.usePost).setMaxUnzippedLength(p.maxUnzippedLength).
+                setBinaryResponse(p.binaryResponse);
     }
 
     @BeforeAll
@@ -117,6 +123,7 @@ public class RouteResourceClientHCTest {
                 putHint("calc_points", true);
         GHResponse rsp = gh.route(req);
         assertFalse(rsp.hasErrors(), "errors:" + rsp.getErrors().toString());
+        assertEquals(List.of(p.binaryResponse ? BinaryResponseFormat.MEDIA_TYPE : "application/json"), rsp.getHints().getObject("content-type", null));
         ResponsePath res = rsp.getBest();
         isBetween(70, 80, res.getPoints().size());
         isBetween(2900, 3000, res.getDistance());
@@ -48,6 +48,7 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import java.io.File;
@@ -173,6 +174,21 @@ public class RouteResourceTest {
         assertFalse(infoJson.has("errors"));
     }
 
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "application/x-graphhopper-route;q=0.5, application/json|application/json",
+            "application/json;q=0.9, application/x-graphhopper-route|application/x-graphhopper-route",
+            "application/x-graphhopper-route, application/json|application/x-graphhopper-route",
+            "application/xml|application/json",
+            "*/*|application/json"})
+    public void testAcceptHeaderSelectsResponseFormat(String accept, String expected) {
+        try (Response response = clientTarget(app, "/route?profile=my_car&point=42.554851,1.536198&point=42.510071,1.548128")
+                .request().header("Accept", accept).get()) {
+            assertEquals(200, response.getStatus());
+            assertEquals(expected, response.getMediaType().toString());
+        }
+    }
+
     @Test
     public void testQueryWithoutInstructions() {
         JsonNode json = clientTarget(app, "/route?profile=my_car&point=42.554851,1.536198&point=42.510071,1.548128&instructions=false").request().get(JsonNode.class);
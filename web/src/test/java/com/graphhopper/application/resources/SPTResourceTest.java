@@ -34,8 +34,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
 import java.io.File;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 
 import static com.graphhopper.application.resources.Util.getWithStatus;
 import static com.graphhopper.application.util.TestUtils.clientTarget;
@@ -101,6 +100,40 @@ public class SPTResourceTest {
         assertEquals("2385,2821,1234,13121,262", lines[3]);
     }
 
+    @Test
+    public void requestSPTMultiplePoints() {
+        String rspCsvString = clientTarget(app, "/spt?profile=car_without_turncosts&point=42.531073,1.573792&point=42.558012,1.589756&time_limit=300&columns=node_id,origin,time").request().get(String.class);
+        String[] lines = rspCsvString.split("\n");
+        assertEquals("node_id,origin,time", lines[0]);
+        // both points are start nodes
+        assertTrue(lines[1].endsWith(",0,0"), lines[1]);
+        assertTrue(lines[2].endsWith(",1,0"), lines[2]);
+        Set<String> nodes = new HashSet<>();
+        int[] counts = new int[2];
+        for (int i = 1; i < lines.length; i++) {
+            String[] row = lines[i].split(",");
+            assertTrue(nodes.add(row[0]), "node " + row[0] + " was reached twice");
+            counts[Integer.parseInt(row[1])]++;
+        }
+        assertTrue(counts[0] > 50 && counts[1] > 50, Arrays.toString(counts));
+
+        // every node is assigned to the point it can be reached from fastest
+        String single = clientTarget(app, "/spt?profile=car_without_turncosts&point=42.531073,1.573792&time_limit=300&columns=node_id,time").request().get(String.class);
+        Map<String, Integer> singleTimes = new HashMap<>();
+        String[] singleLines = single.split("\n");
+        for (int i = 1; i < singleLines.length; i++)
+            singleTimes.put(singleLines[i].split(",")[0], Integer.parseInt(singleLines[i].split(",")[1]));
+        for (int i = 1; i < lines.length; i++) {
+            String[] row = lines[i].split(",");
+            Integer singleTime = singleTimes.get(row[0]);
+            // splitting the edges at the second point can change the rounding a bit
+            if (singleTime != null)
+                assertTrue(Integer.parseInt(row[2]) <= singleTime + 10, lines[i]);
+            if (row[1].equals("0"))
+                assertEquals(singleTime, Integer.parseInt(row[2]), 10, lines[i]);
+        }
+    }
+
     @Test
     public void requestDetails() {
         String rspCsvString = clientTarget(app, "/spt?profile=car_without_turncosts&point=42.531073,1.573792&time_limit=300&columns=street_name,road_class,max_speed").request().get(String.class);